@@ -9,13 +9,12 @@
  */
 package povray;
 
-import de.schlichtherle.io.File;
-
-// import java.io.File;
+import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 
 import utils.LogFile;
+import utils.ZipArchive;
 
 import simulator.Simulator;
 
@@ -46,9 +45,9 @@ public class PovRayWriter implements Serializable
 	private String            dir;
 
 	/**
-	 * Archive (.zip) file in which all POV-Ray output files will be stored
+	 * Archive (.zip) file in which all POV-Ray output files will be stored, only appended to
 	 */
-	private File              _vArchive;
+	private transient ZipArchive _archive;
 
 	/**
 	 * \brief Initialises a POV-Ray writer object to produce simulation statistics that can be presented using POV-Ray
@@ -58,8 +57,9 @@ public class PovRayWriter implements Serializable
 	 * 
 	 * @param aSim	The simulation object used to simulate the conditions specified in the protocol file
 	 * @param outPath	A string stating the directory in which POV-Ray output files should be stored
+	 * @param zipLevel	Compression level of the archive, from 0 to 9 or -1 for the default level
 	 */
-	public void initPovRay(Simulator aSim, String outPath) 
+	public void initPovRay(Simulator aSim, String outPath, int zipLevel) 
 	{
 		try 
 		{
@@ -69,13 +69,12 @@ public class PovRayWriter implements Serializable
 			_povRay.writePovrayIncFiles(dir+"lastIter"+java.io.File.separator);			
 
 			// Create the archive file in which these
-			_vArchive = new File(dir+"povray"+".zip");
+			_archive = new ZipArchive(dir+"povray"+".zip", zipLevel);
 			File incFile=new File(dir+"lastIter"+java.io.File.separator+"sceneheader.inc");
-			incFile.copyTo(new File(dir+"povray.zip"+java.io.File.separator+"sceneheader.inc"));
+			_archive.add(incFile, "sceneheader.inc");
 
 			incFile=new File(dir+"lastIter"+java.io.File.separator+"scenefooter.inc");
-			incFile.copyTo(new File(dir+"povray.zip"+java.io.File.separator+"scenefooter.inc"));
-			File.update(_vArchive);
+			_archive.add(incFile, "scenefooter.inc");
 
 		} 
 		catch (Exception e) 
@@ -97,11 +96,11 @@ public class PovRayWriter implements Serializable
 		try 
 		{
 			// Create the povray file
-			File f = new File(_povRay.writeModelState(dir+"lastIter"+java.io.File.separator+"it(last).pov"));
+			File f = _povRay.writeModelState(dir+"lastIter"+java.io.File.separator+"it(last).pov");
 
-			// Copy the povray file inside the archive
-			f.copyTo(new File(dir+"povray.zip"+java.io.File.separator+"it("+fileIndex+").pov"));
-			File.update(_vArchive);
+			// Copy the povray file inside the archive, if it could be opened
+			if ( _archive != null )
+				_archive.add(f, "it("+fileIndex+").pov");
 
 		} 
 		catch (IOException e) 
@@ -109,5 +108,23 @@ public class PovRayWriter implements Serializable
 			System.out.println("Error trying to write povRayFile");
 		}
 	}
+	
+	/**
+	 * \brief Closes the archive of POV-Ray files at the end of the simulation
+	 */
+	public void close() 
+	{
+		// The archive is null if initPovRay() failed
+		if ( _archive == null )
+			return;
+		try 
+		{
+			_archive.close();
+		} 
+		catch (IOException e) 
+		{
+			LogFile.writeError(e, "PovRayWriter.close()");
+		}
+	}
 
 }
\ No newline at end of file
@@ -13,6 +13,9 @@ package simulator;
 
 import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 import idyno.SimTimer;
 import simulator.agent.*;
@@ -23,6 +26,7 @@ import simulator.diffusionSolver.DiffusionSolver;
 import simulator.diffusionSolver.Solver_pressure;
 import simulator.geometry.*;
 import simulator.SpatialGrid;
+import utils.AgentTable;
 import utils.ResultFile;
 import utils.XMLParser;
 import utils.LogFile;
@@ -54,7 +58,7 @@ public class AgentContainer
 	/**
 	 * Container for all agents (even the non located ones)
 	 */
-	public LinkedList<SpecialisedAgent> agentList;
+	public AgentList agentList;
 	
 	/**
 	 * Temporary containers used to store agents who will be added or removed.
@@ -100,6 +104,13 @@ public class AgentContainer
 	 *agents, within a LocatedGroup object. 
 	 */
 	private LocatedGroup[] _grid;
+
+	/**
+	 * Offsets of the grid cells screened for shoving agents, for each search
+	 * radius (in grid cells). Shared by all the cells of the grid, see
+	 * getStencil().
+	 */
+	private volatile int[][][] _stencils = new int[0][][];
 	
 	/**
 	 * 3D array that captures erosion in the agent grid
@@ -133,6 +144,64 @@ public class AgentContainer
 	 */
 	private final boolean MUTUAL;
 	
+	/**
+	 * Skin distance (in microns) of the Verlet lists used in shoving. Zero
+	 * (default) rebuilds the neighbourhoods from the grid at every shoving
+	 * iteration instead.
+	 */
+	private final Double SHOVESKIN;
+	
+	/**
+	 * Whether shoving runs on primitive arrays of the agent positions and
+	 * movements (see MechanicsEngine) rather than on the agents themselves.
+	 * Gives the same results. False by default.
+	 */
+	private final boolean SHOVEARRAYS;
+	
+	/**
+	 * Whether each shoving iteration first computes the pushes on all agents
+	 * from the positions at the start of the iteration, and only then moves
+	 * them (see MechanicsEngine.performJacobiMove()). Needed to shove with
+	 * several threads. False by default.
+	 */
+	private final boolean SHOVEJACOBI;
+	
+	/**
+	 * Relative move (fraction of the total radius) below which a located
+	 * agent falls asleep during shoving, once it has stayed below it for
+	 * LocatedAgent.SLEEP_DELAY iterations. A sleeping agent is skipped until
+	 * it grows, is pushed or another agent moves into its grid cell. Zero
+	 * (default) keeps all agents awake. Not used with SHOVEJACOBI.
+	 */
+	private final Double SHOVESLEEP;
+	
+	/**
+	 * Pool of threads stepping the agents, created if the protocol parameter
+	 * agentThreads is more than 1. With the SplitMix generator the agents
+	 * are stepped concurrently (see stepAllConcurrently()), otherwise only
+	 * their growth rates are computed ahead (see prepareAllGrowth()). Null
+	 * (default) steps them serially.
+	 */
+	private ForkJoinPool _agentPool;
+	
+	/**
+	 * Smallest number of agents whose growth rates are computed by one task.
+	 */
+	private static final int MIN_GROWTH_AGENTS = 64;
+	
+	/**
+	 * Births and deaths queued by the agents stepped by the calling thread,
+	 * if it is a thread of _agentPool stepping agents (see deferBirth()).
+	 */
+	private final ThreadLocal<StepQueue> _stepQueue =
+												new ThreadLocal<StepQueue>();
+	
+	/**
+	 * Array-based shoving kernel, only used if SHOVEARRAYS or SHOVEJACOBI is
+	 * true.
+	 */
+	private MechanicsEngine _mechanics;
+	
 	/**
 	 * Boolean to select erosion method: true is shrinkOnBorder, false is removeOnBorder
 	 */
@@ -178,6 +247,11 @@ public class AgentContainer
 	 */
 	int maxShoveIter; 
 	
+	/**
+	 * Whether the Verlet lists of the located agents are built.
+	 */
+	private boolean _verletBuilt = false;
+	
 	/**
 	 * Solver used for modelling detachment
 	 */
@@ -214,6 +288,34 @@ public class AgentContainer
 			MUTUAL = root.getParamBool("shovingMutual");
 		else
 			MUTUAL = true;
+		if ( root.isParamGiven("shovingSkin") )
+			SHOVESKIN = root.getParamDbl("shovingSkin");
+		else
+			SHOVESKIN = 0.0;
+		if ( root.isParamGiven("shovingArrays") )
+			SHOVEARRAYS = root.getParamBool("shovingArrays");
+		else
+			SHOVEARRAYS = false;
+		if ( root.isParamGiven("shovingJacobi") )
+			SHOVEJACOBI = root.getParamBool("shovingJacobi");
+		else
+			SHOVEJACOBI = false;
+		if ( root.isParamGiven("agentThreads") &&
+										root.getParamInt("agentThreads") > 1 )
+			_agentPool = new ForkJoinPool(root.getParamInt("agentThreads"));
+		if ( root.isParamGiven("shovingSleep") && ! SHOVEJACOBI )
+			SHOVESLEEP = root.getParamDbl("shovingSleep");
+		else
+			SHOVESLEEP = 0.0;
+		if ( SHOVEARRAYS || SHOVEJACOBI )
+		{
+			_mechanics = new MechanicsEngine(this);
+			_mechanics.setSleep(SHOVESLEEP);
+		}
+		if ( SHOVEJACOBI && root.isParamGiven("shovingThreads") &&
+									root.getParamInt("shovingThreads") > 1 )
+			_mechanics.setPool(
+					new ForkJoinPool(root.getParamInt("shovingThreads")));
 		if ( root.isParamGiven("erosionMethod") )
 			EROSIONMETHOD = root.getParamBool("erosionMethod");
 		else
@@ -258,7 +360,7 @@ public class AgentContainer
 		domain = (Domain) aSimulator.world.getDomain(root.getParam("computationDomain"));
 		mySim = aSimulator;
 		
-		agentList = new LinkedList<SpecialisedAgent>();
+		agentList = new AgentList();
 		// Optimised the resolution of the grid used to sort located agents
 		checkGridSize(aSimulator, root);
 
@@ -301,7 +403,7 @@ public class AgentContainer
 	{
 		/* STEP AGENTS ________________________________________________ */
 		LogFile.chronoMessageIn();
-		Collections.shuffle(agentList, ExtraMath.random);
+		agentList.shuffle(ExtraMath.getRandom());
 		
 		// Record values at the beginning
 		int nBirth = 0;
@@ -313,6 +415,8 @@ public class AgentContainer
 		double localdt = Math.min(AGENTTIMESTEP,globalTimeStep);
 
 		int nAgent0 = agentList.size();
+		int subStep = 0;
+		SpecialisedAgent anAgent;
 		// Apply a shorter time step when visiting all the agents
 
 		while (elapsedTime < globalTimeStep)
@@ -334,8 +438,26 @@ public class AgentContainer
 			if ( ! Simulator.isChemostat )
 				followPressure();
 			
-			for ( int i = 0; i < agentList.size(); i++ )
-				agentList.get(i).step();
+			if ( _agentPool != null && ExtraMath.hasStreams() )
+				stepAllConcurrently(subStep);
+			else
+			{
+				if ( _agentPool != null )
+					prepareAllGrowth();
+				for ( int i = 0; i < agentList.size(); i++ )
+				{
+					anAgent = agentList.get(i);
+					/*
+					 * With a splittable generator, each agent draws from its
+					 * own stream.
+					 */
+					if ( ExtraMath.hasStreams() )
+						ExtraMath.setStream(anAgent.newRandomStream(subStep));
+					anAgent.step();
+				}
+				ExtraMath.setStream(null);
+			}
+			subStep++;
 			/*
 			 * TODO Rob 16Apr2015: Java is complaining about
 			 * "java.util.ConcurrentModificationException"
@@ -344,7 +466,7 @@ public class AgentContainer
 				agent.step();
 			*/
 			
-			Collections.shuffle(agentList, ExtraMath.random);
+			agentList.shuffle(ExtraMath.getRandom());
 
 			if ( Simulator.isChemostat )
 				agentFlushedAway(dt);
@@ -479,7 +601,7 @@ public class AgentContainer
 		
 		// copy calculated pressure field to the solute list
 		// (allows easy output of pressure field)
-		mySim.getSolute("pressure").setGrid(_pressure.getGrid());
+		mySim.getSolute("pressure").setGrid(_pressure);
 
 		// Determine local advection speed
 		Double maxSpeed = 0.0;
@@ -521,6 +643,270 @@ public class AgentContainer
 	}	
 
 
+	/**
+	 * \brief Compute the growth rates of all the active agents concurrently,
+	 * before they are stepped (see ActiveAgent.prepareGrowth()).
+	 * 
+	 * Each agent's rates only depend on the agent itself and the solute
+	 * grids, which do not change while the agents are stepped. Division,
+	 * death and everything else that changes agentList or the agent grid
+	 * stay in the serial step() of each agent, in the shuffled order, so the
+	 * results are the same as without the pool, for any number of threads.
+	 */
+	private void prepareAllGrowth()
+	{
+		int grain = Math.max(MIN_GROWTH_AGENTS,
+						agentList.size()/(4*_agentPool.getParallelism()));
+		_agentPool.invoke(new GrowthTask(0, agentList.size(), grain));
+	}
+	
+	/**
+	 * \brief Task computing the growth rates of a range of agentList, split
+	 * in halves until the range is no longer than the grain.
+	 */
+	private class GrowthTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final int from, to, grain;
+		
+		GrowthTask(int from, int to, int grain)
+		{
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if ( to - from <= grain )
+			{
+				SpecialisedAgent anAgent;
+				for ( int i = from; i < to; i++ )
+				{
+					anAgent = agentList.get(i);
+					if ( anAgent instanceof ActiveAgent )
+						((ActiveAgent) anAgent).prepareGrowth();
+				}
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new GrowthTask(from, mid, grain),
+										new GrowthTask(mid, to, grain));
+		}
+	}
+
+	/**
+	 * \brief Step all the agents, those that allow it concurrently (see
+	 * SpecialisedAgent.canStepConcurrently()).
+	 * 
+	 * The agents of agentList are split in ranges, each stepped by a thread
+	 * of the pool. The births and deaths of these agents go into a queue of
+	 * the range instead of changing agentList, the agent grid, _agentToKill,
+	 * the species populations or the reaction guilds. Once all the ranges
+	 * are done, the queues are merged in agentList order: going through the
+	 * agents in order, the events of each agent are registered, and the
+	 * agents that cannot be stepped concurrently are stepped there. The
+	 * agents born are then stepped the same way, as the serial loop steps
+	 * them at the end of agentList.
+	 * 
+	 * Each agent draws from its own random stream, keyed on its lineage so
+	 * that no two agents share one (see Agent.newRandomStream() and
+	 * test.AgentStreamTest), so the result does not depend on the number of
+	 * threads. Agents stepped concurrently only
+	 * change themselves and the agents they create, so it is also the result
+	 * of the serial loop when all the agents can be stepped concurrently.
+	 * 
+	 * @param subStep	Number of the agent time step within the current
+	 * iteration.
+	 */
+	private void stepAllConcurrently(int subStep)
+	{
+		int from = 0;
+		int to, grain;
+		boolean[] isStepped;
+		StepQueue events;
+		SpecialisedAgent anAgent;
+		while ( from < agentList.size() )
+		{
+			to = agentList.size();
+			grain = Math.max(MIN_GROWTH_AGENTS,
+								(to - from)/(4*_agentPool.getParallelism()));
+			isStepped = new boolean[to];
+			events = _agentPool.invoke(
+							new StepTask(subStep, from, to, grain, isStepped));
+			int e = 0;
+			for ( int i = from; i < to; i++ )
+			{
+				if ( isStepped[i] )
+				{
+					for ( ; e < events.size() && events.index(e) == i; e++ )
+						events.register(e);
+					continue;
+				}
+				anAgent = agentList.get(i);
+				ExtraMath.setStream(anAgent.newRandomStream(subStep));
+				anAgent.step();
+			}
+			ExtraMath.setStream(null);
+			from = to;
+		}
+	}
+	
+	/**
+	 * \brief Task stepping the agents of a range of agentList that can be
+	 * stepped concurrently, split in halves until the range is no longer
+	 * than the grain. Returns the queue of their births and deaths.
+	 */
+	private class StepTask extends RecursiveTask<StepQueue>
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final int subStep, from, to, grain;
+		
+		/**
+		 * Set for each agent stepped, by position in agentList.
+		 */
+		private final boolean[] isStepped;
+		
+		StepTask(int subStep, int from, int to, int grain,
+														boolean[] isStepped)
+		{
+			this.subStep = subStep;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+			this.isStepped = isStepped;
+		}
+		
+		@Override
+		protected StepQueue compute()
+		{
+			if ( to - from > grain )
+			{
+				int mid = (from + to) >>> 1;
+				StepTask second = new StepTask(subStep, mid, to, grain,
+																isStepped);
+				second.fork();
+				StepQueue out = new StepTask(subStep, from, mid, grain,
+														isStepped).compute();
+				out.append(second.join());
+				return out;
+			}
+			StepQueue out = new StepQueue();
+			SpecialisedAgent anAgent;
+			_stepQueue.set(out);
+			try
+			{
+				for ( int i = from; i < to; i++ )
+				{
+					anAgent = agentList.get(i);
+					if ( ! anAgent.canStepConcurrently() )
+						continue;
+					out.current = i;
+					ExtraMath.setStream(anAgent.newRandomStream(subStep));
+					anAgent.step();
+					isStepped[i] = true;
+				}
+			}
+			finally
+			{
+				ExtraMath.setStream(null);
+				_stepQueue.remove();
+			}
+			return out;
+		}
+	}
+	
+	/**
+	 * \brief Births and deaths of the agents stepped by one thread, in the
+	 * order they happened, with the position in agentList of the agent
+	 * stepped when each happened.
+	 */
+	private static class StepQueue
+	{
+		/**
+		 * Position in agentList of the agent being stepped.
+		 */
+		int current;
+		
+		private ArrayList<Integer> _index = new ArrayList<Integer>();
+		
+		private ArrayList<SpecialisedAgent> _agent =
+										new ArrayList<SpecialisedAgent>();
+		
+		private ArrayList<Boolean> _isBirth = new ArrayList<Boolean>();
+		
+		void add(SpecialisedAgent anAgent, boolean isBirth)
+		{
+			_index.add(current);
+			_agent.add(anAgent);
+			_isBirth.add(isBirth);
+		}
+		
+		void append(StepQueue other)
+		{
+			_index.addAll(other._index);
+			_agent.addAll(other._agent);
+			_isBirth.addAll(other._isBirth);
+		}
+		
+		int size()
+		{
+			return _index.size();
+		}
+		
+		int index(int e)
+		{
+			return _index.get(e);
+		}
+		
+		/**
+		 * \brief Register an event once the agents are no longer stepped
+		 * concurrently.
+		 */
+		void register(int e)
+		{
+			if ( _isBirth.get(e) )
+				_agent.get(e).registerBirth();
+			else
+				_agent.get(e).registerDeath();
+		}
+	}
+	
+	/**
+	 * \brief Queue the birth of an agent if the calling thread is stepping
+	 * agents concurrently (see stepAllConcurrently()).
+	 * 
+	 * @param anAgent	Agent born.
+	 * @return	True if the birth is queued and must not be registered now.
+	 */
+	public boolean deferBirth(SpecialisedAgent anAgent)
+	{
+		StepQueue queue = _stepQueue.get();
+		if ( queue == null )
+			return false;
+		queue.add(anAgent, true);
+		return true;
+	}
+	
+	/**
+	 * \brief Queue the death of an agent if the calling thread is stepping
+	 * agents concurrently (see stepAllConcurrently()).
+	 * 
+	 * @param anAgent	Agent that died.
+	 * @return	True if the death is queued and must not be registered now.
+	 */
+	public boolean deferDeath(SpecialisedAgent anAgent)
+	{
+		StepQueue queue = _stepQueue.get();
+		if ( queue == null )
+			return false;
+		queue.add(anAgent, false);
+		return true;
+	}
+
 	/**
 	 * \brief Solve spatial spreading through application of shoving (acts
 	 * only on located agents).
@@ -531,14 +917,79 @@ public class AgentContainer
 	public void shoveAllLocated(int maxShoveIter)
 	{
 		int nMoved;
+		int nRebuild = 0;
 		shovLimit = Math.max(1, (int) (agentList.size() * SHOVEFRACTION));
 		shovIter = 0;
+		if ( _mechanics != null )
+			_mechanics.load(agentList);
 		do 
 		{
+			if ( SHOVESKIN > 0.0 && verletListsExpired() )
+			{
+				buildVerletLists();
+				nRebuild++;
+			}
+			if ( SHOVESLEEP > 0.0 )
+				shovLimit = Math.max(1, (int) (countAwake() * SHOVEFRACTION));
 			nMoved = performMove();
 		} while ((shovIter++ < maxShoveIter) && (nMoved >= shovLimit));
+		if ( _mechanics != null )
+			_mechanics.unload();
 		LogFile.writeLog(nMoved + "/" + agentList.size() + " after " + shovIter
 				+ " shove iterations");
+		if ( SHOVESKIN > 0.0 )
+		{
+			LogFile.writeLog(nRebuild + " Verlet list builds");
+			for ( SpecialisedAgent agent : agentList )
+				if ( agent instanceof LocatedAgent )
+					((LocatedAgent) agent).clearVerletList();
+			_verletBuilt = false;
+		}
+	}
+
+	/**
+	 * \brief Count the agents that are not asleep.
+	 * 
+	 * @return	Number of agents in agentList that shoving will visit.
+	 */
+	private int countAwake()
+	{
+		int out = 0;
+		for ( SpecialisedAgent agent : agentList )
+			if ( ! ( agent instanceof LocatedAgent &&
+										((LocatedAgent) agent).isAsleep() ) )
+				out++;
+		return out;
+	}
+
+	/**
+	 * \brief Check whether the Verlet lists must be rebuilt: once an agent
+	 * has moved more than half the skin, two agents may have come closer
+	 * than the skin and be overlapping without being listed.
+	 * 
+	 * @return	True if the Verlet lists must be (re)built.
+	 */
+	private boolean verletListsExpired()
+	{
+		if ( ! _verletBuilt )
+			return true;
+		Double halfSkin = 0.5 * SHOVESKIN;
+		for ( SpecialisedAgent agent : agentList )
+			if ( agent instanceof LocatedAgent && 
+				((LocatedAgent) agent).getVerletDisplacement() > halfSkin )
+				return true;
+		return false;
+	}
+
+	/**
+	 * \brief Build the Verlet list of every located agent.
+	 */
+	private void buildVerletLists()
+	{
+		for ( SpecialisedAgent agent : agentList )
+			if ( agent instanceof LocatedAgent )
+				((LocatedAgent) agent).buildVerletList(SHOVESKIN);
+		_verletBuilt = true;
 	}
 
 	/**
@@ -550,7 +1001,7 @@ public class AgentContainer
 	{
 		if( ! Simulator.isChemostat )
 		{
-			Collections.shuffle(agentList, ExtraMath.random);
+			agentList.shuffle(ExtraMath.getRandom());
 			shoveAllLocated(5 * MAXITER);
 		}
 	}
@@ -563,14 +1014,28 @@ public class AgentContainer
 	 */
 	protected int performMove()
 	{
+		if ( SHOVEJACOBI )
+			return _mechanics.performJacobiMove(MUTUAL);
+		if ( SHOVEARRAYS )
+			return _mechanics.performMove(MUTUAL);
 		int nMoved = 0;
 		Double deltaMove;
+		LocatedAgent aLoc;
 		/*
 		 * Compute movement, deltaMove is relative movement.
 		 */
 		for ( SpecialisedAgent agent : agentList )
 		{
-			deltaMove = agent.interact(MUTUAL);
+			if ( SHOVESLEEP > 0.0 && agent instanceof LocatedAgent )
+			{
+				aLoc = (LocatedAgent) agent;
+				if ( aLoc.isAsleep() )
+					continue;
+				deltaMove = aLoc.interact(MUTUAL);
+				aLoc.updateSleep(deltaMove, SHOVESLEEP);
+			}
+			else
+				deltaMove = agent.interact(MUTUAL);
 			nMoved += (deltaMove >= 0.1  ? 1 : 0);
 		}
 		return nMoved;
@@ -606,33 +1071,101 @@ public class AgentContainer
 	public void getPotentialShovers(int index, Double range,
 											LinkedList<LocatedAgent> nbList)
 	{
-		LocatedGroup aGroup;
-		int radius = Math.max(1, (int) Math.floor(range / this._res));
 		nbList.clear();
-		for (int i = -radius; i <= radius; i++)
+		LocatedGroup aGroup;
+		for ( int[] offset : getStencil(getStencilRadius(range)) )
 		{
-			if ( _grid[index].moveX(i) == null )
-				continue;
-			for (int j = -radius; j <= radius; j++)
-			{
-				if ( is3D )
-				{
-					if (_grid[index].moveX(i).moveY(j) == null)
-						continue;
-					for (int k = -radius; k <= radius; k++)
-					{
-						aGroup = _grid[index].moveX(i).moveY(j).moveZ(k);
-						if ( aGroup != null )
-							nbList.addAll(aGroup.group);
-					}
-				}
-				else
-				{
-					aGroup = _grid[index].moveX(i).moveY(j);
-					if ( aGroup != null )
-						nbList.addAll(aGroup.group);
-				}
-			}
+			aGroup = _grid[index].getNeighbour(offset);
+			if ( aGroup != null )
+				nbList.addAll(aGroup.group);
+		}
+	}
+
+	/**
+	 * \brief Search radius, in grid cells, for agents within the given range
+	 * of an agent.
+	 * 
+	 * @param range	maximal range to screen for shoving agents
+	 * @return	Search radius, at least 1.
+	 */
+	public int getStencilRadius(Double range)
+	{
+		return Math.max(1, (int) Math.floor(range / this._res));
+	}
+
+	/**
+	 * \brief Offsets of the grid cells to screen for agents within the given
+	 * search radius.
+	 * 
+	 * The offsets (i, j, k) take all values in [-radius, radius], k being 0
+	 * in 2D, in the order the cells should be visited. They are resolved in
+	 * each grid cell by LocatedGroup.getNeighbour(), which crosses the
+	 * cyclic boundaries. The same table serves all the cells, and may be read
+	 * by concurrent threads; it is built by prepareStencils() if needed.
+	 * 
+	 * @param radius	Search radius, in grid cells.
+	 * @return	Array of offsets, in grid cells.
+	 */
+	public int[][] getStencil(int radius)
+	{
+		int[][][] stencils = _stencils;
+		if ( radius < stencils.length )
+			return stencils[radius];
+		prepareStencils(radius);
+		return _stencils[radius];
+	}
+
+	/**
+	 * \brief Build the offset tables of getStencil() up to the given search
+	 * radius.
+	 * 
+	 * Called before the agents are shoved by concurrent threads, so that
+	 * these only read the tables.
+	 * 
+	 * @param radius	Largest search radius, in grid cells.
+	 */
+	public synchronized void prepareStencils(int radius)
+	{
+		if ( radius < _stencils.length )
+			return;
+		int[][][] stencils = Arrays.copyOf(_stencils, radius + 1);
+		int[][] offsets;
+		int n, kRadius;
+		for ( int r = _stencils.length; r <= radius; r++ )
+		{
+			kRadius = ( is3D ? r : 0 );
+			offsets = new int[(2*r+1)*(2*r+1)*(2*kRadius+1)][];
+			n = 0;
+			for (int i = -r; i <= r; i++)
+				for (int j = -r; j <= r; j++)
+					for (int k = -kRadius; k <= kRadius; k++)
+						offsets[n++] = new int[] {i, j, k};
+			stencils[r] = offsets;
+		}
+		_stencils = stencils;
+	}
+
+	/**
+	 * \brief Apply a visitor to all agents that may shove the given agent,
+	 * without building a list of them.
+	 * 
+	 * Visits the same agents, in the same order, as getPotentialShovers().
+	 * 
+	 * @param anAgent	The located agent whose neighbourhood is visited.
+	 * @param range	maximal range to screen for shoving agents
+	 * @param visitor	Callback applied to each agent found.
+	 */
+	public void visitPotentialShovers(LocatedAgent anAgent, Double range,
+												NeighbourVisitor visitor)
+	{
+		LocatedGroup aCell = _grid[anAgent.getGridIndex()];
+		LocatedGroup aGroup;
+		for ( int[] offset : getStencil(getStencilRadius(range)) )
+		{
+			aGroup = aCell.getNeighbour(offset);
+			if ( aGroup != null )
+				for ( LocatedAgent aNeighbour : aGroup.group )
+					visitor.visitNeighbour(anAgent, aNeighbour);
 		}
 	}
 
@@ -652,12 +1185,18 @@ public class AgentContainer
 		if (anAgent instanceof LocatedAgent)
 		{
 			LocatedAgent aLoc = (LocatedAgent) anAgent;
+			int index;
 			try
 			{
 				if ( Simulator.isChemostat )
 					_grid[0].add(aLoc);
 				else
-					_grid[getIndexedPosition(aLoc.getLocation())].add(aLoc);
+				{
+					index = getIndexedPosition(aLoc.getLocation());
+					if ( SHOVESLEEP > 0.0 )
+						_grid[index].wakeAgents();
+					_grid[index].add(aLoc);
+				}
 			}
 			catch (Exception e)
 			{
@@ -837,6 +1376,8 @@ public class AgentContainer
 			if ( newIndex != oldIndex )
 			{
 				_grid[oldIndex].remove(anAgent);
+				if ( SHOVESLEEP > 0.0 )
+					_grid[newIndex].wakeAgents();
 				_grid[newIndex].add(anAgent);
 				anAgent.setGridIndex(newIndex);
 			}
@@ -953,11 +1494,6 @@ public class AgentContainer
 		 * Get the number of species in this simulation.
 		 */
 		int nSpecies = aSim.speciesList.size();
-		/*
-		 * Set up a buffer to hold information for each agent of these
-		 * species.
-		 */
-		StringBuffer[] speciesBuffer = new StringBuffer[nSpecies];
 		/*
 		 * Include information about the shoving grid.
 		 */
@@ -973,28 +1509,6 @@ public class AgentContainer
 		 */
 		bufferState.write(textBuffer);
 		bufferSum.write(textBuffer);
-		/*
-		 * Initialise a Species markup for each present species
-		 */
-		for (Species aSpec : aSim.speciesList)
-		{
-			textBuffer  = new StringBuffer();
-			/*
-			 * First part, the species name.
-			 */
-			textBuffer.append("<species name=\"");
-			textBuffer.append(aSpec.speciesName);
-			/*
-			 * Now create the header. Note that this information comes from
-			 * the species itself - its part of the agent and the inherited
-			 * classes. So if we are going to change that, it gets changed
-			 * there.
-			 */
-			textBuffer.append("\" header=\"");
-			textBuffer.append(aSpec.getProgenitor().sendHeader());
-			textBuffer.append("\" >\n");
-			speciesBuffer[aSpec.speciesIndex] = textBuffer;
-		}
 		/*
 		 *  Initialise statistics (population total mass, growth-rate).
 		 */
@@ -1011,7 +1525,7 @@ public class AgentContainer
 		int[][] spPlasmidTypes = new int [nSpecies][plasmidListSize];
 		/* <----- HGT Stats End ----> */
 		
-		// Fill the agent_state file, build the state for the summary
+		// Build the state for the summary
   		LocatedAgent aLoc;
   		MultiEpiBac anEpiBac;
  		int spIndex;
@@ -1032,7 +1546,6 @@ public class AgentContainer
  				aLoc = (LocatedAgent) anAgent;	
  				spMass[spIndex] += aLoc.getTotalMass();
  				spGrowth[spIndex] += aLoc.getNetGrowth();
-  				speciesBuffer[spIndex].append(aLoc.writeOutput()+";\n");
  			}
  			
  			/*<-------HGT Sonia Begin ------> */
@@ -1061,8 +1574,7 @@ public class AgentContainer
  		{
  			spIndex = aSpecies.speciesIndex;
  			// Write the agent_state info for this species to file  
- 			speciesBuffer[spIndex].append("</species>\n");
- 			bufferState.write(speciesBuffer[spIndex]);
+ 			writeSpeciesState(bufferState, aSpecies, agentList, false);
  			
  			// Collate the agent_Sum info.
  			textBuffer = new StringBuffer();
@@ -1135,11 +1647,6 @@ public class AgentContainer
 		 * Get the number of species in this simulation.
 		 */
 		int nSpecies = aSim.speciesList.size();
-		/*
-		 * Set up a buffer to hold information for each agent of these
-		 * species.
-		 */
-		StringBuffer[] speciesBuffer = new StringBuffer[nSpecies];
 		/*
 		 *  Include information about the shoving grid.
 		 */
@@ -1156,34 +1663,6 @@ public class AgentContainer
 		 */
 		bufferStateDeath.write(textBuffer);
 		bufferSumDeath.write(textBuffer);
-		/*
-		 * Initialise a Species markup for each present species
-		 */
-		for (Species aSpec : aSim.speciesList)
-		{
-			textBuffer  = new StringBuffer();
-			/*
-			 * First part, the species name.
-			 */
-			textBuffer.append("<species name=\"");
-			textBuffer.append(aSpec.speciesName);
-			/*
-			 * Now create the header. Note that this information comes from
-			 * the species itself - its part of the agent and the inherited
-			 * classes. So if we are going to change that, it gets changed
-			 * there.
-			 */
-			textBuffer.append("\" header=\"");
-			textBuffer.append(aSpec.getProgenitor().sendHeader());
-			/*
-			 * Now we can add additional fields if these are not declared by
-			 * the agent itself. In this case, we're going to add a reason
-			 * for the agent's death.
-			 */
-			textBuffer.append(",death");
-			textBuffer.append("\" >\n");
-			speciesBuffer[aSpec.speciesIndex] = textBuffer;
-		}
 		/*
 		 * Initialise statistics (population total mass, growth-rate).
 		 */
@@ -1200,7 +1679,7 @@ public class AgentContainer
 		int[][] spPlasmidTypes = new int [nSpecies][plasmidListSize];
 		/* <----- HGT Stats End ----> */
 		/*
-		 * Collate the information for the agent_StateDeath file.
+		 * Collate the statistics for the agent_SumDeath file.
 		 */
 		LocatedAgent aLoc;
   		MultiEpiBac anEpiBac;
@@ -1217,8 +1696,6 @@ public class AgentContainer
   				aLoc = (LocatedAgent) anAgent;
   				spMass[spIndex] += aLoc.getTotalMass();
   				spGrowth[spIndex] += aLoc.getNetGrowth();
-  				speciesBuffer[spIndex].append(aLoc.writeOutput());
-  				speciesBuffer[spIndex].append("," + aLoc.death + ";\n");
   			}
   			
   			/*<-------HGT Sonia Begin ------> */
@@ -1246,8 +1723,7 @@ public class AgentContainer
   		{
   			spIndex = aSpecies.speciesIndex;
   			// Write the agent_state info for this species to file  
-  			speciesBuffer[spIndex].append("</species>\n");
-  			bufferStateDeath.write(speciesBuffer[spIndex]);
+  			writeSpeciesState(bufferStateDeath, aSpecies, _agentToKill, true);
   			
   			// Collate the agent_Sum info.
   			textBuffer = new StringBuffer();
@@ -1286,6 +1762,49 @@ public class AgentContainer
   			bufferSumDeath.write(textBuffer);
   		}
 	}
+	
+	/**
+	 * \brief Write the species mark-up of an agent_State or agent_StateDeath
+	 * file, with one line per located agent of this species.
+	 * 
+	 * Each agent's values are handed to the result file as soon as they are
+	 * added, instead of collecting the whole species in a buffer first, so
+	 * that the memory used does not grow with the number of agents (unless
+	 * the file is written in the background, in which case the values are
+	 * kept as numbers, and formatted by the writer thread).
+	 * 
+	 * @param buffer	Result file to write to.
+	 * @param aSpecies	Species to write.
+	 * @param agents	Agents to write those of aSpecies from, in this order.
+	 * @param isDeath	Whether this is the agent_StateDeath file: dead agents
+	 * are then written too, with the reason for their death.
+	 */
+	private void writeSpeciesState(ResultFile buffer, Species aSpecies,
+						List<SpecialisedAgent> agents, Boolean isDeath)
+	{
+		/*
+		 * The header comes from the species itself - its part of the agent
+		 * and the inherited classes. In the death file, the reason for the
+		 * agent's death is added.
+		 */
+		StringBuffer header = aSpecies.getProgenitor().sendHeader();
+		if ( isDeath )
+			header.append(",death");
+		AgentTable table =
+					buffer.openSpecies(aSpecies.speciesName, header.toString());
+		for (SpecialisedAgent anAgent : agents)
+		{
+			if ( anAgent.getSpecies().speciesIndex != aSpecies.speciesIndex ||
+					! ( anAgent instanceof LocatedAgent ) ||
+					( anAgent.isDead && ! isDeath ) )
+				continue;
+			anAgent.writeOutput(table);
+			if ( isDeath )
+				table.add(anAgent.death);
+			buffer.writeAgent();
+		}
+		buffer.closeSpecies();
+	}
 
 	/**
 	 * \brief Writes information on the shoving grid to the output string
@@ -1405,6 +1924,7 @@ public class AgentContainer
 			_grid[index] = new LocatedGroup(index, this, aSimulator);
 		for ( LocatedGroup lg : _grid )
 			lg.init();
+		prepareStencils(1);
 		/*
 		LogFile.writeLogDebug("Debugging Agentcontainer.createShovGrid");
 		for ( LocatedGroup lg : _grid )
@@ -1446,7 +1966,7 @@ public class AgentContainer
 		/*
 		 * cvf is true for connected elements, and false for non-connected.
 		 */
-		Boolean[] cvf = (new ConnectedVolume(_nI, _nJ, _nK)).computeCvf(_grid);
+		BitSet cvf = (new ConnectedVolume(_nI, _nJ, _nK)).computeCvf(_grid);
 		int numRemoved = 0;
 		Double massRemoved = 0.0;
 		/*
@@ -1454,7 +1974,7 @@ public class AgentContainer
 		 */
 		for (int index = 0; index < _nTotal; index++)
 			// If it's not connected, remove the agents.
-			if ( ! cvf[index] && _grid[index].totalMass > 0 )
+			if ( ! cvf.get(index) && _grid[index].totalMass > 0 )
 			{
 				numRemoved += _grid[index].group.size();
 				massRemoved += _grid[index].totalMass;
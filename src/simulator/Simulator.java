@@ -15,6 +15,7 @@ package simulator;
 import java.io.File;
 import java.io.ObjectInputStream;
 import java.util.*;
+import java.util.zip.Deflater;
 import org.jdom.Element;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
@@ -31,7 +32,9 @@ import utils.Chart;
 import utils.ExtraMath;
 import utils.LogFile;
 import utils.MTRandom;
+import utils.SplitRandom;
 import utils.ResultFile;
+import utils.ResultWriter;
 import utils.XMLParser;
 
 /**
@@ -112,6 +115,13 @@ public class Simulator
 	 */
 	public transient ResultFile[] result;
 	
+	/**
+	 * Background thread writing the result files, if the protocol parameter
+	 * outputSnapshots is more than 0. Null (default) writes them while the
+	 * simulation waits.
+	 */
+	private transient ResultWriter _resultWriter;
+	
 	/**
 	 * Path to where results files should be stored. Specified in the protocol
 	 * file.
@@ -358,6 +368,16 @@ public class Simulator
 			step();
 		if ( ! continueRunning )
 			writeReport();
+		if ( _resultWriter != null )
+			_resultWriter.finish();
+		/*
+		 * Write the central directories of the archives, now that nothing
+		 * more will be added to them.
+		 */
+		for ( ResultFile aResult : result )
+			aResult.closeArchive();
+		if ( ! Simulator.isChemostat )
+			povRayWriter.close();
 	}
 	
 	/**
@@ -521,7 +541,7 @@ public class Simulator
 						_resultPath+File.separator+"random.state");
 				randomObjectInputStream = new
 									ObjectInputStream(randomFileInputStream);
-				ExtraMath.random = (MTRandom)
+				ExtraMath.random = (Random)
 										randomObjectInputStream.readObject();
 				LogFile.writeLogAlways("Read in random number generator.");
 			}
@@ -569,7 +589,14 @@ public class Simulator
 						"protocol file.\nUsing a randomly generated seed: "+
 																randomSeed);
 			}
-			ExtraMath.random = new MTRandom(randomSeed);
+			/*
+			 * The Mersenne Twister is the default. The SplitMix generator
+			 * also gives each agent its own stream at each step.
+			 */
+			if ( "SplitMix".equals(localRoot.getParam("randomGenerator")) )
+				ExtraMath.random = new SplitRandom(randomSeed);
+			else
+				ExtraMath.random = new MTRandom(randomSeed);
 			LogFile.writeLogAlways("Random number generator test: "+
 												ExtraMath.random.nextInt());
 		}
@@ -620,22 +647,57 @@ public class Simulator
 		 */
 		result = new ResultFile[6];
 		int currentIter = SimTimer.getCurrentIter();
-		result[0] = new ResultFile(resultPath, "env_State", currentIter);
-		result[1] = new ResultFile(resultPath, "env_Sum", currentIter);
-		result[2] = new ResultFile(resultPath, "agent_State", currentIter);
-		result[3] = new ResultFile(resultPath, "agent_Sum", currentIter);
+		/*
+		 * XML is the default. With outputFormat set to binary, each result
+		 * file is written to a .bin file with its .idx index instead, and
+		 * BinaryResultConverter rebuilds the XML files (including those in
+		 * lastIter, needed to restart).
+		 */
+		boolean bin = "binary".equals(localRoot.getParam("outputFormat"));
+		/*
+		 * The zip archives are only appended to. Their compression level
+		 * can be set from 0 (none, fastest) to 9 (smallest); default is -1,
+		 * the default level of zip.
+		 */
+		int zip = Deflater.DEFAULT_COMPRESSION;
+		if ( localRoot.isParamGiven("zipLevel") )
+			zip = localRoot.getParamInt("zipLevel");
+		result[0] = new ResultFile(resultPath, "env_State", currentIter,
+																bin, zip);
+		result[1] = new ResultFile(resultPath, "env_Sum", currentIter,
+																bin, zip);
+		result[2] = new ResultFile(resultPath, "agent_State", currentIter,
+																bin, zip);
+		result[3] = new ResultFile(resultPath, "agent_Sum", currentIter,
+																bin, zip);
 		/*
 		 * Result files for dead/removed biomass.
 		 */
-		result[4] = new ResultFile(resultPath, "agent_StateDeath", currentIter);
-		result[5] = new ResultFile(resultPath, "agent_SumDeath", currentIter);
+		result[4] = new ResultFile(resultPath, "agent_StateDeath",
+													currentIter, bin, zip);
+		result[5] = new ResultFile(resultPath, "agent_SumDeath",
+													currentIter, bin, zip);
+		/*
+		 * With outputSnapshots greater than 0, the state of the simulation
+		 * is captured at each output and the result files are written by a
+		 * background thread while the next steps are computed. At most this
+		 * many outputs wait to be written: the simulation waits beyond that.
+		 */
+		if ( localRoot.isParamGiven("outputSnapshots") &&
+								localRoot.getParamInt("outputSnapshots") > 0 )
+		{
+			_resultWriter =
+						new ResultWriter(localRoot.getParamInt("outputSnapshots"));
+			for ( ResultFile aResult : result )
+				aResult.setWriter(_resultWriter);
+		}
 		/*
 		 * Initialise POV-Ray files (no need in a chemostat)
 		 */
 		if ( ! Simulator.isChemostat )
 		{
 			povRayWriter = new PovRayWriter();
-			povRayWriter.initPovRay(this, resultPath);
+			povRayWriter.initPovRay(this, resultPath, zip);
 		}
 	}
 
@@ -1224,6 +1286,9 @@ public class Simulator
 
 		// first restart log file to avoid non-write trouble
 		LogFile.reopenFile();
+		
+		if ( _resultWriter != null )
+			_resultWriter.startSnapshot();
 
 		try 
 		{
@@ -1345,7 +1410,9 @@ public class Simulator
 			LogFile.writeError(e,
 						"Simulator.writeReport() System description of grids");
 		}
-
+		
+		if ( _resultWriter != null )
+			_resultWriter.endSnapshot();
 	}
 	
 	/**
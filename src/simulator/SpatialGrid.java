@@ -12,6 +12,7 @@
 package simulator;
 
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.function.DoubleConsumer;
 import java.util.function.DoubleFunction;
 import java.util.function.DoubleSupplier;
@@ -21,7 +22,6 @@ import simulator.geometry.ContinuousVector;
 import simulator.geometry.DiscreteVector;
 import simulator.agent.LocatedAgent;
 import utils.ExtraMath;
-import utils.MatrixOperations;
 import utils.ResultFile;
 
 /**
@@ -54,9 +54,21 @@ public class SpatialGrid implements Serializable
 	public String gridUnit = "g.L-1";
 
 	/**
-	 * The solute grid - a three dimensional array of Double values.
+	 * The grid values, padding included, stored as one contiguous array of
+	 * primitive doubles. Voxel (i, j, k) of the padded grid is found at
+	 * position index(i, j, k) = i*_strideI + j*_strideJ + k.
 	 */
-	public Double[][][]       grid;
+	protected double[]        _values;
+	
+	/**
+	 * Distance in _values between two neighbouring voxels in the I direction.
+	 */
+	protected int             _strideI;
+	
+	/**
+	 * Distance in _values between two neighbouring voxels in the J direction.
+	 */
+	protected int             _strideJ;
 
 	/**
 	 * Number of grid voxels in I direction
@@ -154,14 +166,127 @@ public class SpatialGrid implements Serializable
 		if ( Simulator.isChemostat )
 		{
 			_is3D = false;
-			grid = ExtraMath.newDoubleArray(1, 1, 1);
+			allocateValues(1, 1, 1);
 		}
 		else
 		{
 			_is3D = ! ( _nK == 1 );
-			grid = ExtraMath.newDoubleArray(_nI+2, _nJ+2, _nK+2);
+			allocateValues(_nI+2, _nJ+2, _nK+2);
 		}
 	}
+	
+	/**
+	 * \brief Allocate the flat value array for a padded grid of the given
+	 * size and set the strides used to address it.
+	 * 
+	 * All values are initialised to zero.
+	 * 
+	 * @param sizeI	Number of voxels in the I direction (padding included).
+	 * @param sizeJ	Number of voxels in the J direction (padding included).
+	 * @param sizeK	Number of voxels in the K direction (padding included).
+	 */
+	private void allocateValues(int sizeI, int sizeJ, int sizeK)
+	{
+		_strideJ = sizeK;
+		_strideI = sizeJ * sizeK;
+		_values = new double[sizeI * _strideI];
+	}
+	
+	/**
+	 * \brief Position of the padded voxel (i, j, k) in the flat value array.
+	 * 
+	 * @param i	I coordinate on the padded grid.
+	 * @param j	J coordinate on the padded grid.
+	 * @param k	K coordinate on the padded grid.
+	 * @return	Index of this voxel in the array returned by getFlatGrid().
+	 */
+	public final int index(int i, int j, int k)
+	{
+		return i*_strideI + j*_strideJ + k;
+	}
+	
+	/**
+	 * \brief Distance in the flat value array between two neighbouring
+	 * voxels in the I direction.
+	 * 
+	 * @return	Stride of the I direction.
+	 */
+	public final int getStrideI()
+	{
+		return _strideI;
+	}
+	
+	/**
+	 * \brief Distance in the flat value array between two neighbouring
+	 * voxels in the J direction.
+	 * 
+	 * The stride of the K direction is always 1.
+	 * 
+	 * @return	Stride of the J direction.
+	 */
+	public final int getStrideJ()
+	{
+		return _strideJ;
+	}
+	
+	/**
+	 * \brief Return the flat array backing this grid (padding included).
+	 * 
+	 * This is the storage itself, not a copy: it is meant for the numerical
+	 * kernels (multigrid smoother, restriction, reactions) that need to loop
+	 * over voxels without boxing. Use index(i, j, k) to address it.
+	 * 
+	 * @return	The primitive array holding the values of this grid.
+	 */
+	public final double[] getFlatGrid()
+	{
+		return _values;
+	}
+	
+	/**
+	 * \brief Return the value of the padded voxel (i, j, k).
+	 * 
+	 * Coordinates are NOT corrected and NOT checked.
+	 * 
+	 * @param i	I coordinate on the padded grid.
+	 * @param j	J coordinate on the padded grid.
+	 * @param k	K coordinate on the padded grid.
+	 * @return	The value stored at that voxel.
+	 */
+	public final double get(int i, int j, int k)
+	{
+		return _values[i*_strideI + j*_strideJ + k];
+	}
+	
+	/**
+	 * \brief Set the value of the padded voxel (i, j, k).
+	 * 
+	 * Coordinates are NOT corrected and NOT checked.
+	 * 
+	 * @param i	I coordinate on the padded grid.
+	 * @param j	J coordinate on the padded grid.
+	 * @param k	K coordinate on the padded grid.
+	 * @param value	The value to store at that voxel.
+	 */
+	public final void set(int i, int j, int k, double value)
+	{
+		_values[i*_strideI + j*_strideJ + k] = value;
+	}
+	
+	/**
+	 * \brief Add to the value of the padded voxel (i, j, k).
+	 * 
+	 * Coordinates are NOT corrected and NOT checked.
+	 * 
+	 * @param i	I coordinate on the padded grid.
+	 * @param j	J coordinate on the padded grid.
+	 * @param k	K coordinate on the padded grid.
+	 * @param value	The value to add to that voxel.
+	 */
+	public final void add(int i, int j, int k, double value)
+	{
+		_values[i*_strideI + j*_strideJ + k] += value;
+	}
 
 	/**
 	 * \brief Determine if a given discrete position is valid or outside the
@@ -250,17 +375,20 @@ public class SpatialGrid implements Serializable
 	 */
 	public Double getMax()
 	{
-		return MatrixOperations.max(grid);
+		double out = _values[0];
+		for ( double value : _values )
+			out = ( value > out ) ? value : out;
+		return out;
 	}
 	
 	public Double getMaxUnpadded()
 	{
-		Double out = Double.NEGATIVE_INFINITY;
+		double out = Double.NEGATIVE_INFINITY;
 		for ( int i = 0; i < _nI; i++ )
 			for ( int j = 0; j < _nJ; j++ )
 				for ( int k = 0; k < _nK; k++ )
 				{
-					out = Math.max(out, grid[i][j][k]);
+					out = Math.max(out, get(i, j, k));
 				}
 					
 		return out;
@@ -273,7 +401,47 @@ public class SpatialGrid implements Serializable
 	 */
 	public Double getAverage()
 	{
-		return MatrixOperations.computeSum(grid)/(_nI)/(_nJ)/(_nK);
+		return computeSumUnpadded()/(_nI)/(_nJ)/(_nK);
+	}
+	
+	/**
+	 * \brief Sum of the values inside the padding of the stored grid.
+	 * 
+	 * @return	The sum of all elements of the grid, padding excluded.
+	 */
+	private double computeSumUnpadded()
+	{
+		int sizeI = _values.length / _strideI;
+		int sizeJ = _strideI / _strideJ;
+		int sizeK = _strideJ;
+		double sum = 0.0;
+		for ( int i = 1; i < sizeI - 1; i++ )
+			for ( int j = 1; j < sizeJ - 1; j++ )
+				for ( int k = 1; k < sizeK - 1; k++ )
+					sum += get(i, j, k);
+		return sum;
+	}
+
+	/**
+	 * \brief List the voxels of this grid with a non-zero value (padding
+	 * excluded).
+	 *
+	 * @return	Flat positions of these voxels, in increasing order.
+	 */
+	public int[] getNonZeroVoxels()
+	{
+		int[] out = new int[_nI*_nJ*_nK];
+		int n = 0;
+		int index;
+		for ( int i = 1; i <= _nI; i++ )
+			for ( int j = 1; j <= _nJ; j++ )
+				for ( int k = 1; k <= _nK; k++ )
+				{
+					index = index(i, j, k);
+					if ( _values[index] != 0.0 )
+						out[n++] = index;
+				}
+		return Arrays.copyOf(out, n);
 	}
 
 	/**
@@ -283,7 +451,10 @@ public class SpatialGrid implements Serializable
 	 */
 	public Double getSum()
 	{
-		return MatrixOperations.computeSumP(grid);
+		double sum = 0.0;
+		for ( double value : _values )
+			sum += value;
+		return sum;
 	}
 
 	/**
@@ -293,7 +464,10 @@ public class SpatialGrid implements Serializable
 	 */
 	public Double getMin()
 	{
-		return MatrixOperations.min(grid);
+		double out = _values[0];
+		for ( double value : _values )
+			out = ( value < out ) ? value : out;
+		return out;
 	}
 	
 	/**
@@ -303,11 +477,11 @@ public class SpatialGrid implements Serializable
 	 */
 	public Double getMinUnpadded()
 	{
-		Double out = Double.POSITIVE_INFINITY;
+		double out = Double.POSITIVE_INFINITY;
 		for ( int i = 0; i < _nI; i++ )
 			for ( int j = 0; j < _nJ; j++ )
 				for ( int k = 0; k < _nK; k++ )
-					out = Math.min(out, grid[i][j][k]);
+					out = Math.min(out, get(i, j, k));
 		return out;
 	}
 	
@@ -322,7 +496,7 @@ public class SpatialGrid implements Serializable
 	 */
 	public Double diff2X(int i, int j, int k)
 	{
-		Double value = grid[i+1][j][k] + grid[i-1][j][k] - 2*grid[i][j][k];
+		double value = get(i+1, j, k) + get(i-1, j, k) - 2*get(i, j, k);
 		value /= ExtraMath.sq(_reso);
 		return Double.isFinite(value) ? value : 0.0;
 	}
@@ -350,7 +524,7 @@ public class SpatialGrid implements Serializable
 	 */
 	public Double diffX(int i, int j, int k)
 	{
-		Double value = (grid[i+1][j][k] - grid[i-1][j][k])/(2 * _reso);		
+		double value = (get(i+1, j, k) - get(i-1, j, k))/(2 * _reso);		
 		return Double.isFinite(value) ? value : 0.0;
 	}
 
@@ -377,7 +551,7 @@ public class SpatialGrid implements Serializable
 	 */
 	public Double diff2Y(int i, int j, int k)
 	{
-		Double value = grid[i][j+1][k] + grid[i][j-1][k] - 2*grid[i][j][k];
+		double value = get(i, j+1, k) + get(i, j-1, k) - 2*get(i, j, k);
 		value /= ExtraMath.sq(_reso);
 		return Double.isFinite(value) ? value : 0.0;
 	}
@@ -405,7 +579,7 @@ public class SpatialGrid implements Serializable
 	 */
 	public Double diffY(int i, int j, int k)
 	{
-		Double value = (grid[i][j+1][k] - grid[i][j-1][k])/(2 * _reso);		
+		double value = (get(i, j+1, k) - get(i, j-1, k))/(2 * _reso);		
 		return Double.isFinite(value) ? value : 0.0;
 	}
 
@@ -432,7 +606,7 @@ public class SpatialGrid implements Serializable
 	 */
 	public Double diff2Z(int i, int j, int k)
 	{
-		Double value = grid[i][j][k+1] + grid[i][j][k-1] - 2*grid[i][j][k];
+		double value = get(i, j, k+1) + get(i, j, k-1) - 2*get(i, j, k);
 		value /= ExtraMath.sq(_reso);
 		return Double.isFinite(value) ? value : 0.0;
 	}
@@ -460,7 +634,7 @@ public class SpatialGrid implements Serializable
 	 */
 	public Double diffZ(int i, int j, int k)
 	{
-		Double value = (grid[i][j][k+1] - grid[i][j][k-1])/(2 * _reso);		
+		double value = (get(i, j, k+1) - get(i, j, k-1))/(2 * _reso);		
 		return Double.isFinite(value) ? value : 0.0;
 	}
 
@@ -556,9 +730,9 @@ public class SpatialGrid implements Serializable
 	public Double getValueAt(DiscreteVector dc)
 	{
 		if ( Simulator.isChemostat )
-			return grid[0][0][0];
+			return _values[0];
 		if ( isValid(dc) ) 
-			return grid[dc.i+1][dc.j+1][dc.k+1];
+			return get(dc.i+1, dc.j+1, dc.k+1);
 		return Double.NaN;
 	}
 	
@@ -587,7 +761,7 @@ public class SpatialGrid implements Serializable
 	public Double getValueAt(int i, int j, int k) 
 	{
 		if (isValidOrPadded(i, j, k))
-			return grid[i][j][k];
+			return get(i, j, k);
 		else
 			return Double.NaN;
 	}
@@ -620,9 +794,9 @@ public class SpatialGrid implements Serializable
 	public void setValueAt(Double value, DiscreteVector dC) 
 	{
 		if ( Simulator.isChemostat )
-			grid[0][0][0] = value;
+			_values[0] = value;
 		else
-			grid[dC.i+1][dC.j+1][dC.k+1] = value;
+			set(dC.i+1, dC.j+1, dC.k+1, value);
 	}
 
 	/**
@@ -637,7 +811,7 @@ public class SpatialGrid implements Serializable
 	 */
 	public void setValueAt(Double value, int i, int j, int k) 
 	{
-		grid[i][j][k] = value;
+		set(i, j, k, value);
 	}
 
 	/**
@@ -668,9 +842,9 @@ public class SpatialGrid implements Serializable
 	public void addValueAt(Double value, DiscreteVector dC)
 	{
 		if ( Simulator.isChemostat )
-			grid[0][0][0] += value;
+			_values[0] += value;
 		else
-			grid[dC.i+1][dC.j+1][dC.k+1] += value;
+			add(dC.i+1, dC.j+1, dC.k+1, value);
 	}
 
 	/**
@@ -681,13 +855,8 @@ public class SpatialGrid implements Serializable
 	 */
 	public void addAllValues(Double value)
 	{
-		if ( Simulator.isChemostat )
-			grid[0][0][0] += value;
-		else
-			for (int i = 0; i < _nI+2; i++)
-				for (int j = 0; j < _nJ+2; j++)
-					for (int k = 0; k < _nK+2; k++)
-						grid[i][j][k] += value;
+		for (int index = 0; index < _values.length; index++)
+			_values[index] += value;
 	}
 
 	/**
@@ -700,7 +869,8 @@ public class SpatialGrid implements Serializable
 	 */
 	public void truncateValueAt(int i, int j, int k)
 	{
-		grid[i][j][k] = Math.max(grid[i][j][k], 0.0);
+		int index = index(i, j, k);
+		_values[index] = Math.max(_values[index], 0.0);
 	}
 
 	/**
@@ -711,13 +881,7 @@ public class SpatialGrid implements Serializable
 	 */
 	public void setAllValueAt(Double value) 
 	{
-		if ( Simulator.isChemostat )
-			grid[0][0][0] = value;
-		else
-			for (int i = 0; i < _nI+2; i++)
-				for (int j = 0; j < _nJ+2; j++)
-					for (int k = 0; k < _nK+2; k++)
-						grid[i][j][k] = value;
+		Arrays.fill(_values, value);
 	}
 	
 	/**
@@ -820,8 +984,8 @@ public class SpatialGrid implements Serializable
 			return _nJ*_reso;
 		case 3:
 			return _nK*_reso;
-		default:
-			return 0.0;
+		default:
+			return 0.0;
 		}
 	}
 
@@ -839,11 +1003,24 @@ public class SpatialGrid implements Serializable
 	/**
 	 * \brief Return the whole grid, including the padding.
 	 * 
-	 * @return The spatial grid.
+	 * Compatibility view for code written against the former Double[][][]
+	 * storage: the values are copied into a newly built array, so changes to
+	 * the returned array are NOT reflected in this grid (use setGrid() for
+	 * that). Numerical code should use getFlatGrid() instead.
+	 * 
+	 * @return A copy of the spatial grid.
 	 */
 	public Double[][][] getGrid()
 	{
-		return grid;
+		int sizeI = _values.length / _strideI;
+		int sizeJ = _strideI / _strideJ;
+		int sizeK = _strideJ;
+		Double[][][] out = new Double[sizeI][sizeJ][sizeK];
+		for (int i = 0; i < sizeI; i++)
+			for (int j = 0; j < sizeJ; j++)
+				for (int k = 0; k < sizeK; k++)
+					out[i][j][k] = get(i, j, k);
+		return out;
 	}
 
 	/**
@@ -853,7 +1030,7 @@ public class SpatialGrid implements Serializable
 	 */
 	public Double[][][] getCloneGrid()
 	{
-		return grid.clone();
+		return getGrid();
 	}
 
 	/**
@@ -885,7 +1062,21 @@ public class SpatialGrid implements Serializable
 	 */
 	public void setGrid(Double[][][] u)
 	{
-		utils.MatrixOperations.copyValuesTo(grid, u);
+		for (int i = 0; i < u.length; i++)
+			for (int j = 0; j < u[i].length; j++)
+				for (int k = 0; k < u[i][j].length; k++)
+					set(i, j, k, u[i][j][k]);
+	}
+	
+	/**
+	 * \brief Set the values of this spatial grid to those contained in
+	 * another spatial grid of the same size (padding included).
+	 * 
+	 * @param aGrid	Spatial grid whose values should be copied.
+	 */
+	public void setGrid(SpatialGrid aGrid)
+	{
+		System.arraycopy(aGrid._values, 0, _values, 0, _values.length);
 	}
 
 	/**
@@ -904,51 +1095,33 @@ public class SpatialGrid implements Serializable
 															throws Exception
 	{
 		/*
-		 * Edit the markup for the solute grid
-		 */
-		StringBuffer value = new StringBuffer();
-		value.append("<solute name=\"").append(gridName);
-		value.append("\" unit=\"").append(gridUnit);
-		value.append("\" resolution=\"").append(_reso);
-		value.append("\" nI=\"").append(_nI);
-		value.append("\" nJ=\"").append(_nJ);
-		value.append("\" nK=\"").append(_nK);
-		value.append("\">\n");
-		/*
-		 * Write the markup in the file
-		 */
-		bufferState.write(value.toString());
-		/*
-		 * Rob 3/3/11: Changed to fix bug in envState output files and improve
-		 * code readability (plus efficiency... possibly). Note that for a
-		 * chemostat, i=j=k=1 and that in 2D k=1. The main fix here however,
-		 * is that grid is a Double[] and not an array, as previously coded
-		 * (this reduces the amount of storage space taken by envState files
-		 * by about a 2 thirds!)
+		 * The values are copied now and formatted by the result file, which
+		 * may do it later on in the background.
 		 */
+		bufferState.writeGrid(gridName, gridUnit, _reso, _nI, _nJ, _nK,
+															getReportValues());
+	}
+	
+	/**
+	 * \brief Values written by writeReport(), without the padding.
+	 * 
+	 * Rob 3/3/11: Note that for a chemostat, i=j=k=1 and that in 2D k=1.
+	 * KA 06062013 - turned off the printing of the padding. Will need to
+	 * ensure this is clear from v1.2
+	 * 
+	 * @return	Array of the values of the grid, K varying fastest and then J
+	 * (only the first value for a chemostat).
+	 */
+	private double[] getReportValues()
+	{
 		if ( Simulator.isChemostat )
-			bufferState.write(grid[0][0][0].toString()+";\n");
-		else
-		{
-			/*
-			 * KA 06062013 - turned off the printing of the padding. Will need
-			 * to ensure this is clear from v1.2
-			 * 
-			 * Fill the mark-up.
-			 */
-			if ( _nK == 1 )
-				for ( int i = 1; i < _nI + 1; i++ )
-					for ( int j = 1; j < _nJ + 1; j++ )
-						bufferState.write(grid[i][j][1].toString()+";\n");
-			else
-				for ( int i = 1; i < _nI + 1; i++ )
-					for ( int j = 1; j < _nJ + 1; j++ )
-						for ( int k = 1; k < _nK + 1; k++ )
-							bufferState.write(grid[i][j][k].toString()+";\n");
-		}
-		/*
-		 * Close the mark-up
-		 */
-		bufferState.write("\n</solute>\n");
+			return new double[] { _values[0] };
+		double[] out = new double[_nI*_nJ*_nK];
+		int n = 0;
+		for ( int i = 1; i < _nI + 1; i++ )
+			for ( int j = 1; j < _nJ + 1; j++ )
+				for ( int k = 1; k < _nK + 1; k++ )
+					out[n++] = get(i, j, k);
+		return out;
 	}
 }
@@ -17,6 +17,7 @@ import idyno.SimTimer;
 import simulator.Simulator;
 import simulator.SpatialGrid;
 import simulator.reaction.Reaction;
+import utils.AgentTable;
 import utils.ExtraMath;
 import utils.XMLParser;
 
@@ -100,6 +101,12 @@ public abstract class ActiveAgent extends SpecialisedAgent implements HasReactio
 	 * Sum of masses of all particles
 	 */
 	protected Double _totalMass;
+	
+	/**
+	 * Whether deltaParticle already holds the growth of the next call to
+	 * grow(), computed by prepareGrowth().
+	 */
+	protected boolean _growthPrepared = false;
 
 	/**
 	 * \brief Creates an ActiveAgent object and initialises the object in
@@ -288,6 +295,12 @@ public abstract class ActiveAgent extends SpecialisedAgent implements HasReactio
 	@Override
 	public void registerBirth()
 	{
+		/*
+		 * While the agents are stepped concurrently, the birth is registered
+		 * after the step.
+		 */
+		if ( _species.currentSimulator.agentGrid.deferBirth(this) )
+			return;
 		super.registerBirth();
 		// Register the agent in the metabolic containers.
 		registerOnAllActiveReaction();
@@ -310,6 +323,7 @@ public abstract class ActiveAgent extends SpecialisedAgent implements HasReactio
 		out.reactionKnown = (ArrayList<Integer>) this.reactionKnown.clone();
 		out.allReactions = this.allReactions.clone();
 		out.growthRate = ExtraMath.newDoubleArray(this.growthRate.length);
+		out.deltaParticle = ExtraMath.newDoubleArray(this.deltaParticle.length);
 		/*
 		 * No need to initialise out.soluteYield, out.reactionKinetic, or
 		 * out.particleYield using ExtraMath.newDoubleArray() as their
@@ -332,22 +346,19 @@ public abstract class ActiveAgent extends SpecialisedAgent implements HasReactio
 			out.particleYield[jReac] = this.particleYield[jReac].clone();
 		}
 		out.particleMass = this.particleMass.clone();
+		out._growthPrepared = false;
 		return (Object) out;
 	}
 	
 	/**
-	 * \brief Notifies the simulation that this agent has become too small and
-	 * is then counted as dead.
+	 * \brief Registers the death of this agent.
 	 * 
 	 * Decreases the population of this species.
-	 * 
-	 * @param isStarving	Boolean noting whether the agent currently has
-	 * access to any resources.
 	 */
 	@Override
-	public void die(Boolean isStarving)
+	public void registerDeath()
 	{
-		super.die(isStarving);
+		super.registerDeath();
 		// Unregister from the metabolic guilds.
 		unregisterFromAllActiveReactions();
 	}
@@ -374,11 +385,48 @@ public abstract class ActiveAgent extends SpecialisedAgent implements HasReactio
 	 */
 	public void grow()
 	{
-		updateGrowthRates();
+		if ( _growthPrepared )
+			_growthPrepared = false;
+		else
+			updateGrowthRates();
 		for (int i = 0; i < particleMass.length; i++)
 			particleMass[i] += deltaParticle[i];
 	}
 	
+	/**
+	 * \brief Compute the growth rates ahead of the next step, so that grow()
+	 * only has to apply them.
+	 * 
+	 * Called by AgentContainer for all agents at once, from concurrent
+	 * threads: only writes the fields of this agent, and does nothing if
+	 * canPrepareGrowth() is false.
+	 */
+	public void prepareGrowth()
+	{
+		if ( ! canPrepareGrowth() )
+			return;
+		updateGrowthRates();
+		_growthPrepared = true;
+	}
+	
+	/**
+	 * \brief Whether the growth rates of this agent can be computed by
+	 * prepareGrowth(): all its active reactions must compute their rates
+	 * thread-safely.
+	 * 
+	 * Agents whose reactions or growth depend on other agents stepped before
+	 * them, or that override grow(), must return false.
+	 * 
+	 * @return	True if prepareGrowth() may compute the growth rates.
+	 */
+	protected boolean canPrepareGrowth()
+	{
+		for ( int reacIndex : reactionActive )
+			if ( ! allReactions[reacIndex].hasThreadSafeGrowthRate() )
+				return false;
+		return true;
+	}
+	
 	/**
 	 * \brief Perform agent growth by calling all active reaction pathways.
 	 * 
@@ -618,25 +666,24 @@ public abstract class ActiveAgent extends SpecialisedAgent implements HasReactio
 	}
 
 	/**
-	 * \brief Used in creation of results files - creates an output string of information generated on this particular agent
+	 * \brief Used in creation of results files - adds the information generated on this particular agent to a table of results
 	 * 
-	 * Used in creation of results files - creates an output string of information generated on this particular agent
+	 * Used in creation of results files - adds the information generated on this particular agent to a table of results
 	 * 
-	 * @return	String containing results associated with this agent
+	 * @param table	Table the values of this agent are added to
 	 */
 	@Override
-	public StringBuffer writeOutput()
+	public void writeOutput(AgentTable table)
 	{
 		// write the data matching the header file
-		StringBuffer tempString = super.writeOutput();
+		super.writeOutput(table);
 
 		// Mass of different particles
 		for (int i = 0; i < particleMass.length; i++)
-			tempString.append(","+particleMass[i]);
+			table.add(particleMass[i]);
 		
 		// Agent growth and volume rates
-		tempString.append(","+_netGrowthRate+","+_netVolumeRate);
-		return tempString;
+		table.add(_netGrowthRate).add(_netVolumeRate);
 	}
 
 	/**
@@ -12,9 +12,12 @@
 package simulator.agent;
 
 import java.math.BigInteger;
+import java.util.Random;
 
 import idyno.SimTimer;
 import simulator.Simulator;
+import utils.AgentTable;
+import utils.ExtraMath;
 import utils.LogFile;
 import utils.XMLParser;
 
@@ -111,6 +114,8 @@ public abstract class Agent implements Cloneable
 		_genealogy  = new BigInteger(singleAgentData[1]);
 		_generation = Integer.parseInt(singleAgentData[2]);
 		_birthday   = Double.parseDouble(singleAgentData[3]);
+		// Agents named after a restart must not share a family with these.
+		nextFamily = Math.max(nextFamily, _family);
 	}
 	
 	/**
@@ -148,6 +153,35 @@ public abstract class Agent implements Cloneable
 	 */
 	public abstract void registerBirth();
 	
+	/**
+	 * \brief Random number stream of this agent for one agent time step.
+	 * 
+	 * Derived from the identity of the agent (family, generation and every
+	 * bit of the genealogy, which together tell apart any two agents) and
+	 * the time, so it does not depend on the order in which agents are
+	 * stepped and is the same after a restart from the same state.
+	 * 
+	 * @param subStep	Number of the agent time step within the current
+	 * iteration.
+	 * @return	New stream, or the global generator if it cannot be split
+	 * (see ExtraMath.hasStreams()).
+	 */
+	public Random newRandomStream(int subStep)
+	{
+		long[] key = new long[4 + _genealogy.bitLength()/64 + 1];
+		key[0] = _family;
+		key[1] = _generation;
+		key[2] = SimTimer.getCurrentIter();
+		key[3] = subStep;
+		BigInteger rest = _genealogy;
+		for ( int i = 4; i < key.length; i++ )
+		{
+			key[i] = rest.longValue();
+			rest = rest.shiftRight(64);
+		}
+		return ExtraMath.newStream(key);
+	}
+	
 	/**
 	 * \brief Perform the next timestep of the simulation for this agent.
 	 * 
@@ -193,8 +227,26 @@ public abstract class Agent implements Cloneable
 	 */
 	public StringBuffer writeOutput()
 	{
-		return new StringBuffer(
-						_family+","+_genealogy+","+_generation+","+_birthday);
+		AgentTable table = new AgentTable();
+		writeOutput(table);
+		table.endRow();
+		StringBuilder out = new StringBuilder();
+		table.appendRow(0, out);
+		return new StringBuffer(out);
+	}
+	
+	/**
+	 * \brief Adds the information on this particular agent to a table of
+	 * results, as numbers where possible.
+	 * 
+	 * Values added match the headers in sendHeader(); subclasses add theirs
+	 * after those of their superclass. The row is not ended.
+	 * 
+	 * @param table	Table the values of this agent are added to.
+	 */
+	public void writeOutput(AgentTable table)
+	{
+		table.add(_family).add(_genealogy).add(_generation).add(_birthday);
 	}
 	
 	/**
@@ -209,9 +261,9 @@ public abstract class Agent implements Cloneable
 		// Rob 18/1/11: Shuffled around slightly to include odd numbers
 		//baby._genealogy = _genealogy+ExtraMath.exp2long(this._generation);
 		// Rob 11/2/15: Changed to BigInteger
-		baby._genealogy = new BigInteger("2");
-		baby._genealogy.pow(this._generation);
-		baby._genealogy.add(this._genealogy);
+		// BigInteger is immutable: the results of pow() and add() must be
+		// kept, or else every baby gets the same genealogy.
+		baby._genealogy = _genealogy.add(BigInteger.ONE.shiftLeft(this._generation));
 		
 		this._generation++;
 		baby._generation = this._generation;
@@ -0,0 +1,236 @@
+/**
+ * \package agent
+ * \brief Package of utilities that create and manage agents in the simulation and their participation in relevant reactions
+ *
+ * Package of utilities that create and manage agents in the simulation and their participation in relevant reactions. This package is
+ * part of iDynoMiCS v1.2, governed by the CeCILL license under French law and abides by the rules of distribution of free software.
+ * You can use, modify and/ or redistribute iDynoMiCS under the terms of the CeCILL license as circulated by CEA, CNRS and INRIA at
+ * the following URL  "http://www.cecill.info".
+ */
+package simulator.agent;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Random;
+import java.util.RandomAccess;
+
+/**
+ * \brief Array-backed container of all the agents of an AgentContainer.
+ *
+ * Each agent knows its position in the array, so that get, contains and
+ * remove are all O(1). Removing an agent moves the last agent into its place:
+ * the order of the agents is not kept, which is fine as it is shuffled at
+ * every agent time step anyway. Agents added while iterating by index are
+ * appended at the end, and so are stepped in the same pass.
+ *
+ * An agent can only be held by one AgentList at a time.
+ */
+public class AgentList extends AbstractList<SpecialisedAgent>
+													implements RandomAccess
+{
+	/**
+	 * Agents held, in positions 0 to _size-1.
+	 */
+	private SpecialisedAgent[] _agents = new SpecialisedAgent[16];
+
+	/**
+	 * Number of agents held.
+	 */
+	private int _size = 0;
+
+	/**
+	 * \brief Return the agent at the given position.
+	 *
+	 * @param index	Position of the agent.
+	 * @return	The agent at this position.
+	 */
+	@Override
+	public SpecialisedAgent get(int index)
+	{
+		if ( index >= _size )
+			throw new IndexOutOfBoundsException("Index: "+index+", Size: "+_size);
+		return _agents[index];
+	}
+
+	/**
+	 * \brief Number of agents held.
+	 *
+	 * @return	Number of agents.
+	 */
+	@Override
+	public int size()
+	{
+		return _size;
+	}
+
+	/**
+	 * \brief Append an agent at the end of the list.
+	 *
+	 * @param anAgent	Agent to add.
+	 * @return	Always true.
+	 */
+	@Override
+	public boolean add(SpecialisedAgent anAgent)
+	{
+		if ( _size == _agents.length )
+			_agents = Arrays.copyOf(_agents, 2*_size);
+		_agents[_size] = anAgent;
+		anAgent._listIndex = _size;
+		_size++;
+		modCount++;
+		return true;
+	}
+
+	/**
+	 * \brief Replace the agent at the given position.
+	 *
+	 * @param index	Position of the agent.
+	 * @param anAgent	Agent to put there.
+	 * @return	The agent previously at this position.
+	 */
+	@Override
+	public SpecialisedAgent set(int index, SpecialisedAgent anAgent)
+	{
+		SpecialisedAgent old = get(index);
+		old._listIndex = -1;
+		_agents[index] = anAgent;
+		anAgent._listIndex = index;
+		return old;
+	}
+
+	/**
+	 * \brief Remove the agent at the given position, moving the last agent
+	 * into its place.
+	 *
+	 * @param index	Position of the agent.
+	 * @return	The agent removed.
+	 */
+	@Override
+	public SpecialisedAgent remove(int index)
+	{
+		SpecialisedAgent old = get(index);
+		_size--;
+		if ( index < _size )
+		{
+			_agents[index] = _agents[_size];
+			_agents[index]._listIndex = index;
+		}
+		_agents[_size] = null;
+		old._listIndex = -1;
+		modCount++;
+		return old;
+	}
+
+	/**
+	 * \brief Remove an agent, if it is held by this list.
+	 *
+	 * @param o	Agent to remove.
+	 * @return	True if the agent was removed.
+	 */
+	@Override
+	public boolean remove(Object o)
+	{
+		int index = indexOf(o);
+		if ( index < 0 )
+			return false;
+		remove(index);
+		return true;
+	}
+
+	/**
+	 * \brief Remove all the given agents held by this list.
+	 *
+	 * @param c	Agents to remove.
+	 * @return	True if at least one agent was removed.
+	 */
+	@Override
+	public boolean removeAll(Collection<?> c)
+	{
+		boolean out = false;
+		for ( Object o : c )
+			out |= remove(o);
+		return out;
+	}
+
+	/**
+	 * \brief Position of an agent in this list.
+	 *
+	 * @param o	Agent to look for.
+	 * @return	Its position, or -1 if it is not held by this list.
+	 */
+	@Override
+	public int indexOf(Object o)
+	{
+		if ( ! ( o instanceof SpecialisedAgent ) )
+			return -1;
+		int index = ((SpecialisedAgent) o)._listIndex;
+		if ( index < 0 || index >= _size || _agents[index] != o )
+			return -1;
+		return index;
+	}
+
+	/**
+	 * \brief Position of an agent in this list.
+	 *
+	 * An agent is held at most once, so this is the same as indexOf().
+	 *
+	 * @param o	Agent to look for.
+	 * @return	Its position, or -1 if it is not held by this list.
+	 */
+	@Override
+	public int lastIndexOf(Object o)
+	{
+		return indexOf(o);
+	}
+
+	/**
+	 * \brief Check whether an agent is held by this list.
+	 *
+	 * @param o	Agent to look for.
+	 * @return	True if the agent is held by this list.
+	 */
+	@Override
+	public boolean contains(Object o)
+	{
+		return indexOf(o) >= 0;
+	}
+
+	/**
+	 * \brief Remove all the agents.
+	 */
+	@Override
+	public void clear()
+	{
+		for ( int i = 0; i < _size; i++ )
+		{
+			_agents[i]._listIndex = -1;
+			_agents[i] = null;
+		}
+		_size = 0;
+		modCount++;
+	}
+
+	/**
+	 * \brief Shuffle the agents in place (Fisher-Yates).
+	 *
+	 * Draws the same random numbers, and gives the same order, as
+	 * Collections.shuffle(this, random).
+	 *
+	 * @param random	Random number generator to use.
+	 */
+	public void shuffle(Random random)
+	{
+		SpecialisedAgent temp;
+		int j;
+		for ( int i = _size; i > 1; i-- )
+		{
+			j = random.nextInt(i);
+			temp = _agents[i-1];
+			_agents[i-1] = _agents[j];
+			_agents[j] = temp;
+			_agents[i-1]._listIndex = i-1;
+			_agents[j]._listIndex = j;
+		}
+	}
+}
@@ -13,9 +13,11 @@ package simulator.agent;
 
 import idyno.SimTimer;
 
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.awt.Color;
 
+import utils.AgentTable;
 import utils.ExtraMath;
 import utils.LogFile;
 import utils.XMLParser;
@@ -98,6 +100,40 @@ public abstract class LocatedAgent extends ActiveAgent implements Cloneable
 	 * List of neighbouring agents in this agent's vicinity.
 	 */
 	protected LinkedList<LocatedAgent> _myNeighbors = new LinkedList<LocatedAgent>();
+	
+	/**
+	 * Verlet list: agents that may shove this one during the current
+	 * shoving, if AgentContainer uses Verlet lists. Null otherwise.
+	 */
+	protected ArrayList<LocatedAgent> _verletList;
+	
+	/**
+	 * Location of this agent when its Verlet list was built.
+	 */
+	protected ContinuousVector _verletOrigin = new ContinuousVector();
+	
+	/**
+	 * Skin distance of the Verlet list of this agent.
+	 */
+	protected Double _verletSkin = 0.0;
+	
+	/**
+	 * Whether this agent is asleep, i.e. skipped by shoving until it grows
+	 * or is pushed or an agent moves into its grid cell.
+	 */
+	protected boolean _asleep = false;
+	
+	/**
+	 * Number of consecutive shoving iterations in which this agent moved
+	 * less than the sleep threshold.
+	 */
+	protected int _quietIterations = 0;
+	
+	/**
+	 * Number of consecutive quiet shoving iterations after which an agent
+	 * falls asleep.
+	 */
+	public static final int SLEEP_DELAY = 2;
 
 	/**
 	 * Index of the agent position on the vectorized grid.
@@ -157,6 +193,10 @@ public abstract class LocatedAgent extends ActiveAgent implements Cloneable
 		o._divisionDirection = (ContinuousVector)
 											this._divisionDirection.clone();
 		o._myNeighbors = (LinkedList<LocatedAgent>) this._myNeighbors.clone();
+		o._verletList = null;
+		o._verletOrigin = new ContinuousVector();
+		o._asleep = false;
+		o._quietIterations = 0;
 		o._agentGridIndex = this._agentGridIndex;
 		return o;
 	}
@@ -321,6 +361,10 @@ public abstract class LocatedAgent extends ActiveAgent implements Cloneable
 		 * Compute radius according to the volume.
 		 */
 		updateRadius();
+		/*
+		 * A change of size may create new overlaps.
+		 */
+		wake();
 		/*
 		 * Check if by chance the agent is close enough to a support to be
 		 * attached.
@@ -498,6 +542,48 @@ public abstract class LocatedAgent extends ActiveAgent implements Cloneable
 
 	/* ______________________ SHOVING ___________________________________ */
 
+	/**
+	 * Visitor applying addPushMovement() to each neighbour, mutual shoving.
+	 */
+	private static final NeighbourVisitor PUSH_MUTUAL = new NeighbourVisitor()
+	{
+		@Override
+		public void visitNeighbour(LocatedAgent anAgent, LocatedAgent aNeighbour)
+		{
+			anAgent.addPushMovement(aNeighbour, true);
+		}
+	};
+
+	/**
+	 * Visitor applying addPushMovement() to each neighbour, moving only the
+	 * visiting agent.
+	 */
+	private static final NeighbourVisitor PUSH_SINGLE = new NeighbourVisitor()
+	{
+		@Override
+		public void visitNeighbour(LocatedAgent anAgent, LocatedAgent aNeighbour)
+		{
+			anAgent.addPushMovement(aNeighbour, false);
+		}
+	};
+
+	/**
+	 * Visitor adding to the Verlet list of an agent the neighbours closer
+	 * than their interaction distance plus the skin.
+	 */
+	private static final NeighbourVisitor VERLET = new NeighbourVisitor()
+	{
+		@Override
+		public void visitNeighbour(LocatedAgent anAgent, LocatedAgent aNeighbour)
+		{
+			if ( aNeighbour == anAgent )
+				return;
+			if ( anAgent.getCyclicDistance(aNeighbour._location) <
+					anAgent.getInteractDistance(aNeighbour) + anAgent._verletSkin )
+				anAgent._verletList.add(aNeighbour);
+		}
+	};
+
 	/**
 	 * \brief Models a mechanical interaction between two located agents.
 	 * 
@@ -513,12 +599,15 @@ public abstract class LocatedAgent extends ActiveAgent implements Cloneable
 	{
 		move();
 		/*
-		 * Rebuild your neighbourhood.
+		 * Push your neighbours away, from your Verlet list if there is one
+		 * or else straight from the agent grid.
 		 */
-		getPotentialShovers(getInteractDistance());
-		for ( LocatedAgent neighbour : _myNeighbors )
-			addPushMovement(neighbour, MUTUAL);
-		_myNeighbors.clear();
+		if ( _verletList == null )
+			_agentGrid.visitPotentialShovers(this, getInteractDistance(),
+										MUTUAL ? PUSH_MUTUAL : PUSH_SINGLE);
+		else
+			for ( LocatedAgent aNeighbour : _verletList )
+				addPushMovement(aNeighbour, MUTUAL);
 		return move();
 	}
 
@@ -559,11 +648,109 @@ public abstract class LocatedAgent extends ActiveAgent implements Cloneable
 			{
 				diff.times(0.5);
 				aNeighbor._movement.add(diff);
+				aNeighbor.wake();
 			}
 			this._movement.subtract(diff);
 		}
 	}
 
+	/**
+	 * \brief Build the Verlet list of this agent: all the agents closer to it
+	 * than their interaction distance plus the skin distance.
+	 * 
+	 * While no agent has moved more than half the skin since the list was
+	 * built, any agent overlapping this one is in the list.
+	 * 
+	 * @param skin	Skin distance (in microns).
+	 */
+	public void buildVerletList(Double skin)
+	{
+		if ( _verletList == null )
+			_verletList = new ArrayList<LocatedAgent>();
+		else
+			_verletList.clear();
+		_verletSkin = skin;
+		_verletOrigin.set(_location);
+		_agentGrid.visitPotentialShovers(this, getInteractDistance() + skin,
+																	VERLET);
+	}
+
+	/**
+	 * \brief Drop the Verlet list, so that the neighbours are found from the
+	 * agent grid again.
+	 */
+	public void clearVerletList()
+	{
+		_verletList = null;
+	}
+
+	/**
+	 * \brief Whether this agent is asleep, and so skipped by shoving.
+	 * 
+	 * @return	True if this agent is asleep.
+	 */
+	public boolean isAsleep()
+	{
+		return _asleep;
+	}
+
+	/**
+	 * \brief Wake this agent, so that it is shoved again.
+	 */
+	public void wake()
+	{
+		_asleep = false;
+		_quietIterations = 0;
+	}
+
+	/**
+	 * \brief Put this agent to sleep once it has moved less than the
+	 * threshold for SLEEP_DELAY consecutive shoving iterations.
+	 * 
+	 * @param deltaMove	Move in this iteration, relative to total radius.
+	 * @param threshold	Relative move below which the agent is quiet.
+	 */
+	public void updateSleep(Double deltaMove, Double threshold)
+	{
+		if ( deltaMove >= threshold )
+			_quietIterations = 0;
+		else if ( ++_quietIterations >= SLEEP_DELAY )
+			_asleep = true;
+	}
+
+	/**
+	 * \brief Distance moved by this agent since its Verlet list was built.
+	 * 
+	 * @return	Distance from the location where the Verlet list was built.
+	 */
+	public Double getVerletDisplacement()
+	{
+		return getCyclicDistance(_verletOrigin);
+	}
+
+	/**
+	 * \brief Distance between this agent and a position, across the cyclic
+	 * boundaries as in computeDifferenceVector() but without randomising a
+	 * zero distance.
+	 * 
+	 * @param position	ContinuousVector of position to calculate distance to.
+	 * @return	The shortest distance from this agent to the position.
+	 */
+	private double getCyclicDistance(ContinuousVector position)
+	{
+		Domain domain = _species.domain;
+		double dx = _location.x - position.x;
+		double dy = _location.y - position.y;
+		double dz = _location.z - position.z;
+		if ( Math.abs(dx) > 0.5 * domain.length_X )
+			dx -= Math.signum(dx) * domain.length_X;
+		if ( Math.abs(dy) > 0.5 * domain.length_Y )
+			dy -= Math.signum(dy) * domain.length_Y;
+		if ( _agentGrid.is3D && Math.abs(dz) > 0.5 * domain.length_Z )
+			dz -= Math.signum(dz) * domain.length_Z;
+		return Math.sqrt(dx*dx + dy*dy + dz*dz);
+	}
+
 	/**
 	 * \brief Pulling : The movement of agents by a shrinking biofilm. Move calculated and added to the agents movement vector.
 	 * 
@@ -706,29 +893,28 @@ public abstract class LocatedAgent extends ActiveAgent implements Cloneable
 	 * @param indexSpecies	The index used to reference this species in the
 	 * simulation dictionary.
 	 */
-	public void findCloseSiblings(int indexSpecies) 
+	public void findCloseSiblings(final int indexSpecies) 
 	{
-		Double shoveDist;
-		LocatedAgent aNb;
 		/*
-		 * Find and count neighbours.
+		 * Only append the neighbours to the neighbour list if they are:
+		 * (1) different to this agent, (2) the same species as this agent,
+		 * and (3) close enough to this agent.  
 		 */
-		getPotentialShovers(getInteractDistance());
-		int nNb = _myNeighbors.size();
-		/*
-		 * Loop through them, only re-appending them to the neighbour list
-		 * if they are: (1) different to this agent, (2) the same species as 
-		 * this agent, and (3) close enough to this agent.  
-		 */
-		for ( int iNb = 0; iNb < nNb; iNb++ )
+		_myNeighbors.clear();
+		_agentGrid.visitPotentialShovers(this, getInteractDistance(),
+													new NeighbourVisitor()
 		{
-			aNb = _myNeighbors.removeFirst();
-			if ( aNb == this || indexSpecies != aNb.speciesIndex)
-				continue;
-			shoveDist = 2 * (getShoveRadius() + aNb.getShoveRadius());
-			if ( getDistance(aNb) <= shoveDist )
-				_myNeighbors.addLast(aNb);
-		}
+			@Override
+			public void visitNeighbour(LocatedAgent anAgent, LocatedAgent aNb)
+			{
+				if ( aNb == anAgent || indexSpecies != aNb.speciesIndex)
+					return;
+				Double shoveDist = 
+						2 * (anAgent.getShoveRadius() + aNb.getShoveRadius());
+				if ( anAgent.getDistance(aNb) <= shoveDist )
+					anAgent._myNeighbors.addLast(aNb);
+			}
+		});
 	}
 
 	/**
@@ -916,24 +1102,21 @@ public abstract class LocatedAgent extends ActiveAgent implements Cloneable
 	}
 
 	/**
-	 * \brief Used in creation of results files - creates an output string of information for this particular agent
+	 * \brief Used in creation of results files - adds the information on this particular agent to a table of results
 	 * 
-	 * Used in creation of results files - creates an output string of information for this particular agent
+	 * Used in creation of results files - adds the information on this particular agent to a table of results
 	 * 
-	 * @return	String containing results associated with this agent
+	 * @param table	Table the values of this agent are added to
 	 */
 	@Override
-	public StringBuffer writeOutput()
+	public void writeOutput(AgentTable table)
 	{
 		// write the data matching the header file
-		StringBuffer tempString = super.writeOutput();
+		super.writeOutput(table);
 		
 		// location info and radius
-		tempString.append(","+_location.x+","+_location.y+","+_location.z+",");
-		tempString.append(_radius+","+_totalRadius+","+_myDivRadius+","+_myDeathRadius);
-		
-		
-		return tempString;
+		table.add(_location.x).add(_location.y).add(_location.z);
+		table.add(_radius).add(_totalRadius).add(_myDivRadius).add(_myDeathRadius);
 	}
 
 	/* _______________ RADIUS, MASS AND VOLUME _____________________ */
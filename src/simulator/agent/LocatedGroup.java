@@ -133,7 +133,7 @@ public class LocatedGroup
 	 * Vector to hold an amount of distance an agent is to move.
 	 */
 	public ContinuousVector move = new ContinuousVector();
-
+	
 	
 
 	/**
@@ -314,6 +314,16 @@ public class LocatedGroup
 			status = 2;
 	}
 	
+	/**
+	 * \brief Wake all the agents in this LocatedGroup, e.g. because another
+	 * agent has entered it.
+	 */
+	public void wakeAgents()
+	{
+		for ( LocatedAgent aLoc : group )
+			aLoc.wake();
+	}
+	
 	/**
 	 * \brief Add an agent to this LocatedGroup.
 	 * 
@@ -336,12 +346,8 @@ public class LocatedGroup
 	{
 		int delta = Integer.signum(i);
 		LocatedGroup out = nbhGroup[delta+1][1][1];
-		i -= delta;
-		while ( i != 0 )
-		{
-			out = moveX(delta);
-			i -= delta;
-		}
+		for ( i -= delta; i != 0 && out != null; i -= delta )
+			out = out.nbhGroup[delta+1][1][1];
 		return out;
 	}
 	
@@ -355,12 +361,8 @@ public class LocatedGroup
 	{
 		int delta = Integer.signum(j);
 		LocatedGroup out = nbhGroup[1][delta+1][1];
-		j -= delta;
-		while ( j != 0 )
-		{
-			out = moveY(delta);
-			j -= delta;
-		}
+		for ( j -= delta; j != 0 && out != null; j -= delta )
+			out = out.nbhGroup[1][delta+1][1];
 		return out;
 	}
 
@@ -374,12 +376,29 @@ public class LocatedGroup
 	{
 		int delta = Integer.signum(k);
 		LocatedGroup out = nbhGroup[1][1][delta+1];
-		k -= delta;
-		while ( k != 0 )
-		{
-			out = moveZ(delta);
-			k -= delta;
-		}
+		for ( k -= delta; k != 0 && out != null; k -= delta )
+			out = out.nbhGroup[1][1][delta+1];
+		return out;
+	}
+	
+	/**
+	 * \brief Grid cell at the given offset from this one, crossing cyclic
+	 * boundaries.
+	 * 
+	 * The cell is reached by moveX(i).moveY(j).moveZ(k), see
+	 * AgentContainer.getStencil().
+	 * 
+	 * @param offset	Offset (i, j, k), in grid cells; k is ignored in 2D.
+	 * @return	Located group at this offset, or null if it is beyond a
+	 * boundary that is not cyclic.
+	 */
+	public LocatedGroup getNeighbour(int[] offset)
+	{
+		LocatedGroup out = moveX(offset[0]);
+		if ( out != null )
+			out = out.moveY(offset[1]);
+		if ( out != null && agentGrid.is3D )
+			out = out.moveZ(offset[2]);
 		return out;
 	}
 	
@@ -0,0 +1,580 @@
+/**
+ * \package agent
+ * \brief Package of utilities that create and manage agents in the simulation and their participation in relevant reactions
+ *
+ * Package of utilities that create and manage agents in the simulation and their participation in relevant reactions. This package is
+ * part of iDynoMiCS v1.2, governed by the CeCILL license under French law and abides by the rules of distribution of free software.
+ * You can use, modify and/ or redistribute iDynoMiCS under the terms of the CeCILL license as circulated by CEA, CNRS and INRIA at
+ * the following URL  "http://www.cecill.info".
+ */
+package simulator.agent;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import simulator.AgentContainer;
+import simulator.geometry.ContinuousVector;
+import simulator.geometry.Domain;
+
+/**
+ * \brief Shoving of the located agents on primitive arrays.
+ *
+ * For the duration of AgentContainer.shoveAllLocated(), the positions, shove
+ * radii and limits, and accumulated movements of the agents are mirrored in
+ * double arrays indexed by the position of the agents in the AgentList. The
+ * push relaxation then runs on these arrays, with the same operations in the
+ * same order as LocatedAgent.interact() and addPushMovement(), so the result
+ * is the same to the last bit.
+ *
+ * Moving an agent may cross a boundary, which is handled by the boundary
+ * conditions of the domain, so the move itself is still left to
+ * LocatedAgent.move(): the movement is copied to the agent, and its new
+ * position and grid cell copied back. The remaining movements are copied back
+ * to the agents by unload().
+ *
+ * performJacobiMove() is an alternative to performMove() that can use several
+ * threads: the pushes on all the agents are first computed from the frozen
+ * positions, each agent only writing its own movement, and all the agents are
+ * then moved. The result does not depend on the number of threads.
+ */
+public class MechanicsEngine
+{
+	/**
+	 * Agent grid holding the agents.
+	 */
+	private AgentContainer _agentGrid;
+
+	/**
+	 * Located agents, by position in the AgentList. Null for other agents.
+	 */
+	private LocatedAgent[] _agents = new LocatedAgent[0];
+
+	/**
+	 * Number of positions in the AgentList.
+	 */
+	private int _n;
+
+	/**
+	 * Positions of the agents.
+	 */
+	private double[] _x, _y, _z;
+
+	/**
+	 * Movements accumulated by the agents.
+	 */
+	private double[] _moveX, _moveY, _moveZ;
+
+	/**
+	 * Shove radius and shove limit of the agents.
+	 */
+	private double[] _shoveRadius, _shoveLimit;
+
+	/**
+	 * Difference vector of the pair being pushed by performMove().
+	 */
+	private final double[] _diff = new double[3];
+
+	/**
+	 * Pool of threads for performJacobiMove(), or null to compute the pushes
+	 * serially.
+	 */
+	private ForkJoinPool _pool;
+
+	/**
+	 * Relative move below which agents fall asleep in performMove(), or zero
+	 * to keep all agents awake.
+	 */
+	private double _sleep = 0.0;
+
+	/**
+	 * Smallest number of agents whose pushes are computed by one task.
+	 */
+	private static final int MIN_AGENTS = 256;
+
+	/**
+	 * \brief Create an engine for the agents of the given grid.
+	 *
+	 * @param agentGrid	Agent grid holding the agents.
+	 */
+	public MechanicsEngine(AgentContainer agentGrid)
+	{
+		_agentGrid = agentGrid;
+		resize(0);
+	}
+
+	/**
+	 * \brief Give this engine a pool of worker threads for
+	 * performJacobiMove().
+	 *
+	 * @param pool	ForkJoinPool to use, or null to compute serially.
+	 */
+	public void setPool(ForkJoinPool pool)
+	{
+		_pool = pool;
+	}
+
+	/**
+	 * \brief Set the relative move below which agents fall asleep in
+	 * performMove() (see LocatedAgent.updateSleep()).
+	 *
+	 * @param sleep	Sleep threshold, or zero to keep all agents awake.
+	 */
+	public void setSleep(double sleep)
+	{
+		_sleep = sleep;
+	}
+
+	/**
+	 * \brief Copy the located agents of the list into the arrays.
+	 *
+	 * The list must not change until unload() is called.
+	 *
+	 * @param agentList	List of all the agents of the grid.
+	 */
+	public void load(AgentList agentList)
+	{
+		_n = agentList.size();
+		if ( _n > _agents.length )
+			resize(_n);
+		SpecialisedAgent anAgent;
+		LocatedAgent aLoc;
+		double maxRange = 0.0;
+		for ( int i = 0; i < _n; i++ )
+		{
+			anAgent = agentList.get(i);
+			if ( ! ( anAgent instanceof LocatedAgent ) )
+			{
+				_agents[i] = null;
+				continue;
+			}
+			aLoc = (LocatedAgent) anAgent;
+			_agents[i] = aLoc;
+			_x[i] = aLoc._location.x;
+			_y[i] = aLoc._location.y;
+			_z[i] = aLoc._location.z;
+			_moveX[i] = aLoc._movement.x;
+			_moveY[i] = aLoc._movement.y;
+			_moveZ[i] = aLoc._movement.z;
+			_shoveRadius[i] = aLoc.getShoveRadius();
+			_shoveLimit[i] = aLoc.getShoveLimit();
+			maxRange = Math.max(maxRange,
+							_shoveRadius[i] + _shoveRadius[i] + _shoveLimit[i]);
+		}
+		/*
+		 * Build the offset tables before any thread reads them.
+		 */
+		_agentGrid.prepareStencils(_agentGrid.getStencilRadius(maxRange));
+	}
+
+	/**
+	 * \brief Copy the movements left in the arrays back to the agents, and
+	 * release them.
+	 */
+	public void unload()
+	{
+		for ( int i = 0; i < _n; i++ )
+			if ( _agents[i] != null )
+			{
+				_agents[i]._movement.set(_moveX[i], _moveY[i], _moveZ[i]);
+				_agents[i] = null;
+			}
+		_n = 0;
+	}
+
+	/**
+	 * \brief One shoving iteration over all the agents, as
+	 * AgentContainer.performMove() with LocatedAgent.interact().
+	 *
+	 * @param isMutual	Whether movement is shared between two agents or
+	 * applied only to one.
+	 * @return	Number of agents that moved by more than a tenth of their
+	 * radius.
+	 */
+	public int performMove(boolean isMutual)
+	{
+		int nMoved = 0;
+		LocatedAgent aLoc;
+		LocatedGroup aCell, aGroup;
+		double deltaMove;
+		for ( int i = 0; i < _n; i++ )
+		{
+			aLoc = _agents[i];
+			if ( aLoc == null || aLoc._asleep )
+				continue;
+			move(i);
+			if ( aLoc._verletList == null )
+			{
+				aCell = getCell(i);
+				for ( int[] offset : getStencil(i) )
+				{
+					aGroup = aCell.getNeighbour(offset);
+					if ( aGroup != null )
+						for ( LocatedAgent aNeighbour : aGroup.group )
+							addPushMovement(i, aNeighbour._listIndex, isMutual);
+				}
+			}
+			else
+				for ( LocatedAgent aNeighbour : aLoc._verletList )
+					addPushMovement(i, aNeighbour._listIndex, isMutual);
+			deltaMove = move(i);
+			if ( _sleep > 0.0 )
+				aLoc.updateSleep(deltaMove, _sleep);
+			nMoved += ( deltaMove >= 0.1 ? 1 : 0 );
+		}
+		return nMoved;
+	}
+
+	/**
+	 * \brief One shoving iteration over all the agents, in two phases.
+	 *
+	 * First the push from all its overlapping neighbours is added to the
+	 * movement of each agent, computed from the positions at the start of
+	 * the iteration (Jacobi rather than Gauss-Seidel). With mutual shoving
+	 * each agent of an overlapping pair takes half the overlap, otherwise
+	 * each takes all of it. This phase is split between the threads of the
+	 * pool, if there is one. Then all the agents are moved, serially and in
+	 * order, which also updates the agent grid. Agents are never put to
+	 * sleep here, as waking a neighbour would be a write from another thread.
+	 *
+	 * @param isMutual	Whether movement is shared between two agents or
+	 * applied only to one.
+	 * @return	Number of agents that moved by more than a tenth of their
+	 * radius.
+	 */
+	public int performJacobiMove(boolean isMutual)
+	{
+		double share = ( isMutual ? 0.5 : 1.0 );
+		int grain = _n;
+		if ( _pool != null )
+			grain = Math.max(MIN_AGENTS, _n/(4*_pool.getParallelism()));
+		if ( grain >= _n )
+			addJacobiPushes(share, 0, _n);
+		else
+		{
+			JacobiTask task = new JacobiTask(share, 0, _n, grain);
+			if ( ForkJoinTask.inForkJoinPool() )
+				task.invoke();
+			else
+				_pool.invoke(task);
+		}
+		int nMoved = 0;
+		for ( int i = 0; i < _n; i++ )
+			if ( _agents[i] != null )
+				nMoved += ( move(i) >= 0.1 ? 1 : 0 );
+		return nMoved;
+	}
+
+	/**
+	 * \brief Add the pushes from their neighbours to the movements of a
+	 * range of the agents.
+	 *
+	 * Only the movements of the agents in the range are written, so disjoint
+	 * ranges may be processed by concurrent threads.
+	 *
+	 * @param share	Part of the overlap taken by each agent.
+	 * @param from	First position in the AgentList.
+	 * @param to	Position after the last one in the AgentList.
+	 */
+	private void addJacobiPushes(double share, int from, int to)
+	{
+		double[] diff = new double[3];
+		LocatedAgent aLoc;
+		LocatedGroup aCell, aGroup;
+		for ( int i = from; i < to; i++ )
+		{
+			aLoc = _agents[i];
+			if ( aLoc == null )
+				continue;
+			if ( aLoc._verletList == null )
+			{
+				aCell = getCell(i);
+				for ( int[] offset : getStencil(i) )
+				{
+					aGroup = aCell.getNeighbour(offset);
+					if ( aGroup != null )
+						for ( LocatedAgent aNeighbour : aGroup.group )
+							addJacobiPush(i, aNeighbour._listIndex, share, diff);
+				}
+			}
+			else
+				for ( LocatedAgent aNeighbour : aLoc._verletList )
+					addJacobiPush(i, aNeighbour._listIndex, share, diff);
+		}
+	}
+
+	/**
+	 * \brief Add to the movement of an agent its share of the push from a
+	 * neighbour, leaving the neighbour unchanged.
+	 *
+	 * @param i	Position of the agent pushed.
+	 * @param j	Position of its neighbour.
+	 * @param share	Part of the overlap taken by the agent pushed.
+	 * @param diff	Work array of length 3.
+	 */
+	private void addJacobiPush(int i, int j, double share, double[] diff)
+	{
+		if ( i == j )
+			return;
+		computeDifferenceVector(i, j, diff, false);
+		double norm = Math.sqrt(diff[0]*diff[0] + diff[1]*diff[1] +
+															diff[2]*diff[2]);
+		double delta = norm -
+						(_shoveRadius[i] + _shoveRadius[j] + _shoveLimit[i]);
+		if ( delta < 0.0 && norm != 0.0 )
+		{
+			double factor = share * delta/norm;
+			_moveX[i] += -diff[0]*factor;
+			_moveY[i] += -diff[1]*factor;
+			_moveZ[i] += -diff[2]*factor;
+		}
+	}
+
+	/**
+	 * \brief Task computing the Jacobi pushes of a range of the agents,
+	 * split in halves until the range is no longer than the grain.
+	 */
+	private class JacobiTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final double share;
+
+		private final int from, to, grain;
+
+		JacobiTask(double share, int from, int to, int grain)
+		{
+			this.share = share;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if ( to - from <= grain )
+			{
+				addJacobiPushes(share, from, to);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new JacobiTask(share, from, mid, grain),
+									new JacobiTask(share, mid, to, grain));
+		}
+	}
+
+	/**
+	 * \brief Offsets of the grid cells that may hold agents overlapping a
+	 * given agent, as found by LocatedAgent.interact().
+	 *
+	 * @param i	Position of the agent.
+	 * @return	Array of the offsets of the grid cells to screen.
+	 */
+	private int[][] getStencil(int i)
+	{
+		double range = _shoveRadius[i] + _shoveRadius[i] + _shoveLimit[i];
+		return _agentGrid.getStencil(_agentGrid.getStencilRadius(range));
+	}
+
+	/**
+	 * \brief Grid cell holding a given agent.
+	 *
+	 * @param i	Position of the agent.
+	 * @return	Located group of the agent grid.
+	 */
+	private LocatedGroup getCell(int i)
+	{
+		return _agentGrid.getShovingGrid()[_agents[i].getGridIndex()];
+	}
+
+	/**
+	 * \brief Apply the movement of an agent, as LocatedAgent.move().
+	 *
+	 * @param i	Position of the agent.
+	 * @return	Distance moved relative to total radius.
+	 */
+	private double move(int i)
+	{
+		/*
+		 * No movement planned, finish here. This is the test of
+		 * ContinuousVector.isZero(), which is false for -0.0.
+		 */
+		if ( isPositiveZero(_moveX[i]) && isPositiveZero(_moveY[i]) &&
+													isPositiveZero(_moveZ[i]) )
+			return 0.0;
+		LocatedAgent aLoc = _agents[i];
+		aLoc._movement.set(_moveX[i], _moveY[i], _moveZ[i]);
+		double out = aLoc.move();
+		_x[i] = aLoc._location.x;
+		_y[i] = aLoc._location.y;
+		_z[i] = aLoc._location.z;
+		_moveX[i] = aLoc._movement.x;
+		_moveY[i] = aLoc._movement.y;
+		_moveZ[i] = aLoc._movement.z;
+		return out;
+	}
+
+	/**
+	 * \brief Push apart two agents if they overlap, as
+	 * LocatedAgent.addPushMovement().
+	 *
+	 * @param i	Position of the agent pushed.
+	 * @param j	Position of its neighbour.
+	 * @param isMutual	Whether movement is shared between two agents or
+	 * applied only to the first.
+	 */
+	private void addPushMovement(int i, int j, boolean isMutual)
+	{
+		/*
+		 * Cannot push oneself!
+		 */
+		if ( i == j )
+			return;
+		double[] diff = _diff;
+		computeDifferenceVector(i, j, diff, true);
+		/*
+		 * Compute effective cell-cell distance.
+		 */
+		double norm = Math.sqrt(diff[0]*diff[0] + diff[1]*diff[1] +
+															diff[2]*diff[2]);
+		double delta = norm -
+						(_shoveRadius[i] + _shoveRadius[j] + _shoveLimit[i]);
+		if ( delta < 0.0 )
+		{
+			if ( norm != 0.0 )
+			{
+				double factor = delta/norm;
+				diff[0] *= factor;
+				diff[1] *= factor;
+				diff[2] *= factor;
+			}
+			if ( isMutual )
+			{
+				diff[0] *= 0.5;
+				diff[1] *= 0.5;
+				diff[2] *= 0.5;
+				_moveX[j] += diff[0];
+				_moveY[j] += diff[1];
+				_moveZ[j] += diff[2];
+				_agents[j].wake();
+			}
+			_moveX[i] += -diff[0];
+			_moveY[i] += -diff[1];
+			_moveZ[i] += -diff[2];
+		}
+	}
+
+	/**
+	 * \brief Shortest vector from agent j to agent i, with the cyclic
+	 * minimum image, as LocatedAgent.computeDifferenceVector().
+	 *
+	 * Two agents at the same position are given a vector of norm 0.01 *
+	 * radius in a direction drawn from the random number generator, as in
+	 * LocatedAgent, or else derived from the positions of the two agents in
+	 * the AgentList, which does not depend on the order of the calls.
+	 *
+	 * @param i	Position of the first agent.
+	 * @param j	Position of the second agent.
+	 * @param diff	Array of length 3 receiving the vector.
+	 * @param random	Whether to draw the direction of a zero vector at
+	 * random.
+	 */
+	private void computeDifferenceVector(int i, int j, double[] diff,
+															boolean random)
+	{
+		LocatedAgent aLoc = _agents[i];
+		Domain domain = aLoc._species.domain;
+		diff[0] = _x[i] - _x[j];
+		diff[1] = _y[i] - _y[j];
+		diff[2] = _z[i] - _z[j];
+		if ( Math.abs(diff[0]) > 0.5 * domain.length_X )
+			diff[0] -= Math.signum(diff[0]) * domain.length_X;
+		if ( Math.abs(diff[1]) > 0.5 * domain.length_Y )
+			diff[1] -= Math.signum(diff[1]) * domain.length_Y;
+		if ( _agentGrid.is3D && Math.abs(diff[2]) > 0.5 * domain.length_Z )
+			diff[2] -= Math.signum(diff[2]) * domain.length_Z;
+		/*
+		 * If this is a zero vector, give it a direction and a norm of
+		 * 0.01 * radius.
+		 */
+		if ( isPositiveZero(diff[0]) && isPositiveZero(diff[1]) &&
+													isPositiveZero(diff[2]) )
+		{
+			ContinuousVector v = new ContinuousVector();
+			if ( random )
+				v.alea(_agentGrid.is3D);
+			else
+				pairDirection(i, j, v);
+			v.normalizeVector(0.01*aLoc._radius);
+			diff[0] = v.x;
+			diff[1] = v.y;
+			diff[2] = v.z;
+		}
+	}
+
+	/**
+	 * \brief Direction, with coordinates in (-1, 1), given by hashing the
+	 * positions of two agents. Opposite for (i, j) and (j, i).
+	 *
+	 * @param i	Position of the first agent.
+	 * @param j	Position of the second agent.
+	 * @param v	Vector receiving the direction.
+	 */
+	private void pairDirection(int i, int j, ContinuousVector v)
+	{
+		long h = ((long) Math.min(i, j) << 32) | Math.max(i, j);
+		double sign = ( i < j ? 1.0 : -1.0 );
+		h = mix(h);
+		v.x = sign * ((h >>> 11) * 0x1.0p-52 - 1.0);
+		h = mix(h);
+		v.y = sign * ((h >>> 11) * 0x1.0p-52 - 1.0);
+		h = mix(h);
+		v.z = ( _agentGrid.is3D ? sign * ((h >>> 11) * 0x1.0p-52 - 1.0) : 0.0 );
+	}
+
+	/**
+	 * \brief SplitMix64 finaliser, scrambling the bits of a long.
+	 *
+	 * @param h	Value to scramble.
+	 * @return	Scrambled value.
+	 */
+	private static long mix(long h)
+	{
+		h += 0x9E3779B97F4A7C15L;
+		h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+		h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+		return h ^ (h >>> 31);
+	}
+
+	/**
+	 * \brief Check whether a value is 0.0, as Double.equals(0.0) does.
+	 *
+	 * @param value	Value to check.
+	 * @return	True for 0.0, false for -0.0 and any other value.
+	 */
+	private static boolean isPositiveZero(double value)
+	{
+		return Double.doubleToRawLongBits(value) == 0L;
+	}
+
+	/**
+	 * \brief Allocate the arrays for the given number of agents.
+	 *
+	 * @param n	Number of agents.
+	 */
+	private void resize(int n)
+	{
+		n = Math.max(n, 2*_agents.length);
+		_agents = Arrays.copyOf(_agents, n);
+		_x = new double[n];
+		_y = new double[n];
+		_z = new double[n];
+		_moveX = new double[n];
+		_moveY = new double[n];
+		_moveZ = new double[n];
+		_shoveRadius = new double[n];
+		_shoveLimit = new double[n];
+	}
+}
@@ -0,0 +1,30 @@
+/**
+ * \package agent
+ * \brief Package of utilities that create and manage agents in the simulation and their participation in relevant reactions
+ *
+ * Package of utilities that create and manage agents in the simulation and their participation in relevant reactions. This package is
+ * part of iDynoMiCS v1.2, governed by the CeCILL license under French law and abides by the rules of distribution of free software.
+ * You can use, modify and/ or redistribute iDynoMiCS under the terms of the CeCILL license as circulated by CEA, CNRS and INRIA at
+ * the following URL  "http://www.cecill.info".
+ */
+package simulator.agent;
+
+/**
+ * \brief Callback applied to each potential neighbour of a located agent.
+ *
+ * Used with AgentContainer.visitPotentialShovers(), which walks the grid
+ * cells around the agent without building a list of its neighbours. The
+ * agent is passed to the callback so that a single visitor can be shared by
+ * all agents.
+ */
+public interface NeighbourVisitor
+{
+	/**
+	 * \brief Called once for each agent in the grid cells around anAgent,
+	 * anAgent itself included.
+	 *
+	 * @param anAgent	Agent whose neighbourhood is visited.
+	 * @param aNeighbour	One of the agents in its neighbourhood.
+	 */
+	public void visitNeighbour(LocatedAgent anAgent, LocatedAgent aNeighbour);
+}
@@ -55,6 +55,11 @@ public abstract class SpecialisedAgent extends Agent implements HasSpecies, Clon
 	 * Reason for agent's death. Added by Sonia Martins April 2010
 	 */
 	public String death;
+	
+	/**
+	 * Position of this agent in the AgentList holding it, -1 if none.
+	 */
+	int _listIndex = -1;
 
 	/**
 	 * \brief Creates a SpecialisedAgent object and initialises the object in which associated parameters are stored
@@ -107,6 +112,7 @@ public abstract class SpecialisedAgent extends Agent implements HasSpecies, Clon
 		// Copy the references (superficial copy)
 		out._species = this._species;
 		out._speciesParam = this._speciesParam;
+		out._listIndex = -1;
 		return (Object) out;
 	}
 
@@ -149,16 +155,49 @@ public abstract class SpecialisedAgent extends Agent implements HasSpecies, Clon
 	 * access to any resources.
 	 */
 	public void die(Boolean isStarving)
+	{
+		isDead = true;
+		/*
+		 * While the agents are stepped concurrently, the death is registered
+		 * after the step.
+		 */
+		if ( ! _agentGrid.deferDeath(this) )
+			registerDeath();
+	}
+	
+	/**
+	 * \brief Registers the death of this agent: decreases the population of
+	 * its species and adds it to the agents to remove from the simulation.
+	 * 
+	 * Called by die(), or by the agent grid after the agents have been
+	 * stepped concurrently.
+	 */
+	public void registerDeath()
 	{
 		/*
 		 * If you are too small, you must die!
 		 * Decrease the population of your species
 		 */
 		_species.notifyDeath();
-		isDead = true;
 		_agentGrid.registerDeath(this);
 	}
 	
+	/**
+	 * \brief Whether this agent may be stepped concurrently with other
+	 * agents (see AgentContainer.stepAllConcurrently()).
+	 * 
+	 * Its step() must only change this agent and the agents it creates, and
+	 * only read other agents that do not change during the step; its births
+	 * and deaths are then queued and registered after the step. False by
+	 * default.
+	 * 
+	 * @return	True if this agent may be stepped concurrently.
+	 */
+	public boolean canStepConcurrently()
+	{
+		return false;
+	}
+	
 	/**
 	 * \brief Used in the calculation of delta move in Agent Container class.
 	 * 
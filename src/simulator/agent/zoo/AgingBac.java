@@ -4,6 +4,7 @@ import idyno.SimTimer;
 import simulator.Simulator;
 import simulator.SpatialGrid;
 import simulator.geometry.ContinuousVector;
+import utils.AgentTable;
 import utils.ExtraMath;
 import utils.LogFile;
 
@@ -431,6 +432,18 @@ public class AgingBac extends Bacterium
 		return false;
 	}
 	
+	/**
+	 * \brief This agent has its own growth model, so its growth rates are not computed ahead by
+	 * prepareGrowth().
+	 * 
+	 * @return	False.
+	 */
+	@Override
+	protected boolean canPrepareGrowth()
+	{
+		return false;
+	}
+	
 	@Override
 	public void grow()
 	{
@@ -678,13 +691,13 @@ public class AgingBac extends Bacterium
 	 * This will be added to the END of the string from higher classes.
 	 * Edd added death & Rob (17/1/11) added deathDay.
 	 */
-	public StringBuffer writeOutput()
+	public void writeOutput(AgentTable table)
 	{
-		StringBuffer tempString = new StringBuffer(super.writeOutput());
-		tempString.append(","+birthPlace.x+","+birthPlace.y+","+birthPlace.z+
-					","+age+","+hasDied+","+deathPlace.x+","+deathPlace.y+","+
-					deathPlace.z+","+_deathday);
-		return tempString;
+		super.writeOutput(table);
+		table.add(birthPlace.x).add(birthPlace.y).add(birthPlace.z);
+		table.add(age).add(hasDied);
+		table.add(deathPlace.x).add(deathPlace.y).add(deathPlace.z);
+		table.add(_deathday);
 	}	
 
 	public AgingParam getSpeciesParam()
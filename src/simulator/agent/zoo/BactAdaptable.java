@@ -18,6 +18,7 @@ import java.io.IOException;
 import idyno.SimTimer;
 import simulator.Simulator;
 import simulator.SoluteGrid;
+import utils.AgentTable;
 import utils.XMLParser;
 
 /**
@@ -149,6 +150,19 @@ public class BactAdaptable extends BactEPS
 		super.initFromResultFile(aSim, remainingSingleAgentData);
 	}
 
+	/**
+	 * \brief The switch may change the reactions of this agent at the start
+	 * of its step, so its growth rates are not computed ahead by
+	 * prepareGrowth().
+	 * 
+	 * @return	False.
+	 */
+	@Override
+	protected boolean canPrepareGrowth()
+	{
+		return false;
+	}
+	
 	/**
 	 * \brief Called at each time step of the simulation to compute mass
 	 * growth and update radius, mass, and volume. In this case also checks
@@ -467,29 +481,27 @@ public class BactAdaptable extends BactEPS
   	}
 	
 	/**
-	 * \brief Creates an output string of information generated on this
-	 * particular agent.
+	 * \brief Adds the information generated on this particular agent to a
+	 * table of results.
   	 * 
 	 * Used in creation of results files.
 	 * Writes the data matching the header file.
   	 * 
-	 * @return	String containing results associated with this agent.
+	 * @param table	Table the values of this agent are added to.
   	 */
-	public StringBuffer writeOutput()
+	public void writeOutput(AgentTable table)
 	{
   		/*
   		 * Write the data matching the header file.
   		 */
-		StringBuffer tempString = super.writeOutput().append(",");
+		super.writeOutput(table);
   		/*
   		 * Switch state and timing info.
   		 */
-  		tempString.append(switchState ? "1," : "0,");
-  		tempString.append(turnSwitchOn ? "1," : "0,");
-  		tempString.append(turnSwitchOff ? "1," : "0,");
-		tempString.append(timeOfRequestToSwitchOn + "," +
-										timeOfRequestToSwitchOff);
-		return tempString;
+		table.add(switchState ? 1 : 0);
+		table.add(turnSwitchOn ? 1 : 0);
+		table.add(turnSwitchOff ? 1 : 0);
+		table.add(timeOfRequestToSwitchOn).add(timeOfRequestToSwitchOff);
 	}
 	
 	/* ------------------------ For POV-Ray output ------------------------ */
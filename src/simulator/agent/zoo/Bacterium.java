@@ -300,6 +300,20 @@ public class Bacterium extends LocatedAgent implements Cloneable
 		}
 	}
 	
+	/**
+	 * \brief Bacteria without EPS can be stepped concurrently if their
+	 * growth rates can be computed concurrently: their step only changes
+	 * themselves and their daughters. Excreting EPS changes the progenitor
+	 * of the EPS species.
+	 * 
+	 * @return	True if this agent may be stepped concurrently.
+	 */
+	@Override
+	public boolean canStepConcurrently()
+	{
+		return ( ! _hasEps ) && canPrepareGrowth();
+	}
+
 	/**
 	 * \brief Converts the agent into particle EPS and inert on agent death.
 	 * 
@@ -17,6 +17,7 @@ import java.io.IOException;
 import java.util.*;
 
 import idyno.SimTimer;
+import utils.AgentTable;
 import utils.ExtraMath;
 import utils.LogFile;
 import utils.XMLParser;
@@ -147,6 +148,19 @@ public class EpiBac extends BactEPS
 	}
 
 	/* _____________________________ STEP __________________________________ */
+	/**
+	 * \brief Plasmid transfer between neighbours may change the reactions of
+	 * this agent during the step, so its growth rates are not computed ahead by
+	 * prepareGrowth().
+	 * 
+	 * @return	False.
+	 */
+	@Override
+	protected boolean canPrepareGrowth()
+	{
+		return false;
+	}
+	
 	/**
 	 * Method called by the STEP method (cf. the Agent class)
 	 */
@@ -290,7 +304,7 @@ public class EpiBac extends BactEPS
 			if ( getDistance(aLocAgent) < (temp + aLocAgent.getRadius(false)) )
 				_myNeighbors.addLast(aLocAgent);
 		}
-		Collections.shuffle(_myNeighbors, ExtraMath.random);
+		Collections.shuffle(_myNeighbors, ExtraMath.getRandom());
 	}
 
 	/**
@@ -490,21 +504,20 @@ public class EpiBac extends BactEPS
 	}
 	
 	/**
-	 * \brief Creates an output string of information generated on this
-	 * particular agent.
+	 * \brief Adds the information generated on this particular agent to a
+	 * table of results.
 	 * 
 	 * Used in creation of results files.
 	 * Writes the data matching the header file.
 	 * 
-	 * @return	String containing results associated with this agent.
+	 * @param table	Table the values of this agent are added to.
 	 */
 	@Override
-	public StringBuffer writeOutput()
+	public void writeOutput(AgentTable table)
 	{
-		StringBuffer tempString = super.writeOutput();
+		super.writeOutput(table);
 		// what about _plasmidHosted?
-		tempString.append(","+_status+","+_nCopy+","+_lastReception+","+_lastExchange);
-		return tempString;
+		table.add(_status).add(_nCopy).add(_lastReception).add(_lastExchange);
 	}
 	
 	/**
@@ -24,6 +24,7 @@ import idyno.SimTimer;
 import simulator.agent.*;
 import simulator.geometry.ContinuousVector;
 import simulator.Simulator;
+import utils.AgentTable;
 import utils.ExtraMath;
 import utils.LogFile;
 import utils.XMLParser;
@@ -220,6 +221,18 @@ public class MultiEpiBac extends BactEPS
 		return fCost;
 	}
 	
+	/**
+	 * \brief This agent has its own grow() method, so its growth rates are not computed ahead by
+	 * prepareGrowth().
+	 * 
+	 * @return	False.
+	 */
+	@Override
+	protected boolean canPrepareGrowth()
+	{
+		return false;
+	}
+	
 	/**
 	 * TODO Is this any different from super?
 	 */
@@ -336,7 +349,7 @@ public class MultiEpiBac extends BactEPS
 		// For each plasmid ready to conjugate search a number of potential recipients (partners) and conjugate
 
 		//Randomise list of plasmids, specially useful in the incompatible plasmids scenario
-		Collections.shuffle(plasmidHosted, ExtraMath.random);
+		Collections.shuffle(plasmidHosted, ExtraMath.getRandom());
 
 		for (MultiEpisome aPlasmid : plasmidHosted) {
 
@@ -504,52 +517,42 @@ public class MultiEpiBac extends BactEPS
 	 * listNbh contains all locatedAgents located in the neighbourhood
 	 * @param nbhRadius
 	 */
-	public void buildNbh(Double nbhRadius, MultiEpisome aPlasmid)
+	public void buildNbh(final Double nbhRadius, MultiEpisome aPlasmid)
 	{
 		/*
-		 * Distance between cell surfaces.
-		 */
-		Double dist = 0.0;
-		/*
-		 * Radii of donor and recipient.
-		 */
-		Double donorRadius, recipRadius;
-		/*
-		 * Probability of conjugation success.
-		 */
-		Double distProb = 0.0;
-		/*
-		 * Search for potential recipients.
+		 * Search for potential recipients, and skip any agents that are too
+		 * far (apply circular perimeter).
 		 */
 		Double radius = Math.ceil(nbhRadius/_agentGrid.getResolution());
-		_agentGrid.getPotentialShovers(_agentGridIndex, radius, _myNeighbors);
-		/*
-		 * Now remove any agents that are too far (apply circular perimeter).
-		 */
-		for ( LocatedAgent aLocAgent : _myNeighbors )
+		_agentGrid.visitPotentialShovers(this, radius, new NeighbourVisitor()
 		{
-			if ( aLocAgent == this )
-				continue;
-			/*
-			 * The distance between two cells is measured from their surface
-			 * and not from the center of their mass.
-			 */
-			donorRadius = this.getRadius(false);
-			recipRadius = aLocAgent.getRadius(false);
-			dist = this.getDistance(aLocAgent) - donorRadius - recipRadius;
-			// dist is distance between cell surfaces, nbhRadius is pilusLength
-			if ( dist < nbhRadius )
+			@Override
+			public void visitNeighbour(LocatedAgent donor,
+													LocatedAgent aLocAgent)
 			{
-				//jan: distance related probability decreases with distance due to radial expansion of search space
-				//should be different for 2D and 3D
-				//2D: ratio of inner perimeter/outer perimeter (prob. propto (p_i/p_o)
-				//3D: surface area of sphere rather than perimeter (prob. propto (p_i/p_o)^2)
-				distProb = ExtraMath.sq(donorRadius/(donorRadius+dist));
-				aLocAgent._distProb = distProb;
-				test.put(distProb, aLocAgent);	
-			}	
-		}
-		_myNeighbors.clear();
+				if ( aLocAgent == donor )
+					return;
+				/*
+				 * The distance between two cells is measured from their
+				 * surface and not from the center of their mass.
+				 */
+				Double donorRadius = donor.getRadius(false);
+				Double recipRadius = aLocAgent.getRadius(false);
+				Double dist = donor.getDistance(aLocAgent) - donorRadius
+																- recipRadius;
+				// dist is distance between cell surfaces, nbhRadius is pilusLength
+				if ( dist < nbhRadius )
+				{
+					//jan: distance related probability decreases with distance due to radial expansion of search space
+					//should be different for 2D and 3D
+					//2D: ratio of inner perimeter/outer perimeter (prob. propto (p_i/p_o)
+					//3D: surface area of sphere rather than perimeter (prob. propto (p_i/p_o)^2)
+					Double distProb = ExtraMath.sq(donorRadius/(donorRadius+dist));
+					aLocAgent._distProb = distProb;
+					test.put(distProb, aLocAgent);	
+				}	
+			}
+		});
 		/*
 		 * Order the recipients according to their distance to the donor cell.
 		 */
@@ -634,34 +637,32 @@ public class MultiEpiBac extends BactEPS
 	}
 	
 	/**
-	 * \brief Creates an output string of information generated on this
-	 * particular agent.
+	 * \brief Adds the information generated on this particular agent to a
+	 * table of results.
 	 * 
 	 * Used in creation of results files.
 	 * Writes the data matching the header file.
 	 * 
-	 * @return	String containing results associated with this agent.
+	 * @param table	Table the values of this agent are added to.
 	 */
 	@Override
-	public StringBuffer writeOutput()
+	public void writeOutput(AgentTable table)
 	{
-		StringBuffer tempString = super.writeOutput();
+		super.writeOutput(table);
 		for ( MultiEpisome anEpi : plasmidHosted )
 		{	
-			tempString.append(",");
-			tempString.append(anEpi.getSpeciesParam().plasmidName + ",");
-			tempString.append(anEpi.getCopyNumber()+ ",");
+			table.add(anEpi.getSpeciesParam().plasmidName);
+			table.add(anEpi.getCopyNumber());
 			/*
 			 * Count cells that carry a certain type of plasmid; the copy
 			 * number of the plasmid is irrelevant for the time being -->
 			 * that's done in the matlab scripts analysing the agent_sum xml
 			 * files.
 			 */
-			tempString.append(anEpi.isTransConjugant() ? "1" : "0");
+			table.add(anEpi.isTransConjugant() ? 1 : 0);
 		}
 		plasmidVector.clear();
 		partnerVector.clear();
-		return tempString;
 	}
 
 	@Override
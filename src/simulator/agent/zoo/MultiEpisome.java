@@ -19,6 +19,7 @@ import idyno.SimTimer;
 import simulator.Simulator;
 import simulator.agent.*;
 import simulator.reaction.Reaction;
+import utils.AgentTable;
 import utils.ExtraMath;
 import utils.LogFile;
 import utils.XMLParser;
@@ -340,9 +341,9 @@ public class MultiEpisome extends InfoAgent
 
 	// TODO
 	@Override
-	public StringBuffer writeOutput()
+	public void writeOutput(AgentTable table)
 	{
 		//tempString.append("copyNumber,transconjugant;");
-		return new StringBuffer(_species.speciesName);
+		table.add(_species.speciesName);
 	}	
 }
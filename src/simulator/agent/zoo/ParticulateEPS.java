@@ -15,6 +15,7 @@ import simulator.agent.LocatedAgent;
 import simulator.Simulator;
 import simulator.geometry.ContinuousVector;
 import simulator.reaction.Reaction;
+import utils.AgentTable;
 import utils.ExtraMath;
 import utils.LogFile;
 import utils.XMLParser;
@@ -355,21 +356,20 @@ public class ParticulateEPS extends LocatedAgent
 	}
 
 	/**
-	 * \brief Creates an output string of information generated on this
-	 * particular agent.
+	 * \brief Adds the information generated on this particular agent to a
+	 * table of results.
 	 * 
 	 * Used in creation of results files.
 	 * Writes the data matching the header file.
 	 * 
 	 * TODO Consider deleting
 	 * 
-	 * @return	String containing results associated with this agent.
+	 * @param table	Table the values of this agent are added to.
 	 */
 	@Override
-	public StringBuffer writeOutput()
+	public void writeOutput(AgentTable table)
 	{
-		StringBuffer tempString = super.writeOutput();
-		return tempString;
+		super.writeOutput(table);
 	}
 
 
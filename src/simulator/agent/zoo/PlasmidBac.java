@@ -13,9 +13,11 @@ import java.util.LinkedList;
 import simulator.Simulator;
 import simulator.agent.ActiveAgent;
 import simulator.agent.LocatedAgent;
+import simulator.agent.NeighbourVisitor;
 import simulator.agent.SpecialisedAgent;
 import simulator.agent.Species;
 import simulator.geometry.ContinuousVector;
+import utils.AgentTable;
 import utils.ExtraMath;
 import utils.LogFile;
 import utils.XMLParser;
@@ -255,6 +257,19 @@ public class PlasmidBac extends BactEPS
 	 * 
 	 ************************************************************************/
 	
+	/**
+	 * \brief Plasmid transfer between neighbours may change the reactions of
+	 * this agent during the step, so its growth rates are not computed ahead by
+	 * prepareGrowth().
+	 * 
+	 * @return	False.
+	 */
+	@Override
+	protected boolean canPrepareGrowth()
+	{
+		return false;
+	}
+	
 	@Override
 	public void internalStep()
 	{
@@ -495,7 +510,6 @@ public class PlasmidBac extends BactEPS
 	 */
 	public HashMap<Bacterium, Double> buildNbh(double nbhRadius)
 	{
-		HashMap<Bacterium, Double> out = new HashMap<Bacterium, Double>();
 		/*
 		 * nbhRadius gives the distance OUTSIDE the donor agent that touches a
 		 * recipient agent, and so we need to subtract the radii from
@@ -505,31 +519,69 @@ public class PlasmidBac extends BactEPS
 		 */
 		double donorRadius = this.getRadius(false);
 		/*
-		 * Find all neighbours in the Manhattan perimeter.
+		 * Visit all neighbours in the Manhattan perimeter.
 		 */
-		this.getPotentialShovers(nbhRadius + donorRadius);
+		NbhVisitor visitor = new NbhVisitor(nbhRadius, donorRadius);
+		_agentGrid.visitPotentialShovers(this, nbhRadius + donorRadius,
+																visitor);
 		/*
-		 * Now remove agents that are too far (apply Euclidean perimeter).
+		 * Now scale all probabilities so that they sum to one.
+		 */
+		scaleProbabilities(visitor.out, visitor.cumulativeProb);
+		return visitor.out;
+	}
+	
+	/**
+	 * \brief Collects the potential recipients of buildNbh() while the
+	 * neighbourhood of the donor is visited.
+	 */
+	private static class NbhVisitor implements NeighbourVisitor
+	{
+		/**
+		 * Potential recipients, with their probability variable.
+		 */
+		HashMap<Bacterium, Double> out = new HashMap<Bacterium, Double>();
+		
+		/**
+		 * Sum of the probability variables.
 		 */
-		double distance;
-		double recipRadius;
-		double probVar = 1.0;
 		double cumulativeProb = 0.0;
-		for ( LocatedAgent recip : _myNeighbors )
+		
+		/**
+		 * Maximum cell surface-surface distance to a recipient.
+		 */
+		double nbhRadius;
+		
+		/**
+		 * Radius of the donor.
+		 */
+		double donorRadius;
+		
+		NbhVisitor(double nbhRadius, double donorRadius)
+		{
+			this.nbhRadius = nbhRadius;
+			this.donorRadius = donorRadius;
+		}
+		
+		@Override
+		public void visitNeighbour(LocatedAgent donor, LocatedAgent recip)
 		{
+			double distance;
+			double probVar = 1.0;
 			/*
 			 * First check that the potential recipient is not the current
 			 * host, and that it is a Bacterium (or subclass, e.g. PlasmidBac)
 			 */
-			if ( recip == this || ! (recip instanceof Bacterium) )
-				continue;
+			if ( recip == donor || ! (recip instanceof Bacterium) )
+				return;
 			/*
-			 * Now filter by the Euclidean distance between cell surfaces.
+			 * Now filter by the Euclidean distance between cell surfaces
+			 * (apply Euclidean perimeter).
 			 */
-			recipRadius = recip.getRadius(false);
-			distance = getDistance(recip) - donorRadius - recipRadius;
+			distance = donor.getDistance(recip) - donorRadius
+													- recip.getRadius(false);
 			if ( distance > nbhRadius )
-				continue;
+				return;
 			/*
 			 * Finally, add the cell, together with a probability variable.
 			 * By default, all potential recipients are treated equally.
@@ -537,18 +589,12 @@ public class PlasmidBac extends BactEPS
 			 * from the donor (reasoning is similar to the intensity of 
 			 * sunlight as a function of distance from the Sun's surface). 
 			 */
-			if ( getSpeciesParam().scaleScanProb )
+			if ( ((PlasmidBac) donor).getSpeciesParam().scaleScanProb )
 				//jan: squaring the ratio correct for 3D but not 2D simulations
 				probVar = ExtraMath.sq( donorRadius / (donorRadius+distance));
 			out.put((Bacterium) recip, probVar);
 			cumulativeProb += probVar;
 		}
-		this._myNeighbors.clear();
-		/*
-		 * Now scale all probabilities so that they sum to one.
-		 */
-		scaleProbabilities(out, cumulativeProb);
-		return out;
 	}
 	
 	/**
@@ -727,18 +773,18 @@ public class PlasmidBac extends BactEPS
 	}
 	
 	/**
-	 * \brief Creates an output string of information generated on this
-	 * particular agent.
+	 * \brief Adds the information generated on this particular agent to a
+	 * table of results.
 	 * 
 	 * Used in creation of results files.
 	 * Writes the data matching the header file.
 	 * 
-	 * @return	String containing results associated with this agent.
+	 * @param table	Table the values of this agent are added to.
 	 */
 	@Override
-	public StringBuffer writeOutput()
+	public void writeOutput(AgentTable table)
 	{
-		StringBuffer tempString = super.writeOutput();
+		super.writeOutput(table);
 		int nCopy;
 		double r, d;
 		for (String plasmidSpeciesName :  getPotentialPlasmidNames() )
@@ -753,9 +799,8 @@ public class PlasmidBac extends BactEPS
 					r = aPlasmid.getTimeRecieved();
 					d = aPlasmid.getTimeLastDonated();
 				}
-			tempString.append(","+nCopy+","+r+","+d);
+			table.add(nCopy).add(r).add(d);
 		}
-		return tempString;
 	}
 	
 	/*************************************************************************
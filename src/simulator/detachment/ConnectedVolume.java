@@ -11,6 +11,9 @@
  */
 package simulator.detachment;
 
+import java.util.Arrays;
+import java.util.BitSet;
+
 import simulator.agent.LocatedGroup;
 
 /**
@@ -35,9 +38,10 @@ public class ConnectedVolume
 	protected Boolean is3D;
 	
 	/**
-	 * Connected volume filtration matrix of size _nTotal.
+	 * Connected volume filtration mask over the _nTotal elements: a bit is
+	 * set for each element connected to the carrier.
 	 */
-	protected Boolean[] _cvf;
+	protected BitSet _cvf;
 	
 	/**
 	 * Shoving grid to use to determine which agents to mark for sloughing.
@@ -45,10 +49,21 @@ public class ConnectedVolume
 	protected LocatedGroup[] _shoveGrid;
 	
 	/**
-	 * Integer noting whether a grid element needs to be validated (1) in an
-	 * iteration or not (0).
+	 * Biofilm elements that have a given element as face neighbour: those of
+	 * element index are _nbhOf[_nbhStart[index]] to
+	 * _nbhOf[_nbhStart[index+1]-1].
+	 */
+	protected int[] _nbhOf;
+	
+	/**
+	 * Start of the list of each element in _nbhOf, of size _nTotal+1.
+	 */
+	protected int[] _nbhStart;
+	
+	/**
+	 * Elements validated but whose neighbours have not been visited yet.
 	 */
-	protected int _validateInThisIteration;
+	protected int[] _queue;
 
 	/**
 	 * \brief Initialise the _cvf matrix.
@@ -57,106 +72,120 @@ public class ConnectedVolume
 	{
 		is3D = (nK > 1);
 		_nTotal = (nI+2)*(nJ+2)*(nK+2);
-		_cvf = new Boolean[_nTotal];
+		_cvf = new BitSet(_nTotal);
+		_nbhStart = new int[_nTotal+1];
+		_queue = new int[_nTotal];
 	}
 
 	/**
-	 * \brief Implements iterative implementation of connected volume
-	 * filtering.
+	 * \brief Flood fill of the biofilm from the carrier.
 	 * 
-	 * Iteration stop when none grid cell has been added.
+	 * A biofilm element is connected if one of its neighbours in the
+	 * cube-face directions is, as given by its neighbourhood map: cyclic
+	 * boundaries are thus crossed. Each element is visited once, in a
+	 * breadth-first search seeded with the carrier elements.
 	 * 
 	 * @param matrixToFilter	Vectorized array of space occupation matrix.
-	 * @return a vectorized array of a boolean matrix (true for connected to
+	 * @return a vectorized bitset of the matrix (set for connected to
 	 * carrier).
 	 */
-	public Boolean[] computeCvf(LocatedGroup[] matrixToFilter)
+	public BitSet computeCvf(LocatedGroup[] matrixToFilter)
 	{
 		/*
 		 * Assign.
 		 */
 		_shoveGrid = matrixToFilter;
+		buildNbhOf();
 		/*
-		 * Initiate the result matrix (true for carrier).
+		 * Initiate the result matrix (true for carrier) and queue the carrier.
 		 */
-		initializeCvf();
+		int head = 0;
+		int tail = 0;
+		_cvf.clear();
+		for ( int index = 0; index < _nTotal; index++ )
+			if ( _shoveGrid[index].status == 0 )
+			{
+				_cvf.set(index);
+				_queue[tail++] = index;
+			}
 		/*
-		 * Iteration.
+		 * Validate the biofilm elements next to a validated element.
 		 */
-		_validateInThisIteration = 1;
-		while ( _validateInThisIteration > 0 )
+		int index, nbh;
+		while ( head < tail )
 		{
-			_validateInThisIteration = 0;
-			for ( int index = 0; index < _nTotal; index++ )
-				if ( validateElement(index) )
-					_validateInThisIteration++;
+			index = _queue[head++];
+			for ( int n = _nbhStart[index]; n < _nbhStart[index+1]; n++ )
+			{
+				nbh = _nbhOf[n];
+				if ( ! _cvf.get(nbh) )
+				{
+					_cvf.set(nbh);
+					_queue[tail++] = nbh;
+				}
+			}
 		}
 		return _cvf;
 	}
 	
 	/**
-	 * \brief Initiate the connected volume filtration process.
+	 * \brief List, for each element, the biofilm elements that have it as a
+	 * face neighbour.
 	 * 
-	 * Research carrier on the padded grid.
+	 * Only the neighbourhood map of biofilm elements is used, so that
+	 * connections are followed exactly in the direction they are checked.
 	 */
-	protected void initializeCvf() 
+	protected void buildNbhOf()
 	{
-		int status;
-		for ( int index = 0; index < _nTotal; index++ ) 
-		{
-			_cvf[index] = false;
-			status = _shoveGrid[index].status;
-			/*
-			 * First test if the element is outside a cyclic boundary
-			 */
-			if ( status == -1 )
-				continue;
-			/*
-			 * Now test if it is a carrier
-			 */
-			_cvf[index] = (status == 0);
-		}
+		int nDir = is3D ? 6 : 4;
+		int[] nbh = new int[nDir];
+		Arrays.fill(_nbhStart, 0);
+		/*
+		 * Count the entries of each element, then turn the counts into ends.
+		 */
+		for ( int index = 0; index < _nTotal; index++ )
+			if ( _shoveGrid[index].status == 1 )
+				for ( int d = getFaceNbh(index, nbh) - 1; d >= 0; d-- )
+					_nbhStart[nbh[d]+1]++;
+		for ( int index = 0; index < _nTotal; index++ )
+			_nbhStart[index+1] += _nbhStart[index];
+		_nbhOf = new int[_nbhStart[_nTotal]];
+		int[] next = Arrays.copyOf(_nbhStart, _nTotal);
+		for ( int index = 0; index < _nTotal; index++ )
+			if ( _shoveGrid[index].status == 1 )
+				for ( int d = getFaceNbh(index, nbh) - 1; d >= 0; d-- )
+					_nbhOf[next[nbh[d]]++] = index;
 	}
-
+	
 	/**
-	 * \brief Determine if this grid element has been validated.
+	 * \brief Grid indices of the cube-face neighbours of an element (not
+	 * along any of the diagonals).
 	 * 
-	 * @return true if this grid element has been validated.
+	 * @param index	Grid index of the element.
+	 * @param nbh	Array receiving the neighbours' indices.
+	 * @return	Number of neighbours: 4 in 2D, 6 in 3D.
 	 */
-	public boolean validateElement(int index)
+	protected int getFaceNbh(int index, int[] nbh)
 	{
-		boolean test;
-		if ( !_cvf[index] && _shoveGrid[index].status == 1 ) 
-		{
-			/*
-			 * Check if one of your neighbors is attached to the carrier. Note
-			 * that we only check the neighbors in the cube-face directions
-			 * and not along any of the diagonals.
-			 */
-			test = _cvf[_shoveGrid[index].nbhIndex[1][1][1]];
-			/*
-			 * Top/bottom neighbors (X direction).
-			 */
-			test = test || _cvf[_shoveGrid[index].nbhIndex[2][1][1]];
-			test = test || _cvf[_shoveGrid[index].nbhIndex[0][1][1]];
-			/*
-			 * Left/right neighbors (Y direction).
-			 */
-			test = test || _cvf[_shoveGrid[index].nbhIndex[1][0][1]];
-			test = test || _cvf[_shoveGrid[index].nbhIndex[1][2][1]];
-			/*
-			 * If it is a 3d simulation, do the front/back neighbors
-			 * (Z direction).
-			 */
-			if ( is3D )
-			{
-				test = test || _cvf[_shoveGrid[index].nbhIndex[1][1][0]];
-				test = test || _cvf[_shoveGrid[index].nbhIndex[1][1][2]];
-			}
-			
-			if ( test )
-				return _cvf[index] = true;
-		}
-		return false;
+		int[][][] nbhIndex = _shoveGrid[index].nbhIndex;
+		/*
+		 * Top/bottom neighbors (X direction).
+		 */
+		nbh[0] = nbhIndex[2][1][1];
+		nbh[1] = nbhIndex[0][1][1];
+		/*
+		 * Left/right neighbors (Y direction).
+		 */
+		nbh[2] = nbhIndex[1][0][1];
+		nbh[3] = nbhIndex[1][2][1];
+		/*
+		 * If it is a 3d simulation, do the front/back neighbors
+		 * (Z direction).
+		 */
+		if ( ! is3D )
+			return 4;
+		nbh[4] = nbhIndex[1][1][0];
+		nbh[5] = nbhIndex[1][1][2];
+		return 6;
 	}
 }
\ No newline at end of file
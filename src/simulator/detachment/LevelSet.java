@@ -16,7 +16,6 @@ import idyno.SimTimer;
 
 import java.util.Arrays;
 import java.util.LinkedList;
-import java.util.Collections;
 
 import simulator.AgentContainer;
 import simulator.Simulator;
@@ -60,9 +59,47 @@ public abstract class LevelSet
 	private LinkedList<LocatedGroup> _close;
 	
 	/**
-	 * 
+	 * Fast-marching state of each group of the shoving grid, indexed by
+	 * gridIndex: FAR, CLOSE or ALIVE.
+	 */
+	private byte[] _state;
+	
+	/**
+	 * Group not reached yet by the front.
+	 */
+	private static final byte FAR = 0;
+	
+	/**
+	 * Group whose erosion time is known but that is not accepted yet.
+	 */
+	private static final byte CLOSE = 1;
+	
+	/**
+	 * Group accepted by the front.
+	 */
+	private static final byte ALIVE = 2;
+	
+	/**
+	 * Binary min-heap of the grid indices of the CLOSE groups, ordered by
+	 * erosion time and then by arrival order.
 	 */
-	private LinkedList<LocatedGroup> _alive;
+	private int[] _heap;
+	
+	/**
+	 * Number of groups in the heap.
+	 */
+	private int _heapSize;
+	
+	/**
+	 * Arrival order of each group in the heap, indexed by gridIndex, used to
+	 * break ties between equal erosion times.
+	 */
+	private int[] _arrival;
+	
+	/**
+	 * Number of groups that entered the heap during the current front.
+	 */
+	private int _nArrived;
 	
 	/**
 	 * Constant parameter used to determine the strength of detachment.
@@ -107,7 +144,9 @@ public abstract class LevelSet
 		_res = anAgentGrid.getResolution();
 		_shovingGrid = anAgentGrid.getShovingGrid();
 		_close = new LinkedList<LocatedGroup>();
-		_alive = new LinkedList<LocatedGroup>();
+		_state = new byte[_shovingGrid.length];
+		_heap = new int[_shovingGrid.length];
+		_arrival = new int[_shovingGrid.length];
 		
 		kDet = root.getParamDbl("kDet");
 		Double value = root.getParamLength("maxTh");
@@ -129,7 +168,7 @@ public abstract class LevelSet
 	public void refreshBorder(boolean evalErosion, Simulator aSim) 
 	{
 		_close.clear();
-		_alive.clear();
+		Arrays.fill(_state, FAR);
 		timeStep = SimTimer.getCurrentTimeStep();
 		// Go through all elements.
 		for (LocatedGroup aGroup : _shovingGrid) 
@@ -165,6 +204,7 @@ public abstract class LevelSet
 			{
 				// You are on the border.
 				_close.add(aGroup); 
+				_state[aGroup.gridIndex] = CLOSE;
 				/*
 				 * This sets the erosion time to infinity if there is no
 				 * erosion (speed is zero)
@@ -187,33 +227,42 @@ public abstract class LevelSet
 	public void refreshCarrier()
 	{
 		_close.clear();
-		_alive.clear();
+		Arrays.fill(_state, FAR);
 		for (LocatedGroup aGroup : _shovingGrid)
 		{
 			aGroup.resetMove();
 			if ( aGroup.isCarrier )
+			{
 				_close.add(aGroup);
+				_state[aGroup.gridIndex] = CLOSE;
+			}
 		}
 	}
 	
 	/**
 	 * \brief Compute erosion time for the whole biofilm.
 	 * 
+	 * Fast marching from the border: the CLOSE group with the smallest
+	 * erosion time is accepted and its neighbours enter the heap in turn.
+	 * Groups with equal erosion times are accepted in the order they entered,
+	 * as the stable sort of the close list used to do.
+	 * 
 	 * @param aSim	The simulation object used to simulate the conditions
 	 * specified in the protocol file.
 	 */
 	public void computeLevelSet(Simulator aSim) 
 	{
-		LocatedGroup trial;
 		int i;
-		while (_close.size()>0) 
+		_heapSize = 0;
+		_nArrived = 0;
+		for ( LocatedGroup aGroup : _close )
+			pushToHeap(aGroup.gridIndex);
+		_close.clear();
+		while ( _heapSize > 0 ) 
 		{
-			// Order the elements in _close in respect to the T value.
-			Collections.sort(_close, new LocatedGroup.TValueComparator());
-			trial = _close.removeFirst();
-			_alive.addFirst(trial);
+			i = popFromHeap();
+			_state[i] = ALIVE;
 			// Get all neighbours of trial that do not belong to _close.
-			i = trial.gridIndex;
 			// X-axis neighbour
 			addToCloseAndUpdate(_shovingGrid[i].nbhGroup[0][1][1], aSim);
 			addToCloseAndUpdate(_shovingGrid[i].nbhGroup[2][1][1], aSim);
@@ -243,7 +292,7 @@ public abstract class LevelSet
 		if ( aGroup.group.isEmpty() )
 			return;
 		
-		if ( ! (_close.contains(aGroup) || _alive.contains(aGroup)) )
+		if ( _state[aGroup.gridIndex] == FAR )
 		{
 			// Compute the T value.
 			aGroup.erosionTime = computeTValue(aGroup, aSim);
@@ -251,10 +300,77 @@ public abstract class LevelSet
 			if ( aGroup.erosionTime < timeStep )
 				aGroup.killAll("detachment");
 			// Add element to _close
-			_close.add(aGroup);
+			_state[aGroup.gridIndex] = CLOSE;
+			pushToHeap(aGroup.gridIndex);
 		}
 	}
 	
+	/**
+	 * \brief Whether the group at grid index i must leave the heap before
+	 * the group at grid index j.
+	 * 
+	 * Same order as LocatedGroup.TValueComparator, ties being broken by
+	 * arrival order.
+	 * 
+	 * @param i	Grid index of a group in the heap.
+	 * @param j	Grid index of another group in the heap.
+	 * @return	True if i comes first.
+	 */
+	private boolean isBefore(int i, int j)
+	{
+		double diff = _shovingGrid[i].erosionTime - _shovingGrid[j].erosionTime;
+		if ( diff < 0.0 )
+			return true;
+		if ( diff > 0.0 )
+			return false;
+		return _arrival[i] < _arrival[j];
+	}
+	
+	/**
+	 * \brief Add the group at the given grid index to the heap.
+	 * 
+	 * @param index	Grid index of the group.
+	 */
+	private void pushToHeap(int index)
+	{
+		_arrival[index] = _nArrived++;
+		int pos = _heapSize++;
+		int parent;
+		while ( pos > 0 )
+		{
+			parent = (pos - 1) / 2;
+			if ( ! isBefore(index, _heap[parent]) )
+				break;
+			_heap[pos] = _heap[parent];
+			pos = parent;
+		}
+		_heap[pos] = index;
+	}
+	
+	/**
+	 * \brief Remove the first group from the heap.
+	 * 
+	 * @return	Grid index of the group with the smallest erosion time.
+	 */
+	private int popFromHeap()
+	{
+		int out = _heap[0];
+		int last = _heap[--_heapSize];
+		int pos = 0;
+		int child;
+		while ( (child = 2*pos + 1) < _heapSize )
+		{
+			if ( child + 1 < _heapSize && isBefore(_heap[child+1], _heap[child]) )
+				child++;
+			if ( ! isBefore(_heap[child], last) )
+				break;
+			_heap[pos] = _heap[child];
+			pos = child;
+		}
+		_heap[pos] = last;
+		return out;
+	}
+	
 	/**
 	 * \brief Return the local detachment speed.
 	 * 
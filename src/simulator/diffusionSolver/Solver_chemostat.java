@@ -175,7 +175,7 @@ public class Solver_chemostat extends DiffusionSolver
 											_reactions.get(i).reactionName);
 				_reactiveBiomass[i]._conc[0].resetToZero();
 				LogFile.writeLog("biomass conc is ----->>>   " + 
-								_reactiveBiomass[i]._conc[0].grid[0][0][0]);
+								_reactiveBiomass[i]._conc[0].get(0, 0, 0));
 			}
 		}
 		catch(Exception e)
@@ -240,7 +240,7 @@ public class Solver_chemostat extends DiffusionSolver
 				_reactions.get(i).fitAgentMassOnGrid(
 											_reactiveBiomass[i].getGrid());
 				LogFile.writeLog("biomass conc is ----->>>   " + 
-						_reactiveBiomass[i]._conc[0].grid[0][0][0]);
+						_reactiveBiomass[i]._conc[0].get(0, 0, 0));
 			}
 		}
 		catch (Exception e)
@@ -297,7 +297,7 @@ public class Solver_chemostat extends DiffusionSolver
 		tol = 0.0;
 		
 		for (int iSol = 0; iSol < nSolute; iSol++)
-			y.set(iSol, 0,  allSolute[iSol].grid[0][0][0]);
+			y.set(iSol, 0,  allSolute[iSol].get(0, 0, 0));
 		
 		// Check if the Sinflow has changed (solutes may be pulsed).
 		sInflow = updateSInflow(sInflow);
@@ -543,7 +543,7 @@ public class Solver_chemostat extends DiffusionSolver
 			for (int iReac = 0; iReac < nReaction; iReac++)
 			{
 				dYdT.plusEquals(_reactions.get(iReac).calcdMUdT(S,
-							_reactiveBiomass[iReac]._conc[0].grid[0][0][0]));
+							_reactiveBiomass[iReac]._conc[0].get(0, 0, 0)));
 			}
 		}
 		catch (Exception e)
@@ -612,7 +612,7 @@ public class Solver_chemostat extends DiffusionSolver
 		{
 			// Biomass is the total particle mass in the system which catalyses
 			// this reaction.
-			biomass = _reactiveBiomass[iReac]._conc[0].grid[0][0][0];
+			biomass = _reactiveBiomass[iReac]._conc[0].get(0, 0, 0);
 			dFdY.plusEquals(_reactions.get(iReac).calcdMUdS(S, biomass));
 		}
 		return dFdY;
@@ -12,11 +12,18 @@
  */
 package simulator.diffusionSolver;
 
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
 import idyno.SimTimer;
 import simulator.diffusionSolver.multigrid.MultigridSolute;
 import simulator.geometry.Domain;
 import simulator.geometry.boundaryConditions.AllBC;
 import simulator.geometry.boundaryConditions.BoundaryAgar;
+import simulator.geometry.boundaryConditions.BoundaryGasMembrane;
 import simulator.geometry.boundaryConditions.ConnectedBoundary;
 import simulator.Simulator;
 import simulator.SoluteGrid;
@@ -84,6 +91,44 @@ public class Solver_multigrid extends DiffusionSolver
 	 */
 	protected int				nPostSteps;
 	
+	/**
+	 * Number of threads used to relax the grids. Optional parameter in the
+	 * protocol file (nThreads), default 1 (serial relaxation).
+	 */
+	protected int				nThreads;
+	
+	/**
+	 * Pool of worker threads shared by all solutes of this solver. Null if
+	 * nThreads is 1.
+	 */
+	protected ForkJoinPool		_pool;
+	
+	/**
+	 * Whether the solutes are solved concurrently between two updates of
+	 * the reaction rates. Optional parameter in the protocol file
+	 * (parallelSolutes), default false. Needs nThreads > 1.
+	 */
+	protected Boolean			parallelSolutes;
+	
+	/**
+	 * Whether each solve starts from the previous solution at the finest
+	 * resolution, instead of rebuilding it from the bulk by nested
+	 * iteration. Optional parameter in the protocol file (warmStart),
+	 * default false.
+	 */
+	protected Boolean			warmStart;
+	
+	/**
+	 * Whether a converged solution exists to warm-start from.
+	 */
+	protected Boolean			hasSolution = false;
+	
+	/**
+	 * Version of the domain boundary layer for which the lists of active
+	 * voxels were built.
+	 */
+	protected int				bLayerVersion = -1;
+	
 	/**
 	 * 
 	 */
@@ -96,6 +141,29 @@ public class Solver_multigrid extends DiffusionSolver
 		vCycles = xmlRoot.getParamInt("nCycles");
 		nPreSteps = xmlRoot.getParamInt("preStep");
 		nPostSteps = xmlRoot.getParamInt("postStep");
+		if ( xmlRoot.isParamGiven("nThreads") )
+			nThreads = xmlRoot.getParamInt("nThreads");
+		else
+			nThreads = 1;
+		if ( nThreads > 1 )
+			_pool = new ForkJoinPool(nThreads);
+		if ( xmlRoot.isParamGiven("parallelSolutes") )
+			parallelSolutes = xmlRoot.getParamBool("parallelSolutes");
+		else
+			parallelSolutes = false;
+		/*
+		 * All solutes share the relative diffusivity grid, which a gas
+		 * membrane rewrites for the solute being relaxed: such domains must
+		 * be solved one solute at a time.
+		 */
+		for (AllBC aBC : myDomain.getAllBoundaries())
+			if ( aBC instanceof BoundaryGasMembrane )
+				parallelSolutes = false;
+		parallelSolutes &= ( _pool != null );
+		if ( xmlRoot.isParamGiven("warmStart") )
+			warmStart = xmlRoot.getParamBool("warmStart");
+		else
+			warmStart = false;
 		
 		// Create the table of solute grids
 		nSolute = _soluteList.length;
@@ -116,6 +184,7 @@ public class Solver_multigrid extends DiffusionSolver
 				sBulk = mySim.world.getMaxBulkValue(_soluteList[i].soluteIndex);
 				_solute[i] = new MultigridSolute(_soluteList[i],
 												_diffusivity, _bLayer, sBulk);
+				_solute[i].setPool(_pool);
 			}
 			else
 				_solute[i] = null;
@@ -147,6 +216,11 @@ public class Solver_multigrid extends DiffusionSolver
 		
 		_bLayer.setFinest(myDomain.getBoundaryLayer());
 		_bLayer.restrictToCoarsest();
+		if ( bLayerVersion != myDomain.getBoundaryLayerVersion() )
+		{
+			_bLayer.buildActiveVoxels();
+			bLayerVersion = myDomain.getBoundaryLayerVersion();
+		}
 		_diffusivity.setFinest(myDomain.getDiffusivity());
 		_diffusivity.restrictToCoarsest();
 		
@@ -156,6 +230,7 @@ public class Solver_multigrid extends DiffusionSolver
 			_biomass[i].resetFinest(0.0);
 			_reactions.get(i).fitAgentMassOnGrid(_biomass[i].getFinest());
 			_biomass[i].restrictToCoarsest();
+			_biomass[i].buildOccupiedVoxels();
 		}
 
 		for (int iSolute : _soluteIndex)
@@ -200,6 +275,7 @@ public class Solver_multigrid extends DiffusionSolver
 		// Apply results on solute grids
 		for (int iSolute : _soluteIndex)
 			_solute[iSolute].applyComputation();
+		hasSolution = true;
 
 	}
 
@@ -208,8 +284,13 @@ public class Solver_multigrid extends DiffusionSolver
 	 */
 	public void stepSolveDiffusionReaction()
 	{
-		for (int iSolute : _soluteIndex)
-			_solute[iSolute].resetMultigridCopies();
+		if ( warmStart && hasSolution && maxOrder > 1 )
+		{
+			stepSolveFromPrevious();
+			return;
+		}
+		
+		forEachSolute(s -> s.resetMultigridCopies());
 
 		// Solve chemical concentrations on coarsest grid.
 		solveCoarsest();
@@ -218,58 +299,93 @@ public class Solver_multigrid extends DiffusionSolver
 		for (int outer = 1; outer < maxOrder; outer++)
 		{
 			order = outer;
-			for (int iSolute : _soluteIndex)
-				_solute[iSolute].initLoop(order);
+			final int initOrder = order;
+			forEachSolute(s -> s.initLoop(initOrder));
 
-			// V-cycle loop.
-			for (int v = 0; v < vCycles; v++)
+			vCycle(outer);
+		}
+	}
+	
+	/**
+	 * \brief One step of the solver, starting from the solution of the
+	 * previous step.
+	 * 
+	 * The finest grids are seeded from the solute grids and the V-cycles are
+	 * run at full resolution only. No cycle is run if the residual of the
+	 * previous solution is already below the truncation error.
+	 */
+	public void stepSolveFromPrevious()
+	{
+		forEachSolute(s -> s.warmStart());
+		
+		order = maxOrder - 1;
+		updateReacRateAndDiffRate(order);
+		boolean converged = true;
+		for (int iSolute : _soluteIndex)
+			converged &= _solute[iSolute].breakVCycle(order, 0);
+		
+		if ( ! converged )
+			vCycle(order);
+	}
+	
+	/**
+	 * \brief Run V-cycles from the grids of order outer down to the coarsest
+	 * and back.
+	 * 
+	 * Stops after vCycles cycles, or earlier once the remaining error is
+	 * dominated by the truncation error.
+	 * 
+	 * @param outer	Order of the finest grid of the cycles.
+	 */
+	protected void vCycle(int outer)
+	{
+		// V-cycle loop.
+		for (int v = 0; v < vCycles; v++)
+		{
+			// Downward stroke of V.
+			while ( order > 0 )
 			{
-				// Downward stroke of V.
-				while ( order > 0 )
-				{
-					// Pre-smoothing.
-					relax(nPreSteps);
-					for (int iSolute : _soluteIndex)
-						_solute[iSolute].downward1(order, outer);
-					
-					updateReacRateAndDiffRate(order-1);
-					
-					for (int iSolute : _soluteIndex)
-						_solute[iSolute].downward2(order, outer);
-
-					// Reduce grid value _g for good.
-					order--;
-				}
+				// Pre-smoothing.
+				relax(nPreSteps);
+				final int downOrder = order;
+				forEachSolute(s -> s.downward1(downOrder, outer));
 				
-				// Bottom of V.
-				solveCoarsest();
+				updateReacRateAndDiffRate(order-1);
 				
-				// Upward stroke of V.
-				while ( order < outer )
-				{
-					order++;
-					for (int iSolute : _soluteIndex)
-						_solute[iSolute].upward(order);
+				forEachSolute(s -> s.downward2(downOrder, outer));
 
-					for (int iSolute : _soluteIndex)
-						_solute[iSolute].truncateConcToZero(order);
+				// Reduce grid value _g for good.
+				order--;
+			}
+			
+			// Bottom of V.
+			solveCoarsest();
+			
+			// Upward stroke of V.
+			while ( order < outer )
+			{
+				order++;
+				final int upOrder = order;
+				forEachSolute(s -> {
+					s.upward(upOrder);
+					s.truncateConcToZero(upOrder);
+				});
 
-					// Post-smoothing.
-					relax(nPostSteps);
-				}
+				// Post-smoothing.
+				relax(nPostSteps);
+			}
 
-				/* Break the V-cycles if remaining error is dominated
-				 * by local truncation error (see p. 884 of Numerical Recipes)
-				 */
-				boolean breakVCycle = true;
+			/* Break the V-cycles if remaining error is dominated
+			 * by local truncation error (see p. 884 of Numerical Recipes)
+			 */
+			boolean breakVCycle = true;
 
-				updateReacRateAndDiffRate(order);
-				for (int iSolute : _soluteIndex)
-					breakVCycle &= _solute[iSolute].breakVCycle(order, v);
+			updateReacRateAndDiffRate(order);
+			for (int iSolute : _soluteIndex)
+				breakVCycle &= _solute[iSolute].breakVCycle(order, v);
 
-				if (breakVCycle)
-					break;
-			}
+			if (breakVCycle)
+				break;
 		}
 	}
 
@@ -311,8 +427,7 @@ public class Solver_multigrid extends DiffusionSolver
 	{
 		order = 0;
 		// Reset coarsest grid to bulk concentration.
-		for (int iSolute : _soluteIndex)
-			_solute[iSolute].setSoluteGridToBulk(order);
+		forEachSolute(s -> s.setSoluteGridToBulk(0));
 
 		// Relax NSOLVE times.
 		relax(nCoarseStep);
@@ -325,12 +440,49 @@ public class Solver_multigrid extends DiffusionSolver
 	 */
 	public void relax(int nIter)
 	{
+		final int relaxOrder = order;
 		for (int j = 0; j < nIter; j++)
 		{
 			updateReacRateAndDiffRate(order);
+			forEachSolute(s -> s.relax(relaxOrder));
+		}
+	}
+	
+	/**
+	 * \brief Apply an operation to each solute solved by this solver.
+	 * 
+	 * The solutes' grids are independent of each other until the next
+	 * update of the reaction rates, so if parallelSolutes is set the
+	 * operations are run concurrently by the pool. This method returns once
+	 * all of them are done, and gives the same result as the serial loop.
+	 * 
+	 * @param operation	Operation to apply to each MultigridSolute.
+	 */
+	protected void forEachSolute(final Consumer<MultigridSolute> operation)
+	{
+		if ( ! parallelSolutes )
+		{
 			for (int iSolute : _soluteIndex)
-				_solute[iSolute].relax(order);
+				operation.accept(_solute[iSolute]);
+			return;
+		}
+		final ArrayList<ForkJoinTask<?>> tasks =
+									new ArrayList<ForkJoinTask<?>>(nSolute);
+		for (int iSolute : _soluteIndex)
+		{
+			final MultigridSolute solute = _solute[iSolute];
+			tasks.add(ForkJoinTask.adapt(() -> operation.accept(solute)));
 		}
+		_pool.invoke(new RecursiveAction()
+		{
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected void compute()
+			{
+				invokeAll(tasks);
+			}
+		});
 	}
 
 	/**
@@ -353,7 +505,9 @@ public class Solver_multigrid extends DiffusionSolver
 		// Calls the agents of the guild and sums their uptake-rate
 		for (int iReac = 0; iReac<_reactions.size(); iReac++)
 			_reactions.get(iReac).applyReaction(allSolute, allReac,
-								allDiffReac, _biomass[iReac]._conc[resOrder]);
+								allDiffReac, _biomass[iReac]._conc[resOrder],
+								_biomass[iReac].getOccupiedVoxels(resOrder),
+								_pool);
 	}
 
 }
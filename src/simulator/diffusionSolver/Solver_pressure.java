@@ -7,11 +7,14 @@
  */
 package simulator.diffusionSolver;
 
+import simulator.diffusionSolver.multigrid.FftPressure;
+import simulator.diffusionSolver.multigrid.MultigridPressure;
 import simulator.diffusionSolver.multigrid.SinglegridPressure;
 import simulator.geometry.IsComputationDomain;
 import simulator.Simulator;
 import simulator.SoluteGrid;
 
+import utils.LogFile;
 import utils.XMLParser;
 
 /**
@@ -66,7 +69,32 @@ public class Solver_pressure extends DiffusionSolver
 		_biovolume = new SoluteGrid(myDomain.getBiomass());
 		_biovolume.gridName = "deltaVolume";
 		
-		_solute[0] = new SinglegridPressure(
+		/*
+		 * Optional parameter in the protocol file (method): "singlegrid"
+		 * (default) relaxes the pressure inside the biomass, "multigrid"
+		 * solves the same equation with V-cycles, "spectral" solves it
+		 * directly in the whole domain. The spectral method assumes the
+		 * domain is cyclic along Y and Z: otherwise the multigrid method is
+		 * used instead.
+		 */
+		String method = "singlegrid";
+		if ( xmlRoot.isParamGiven("method") )
+			method = xmlRoot.getParam("method");
+		if ( method.equals("spectral") && ! FftPressure.isCyclic(myDomain) )
+		{
+			LogFile.writeLogAlways("Solver_pressure: the spectral method "+
+					"needs cyclic boundaries along Y and Z, using the "+
+					"multigrid method instead");
+			method = "multigrid";
+		}
+		if ( method.equals("spectral") )
+			_solute[0] = new FftPressure(
+							aSimulator.getSolute("pressure"), _bLayer, 0.0);
+		else if ( method.equals("multigrid") )
+			_solute[0] = new MultigridPressure(
+							aSimulator.getSolute("pressure"), _bLayer, 0.0);
+		else
+			_solute[0] = new SinglegridPressure(
 							aSimulator.getSolute("pressure"), _bLayer, 0.0);
 		_solute[0].soluteName = "pressure";
 		_solute[0]._reac = _biovolume;
@@ -84,7 +112,7 @@ public class Solver_pressure extends DiffusionSolver
 		// Refresh then insert here the boundary layer and the diffusivity grid.
 		myDomain.refreshBioFilmGrids();
 		// We use biomass grid as boundary layer grid.
-		_bLayer.setGrid(myDomain.getBiomass().grid);
+		_bLayer.setGrid(myDomain.getBiomass());
 		// Set volume change map.
 		updateBioVolume();
 		// Set pressure to zero.
@@ -97,9 +125,7 @@ public class Solver_pressure extends DiffusionSolver
 	@Override
 	public void solveDiffusionReaction()
 	{
-		// TODO Rob 9 Feb 2015: make this parameter (50) settable in the protocol file
-		for ( int j = 0; j < 50; j++ )
-			_solute[0].relax();
+		_solute[0].solve();
 	}
 
 	/**
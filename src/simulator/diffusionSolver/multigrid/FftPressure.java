@@ -0,0 +1,259 @@
+package simulator.diffusionSolver.multigrid;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import simulator.SoluteGrid;
+import simulator.geometry.Domain;
+import simulator.geometry.boundaryConditions.AllBC;
+import simulator.geometry.boundaryConditions.BoundaryCyclic;
+import utils.FftOperations.DftPlan;
+
+/**
+ * Project iDynoMiCS (copyright -> see Idynomics.java)
+ *
+ *_____________________________________________________
+ * Spectral solver for the pressure field.
+ *
+ */
+
+/**
+ * \brief Solves the pressure field directly, with Fourier transforms along
+ * the cyclic directions.
+ *
+ * The equation is the one relaxed by SinglegridPressure: the Laplacian of the
+ * pressure balances the rate of volume change. Transforming each I-plane
+ * along the cyclic J and K directions leaves, for each wave vector, a
+ * tridiagonal system along I, solved exactly. The substratum (I = 0) has zero
+ * flux, the bulk (I = nI+1) sets the pressure to sBulk.
+ *
+ * Unlike SinglegridPressure, the equation is solved in the whole domain and
+ * not only where there is biomass: outside the biofilm the volume rate is
+ * zero and the pressure decreases smoothly towards the bulk.
+ *
+ * Selected in the protocol file with the parameter method = spectral of
+ * Solver_pressure, which only uses it if isCyclic() holds for the domain.
+ */
+public class FftPressure extends SinglegridPressure
+{
+	/**
+	 * Real and imaginary parts of the transformed right-hand side, then of
+	 * the transformed pressure, for each I-plane: [i-1][(j-1)*nK + (k-1)].
+	 */
+	protected double[][] _re, _im;
+
+	/**
+	 * Work arrays of the tridiagonal solver.
+	 */
+	protected double[] _cPrime, _dRe, _dIm;
+
+	/**
+	 * Work arrays holding one line along J and along K, real and imaginary
+	 * parts alternating.
+	 */
+	protected double[] _lineJ, _lineK;
+
+	/**
+	 * Transformations along J and along K, forward and inverse: the grids
+	 * have 2^n+1 voxels, so the parts that do not depend on the data are
+	 * computed once here instead of for every line.
+	 */
+	protected DftPlan _forwardJ, _inverseJ, _forwardK, _inverseK;
+
+	/* ____________ ______________________ */
+	public FftPressure(SoluteGrid aSolute, SoluteGrid bLayer, Double sBulk)
+	{
+		super(aSolute, bLayer, sBulk);
+
+		int nI = _conc.getGridSizeI();
+		int nJ = _conc.getGridSizeJ();
+		int nK = _conc.getGridSizeK();
+		_re = new double[nI][nJ*nK];
+		_im = new double[nI][nJ*nK];
+		_cPrime = new double[nI];
+		_dRe = new double[nI];
+		_dIm = new double[nI];
+		_lineJ = new double[2*nJ];
+		_lineK = new double[2*nK];
+		_forwardJ = new DftPlan(nJ, 1);
+		_inverseJ = new DftPlan(nJ, -1);
+		_forwardK = new DftPlan(nK, 1);
+		_inverseK = new DftPlan(nK, -1);
+	}
+
+	/**
+	 * \brief Whether the boundaries of a domain are those the transforms
+	 * assume: cyclic along J (sides x0z and xNz) and, in 3D, along K (sides
+	 * x0y and xNy).
+	 * 
+	 * @param aDomain	Domain the pressure is solved in.
+	 * @return	False if any of these sides is not a BoundaryCyclic.
+	 */
+	public static boolean isCyclic(Domain aDomain)
+	{
+		Set<String> cyclic = new HashSet<String>();
+		Set<String> other = new HashSet<String>();
+		for (AllBC aBC : aDomain.getAllBoundaries())
+		{
+			if ( aBC instanceof BoundaryCyclic )
+				cyclic.add(aBC.getSideName());
+			else
+				other.add(aBC.getSideName());
+		}
+		String[] sides = aDomain.is3D ?
+				new String[] {"x0z", "xNz", "x0y", "xNy"} :
+				new String[] {"x0z", "xNz"};
+		for (String aSide : sides)
+			if ( ! cyclic.contains(aSide) || other.contains(aSide) )
+				return false;
+		return true;
+	}
+
+	/* _______________ ______________________________________ */
+
+	/**
+	 * \brief Compute the pressure field in one pass.
+	 */
+	@Override
+	public void solve()
+	{
+		int nI = _conc.getGridSizeI();
+		int nJ = _conc.getGridSizeJ();
+		int nK = _conc.getGridSizeK();
+		double h = _conc.getResolution();
+		double[] u = _conc.getFlatGrid();
+		double[] reac = _reac.getFlatGrid();
+
+		// Right-hand side: -h^2 times the volume rate
+		for (int i = 1; i <= nI; i++)
+		{
+			for (int j = 1; j <= nJ; j++)
+				for (int k = 1; k <= nK; k++)
+				{
+					_re[i-1][(j-1)*nK + (k-1)] =
+									-h*h*reac[_conc.index(i, j, k)];
+					_im[i-1][(j-1)*nK + (k-1)] = 0.0;
+				}
+			transformPlane(i-1, nJ, nK, 1);
+		}
+
+		// One tridiagonal system along I for each wave vector
+		double mu;
+		for (int j = 0; j < nJ; j++)
+			for (int k = 0; k < nK; k++)
+			{
+				mu = 2*Math.cos(2*Math.PI*j/nJ) + 2*Math.cos(2*Math.PI*k/nK) - 4;
+				// only the mean mode sees the bulk pressure
+				solveColumn(j*nK + k, nI, mu,
+								( j == 0 && k == 0 ) ? sBulk*nJ*nK : 0.0);
+			}
+
+		// Back to real space
+		for (int i = 1; i <= nI; i++)
+		{
+			transformPlane(i-1, nJ, nK, -1);
+			for (int j = 1; j <= nJ; j++)
+				for (int k = 1; k <= nK; k++)
+					u[_conc.index(i, j, k)] =
+									_re[i-1][(j-1)*nK + (k-1)]/(nJ*nK);
+		}
+		_conc.refreshBoundary();
+	}
+
+	/**
+	 * \brief Fourier transform of one I-plane, along K then along J.
+	 *
+	 * @param plane	Index of the plane (i-1).
+	 * @param nJ	Number of voxels along J.
+	 * @param nK	Number of voxels along K.
+	 * @param isign	1 for the transform, -1 for the inverse (not normalised).
+	 */
+	private void transformPlane(int plane, int nJ, int nK, int isign)
+	{
+		double[] re = _re[plane];
+		double[] im = _im[plane];
+		double[] line;
+		DftPlan planJ = ( isign == 1 ) ? _forwardJ : _inverseJ;
+		DftPlan planK = ( isign == 1 ) ? _forwardK : _inverseK;
+
+		if ( nK > 1 )
+			for (int j = 0; j < nJ; j++)
+			{
+				line = _lineK;
+				for (int k = 0; k < nK; k++)
+				{
+					line[2*k] = re[j*nK + k];
+					line[2*k+1] = im[j*nK + k];
+				}
+				planK.transform(line);
+				for (int k = 0; k < nK; k++)
+				{
+					re[j*nK + k] = line[2*k];
+					im[j*nK + k] = line[2*k+1];
+				}
+			}
+
+		if ( nJ > 1 )
+			for (int k = 0; k < nK; k++)
+			{
+				line = _lineJ;
+				for (int j = 0; j < nJ; j++)
+				{
+					line[2*j] = re[j*nK + k];
+					line[2*j+1] = im[j*nK + k];
+				}
+				planJ.transform(line);
+				for (int j = 0; j < nJ; j++)
+				{
+					re[j*nK + k] = line[2*j];
+					im[j*nK + k] = line[2*j+1];
+				}
+			}
+	}
+
+	/**
+	 * \brief Solve the transformed equation along I for one wave vector.
+	 *
+	 * p[i-1] + (mu-2)p[i] + p[i+1] = rhs[i], with p[0] = p[1] (zero flux at
+	 * the substratum) and p[nI+1] = top (bulk), by the Thomas algorithm.
+	 *
+	 * @param mode	Index of the wave vector in the planes.
+	 * @param nI	Number of voxels along I.
+	 * @param mu	Eigenvalue of the J and K part of the Laplacian.
+	 * @param top	Transformed pressure above the domain.
+	 */
+	private void solveColumn(int mode, int nI, double mu, double top)
+	{
+		double diag, denom;
+
+		// forward sweep
+		for (int i = 0; i < nI; i++)
+		{
+			diag = ( i == 0 ) ? mu - 1 : mu - 2;
+			_dRe[i] = _re[i][mode];
+			_dIm[i] = _im[i][mode];
+			if ( i == nI - 1 )
+				_dRe[i] -= top;
+			if ( i == 0 )
+				denom = diag;
+			else
+			{
+				denom = diag - _cPrime[i-1];
+				_dRe[i] -= _dRe[i-1];
+				_dIm[i] -= _dIm[i-1];
+			}
+			_cPrime[i] = 1.0/denom;
+			_dRe[i] /= denom;
+			_dIm[i] /= denom;
+		}
+
+		// back substitution
+		_re[nI-1][mode] = _dRe[nI-1];
+		_im[nI-1][mode] = _dIm[nI-1];
+		for (int i = nI - 2; i >= 0; i--)
+		{
+			_re[i][mode] = _dRe[i] - _cPrime[i]*_re[i+1][mode];
+			_im[i][mode] = _dIm[i] - _cPrime[i]*_im[i+1][mode];
+		}
+	}
+}
@@ -0,0 +1,362 @@
+package simulator.diffusionSolver.multigrid;
+
+import simulator.SoluteGrid;
+import utils.ExtraMath;
+
+/**
+ * Project iDynoMiCS (copyright -> see Idynomics.java)
+ *
+ *_____________________________________________________
+ * Multigrid solver for the pressure field.
+ *
+ */
+
+/**
+ * \brief Solves the pressure field of SinglegridPressure with V-cycles over a
+ * hierarchy of grids.
+ *
+ * The equation and its masking are those of SinglegridPressure: the pressure
+ * is only solved where the biomass grid is above BLTHRESH, and keeps its bulk
+ * value elsewhere. The coarser grids are solved where the finer voxel and its
+ * neighbours all are, with the restricted volume rate, and the cycles follow
+ * the full approximation scheme of MultigridSolute and Solver_multigrid: the
+ * coarsest grid is relaxed first, then each finer grid is interpolated from
+ * the coarser one and improved by V-cycles until its residual has been
+ * reduced by TOLERANCE. The truncation error criterion of MultigridSolute
+ * stops too early here, as the agents follow the gradient of the pressure.
+ *
+ * Selected in the protocol file with the parameter method = multigrid of
+ * Solver_pressure.
+ */
+public class MultigridPressure extends SinglegridPressure
+{
+	/**
+	 * Number of relaxations of the coarsest grid.
+	 */
+	public static final int N_COARSE_STEP = 100;
+
+	/**
+	 * Number of relaxations before and after the restriction in each
+	 * V-cycle.
+	 */
+	public static final int N_PRE_STEP = 3, N_POST_STEP = 3;
+
+	/**
+	 * Maximum number of V-cycles at each resolution.
+	 */
+	public static final int V_CYCLES = 10;
+
+	/**
+	 * Reduction of the residual after which the V-cycles stop.
+	 */
+	public static final double TOLERANCE = 1e-6;
+
+	/**
+	 * Number of grids in the hierarchy.
+	 */
+	protected int _maxOrder;
+
+	/**
+	 * Pressure at each order. The finest one is _conc.
+	 */
+	protected SoluteGrid[] _p;
+
+	/**
+	 * Biomass grid deciding where the pressure is solved, at each order. The
+	 * finest one is _bLayer.
+	 */
+	protected SoluteGrid[] _mask;
+
+	/**
+	 * Volume rate at each order. The finest one is _reac.
+	 */
+	protected SoluteGrid[] _volRate;
+
+	/**
+	 * Right-hand side, and work grids of the cycles, at each order.
+	 */
+	protected SoluteGrid[] _f, _temp, _tau;
+
+	/* ____________ ______________________ */
+	public MultigridPressure(SoluteGrid aSolute, SoluteGrid bLayer, Double sBulk)
+	{
+		super(aSolute, bLayer, sBulk);
+
+		int nI = _conc.getGridSizeI();
+		int nJ = _conc.getGridSizeJ();
+		int nK = _conc.getGridSizeK();
+		_maxOrder = maxOrder;
+
+		_p = new SoluteGrid[_maxOrder];
+		_mask = new SoluteGrid[_maxOrder];
+		_volRate = new SoluteGrid[_maxOrder];
+		_f = new SoluteGrid[_maxOrder];
+		_temp = new SoluteGrid[_maxOrder];
+		_tau = new SoluteGrid[_maxOrder];
+
+		for (int iGrid = 0; iGrid < _maxOrder; iGrid++)
+		{
+			int i = (nI-1)/ExtraMath.exp2(iGrid)+1;
+			int j = (nJ-1)/ExtraMath.exp2(iGrid)+1;
+			int k = (nK-1)/ExtraMath.exp2(iGrid)+1;
+			double r = _referenceSystemSide/referenceIndex(i, j, k);
+			int order = _maxOrder-iGrid-1;
+			if ( iGrid > 0 )
+			{
+				_p[order] = new SoluteGrid(i, j, k, r, aSolute);
+				_mask[order] = new SoluteGrid(i, j, k, r, aSolute);
+				_volRate[order] = new SoluteGrid(i, j, k, r, aSolute);
+			}
+			_f[order] = new SoluteGrid(i, j, k, r, aSolute);
+			_temp[order] = new SoluteGrid(i, j, k, r, aSolute);
+			_tau[order] = new SoluteGrid(i, j, k, r, aSolute);
+		}
+	}
+
+	/* _______________ ______________________________________ */
+
+	/**
+	 * \brief Compute the pressure field by nested iteration and V-cycles.
+	 */
+	@Override
+	public void solve()
+	{
+		int finest = _maxOrder - 1;
+
+		// The finest grids may have been replaced by the solver
+		_p[finest] = _conc;
+		_mask[finest] = _bLayer;
+		_volRate[finest] = _reac;
+		for (int order = finest; order > 0; order--)
+		{
+			restrictMask(order-1);
+			_volRate[order-1].resetToZero();
+			MultigridUtils.restrict(_volRate[order], _volRate[order-1]);
+		}
+		for (int order = 0; order < _maxOrder; order++)
+		{
+			_p[order].setAllValueAt(sBulk);
+			_f[order].resetToZero();
+		}
+
+		// Solve on the coarsest grid.
+		for (int n = 0; n < N_COARSE_STEP; n++)
+			relax(0);
+
+		// Nested iteration loop.
+		for (int outer = 1; outer < _maxOrder; outer++)
+		{
+			MultigridUtils.interpolateBoundaryLayer(_p[outer], _p[outer-1],
+																_mask[outer]);
+			_f[outer].resetToZero();
+			vCycle(outer);
+		}
+	}
+
+	/**
+	 * \brief Run V-cycles from the grid of order outer down to the coarsest
+	 * and back.
+	 *
+	 * @param outer	Order of the finest grid of the cycles.
+	 */
+	protected void vCycle(int outer)
+	{
+		computeLop(_temp, outer);
+		MultigridUtils.subtractTo(_temp[outer], _f[outer]);
+		double residual = TOLERANCE*MultigridUtils.computeNorm(_temp[outer]);
+		int order;
+		for (int v = 0; v < V_CYCLES; v++)
+		{
+			// Downward stroke of V.
+			for (order = outer; order > 0; order--)
+			{
+				for (int n = 0; n < N_PRE_STEP; n++)
+					relax(order);
+				restrictMasked(_p[order], _p[order-1], order-1, sBulk);
+				computeLop(_temp, order);
+				restrictMasked(_temp[order], _temp[order-1], order-1, 0.0);
+				computeLop(_tau, order-1);
+				MultigridUtils.subtractTo(_tau[order-1], _temp[order-1]);
+				restrictMasked(_f[order], _f[order-1], order-1, 0.0);
+				MultigridUtils.addTo(_f[order-1], _tau[order-1]);
+			}
+
+			// Bottom of V.
+			for (int n = 0; n < N_COARSE_STEP; n++)
+				relax(0);
+
+			// Upward stroke of V.
+			for (order = 1; order <= outer; order++)
+			{
+				restrictMasked(_p[order], _temp[order-1], order-1, sBulk);
+				MultigridUtils.subtractTo(_p[order-1], _temp[order-1]);
+				_tau[order].resetToZero();
+				MultigridUtils.interpolateBoundaryLayer(_tau[order], _p[order-1],
+																_mask[order]);
+				MultigridUtils.addTo(_p[order], _tau[order]);
+				_p[order].refreshBoundary();
+				for (int n = 0; n < N_POST_STEP; n++)
+					relax(order);
+			}
+
+			// Break once the residual is small enough.
+			computeLop(_temp, outer);
+			MultigridUtils.subtractTo(_temp[outer], _f[outer]);
+			if ( MultigridUtils.computeNorm(_temp[outer]) <= residual )
+				break;
+		}
+	}
+
+	/**
+	 * \brief Red-black relaxation of the pressure grid of the given order.
+	 *
+	 * Same operator as SinglegridPressure.relax(), at the spacing of the
+	 * given order and with its right-hand side.
+	 *
+	 * @param order	Order of the grid to relax.
+	 */
+	protected void relax(int order)
+	{
+		SoluteGrid grid = _p[order];
+		int nI = grid.getGridSizeI();
+		int nJ = grid.getGridSizeJ();
+		int nK = grid.getGridSizeK();
+		double h = grid.getResolution();
+		double h2i = 0.5f/(h*h);
+		double dlop = -h2i*12;
+		double[] u = grid.getFlatGrid();
+		double[] bl = _mask[order].getFlatGrid();
+		double[] rhs = _f[order].getFlatGrid();
+		double[] reac = _volRate[order].getFlatGrid();
+		int sI = grid.getStrideI();
+		int sJ = grid.getStrideJ();
+		int index;
+		double lop;
+
+		for (int pass = 1; pass <= 2; pass++)
+		{
+			for (int k = 1; k <= nK; k++)
+				for (int j = 1; j <= nJ; j++)
+					for (int i = 1 + (pass + j + k - 3) % 2; i <= nI; i += 2)
+					{
+						index = grid.index(i, j, k);
+						if ( bl[index] < BLTHRESH )
+							continue;
+						lop = computeLop(u, reac, index, sI, sJ, h2i);
+						u[index] -= (lop - rhs[index])/dlop;
+					}
+			grid.refreshBoundary();
+		}
+	}
+
+	/**
+	 * \brief Apply the pressure operator to the grid of the given order.
+	 *
+	 * The result is zero outside the biomass, where the pressure is not
+	 * solved.
+	 *
+	 * @param res	Grids receiving the result.
+	 * @param order	Order of the grid.
+	 */
+	protected void computeLop(SoluteGrid[] res, int order)
+	{
+		SoluteGrid grid = _p[order];
+		int nI = grid.getGridSizeI();
+		int nJ = grid.getGridSizeJ();
+		int nK = grid.getGridSizeK();
+		double h = grid.getResolution();
+		double h2i = 0.5f/(h*h);
+		double[] u = grid.getFlatGrid();
+		double[] bl = _mask[order].getFlatGrid();
+		double[] reac = _volRate[order].getFlatGrid();
+		double[] r = res[order].getFlatGrid();
+		int sI = grid.getStrideI();
+		int sJ = grid.getStrideJ();
+		int index;
+
+		res[order].resetToZero();
+		for (int i = 1; i <= nI; i++)
+			for (int j = 1; j <= nJ; j++)
+				for (int k = 1; k <= nK; k++)
+				{
+					index = grid.index(i, j, k);
+					if ( bl[index] >= BLTHRESH )
+						r[index] = computeLop(u, reac, index, sI, sJ, h2i);
+				}
+		res[order].refreshBoundary();
+	}
+
+	/**
+	 * \brief L operator of SinglegridPressure at one voxel.
+	 */
+	private static double computeLop(double[] u, double[] reac, int index,
+											int sI, int sJ, double h2i)
+	{
+		return 2*(u[index+sI]+u[index-sI]+u[index+sJ]+u[index-sJ]
+					+u[index+1]+u[index-1]-6*u[index])*h2i + reac[index];
+	}
+
+	/**
+	 * \brief Set the mask of the given order to 1 where the voxel of the finer
+	 * grid and its neighbours in the grid are all solved, and to 0 elsewhere.
+	 *
+	 * Restricting the biomass itself would spread it, and coarse grids
+	 * covered entirely would have no fixed pressure left to solve against.
+	 *
+	 * @param coarseOrder	Order of the coarser grid.
+	 */
+	private void restrictMask(int coarseOrder)
+	{
+		SoluteGrid fineGrid = _mask[coarseOrder+1];
+		SoluteGrid coarseGrid = _mask[coarseOrder];
+		double[] bl = fineGrid.getFlatGrid();
+		double[] mc = coarseGrid.getFlatGrid();
+		int nI = fineGrid.getGridSizeI();
+		int nJ = fineGrid.getGridSizeJ();
+		int nK = fineGrid.getGridSizeK();
+		int sI = fineGrid.getStrideI();
+		int sJ = fineGrid.getStrideJ();
+		int i, j, k, f;
+		boolean inside;
+
+		coarseGrid.resetToZero();
+		for (int kc = 1; kc <= coarseGrid.getGridSizeK(); kc++)
+			for (int jc = 1; jc <= coarseGrid.getGridSizeJ(); jc++)
+				for (int ic = 1; ic <= coarseGrid.getGridSizeI(); ic++)
+				{
+					i = 2*ic - 1;
+					j = 2*jc - 1;
+					k = 2*kc - 1;
+					f = fineGrid.index(i, j, k);
+					inside = bl[f] >= BLTHRESH
+							&& ( i == 1 || bl[f-sI] >= BLTHRESH )
+							&& ( i == nI || bl[f+sI] >= BLTHRESH )
+							&& ( j == 1 || bl[f-sJ] >= BLTHRESH )
+							&& ( j == nJ || bl[f+sJ] >= BLTHRESH )
+							&& ( k == 1 || bl[f-1] >= BLTHRESH )
+							&& ( k == nK || bl[f+1] >= BLTHRESH );
+					if ( inside )
+						mc[coarseGrid.index(ic, jc, kc)] = 1.0;
+				}
+	}
+
+	/**
+	 * \brief Restrict a grid to the next coarser order where the pressure is
+	 * solved, and set it to a fixed value elsewhere.
+	 *
+	 * The voxels outside the biomass are the boundary of the coarse problem,
+	 * so they must not keep the corrections of a previous cycle.
+	 *
+	 * @param fineGrid	Grid of order coarseOrder+1.
+	 * @param coarseGrid	Grid of order coarseOrder.
+	 * @param coarseOrder	Order of the coarser grid.
+	 * @param outside	Value outside the biomass.
+	 */
+	private void restrictMasked(SoluteGrid fineGrid, SoluteGrid coarseGrid,
+											int coarseOrder, Double outside)
+	{
+		coarseGrid.setAllValueAt(outside);
+		MultigridUtils.restrictBoundaryLayer(fineGrid, coarseGrid,
+														_mask[coarseOrder]);
+	}
+}
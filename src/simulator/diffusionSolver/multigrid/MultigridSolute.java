@@ -9,6 +9,11 @@
  */
 package simulator.diffusionSolver.multigrid;
 
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
 import simulator.geometry.boundaryConditions.AllBC;
 import simulator.geometry.boundaryConditions.ConnectedBoundary;
 import simulator.geometry.DiscreteVectorIterator;
@@ -17,10 +22,22 @@ import simulator.Simulator;
 import simulator.SoluteGrid;
 import utils.ExtraMath;
 import utils.LogFile;
-import utils.MatrixOperations;
 
 /**
- * \brief Implements static utility functions for used in multigrid method.
+ * \brief Grids of one solute at each order of the multigrid, and the steps
+ * of the V-cycles run on them by Solver_multigrid.
+ * 
+ * Each instance holds the concentration, right-hand side, reaction and
+ * residual grids of its solute from the coarsest order to the finest, and
+ * shares the boundary layer and relative diffusivity multigrids of its
+ * solver. The V-cycles follow the full approximation scheme: downward()
+ * restricts the concentration and adds the coarse-grid correction to the
+ * right-hand side, and upward() interpolates the coarse correction back.
+ * relax() is a red-black relaxation of the voxels inside the boundary layer,
+ * whose voxels of each colour may be split between the threads of a pool
+ * (see setPool()). The boundary layer, biomass and relative diffusivity are
+ * held as instances too (see MultigridSolute(SoluteGrid, String)), the
+ * boundary layer one keeping the lists of active voxels.
  * 
  * @author João Xavier (xavierj@mskcc.org), Memorial Sloan-Kettering Cancer
  * Center (NY, USA).
@@ -98,72 +115,76 @@ public class MultigridSolute
 	protected SoluteGrid[] _itau;
 	
 	/**
-	 * 
+	 * Boundary layer multigrid of this solute, which holds the lists of
+	 * active voxels.
 	 */
-	public Double truncationError;
+	protected MultigridSolute _bLayerGrid;
 	
 	/**
-	 * \brief 
-	 * 
-	 * Should be ok not to fill this with zeros at initialisation, as it should
-	 * be filled in fillDiff() before it's ever called.
+	 * Flat positions of the voxels inside the boundary layer, for each order:
+	 * first the voxels of the first colour of the red-black scheme, then
+	 * those of the second. Only built on the boundary layer multigrid.
 	 */
-	private static final Double[][][] _diff = new Double[3][3][3];
+	protected int[][] _active;
 	
 	/**
-	 * 
+	 * Number of voxels of the first colour in each of the _active lists.
 	 */
-	private static Double[][][] u;
+	protected int[] _nFirstColour;
 	
 	/**
-	 * 
+	 * For each entry of _active[order], flat position of the same point in
+	 * the grid of order+1.
 	 */
-	private static Double[][][] rd;
+	protected int[][] _activeFine;
 	
 	/**
-	 * 
+	 * Flat positions of the voxels with a non-zero value, for each order.
+	 * Only built on the biomass multigrids.
 	 */
-	private static Double[][][] bl;
+	protected int[][] _occupied;
 	
 	/**
 	 * 
 	 */
-	private static int _i;
+	public Double truncationError;
 	
 	/**
 	 * 
 	 */
-	private static int _j;
+	public static final Double BLTHRESH = 0.1;
 	
 	/**
-	 * 
+	 * Smallest number of voxels relaxed by one worker thread. Thinner slabs
+	 * cost more to schedule than they save.
 	 */
-	private static int _k;
+	private static final int MIN_SLAB = 4096;
 	
 	/**
-	 * 
+	 * Number of grid orders in this multigrid.
 	 */
-	public static final Double BLTHRESH = 0.1;
-	
-	/**
-	 * 
-	 */
-	private static int maxOrder;
+	private int maxOrder;
 	
 	/**
 	 * Size of original solute grid in I direction
 	 */
-	private static int _nI;
+	private int _nI;
 	
 	/**
 	 * Size of original solute grid in J direction
 	 */
-	private static int					_nJ;
+	private int					_nJ;
 	
 	/**
 	 * Size of original solute grid in K direction
 	 */
-	private static int					_nK;
+	private int					_nK;
+	
+	/**
+	 * Pool of worker threads used to relax the grids of this solute. Null if
+	 * the grids are relaxed serially by the calling thread.
+	 */
+	private ForkJoinPool _pool;
 	
 	/**
 	 * \brief Create a Multigrid solute for each solute being processed by a
@@ -193,6 +214,7 @@ public class MultigridSolute
 
 		_relDiff = relDiff._conc;
 		_bLayer = bLayer._conc;
+		_bLayerGrid = bLayer;
 
 		_conc = new SoluteGrid[maxOrder];
 		_rhs = new SoluteGrid[maxOrder];
@@ -203,18 +225,18 @@ public class MultigridSolute
 
 		for (int iGrid = 0; iGrid<maxOrder; iGrid++)
 		{
-			_i = (_nI-1)/ExtraMath.exp2(iGrid)+1;
-			_j = (_nJ-1)/ExtraMath.exp2(iGrid)+1;
-			_k = (_nK-1)/ExtraMath.exp2(iGrid)+1;
-			double r = _referenceSystemSide/referenceIndex(_i,_j,_k);
+			int i = (_nI-1)/ExtraMath.exp2(iGrid)+1;
+			int j = (_nJ-1)/ExtraMath.exp2(iGrid)+1;
+			int k = (_nK-1)/ExtraMath.exp2(iGrid)+1;
+			double r = _referenceSystemSide/referenceIndex(i,j,k);
 
 			// Padding is automatically generated by the constructor
-			_conc[maxOrder-iGrid-1] = new SoluteGrid(_i, _j, _k, r, aSolute);
-			_rhs[maxOrder-iGrid-1] = new SoluteGrid(_i, _j, _k, r, aSolute);
-			_reac[maxOrder-iGrid-1] = new SoluteGrid(_i, _j, _k, r, aSolute);
-			_diffReac[maxOrder-iGrid-1] = new SoluteGrid(_i, _j, _k, r, aSolute);
-			_itemp[maxOrder-iGrid-1] = new SoluteGrid(_i, _j, _k, r, aSolute);
-			_itau[maxOrder-iGrid-1] = new SoluteGrid(_i, _j, _k, r, aSolute);
+			_conc[maxOrder-iGrid-1] = new SoluteGrid(i, j, k, r, aSolute);
+			_rhs[maxOrder-iGrid-1] = new SoluteGrid(i, j, k, r, aSolute);
+			_reac[maxOrder-iGrid-1] = new SoluteGrid(i, j, k, r, aSolute);
+			_diffReac[maxOrder-iGrid-1] = new SoluteGrid(i, j, k, r, aSolute);
+			_itemp[maxOrder-iGrid-1] = new SoluteGrid(i, j, k, r, aSolute);
+			_itau[maxOrder-iGrid-1] = new SoluteGrid(i, j, k, r, aSolute);
 		}
 	}
 
@@ -266,31 +288,31 @@ public class MultigridSolute
 	public void initLoop(int order)
 	{
 		MultigridUtils.interpolateBoundaryLayer(_conc[order],
-										_conc[order-1], _bLayer[order].grid);
+										_conc[order-1], _bLayer[order]);
 		// Set each solute's r.h.s. to 0
 		_rhs[order].resetToZero();;
 	}
 
 	public void downward(int order, int outer)
 	{
-		MultigridUtils.restrictBoundaryLayer(_conc[order], _conc[order-1], _bLayer[order-1].grid);
+		restrictBoundaryLayer(_conc[order], _conc[order-1], order-1);
 		//
 		computeResidual(_itemp, order);
 		//
-		MultigridUtils.restrictBoundaryLayer(_itemp[order], _itemp[order-1], _bLayer[order-1].grid);
+		restrictBoundaryLayer(_itemp[order], _itemp[order-1], order-1);
 		// reduce grid value _g temporarily
 		order--;
 		computeResidual(_itau, order);
-		MultigridUtils.subtractTo(_itau[order].grid, _itemp[order].grid);
+		MultigridUtils.subtractTo(_itau[order], _itemp[order]);
 		
 		// sum tau to rhs of _g - 1
-		MultigridUtils.restrictBoundaryLayer(_rhs[order+1], _rhs[order], _bLayer[order].grid);
-		MultigridUtils.addTo(_rhs[order].grid, _itau[order].grid);
+		restrictBoundaryLayer(_rhs[order+1], _rhs[order], order);
+		MultigridUtils.addTo(_rhs[order], _itau[order]);
 		
 		// compute the truncation error for this V-cycle
 		// for all chemicals
 		if ( order+1 == outer )
-			truncationError = .3333*MultigridUtils.computeNorm(_itau[order].grid);
+			truncationError = .3333*MultigridUtils.computeNorm(_itau[order]);
 	}
 	
 	/**
@@ -300,11 +322,11 @@ public class MultigridSolute
 	 */
 	public void downward1(int order, int outer)
 	{
-		MultigridUtils.restrictBoundaryLayer(_conc[order], _conc[order-1], _bLayer[order-1].grid);
+		restrictBoundaryLayer(_conc[order], _conc[order-1], order-1);
 		//
 		computeResidual(_itemp, order);
 		//
-		MultigridUtils.restrictBoundaryLayer(_itemp[order], _itemp[order-1], _bLayer[order-1].grid);
+		restrictBoundaryLayer(_itemp[order], _itemp[order-1], order-1);
 	}
 	
 	/**
@@ -316,17 +338,17 @@ public class MultigridSolute
 		// reduce grid value _g temporarily
 		order--;
 		computeResidual(_itau, order);
-		MultigridUtils.subtractTo(_itau[order].grid, _itemp[order].grid);
+		MultigridUtils.subtractTo(_itau[order], _itemp[order]);
 
 		// sum tau to rhs of _g - 1
-		MultigridUtils.restrictBoundaryLayer(_rhs[order+1], _rhs[order], _bLayer[order].grid);
+		restrictBoundaryLayer(_rhs[order+1], _rhs[order], order);
 
-		MultigridUtils.addTo(_rhs[order].grid, _itau[order].grid);
+		MultigridUtils.addTo(_rhs[order], _itau[order]);
 
 		// compute the truncation error for this V-cycle
 		// for all chemicals
 		if ( order+1 == outer )
-			truncationError = .3333*MultigridUtils.computeNorm(_itau[order].grid);
+			truncationError = .3333*MultigridUtils.computeNorm(_itau[order]);
 	}
 	
 	/**
@@ -335,10 +357,10 @@ public class MultigridSolute
 	 */
 	public void upward(int order)
 	{
-		MultigridUtils.restrictBoundaryLayer(_conc[order], _itemp[order-1], _bLayer[order-1].grid);
-		MultigridUtils.subtractTo(_conc[order-1].grid, _itemp[order-1].grid);
-		MultigridUtils.interpolateBoundaryLayer(_itau[order], _conc[order-1], _bLayer[order].grid);
-		MultigridUtils.addTo(_conc[order].grid, _itau[order].grid);
+		restrictBoundaryLayer(_conc[order], _itemp[order-1], order-1);
+		MultigridUtils.subtractTo(_conc[order-1], _itemp[order-1]);
+		MultigridUtils.interpolateBoundaryLayer(_itau[order], _conc[order-1], _bLayer[order]);
+		MultigridUtils.addTo(_conc[order], _itau[order]);
 	}
 	
 	/**
@@ -353,8 +375,8 @@ public class MultigridSolute
 		 * Compute the residue for this solute.
 		 */
 		computeResidual(_itemp, order);
-		MultigridUtils.subtractTo(_itemp[order].grid, _rhs[order].grid);
-		Double res = MultigridUtils.computeNorm(_itemp[order].grid);
+		MultigridUtils.subtractTo(_itemp[order], _rhs[order]);
+		Double res = MultigridUtils.computeNorm(_itemp[order]);
 		/*
 		 *  Confirm that criterion is met for each solute.
 		 */
@@ -362,9 +384,120 @@ public class MultigridSolute
 	}
 	
 	/**
+	 * \brief Build the lists of voxels inside the boundary layer.
 	 * 
-	 * @param order
-	 * @return
+	 * Called on the boundary layer multigrid, after its grids have been
+	 * restricted to all orders. The lists are shared by all solutes, and
+	 * drive their relaxation, residual and restriction loops.
+	 */
+	public void buildActiveVoxels()
+	{
+		_active = new int[maxOrder][];
+		_activeFine = new int[maxOrder][];
+		_nFirstColour = new int[maxOrder];
+		
+		for (int order = 0; order < maxOrder; order++)
+		{
+			SoluteGrid grid = _conc[order];
+			int nI = grid.getGridSizeI();
+			int nJ = grid.getGridSizeJ();
+			int nK = grid.getGridSizeK();
+			double[] bl = grid.getFlatGrid();
+			int[] active = new int[nI*nJ*nK];
+			int[] fine = new int[nI*nJ*nK];
+			int n = 0;
+			int index;
+			
+			for (int pass = 1; pass <= 2; pass++)
+			{
+				for (int k = 1; k <= nK; k++)
+					for (int j = 1; j <= nJ; j++)
+						for (int i = 1 + (pass + j + k - 3) % 2; i <= nI; i += 2)
+						{
+							index = grid.index(i, j, k);
+							if ( bl[index] < BLTHRESH )
+								continue;
+							active[n] = index;
+							if ( order < maxOrder - 1 )
+								fine[n] = _conc[order+1].index(2*i-1, 2*j-1, 2*k-1);
+							n++;
+						}
+				if ( pass == 1 )
+					_nFirstColour[order] = n;
+			}
+			_active[order] = Arrays.copyOf(active, n);
+			_activeFine[order] = Arrays.copyOf(fine, n);
+		}
+	}
+	
+	/**
+	 * \brief Build the lists of voxels holding a non-zero value.
+	 * 
+	 * Called on the biomass multigrids, after their grids have been
+	 * restricted to all orders, so that the reactions only visit the voxels
+	 * with catalyst.
+	 */
+	public void buildOccupiedVoxels()
+	{
+		_occupied = new int[_conc.length][];
+		for (int order = 0; order < _conc.length; order++)
+			_occupied[order] = _conc[order].getNonZeroVoxels();
+	}
+	
+	/**
+	 * \brief Return the voxels of the given order holding a non-zero value.
+	 * 
+	 * @param order	Order of the grid.
+	 * @return	Flat positions of these voxels, as of the last call to
+	 * buildOccupiedVoxels().
+	 */
+	public int[] getOccupiedVoxels(int order)
+	{
+		return _occupied[order];
+	}
+	
+	/**
+	 * \brief Restrict a grid to the next coarser order, inside the boundary
+	 * layer only.
+	 * 
+	 * @param fineGrid	Grid of order coarseOrder+1.
+	 * @param coarseGrid	Grid of order coarseOrder.
+	 * @param coarseOrder	Order of the coarser grid.
+	 */
+	private void restrictBoundaryLayer(SoluteGrid fineGrid,
+									SoluteGrid coarseGrid, int coarseOrder)
+	{
+		MultigridUtils.restrictBoundaryLayer(fineGrid, coarseGrid,
+										_bLayerGrid._active[coarseOrder],
+										_bLayerGrid._activeFine[coarseOrder]);
+	}
+	
+	/**
+	 * \brief Give this solute a pool of worker threads to relax its grids.
+	 * 
+	 * With a pool, each colour pass of the red-black relaxation is split
+	 * into slabs of grid planes (along K in 3D, along J in 2D) that are
+	 * relaxed concurrently. Without one (null) the grids are relaxed serially
+	 * by the calling thread.
+	 * 
+	 * @param pool	ForkJoinPool to use, or null to relax serially.
+	 */
+	public void setPool(ForkJoinPool pool)
+	{
+		_pool = pool;
+	}
+	
+	/**
+	 * \brief Red-black relaxation of the grid of the given order.
+	 * 
+	 * Only the voxels inside the boundary layer are visited, from the lists
+	 * built by buildActiveVoxels(). Voxels of one colour only depend on
+	 * voxels of the other colour, so the voxels of a pass can be split
+	 * between threads and the result does not depend on the number of
+	 * threads. The padding is refreshed serially after each pass.
+	 * 
+	 * @param order	Order of the grid to relax.
+	 * @return	Sum of the absolute residuals over the two passes.
 	 */
 	public double relax(int order)
 	{
@@ -372,66 +505,35 @@ public class MultigridSolute
 		int nJ = _conc[order].getGridSizeJ();
 		int nK = _conc[order].getGridSizeK();
 		
-		Double h = _referenceSystemSide/referenceIndex(nI, nJ, nK);
-		Double h2i = 0.5f/(h*h);
-		// red-black relaxation
-		// iterate through system
-		// isw, jsw and ksw alternate between values 1 and 2
-		
-		u = _conc[order].grid;
-		bl = _bLayer[order].grid;
-		rd = _relDiff[order].grid;
-		
-		Double lop, dlop, res;
+		double h = _referenceSystemSide/referenceIndex(nI, nJ, nK);
+		double h2i = 0.5f/(h*h);
 		
 		// Apply an eventual modification of the local diffusivity for THIS
 		// solute around the boundaries
 		refreshDiffBoundaries(order);
 		
-		Double totalRes = 0.0;
+		int nFirst = _bLayerGrid._nFirstColour[order];
+		int nActive = _bLayerGrid._active[order].length;
+		
+		double totalRes = 0.0;
 		
 		// bvm 22.12.09: now allows red-black for 2d AND 3d
-		int ksw = 1;
-		int isw, jsw;
-		for (int pass = 1; pass <= 2; pass++, ksw = 3-ksw)
+		for (int pass = 1; pass <= 2; pass++)
 		{
-			jsw = ksw;
-			for (_k = 1; _k <= nK; _k++, jsw = 3-jsw)
+			int from = ( pass == 1 ) ? 0 : nFirst;
+			int to = ( pass == 1 ) ? nFirst : nActive;
+			int grain = to - from;
+			if ( _pool != null )
+				grain = Math.max(MIN_SLAB, grain/(2*_pool.getParallelism()));
+			if ( grain >= to - from )
+				totalRes += relaxVoxels(order, h2i, from, to);
+			else
 			{
-				isw = jsw;
-				for (_j = 1; _j <= nJ; _j++, isw = 3-isw)
-				{
-					for (_i = isw; _i <= nI; _i += 2)
-					{
-						if (bl[_i][_j][_k] >= BLTHRESH)
-						{
-							// Case: Inside boundary layer
-							// Equations must be solved here
-							
-							// compute diffusivity values
-							// and that of surrounding neighbours
-							fillDiff();
-							
-							// compute L operator
-							lop = computeLop(order, h2i);
-							
-							// compute derivative of L operator
-							dlop = computeDiffLop(order, h2i);
-							
-							// compute residual
-							res = (lop-_rhs[order].grid[_i][_j][_k])/dlop;
-							totalRes += Math.abs(res);
-							// update concentration (test for NaN)
-							//LogFile.writeLog("NaN generated in multigrid solver "+"while computing rate for "+soluteName);
-							//LogFile.writeLog("location: "+_i+", "+_j+", "+_k);
-							//LogFile.writeLog("dlop: "+dlop+"; lop: "+lop+"; grid: "+_rhs[order].grid[_i][_j][_k]);
-							
-							u[_i][_j][_k] -= res;
-							// if negative concentrations, put 0 value
-							u[_i][_j][_k] = (u[_i][_j][_k]<0 ? 0 : u[_i][_j][_k]);
-						}
-					}
-				}
+				RelaxTask task = new RelaxTask(order, h2i, from, to, grain);
+				if ( ForkJoinTask.inForkJoinPool() )
+					totalRes += task.invoke();
+				else
+					totalRes += _pool.invoke(task);
 			}
 			// refresh the padding elements to enforce
 			// boundary conditions for all solutes
@@ -441,51 +543,136 @@ public class MultigridSolute
 	}
 	
 	/**
+	 * \brief Relax a range of the voxels inside the boundary layer.
+	 * 
+	 * All state is local, so ranges of voxels of the same colour may be
+	 * relaxed by concurrent threads as long as they do not overlap.
 	 * 
+	 * @param order	Order of the grid to relax.
+	 * @param h2i	Inverse of twice the squared grid spacing.
+	 * @param from	First position in the list of active voxels.
+	 * @param to	Position after the last one in the list of active voxels.
+	 * @return	Sum of the absolute residuals in the range.
 	 */
-	private void fillDiff()
+	private double relaxVoxels(int order, double h2i, int from, int to)
 	{
-		_diff[0][1][1] = realGrid.diffusivity*rd[_i-1][_j][_k];
-		_diff[2][1][1] = realGrid.diffusivity*rd[_i+1][_j][_k];
-		_diff[1][0][1] = realGrid.diffusivity*rd[_i][_j-1][_k];
-		_diff[1][2][1] = realGrid.diffusivity*rd[_i][_j+1][_k];
-		_diff[1][1][0] = realGrid.diffusivity*rd[_i][_j][_k-1];
-		_diff[1][1][2] = realGrid.diffusivity*rd[_i][_j][_k+1];
-		_diff[1][1][1] = realGrid.diffusivity*rd[_i][_j][_k];
+		int[] active = _bLayerGrid._active[order];
+		double[] u = _conc[order].getFlatGrid();
+		double[] rd = _relDiff[order].getFlatGrid();
+		double[] rhs = _rhs[order].getFlatGrid();
+		double[] reac = _reac[order].getFlatGrid();
+		double[] diffReac = _diffReac[order].getFlatGrid();
+		int sI = _conc[order].getStrideI();
+		int sJ = _conc[order].getStrideJ();
+		double diffusivity = realGrid.diffusivity;
+		
+		double lop, dlop, res;
+		double totalRes = 0.0;
+		int index;
+		
+		for (int n = from; n < to; n++)
+		{
+			index = active[n];
+			
+			// compute L operator
+			lop = computeLop(u, rd, index, sI, sJ, diffusivity, h2i)
+													+ reac[index];
+			
+			// compute derivative of L operator
+			dlop = computeDiffLop(rd, index, sI, sJ, diffusivity, h2i)
+													+ diffReac[index];
+			
+			// compute residual
+			res = (lop-rhs[index])/dlop;
+			totalRes += Math.abs(res);
+			
+			u[index] -= res;
+			// if negative concentrations, put 0 value
+			u[index] = (u[index]<0 ? 0 : u[index]);
+		}
+		return totalRes;
+	}
+	
+	/**
+	 * \brief Task relaxing a range of active voxels, split in halves until
+	 * the ranges are no longer than the grain.
+	 */
+	private class RelaxTask extends RecursiveTask<Double>
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final int order, from, to, grain;
+		
+		private final double h2i;
+		
+		RelaxTask(int order, double h2i, int from, int to, int grain)
+		{
+			this.order = order;
+			this.h2i = h2i;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		}
+		
+		@Override
+		protected Double compute()
+		{
+			if ( to - from <= grain )
+				return relaxVoxels(order, h2i, from, to);
+			int mid = (from + to) >>> 1;
+			RelaxTask lower = new RelaxTask(order, h2i, from, mid, grain);
+			RelaxTask upper = new RelaxTask(order, h2i, mid, to, grain);
+			lower.fork();
+			double upperRes = upper.compute();
+			return lower.join() + upperRes;
+		}
 	}
 	
 	/**
-	 * \brief Compute the L-operator
+	 * \brief Compute the diffusive part of the L-operator at one voxel.
 	 * 
-	 * @param order
-	 * @param h2i
-	 * @return
+	 * @param u	Concentration grid.
+	 * @param rd	Relative diffusivity grid.
+	 * @param index	Flat position of the voxel.
+	 * @param sI	Stride in the I direction.
+	 * @param sJ	Stride in the J direction.
+	 * @param diffusivity	Diffusivity of this solute.
+	 * @param h2i	Inverse of twice the squared grid spacing.
+	 * @return	Diffusive part of the L-operator.
 	 */
-	private double computeLop(int order, Double h2i)
-	{	
-		return ( (_diff[2][1][1]+_diff[1][1][1])*(u[_i+1][_j][_k]-u[_i][_j][_k])
-		        +(_diff[0][1][1]+_diff[1][1][1])*(u[_i-1][_j][_k]-u[_i][_j][_k])
-		        +(_diff[1][2][1]+_diff[1][1][1])*(u[_i][_j+1][_k]-u[_i][_j][_k])
-		        +(_diff[1][0][1]+_diff[1][1][1])*(u[_i][_j-1][_k]-u[_i][_j][_k])
-		        +(_diff[1][1][2]+_diff[1][1][1])*(u[_i][_j][_k+1]-u[_i][_j][_k])
-		        +(_diff[1][1][0]+_diff[1][1][1])*(u[_i][_j][_k-1]-u[_i][_j][_k]))
-		        *h2i + _reac[order].grid[_i][_j][_k];
+	private static double computeLop(double[] u, double[] rd, int index,
+							int sI, int sJ, double diffusivity, double h2i)
+	{
+		double d111 = diffusivity*rd[index];
+		return ( (diffusivity*rd[index+sI]+d111)*(u[index+sI]-u[index])
+		        +(diffusivity*rd[index-sI]+d111)*(u[index-sI]-u[index])
+		        +(diffusivity*rd[index+sJ]+d111)*(u[index+sJ]-u[index])
+		        +(diffusivity*rd[index-sJ]+d111)*(u[index-sJ]-u[index])
+		        +(diffusivity*rd[index+1]+d111)*(u[index+1]-u[index])
+		        +(diffusivity*rd[index-1]+d111)*(u[index-1]-u[index]))
+		        *h2i;
 	}
 	
 	/**
+	 * \brief Compute the diffusive part of the derivative of the L-operator
+	 * at one voxel.
 	 * 
-	 * @param order
-	 * @param h2i
-	 * @return
+	 * @param rd	Relative diffusivity grid.
+	 * @param index	Flat position of the voxel.
+	 * @param sI	Stride in the I direction.
+	 * @param sJ	Stride in the J direction.
+	 * @param diffusivity	Diffusivity of this solute.
+	 * @param h2i	Inverse of twice the squared grid spacing.
+	 * @return	Diffusive part of the derivative of the L-operator.
 	 */
-	private Double computeDiffLop(int order, Double h2i)
+	private static double computeDiffLop(double[] rd, int index,
+							int sI, int sJ, double diffusivity, double h2i)
 	{
 		return -h2i
-		        *(6.0f*_diff[1][1][1]
-		              +_diff[2][1][1]+_diff[0][1][1]
-		              +_diff[1][2][1]+_diff[1][0][1]
-		              +_diff[1][1][2]+_diff[1][1][0])
-		       +_diffReac[order].grid[_i][_j][_k];
+		        *(6.0f*(diffusivity*rd[index])
+		              +diffusivity*rd[index+sI]+diffusivity*rd[index-sI]
+		              +diffusivity*rd[index+sJ]+diffusivity*rd[index-sJ]
+		              +diffusivity*rd[index+1]+diffusivity*rd[index-1]);
 	}
 	
 	/**
@@ -499,32 +686,26 @@ public class MultigridSolute
 		int nJ = res[order].getGridSizeJ();
 		int nK = res[order].getGridSizeK();
 		
-		Double h = _referenceSystemSide/referenceIndex(nI,nJ,nK);
-		Double h2i = 0.5f/(h*h);
-		Double lop; // temporary variable for L-operator
+		double h = _referenceSystemSide/referenceIndex(nI,nJ,nK);
+		double h2i = 0.5f/(h*h);
 		
-		u = _conc[order].grid;
-		bl = _bLayer[order].grid;
-		rd = _relDiff[order].grid;
+		int[] active = _bLayerGrid._active[order];
+		double[] u = _conc[order].getFlatGrid();
+		double[] rd = _relDiff[order].getFlatGrid();
+		double[] reac = _reac[order].getFlatGrid();
+		int sI = _conc[order].getStrideI();
+		int sJ = _conc[order].getStrideJ();
+		double diffusivity = realGrid.diffusivity;
+		double[] r = res[order].getFlatGrid();
+		int index;
 		
-		// iterate through system
-		for (_k = 1; _k <= nK; _k++)
-			for (_j = 1; _j <= nJ; _j++)
-				for (_i = 1; _i <= nI; _i++)
-					// compute lop only inside boundary layer
-					if (bl[_i][_j][_k] >= BLTHRESH)
-					{
-						// compute diffusivity values and that of surrounding
-						// neighbours
-						fillDiff();
-						
-						// compute L operator
-						lop = computeLop(order, h2i);
-						
-						// update concentration (test for NaN)
-						//LogFile.writeLog("MultigridSolute.computeResidual: NaN generated"+soluteName);
-						res[order].grid[_i][_j][_k] = lop;
-					}
+		// compute lop only inside boundary layer
+		for (int n = 0; n < active.length; n++)
+		{
+			index = active[n];
+			r[index] = computeLop(u, rd, index, sI, sJ, diffusivity, h2i)
+													+ reac[index];
+		}
 		res[order].refreshBoundary();
 	}
 	
@@ -537,17 +718,15 @@ public class MultigridSolute
 	 */
 	public void truncateConcToZero(int order)
 	{
-		int nI = _conc[order].getGridSizeI();
-		int nJ = _conc[order].getGridSizeJ();
-		int nK = _conc[order].getGridSizeK();
-		Double[][][] bl = _bLayer[order].grid;
-		Double[][][] u = _conc[order].grid;
+		int[] active = _bLayerGrid._active[order];
+		double[] u = _conc[order].getFlatGrid();
+		int index;
 		
-		for (int _i = 1; _i <= nI; _i++)
-			for (int _j = 1; _j <= nJ; _j++)
-				for (int _k = 1; _k <= nK; _k++)
-					if (bl[_i][_j][_k] >= BLTHRESH)
-						u[_i][_j][_k] = Math.max(u[_i][_j][_k], 0.0);
+		for (int n = 0; n < active.length; n++)
+		{
+			index = active[n];
+			u[index] = Math.max(u[index], 0.0);
+		}
 	}
 	
 	/* _________________________ TOOLBOX ____________________________ */
@@ -577,6 +756,34 @@ public class MultigridSolute
 		}
 	}
 	
+	/**
+	 * \brief Reset the multigrid copies but start the finest grid from the
+	 * last solution of this solute.
+	 * 
+	 * Voxels outside the boundary layer take the current bulk value, as the
+	 * bulk may have changed since the solution was computed.
+	 */
+	public void warmStart()
+	{
+		resetMultigridCopies();
+		readSoluteGrid();
+		
+		SoluteGrid finest = _conc[maxOrder-1];
+		double[] bl = _bLayer[maxOrder-1].getFlatGrid();
+		double[] u = finest.getFlatGrid();
+		int index;
+		
+		for (int i = 1; i <= finest.getGridSizeI(); i++)
+			for (int j = 1; j <= finest.getGridSizeJ(); j++)
+				for (int k = 1; k <= finest.getGridSizeK(); k++)
+				{
+					index = finest.index(i, j, k);
+					if (bl[index] <= BLTHRESH)
+						u[index] = sBulk;
+				}
+		finest.refreshBoundary();
+	}
+	
 	/**
 	 * 
 	 * @param value
@@ -607,20 +814,25 @@ public class MultigridSolute
 		int maxJ = _conc[order].getGridSizeJ();
 		int maxK = _conc[order].getGridSizeK();
 		
-		for (_i = 1; _i <= maxI; _i++)
-			for (_j = 1; _j <= maxJ; _j++) 
-				for (_k = 1; _k <= maxK; _k++)
+		double[] bl = _bLayer[order].getFlatGrid();
+		double[] u = _conc[order].getFlatGrid();
+		int index;
+		
+		for (int i = 1; i <= maxI; i++)
+			for (int j = 1; j <= maxJ; j++) 
+				for (int k = 1; k <= maxK; k++)
 				{
-					if (_bLayer[order].grid[_i][_j][_k] <= BLTHRESH)
+					index = _conc[order].index(i, j, k);
+					if (bl[index] <= BLTHRESH)
 					{
 						// outside the boundary layer (will not be solved)
-						_conc[order].grid[_i][_j][_k] = sBulk;
+						u[index] = sBulk;
 					}
 					else
 					{
 						// inside the biofilm (value is not really important
 						// now)
-						_conc[order].grid[_i][_j][_k] = sBulkMax;
+						u[index] = sBulkMax;
 					}
 				}
 		/*
@@ -725,7 +937,7 @@ public class MultigridSolute
 	 */
 	public void applyComputation()
 	{
-		MatrixOperations.copyValuesTo(realGrid.grid, _conc[maxOrder-1].grid);
+		realGrid.setGrid(_conc[maxOrder-1]);
 	}
 	
 	/**
@@ -733,7 +945,7 @@ public class MultigridSolute
 	 */
 	public void readSoluteGrid()
 	{
-		MatrixOperations.copyValuesTo(_conc[maxOrder-1].grid, realGrid.grid);
+		_conc[maxOrder-1].setGrid(realGrid);
 	}
 	
 	/**
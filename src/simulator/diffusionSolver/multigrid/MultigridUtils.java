@@ -50,15 +50,16 @@ public abstract class MultigridUtils {
 	 */
 	public static void restrict2(SoluteGrid fineGrid, SoluteGrid coarsegrid)
 	{
-		Double[][][] uc = coarsegrid.grid;
-		Double[][][] u = fineGrid.grid;
+		SoluteGrid uc = coarsegrid;
+		SoluteGrid u = fineGrid;
 		
-		int lc = uc[0][0].length-2;
-		int mc = uc[0].length-2;
-		int nc = uc.length-2;
+		int lc = uc.getGridSizeK();
+		int mc = uc.getGridSizeJ();
+		int nc = uc.getGridSizeI();
 		
 		int i, j, k; // indexes for fine grid
 		int ic, jc, kc; // indexes for coarse grid
+		double v; // value being computed for the coarse grid
 		
 		// implements 2D and 3D
 		float nfac = (lc==1 ? 1.0f/16.0f : 1.0f/32.0f); // pre-compute
@@ -68,22 +69,23 @@ public abstract class MultigridUtils {
 				for (i = 1, ic = 1; ic<=nc; ic++, i += 2)
 				{
 					// 4-connectivity weight
-					uc[ic][jc][kc] = 2*(u[i+1][j][k]+u[i-1][j][k]+u[i][j+1][k]+u[i][j-1][k]);
+					v = 2*(u.get(i+1,j,k)+u.get(i-1,j,k)+u.get(i,j+1,k)+u.get(i,j-1,k));
 					// 8-connectivity weight
-					uc[ic][jc][kc] += u[i+1][j+1][k]+u[i+1][j-1][k]+u[i-1][j+1][k]+u[i-1][j-1][k];
+					v += u.get(i+1,j+1,k)+u.get(i+1,j-1,k)+u.get(i-1,j+1,k)+u.get(i-1,j-1,k);
 					// 3rd dimension (4-C)
-					uc[ic][jc][kc] += 2*(lc==1 ? 0.0f : u[i][j][k+1]+u[i][j][k-1]);
+					v += 2*(lc==1 ? 0.0f : u.get(i,j,k+1)+u.get(i,j,k-1));
 					// 3rd dimension (8-C)					
-					uc[ic][jc][kc] += (lc==1 ? 0.0f : u[i-1][j-1][k-1]+u[i-1][j][k-1]+u[i-1][j+1][k-1]);
-					uc[ic][jc][kc] += (lc==1 ? 0.0f : u[i][j-1][k-1]+u[i][j+1][k-1]);
-					uc[ic][jc][kc] += (lc==1 ? 0.0f : u[i+1][j-1][k-1]+u[i+1][j][k-1]+u[i+1][j+1][k-1]);
+					v += (lc==1 ? 0.0f : u.get(i-1,j-1,k-1)+u.get(i-1,j,k-1)+u.get(i-1,j+1,k-1));
+					v += (lc==1 ? 0.0f : u.get(i,j-1,k-1)+u.get(i,j+1,k-1));
+					v += (lc==1 ? 0.0f : u.get(i+1,j-1,k-1)+u.get(i+1,j,k-1)+u.get(i+1,j+1,k-1));
 					
-					uc[ic][jc][kc] += (lc==1 ? 0.0f : u[i-1][j-1][k+1]+u[i-1][j][k-1]+u[i-1][j+1][k+1]);
-					uc[ic][jc][kc] += (lc==1 ? 0.0f : u[i][j-1][k+1]+u[i][j+1][k+1]);
-					uc[ic][jc][kc] += (lc==1 ? 0.0f : u[i+1][j-1][k+1]+u[i+1][j][k-1]+u[i+1][j+1][k+1]);
+					v += (lc==1 ? 0.0f : u.get(i-1,j-1,k+1)+u.get(i-1,j,k-1)+u.get(i-1,j+1,k+1));
+					v += (lc==1 ? 0.0f : u.get(i,j-1,k+1)+u.get(i,j+1,k+1));
+					v += (lc==1 ? 0.0f : u.get(i+1,j-1,k+1)+u.get(i+1,j,k-1)+u.get(i+1,j+1,k+1));
 					
-					uc[ic][jc][kc] += 4*u[i][j][k];
-					uc[ic][jc][kc] *= nfac;
+					v += 4*u.get(i,j,k);
+					v *= nfac;
+					uc.set(ic, jc, kc, v);
 				}
 		
 		coarsegrid.refreshBoundary();
@@ -91,15 +93,20 @@ public abstract class MultigridUtils {
 	
 	public static void restrict(SoluteGrid fineGrid, SoluteGrid coarseGrid)
 	{
-		Double[][][] uc = coarseGrid.grid;
-		Double[][][] u = fineGrid.grid;
+		double[] uc = coarseGrid.getFlatGrid();
+		double[] u = fineGrid.getFlatGrid();
 		
-		int lc = uc[0][0].length-2;
-		int mc = uc[0].length-2;
-		int nc = uc.length-2;
+		int lc = coarseGrid.getGridSizeK();
+		int mc = coarseGrid.getGridSizeJ();
+		int nc = coarseGrid.getGridSizeI();
+		
+		// strides of the fine grid
+		int sI = fineGrid.getStrideI();
+		int sJ = fineGrid.getStrideJ();
 		
 		int i, j, k; // indexes for fine grid
 		int ic, jc, kc; // indexes for coarse grid
+		int f, c; // flat positions in the fine and coarse grids
 		
 		// implements 2D and 3D
 		float nfac = (lc==1 ? 1.0f/8.0f : 1.0f/12.0f); // pre-compute
@@ -108,12 +115,14 @@ public abstract class MultigridUtils {
 			for (j = 1, jc = 1; jc<=mc; jc++, j += 2)
 				for (i = 1, ic = 1; ic<=nc; ic++, i += 2)
 				{
+					f = fineGrid.index(i, j, k);
+					c = coarseGrid.index(ic, jc, kc);
 					// special case for 2D (when lc = 1)
-					uc[ic][jc][kc] = u[i+1][j][k]+u[i-1][j][k]+u[i][j+1][k]+u[i][j-1][k];
-					uc[ic][jc][kc] += (lc==1 ? 0.0f : u[i][j][k+1]+u[i][j][k-1]);
-					uc[ic][jc][kc] *= nfac;
-					uc[ic][jc][kc] += 0.5f*u[i][j][k];
-					if ( uc[ic][jc][kc].isNaN() )
+					uc[c] = u[f+sI]+u[f-sI]+u[f+sJ]+u[f-sJ];
+					uc[c] += (lc==1 ? 0.0f : u[f+1]+u[f-1]);
+					uc[c] *= nfac;
+					uc[c] += 0.5f*u[f];
+					if ( Double.isNaN(uc[c]) )
 						System.out.print(1);
 				}
 		coarseGrid.refreshBoundary();
@@ -131,18 +140,18 @@ public abstract class MultigridUtils {
 	 * @param bl	boundary layer at coarser grid
 	 */
 	public static void restrictBoundaryLayer2(SoluteGrid fineGrid, SoluteGrid coarseGrid,
-	        Double[][][] bl)
+	        SoluteGrid bl)
 	{
-
-		Double[][][] uc = coarseGrid.grid;
-		Double[][][] u = fineGrid.grid;
+		SoluteGrid uc = coarseGrid;
+		SoluteGrid u = fineGrid;
 		
-		int nK = uc[0][0].length-2;
-		int nJ = uc[0].length-2;
-		int nI = uc.length-2;
+		int nK = uc.getGridSizeK();
+		int nJ = uc.getGridSizeJ();
+		int nI = uc.getGridSizeI();
 		
 		int i, j, k; // indexes for fine grid
 		int ic, jc, kc; // indexes for coarse grid
+		double v; // value being computed for the coarse grid
 		
 		// implements 2D and 3D
 		float nfac = (nK==1 ? 1.0f/16.0f : 1.0f/32.0f); // pre-compute
@@ -150,41 +159,48 @@ public abstract class MultigridUtils {
 		for (k = 1, kc = 1; kc <= nK; kc++, k += 2)
 			for (j = 1, jc = 1; jc <= nJ; jc++, j += 2)
 				for (i = 1, ic = 1; ic <= nI; ic++, i += 2)
-					if ( bl[ic][jc][kc] >= BLTHRESH )
+					if ( bl.get(ic, jc, kc) >= BLTHRESH )
 					{
 						// 4-connectivity weight
-						uc[ic][jc][kc] = 2*(u[i+1][j][k]+u[i-1][j][k]+u[i][j+1][k]+u[i][j-1][k]);
+						v = 2*(u.get(i+1,j,k)+u.get(i-1,j,k)+u.get(i,j+1,k)+u.get(i,j-1,k));
 						// 8-connectivity weight
-						uc[ic][jc][kc] += u[i+1][j+1][k]+u[i+1][j-1][k]+u[i-1][j+1][k]+u[i-1][j-1][k];
+						v += u.get(i+1,j+1,k)+u.get(i+1,j-1,k)+u.get(i-1,j+1,k)+u.get(i-1,j-1,k);
 						// 3rd dimension (4-C)
-						uc[ic][jc][kc] += 2*(nK==1 ? 0.0f : u[i][j][k+1]+u[i][j][k-1]);
+						v += 2*(nK==1 ? 0.0f : u.get(i,j,k+1)+u.get(i,j,k-1));
 						// 3rd dimension (8-C)					
-						uc[ic][jc][kc] += (nK==1 ? 0.0f : u[i-1][j-1][k-1]+u[i-1][j][k-1]+u[i-1][j+1][k-1]);
-						uc[ic][jc][kc] += (nK==1 ? 0.0f : u[i][j-1][k-1]+u[i][j+1][k-1]);
-						uc[ic][jc][kc] += (nK==1 ? 0.0f : u[i+1][j-1][k-1]+u[i+1][j][k-1]+u[i+1][j+1][k-1]);
+						v += (nK==1 ? 0.0f : u.get(i-1,j-1,k-1)+u.get(i-1,j,k-1)+u.get(i-1,j+1,k-1));
+						v += (nK==1 ? 0.0f : u.get(i,j-1,k-1)+u.get(i,j+1,k-1));
+						v += (nK==1 ? 0.0f : u.get(i+1,j-1,k-1)+u.get(i+1,j,k-1)+u.get(i+1,j+1,k-1));
 						
-						uc[ic][jc][kc] += (nK==1 ? 0.0f : u[i-1][j-1][k+1]+u[i-1][j][k-1]+u[i-1][j+1][k+1]);
-						uc[ic][jc][kc] += (nK==1 ? 0.0f : u[i][j-1][k+1]+u[i][j+1][k+1]);
-						uc[ic][jc][kc] += (nK==1 ? 0.0f : u[i+1][j-1][k+1]+u[i+1][j][k-1]+u[i+1][j+1][k+1]);
+						v += (nK==1 ? 0.0f : u.get(i-1,j-1,k+1)+u.get(i-1,j,k-1)+u.get(i-1,j+1,k+1));
+						v += (nK==1 ? 0.0f : u.get(i,j-1,k+1)+u.get(i,j+1,k+1));
+						v += (nK==1 ? 0.0f : u.get(i+1,j-1,k+1)+u.get(i+1,j,k-1)+u.get(i+1,j+1,k+1));
 						
-						uc[ic][jc][kc] += 4*u[i][j][k];
-						uc[ic][jc][kc] *= nfac;
+						v += 4*u.get(i,j,k);
+						v *= nfac;
+						uc.set(ic, jc, kc, v);
 					}
 		coarseGrid.refreshBoundary();
 	}
 	
 	public static void restrictBoundaryLayer(SoluteGrid fineGrid, SoluteGrid coarseGrid,
-	        Double[][][] bl)
+	        SoluteGrid bLayer)
 	{
-		Double[][][] uc = coarseGrid.grid;
-		Double[][][] u = fineGrid.grid;
+		double[] uc = coarseGrid.getFlatGrid();
+		double[] u = fineGrid.getFlatGrid();
+		double[] bl = bLayer.getFlatGrid();
+		
+		int nK = coarseGrid.getGridSizeK();
+		int nJ = coarseGrid.getGridSizeJ();
+		int nI = coarseGrid.getGridSizeI();
 		
-		int nK = uc[0][0].length-2;
-		int nJ = uc[0].length-2;
-		int nI = uc.length-2;
+		// strides of the fine grid
+		int sI = fineGrid.getStrideI();
+		int sJ = fineGrid.getStrideJ();
 		
 		int i, j, k; // indexes for fine grid
 		int ic, jc, kc; // indexes for coarse grid
+		int f, c; // flat positions in the fine and coarse grids
 		
 		// implements 2D and 3D
 		float nfac = (nK==1 ? 1.0f/8.0f : 1.0f/12.0f); // pre-compute
@@ -192,14 +208,59 @@ public abstract class MultigridUtils {
 		for (k = 1, kc = 1; kc <= nK; kc++, k += 2)
 			for (j = 1, jc = 1; jc <= nJ; jc++, j += 2)
 				for (i = 1, ic = 1; ic <= nI; ic++, i += 2)
-					if ( bl[ic][jc][kc] >= BLTHRESH )
+				{
+					c = coarseGrid.index(ic, jc, kc);
+					if ( bl[c] >= BLTHRESH )
 					{
+						f = fineGrid.index(i, j, k);
 						// special case for 2D (when lc = 1)
-						uc[ic][jc][kc] = u[i+1][j][k]+u[i-1][j][k]+u[i][j+1][k]+u[i][j-1][k];
-						uc[ic][jc][kc] += (nK==1 ? 0.0f : u[i][j][k+1]+u[i][j][k-1]);
-						uc[ic][jc][kc] *= nfac;
-						uc[ic][jc][kc] += 0.5f*u[i][j][k];
+						uc[c] = u[f+sI]+u[f-sI]+u[f+sJ]+u[f-sJ];
+						uc[c] += (nK==1 ? 0.0f : u[f+1]+u[f-1]);
+						uc[c] *= nfac;
+						uc[c] += 0.5f*u[f];
 					}
+				}
+		coarseGrid.refreshBoundary();
+	}
+	
+	/**
+	 * Restricts the data in matrix u to a grid one order coarser, for the
+	 * points of the coarser grid listed in coarseVoxels only. Same result as
+	 * restrictBoundaryLayer(fineGrid, coarseGrid, bLayer) when the lists hold
+	 * the points inside the boundary layer.
+	 * 
+	 * @param fineGrid	finer grid
+	 * @param coarseGrid	coarser grid
+	 * @param coarseVoxels	flat positions of the points of the coarser grid
+	 * @param fineVoxels	flat positions of the same points in the finer grid
+	 */
+	public static void restrictBoundaryLayer(SoluteGrid fineGrid,
+			SoluteGrid coarseGrid, int[] coarseVoxels, int[] fineVoxels)
+	{
+		double[] uc = coarseGrid.getFlatGrid();
+		double[] u = fineGrid.getFlatGrid();
+		
+		int nK = coarseGrid.getGridSizeK();
+		
+		// strides of the fine grid
+		int sI = fineGrid.getStrideI();
+		int sJ = fineGrid.getStrideJ();
+		
+		int f, c; // flat positions in the fine and coarse grids
+		
+		// implements 2D and 3D
+		float nfac = (nK==1 ? 1.0f/8.0f : 1.0f/12.0f); // pre-compute
+		
+		for (int n = 0; n < coarseVoxels.length; n++)
+		{
+			c = coarseVoxels[n];
+			f = fineVoxels[n];
+			// special case for 2D (when lc = 1)
+			uc[c] = u[f+sI]+u[f-sI]+u[f+sJ]+u[f-sJ];
+			uc[c] += (nK==1 ? 0.0f : u[f+1]+u[f-1]);
+			uc[c] *= nfac;
+			uc[c] += 0.5f*u[f];
+		}
 		coarseGrid.refreshBoundary();
 	}
 	
@@ -212,50 +273,64 @@ public abstract class MultigridUtils {
 	 */
 	static void interpolate(SoluteGrid fineGrid, SoluteGrid coarsegrid) 
 	{
-		Double[][][] uc = coarsegrid.grid;
-		Double[][][] u = fineGrid.grid;
+		double[] uc = coarsegrid.getFlatGrid();
+		double[] u = fineGrid.getFlatGrid();
+		
+		int l = fineGrid.getGridSizeK();
+		int m = fineGrid.getGridSizeJ();
+		int n = fineGrid.getGridSizeI();
 		
-		int l = u[0][0].length-2;
-		int m = u[0].length-2;
-		int n = u.length-2;
+		// strides of the fine grid
+		int sI = fineGrid.getStrideI();
+		int sJ = fineGrid.getStrideJ();
 		
 		int i, j, k; // indexes for fine grid
 		int ic, jc, kc; // indexes for coarse grid
+		int f; // flat position in the fine grid
 		
 		// copy points
 		for (kc = 1, k = 1; k <= l; kc++, k += 2)
 			for (jc = 1, j = 1; j <= m; jc++, j += 2)
 				for (ic = 1, i = 1; i <= n; ic++, i += 2)
-					u[i][j][k] = uc[ic][jc][kc];
+					u[fineGrid.index(i, j, k)] = uc[coarsegrid.index(ic, jc, kc)];
 		
 		// interpolate vertically
 		for (k = 1; k <= l; k += 2)
 			for (j = 1; j <= m; j += 2)
 				for (i = 2; i < n; i += 2)
-					u[i][j][k] = 0.5f*(u[i+1][j][k]+u[i-1][j][k]);
+				{
+					f = fineGrid.index(i, j, k);
+					u[f] = 0.5f*(u[f+sI]+u[f-sI]);
+				}
 		
 		// interpolate sideways
 		for (k = 1; k <= l; k += 2)
 			for (j = 2; j < m; j += 2)
 				for (i = 1; i <= n; i++)
-					u[i][j][k] = 0.5f*(u[i][j+1][k]+u[i][j-1][k]);
+				{
+					f = fineGrid.index(i, j, k);
+					u[f] = 0.5f*(u[f+sJ]+u[f-sJ]);
+				}
 		
 		for (k = 2; k < l; k += 2)
 			for (j = 1; j <= m; j++)
 				for (i = 1; i <= n; i++)
-					u[i][j][k] = 0.5f*(u[i][j][k+1]+u[i][j][k-1]);
+				{
+					f = fineGrid.index(i, j, k);
+					u[f] = 0.5f*(u[f+1]+u[f-1]);
+				}
 		
 		fineGrid.refreshBoundary();
 	}
 
 	static void interpolate2(SoluteGrid fineGrid, SoluteGrid coarsegrid)
 	{
-		Double[][][] uc = coarsegrid.grid;
-		Double[][][] u = fineGrid.grid;
+		SoluteGrid uc = coarsegrid;
+		SoluteGrid u = fineGrid;
 		
-		int l = u[0][0].length - 2;
-		int m = u[0].length - 2;
-		int n = u.length - 2;
+		int l = u.getGridSizeK();
+		int m = u.getGridSizeJ();
+		int n = u.getGridSizeI();
 		
 		int i, j, k; // indexes for fine grid
 		int ic, jc, kc; // indexes for coarse grid
@@ -264,24 +339,24 @@ public abstract class MultigridUtils {
 		for (kc = 1, k = 1; k <= l; kc++, k += 2)
 			for (jc = 1, j = 1; j <= m; jc++, j += 2)
 				for (ic = 1, i = 1; i <= n; ic++, i += 2)
-					u[i][j][k] = uc[ic][jc][kc];
+					u.set(i, j, k, uc.get(ic, jc, kc));
 		
 		// interpolate vertically
 		for (k = 1; k <= l; k += 2)
 			for (j = 1; j <= m; j += 2)
 				for (i = 2; i < n; i += 2)
-					u[i][j][k] = 0.5f*(u[i+1][j][k]+u[i-1][j][k]);
+					u.set(i, j, k, 0.5f*(u.get(i+1,j,k)+u.get(i-1,j,k)));
 		
 		// interpolate sideways
 		for (k = 1; k <= l; k += 2)
 			for (j = 2; j < m; j += 2)
 				for (i = 1; i <= n; i++)
-					u[i][j][k] = 0.5f*(u[i][j+1][k]+u[i][j-1][k]);
+					u.set(i, j, k, 0.5f*(u.get(i,j+1,k)+u.get(i,j-1,k)));
 		
 		for (k = 2; k < l; k += 2)
 			for (j = 1; j <= m; j++)
 				for (i = 1; i <= n; i++)
-					u[i][j][k] = 0.5f*(u[i][j][k+1]+u[i][j][k-1]);
+					u.set(i, j, k, 0.5f*(u.get(i,j,k+1)+u.get(i,j,k-1)));
 		
 		fineGrid.refreshBoundary();
 	}
@@ -297,44 +372,62 @@ public abstract class MultigridUtils {
 	 * @param uc coarser grid
 	 * @param bl boundary layer at finer grid
 	 */
-	static void interpolateBoundaryLayer(SoluteGrid fineGrid, SoluteGrid coarseGrid, Double[][][] bl)
+	static void interpolateBoundaryLayer(SoluteGrid fineGrid, SoluteGrid coarseGrid, SoluteGrid bLayer)
 	{
-		Double[][][] uc = coarseGrid.grid;
-		Double[][][] u = fineGrid.grid;
+		double[] uc = coarseGrid.getFlatGrid();
+		double[] u = fineGrid.getFlatGrid();
+		double[] bl = bLayer.getFlatGrid();
 		
-		int nK = u[0][0].length - 2;
-		int nJ = u[0].length - 2;
-		int nI = u.length - 2;
+		int nK = fineGrid.getGridSizeK();
+		int nJ = fineGrid.getGridSizeJ();
+		int nI = fineGrid.getGridSizeI();
+		
+		// strides of the fine grid
+		int sI = fineGrid.getStrideI();
+		int sJ = fineGrid.getStrideJ();
 		
 		int i, j, k; // indexes for fine grid
 		int ic, jc, kc; // indexes for coarse grid
+		int f; // flat position in the fine grid
 		
 		// copy points
 		for (kc = 1, k = 1; k <= nK; kc++, k += 2)
 			for (jc = 1, j = 1; j <= nJ; jc++, j += 2)
 				for (ic = 1, i = 1; i <= nI; ic++, i += 2)
-					if (bl[i][j][k]>=BLTHRESH)
-						u[i][j][k] = uc[ic][jc][kc];
+				{
+					f = fineGrid.index(i, j, k);
+					if (bl[f]>=BLTHRESH)
+						u[f] = uc[coarseGrid.index(ic, jc, kc)];
+				}
 		
 		// interpolate verically
 		for (k = 1; k <= nK; k += 2)
 			for (j = 1; j <= nJ; j += 2)
 				for (i = 2; i < nI; i += 2)
-					if ( bl[i][j][k] >= BLTHRESH )
-						u[i][j][k] = 0.5f*(u[i+1][j][k]+u[i-1][j][k]);
+				{
+					f = fineGrid.index(i, j, k);
+					if ( bl[f] >= BLTHRESH )
+						u[f] = 0.5f*(u[f+sI]+u[f-sI]);
+				}
 		
 		// interpolate sideways
 		for (k = 1; k <= nK; k += 2)
 			for (j = 2; j < nJ; j += 2)
 				for (i = 1; i <= nI; i++)
-					if ( bl[i][j][k] >= BLTHRESH )
-						u[i][j][k] = 0.5f*(u[i][j+1][k]+u[i][j-1][k]);
+				{
+					f = fineGrid.index(i, j, k);
+					if ( bl[f] >= BLTHRESH )
+						u[f] = 0.5f*(u[f+sJ]+u[f-sJ]);
+				}
 		
 		for (k = 2; k < nK; k += 2)
 			for (j = 1; j <= nJ; j++)
 				for (i = 1; i <= nI; i++)
-					if ( bl[i][j][k] >= BLTHRESH )
-						u[i][j][k] = 0.5f*(u[i][j][k+1]+u[i][j][k-1]);
+				{
+					f = fineGrid.index(i, j, k);
+					if ( bl[f] >= BLTHRESH )
+						u[f] = 0.5f*(u[f+1]+u[f-1]);
+				}
 		
 		fineGrid.refreshBoundary();
 	}
@@ -368,30 +461,32 @@ public abstract class MultigridUtils {
 	}
 	
 	/**
-	 * Add every entry of matrix b to the corresponding entry in matrix a
+	 * Add every entry of grid b to the corresponding entry in grid a
+	 * (padding included).
 	 * 
 	 * @param a
 	 * @param b
 	 */
-	static void addTo(Double a[][][], Double b[][][])
+	static void addTo(SoluteGrid a, SoluteGrid b)
 	{
-		for (int i = 0; i<a.length; i++)
-			for (int j = 0; j<a[i].length; j++)
-				for (int k = 0; k<a[i][j].length; k++)
-					a[i][j][k] += b[i][j][k];
+		double[] va = a.getFlatGrid();
+		double[] vb = b.getFlatGrid();
+		for (int index = 0; index < va.length; index++)
+			va[index] += vb[index];
 	}
 	
 	/**
-	 * Subtract every entry of matrix b to the corresponding entry in matrix a.
+	 * Subtract every entry of grid b to the corresponding entry in grid a
+	 * (padding included).
 	 * 
 	 * @param a
 	 * @param b
 	 */
-	static void subtractTo(Double a[][][], Double b[][][]) {
-		for (int i = 0; i<a.length; i++)
-			for (int j = 0; j<a[i].length; j++)
-				for (int k = 0; k<a[i][j].length; k++)
-					a[i][j][k] -= b[i][j][k];
+	static void subtractTo(SoluteGrid a, SoluteGrid b) {
+		double[] va = a.getFlatGrid();
+		double[] vb = b.getFlatGrid();
+		for (int index = 0; index < va.length; index++)
+			va[index] -= vb[index];
 	}
 
 	/**
@@ -449,13 +544,21 @@ public abstract class MultigridUtils {
 	 * @param a
 	 * @return the norm of the matrix
 	 */
-	public static Double computeNorm(Double[][][] a)
+	public static Double computeNorm(SoluteGrid a)
 	{
-		Double norm = 0.0;
-		for (int i = 1; i<a.length-1; i++)
-			for (int j = 1; j<a[i].length-1; j++)
-				for (int k = 1; k<a[i][j].length-1; k++)
-					norm += ExtraMath.sq(a[i][j][k]);
+		double[] v = a.getFlatGrid();
+		int nI = a.getGridSizeI();
+		int nJ = a.getGridSizeJ();
+		int nK = a.getGridSizeK();
+		int index;
+		double norm = 0.0;
+		for (int i = 1; i <= nI; i++)
+			for (int j = 1; j <= nJ; j++)
+			{
+				index = a.index(i, j, 1);
+				for (int k = 1; k <= nK; k++, index++)
+					norm += v[index]*v[index];
+			}
 		return Math.sqrt(norm);
 	}
 
@@ -80,23 +80,29 @@ public class SinglegridPressure
 	/**
 	 * 
 	 */
-	private static Double[][][] u;
+	private static double[] u;
 	
 	/**
 	 * Not used (?)
 	 */
-	//private static Double[][][] rd;
+	//private static double[] rd;
 	
 	/**
 	 * 
 	 */
-	private static Double[][][] bl;
+	private static double[] bl;
 	
 	/**
 	 * 
 	 */
 	private static int _i, _j, _k;
 	
+	/**
+	 * Flat position of voxel (_i, _j, _k) and strides in the I and J
+	 * directions of the pressure grid.
+	 */
+	private static int _index, _sI, _sJ;
+	
 	/**
 	 * 
 	 */
@@ -105,8 +111,7 @@ public class SinglegridPressure
 	/**
 	 * 
 	 */
-	@SuppressWarnings("unused")
-	private static int maxOrder;
+	protected static int maxOrder;
 	
 	/**
 	 * 
@@ -157,8 +162,11 @@ public class SinglegridPressure
 		// red-black relaxation
 		// iterate through system
 		// isw, jsw and ksw alternate between values 1 and 2
-		u = _conc.grid;
-		bl = _bLayer.grid;
+		u = _conc.getFlatGrid();
+		bl = _bLayer.getFlatGrid();
+		_sI = _conc.getStrideI();
+		_sJ = _conc.getStrideJ();
+		double[] rhs = _rhs.getFlatGrid();
 		double lop, dlop, res;
 		double totalError = 0;
 		// bvm 22.12.09: now allows red-black for 2d AND 3d
@@ -174,7 +182,8 @@ public class SinglegridPressure
 				{
 					for (_i = isw; _i <= nI; _i += 2)
 					{
-						if (bl[_i][_j][_k]>=BLTHRESH)
+						_index = _conc.index(_i, _j, _k);
+						if (bl[_index]>=BLTHRESH)
 						{
 							// Case: Inside boundary layer
 							// Equations must be solved here
@@ -186,11 +195,11 @@ public class SinglegridPressure
 							// compute derivative of L operator
 							dlop = computeDiffLop(h2i);
 							// compute residual
-							res = (lop-_rhs.grid[_i][_j][_k])/dlop;
+							res = (lop-rhs[_index])/dlop;
 							totalError += lop;
 							// update concentration (test for NaN)
 							//LogFile.writeLog("NaN generated in multigrid solver "+"while computing rate for "+soluteName);
-							u[_i][_j][_k] -= res;
+							u[_index] -= res;
 						}
 					}
 				}
@@ -202,6 +211,17 @@ public class SinglegridPressure
 		return totalError;
 	}
 
+	/**
+	 * \brief Compute the pressure field by relaxing the grid a fixed number
+	 * of times.
+	 */
+	public void solve()
+	{
+		// TODO Rob 9 Feb 2015: make this parameter (50) settable in the protocol file
+		for ( int j = 0; j < 50; j++ )
+			relax();
+	}
+
 	//@SuppressWarnings("unused")
 	//private void fillDiff() {
 	//	_diff[0][1][1] = realGrid.diffusivity*rd[_i-1][_j][_k];
@@ -215,10 +235,10 @@ public class SinglegridPressure
 
 	private double computeLop(double h2i)
 	{
-		return ((2)*(u[_i+1][_j][_k]-u[_i][_j][_k])+(2)*(u[_i-1][_j][_k]-u[_i][_j][_k])+(2)
-		        *(u[_i][_j+1][_k]-u[_i][_j][_k])+(2)*(u[_i][_j-1][_k]-u[_i][_j][_k])+(2)
-		        *(u[_i][_j][_k+1]-u[_i][_j][_k])+(2)*(u[_i][_j][_k-1]-u[_i][_j][_k]))
-		        *h2i+_reac.grid[_i][_j][_k];
+		return ((2)*(u[_index+_sI]-u[_index])+(2)*(u[_index-_sI]-u[_index])+(2)
+		        *(u[_index+_sJ]-u[_index])+(2)*(u[_index-_sJ]-u[_index])+(2)
+		        *(u[_index+1]-u[_index])+(2)*(u[_index-1]-u[_index]))
+		        *h2i+_reac.getFlatGrid()[_index];
 	}
 	
 	/** 
@@ -254,16 +274,16 @@ public class SinglegridPressure
 		for (_i = 1; _i <= _conc.getGridSizeI(); _i++)
 			for (_j = 1; _j <= _conc.getGridSizeJ(); _j++)
 				for (_k = 1; _k <= _conc.getGridSizeK(); _k++)
-					if (_bLayer.grid[_i][_j][_k] <= BLTHRESH)
+					if (_bLayer.get(_i, _j, _k) <= BLTHRESH)
 					{
 						// outside the boundary layer (will not be solved)
-						_conc.grid[_i][_j][_k] = sBulk;
+						_conc.set(_i, _j, _k, sBulk);
 					}
 					else
 					{
 						// inside the biofilm (value is not really important
 						// now)
-						_conc.grid[_i][_j][_k] = sBulkMax;
+						_conc.set(_i, _j, _k, sBulkMax);
 					}
 	}
 	
@@ -290,7 +310,7 @@ public class SinglegridPressure
 	 * @param k
 	 * @return
 	 */
-	private double referenceIndex(int i, int j, int k)
+	protected double referenceIndex(int i, int j, int k)
 	{
 		if (_nK > 1)
 			return Math.min(i, Math.min(j, k)) - 1;
@@ -310,8 +310,8 @@ public class Bulk
 		{
 			//_reacRate[iGrid] = reacGrid[iGrid].getAverageChemo();
 			//_bulkValue[iGrid]=allSol[iGrid].getAverageChemo() ;
-			_reacRate[iGrid] = reacGrid[iGrid].grid[0][0][0];
-			_bulkValue[iGrid]=allSol[iGrid].grid[0][0][0] ;
+			_reacRate[iGrid] = reacGrid[iGrid].get(0, 0, 0);
+			_bulkValue[iGrid]=allSol[iGrid].get(0, 0, 0) ;
 		}
 
 		// bvm 30.4.2009: for pulsed bulk concentrations
@@ -552,7 +552,10 @@ public class Bulk
 		_j = aDC.j;
 		_k = aDC.k;
 		double D = aSG.getDiffusivity(); // this is already in units um2/hour
-		Double[][][] u = aSG.grid;       // units of fg/um3
+		double[] u = aSG.getFlatGrid();  // units of fg/um3
+		int index = aSG.index(_i, _j, _k);
+		int sI = aSG.getStrideI();
+		int sJ = aSG.getStrideJ();
 		double r = aSG.getResolution();  // units of um
 
 		// factor converts units: from fg/(um2.h) to g/(m2.h)
@@ -560,9 +563,9 @@ public class Bulk
 
 		// this should really be the product of grad(u) and the interface normal,
 		// but that normal doesn't seem very easy to compute
-		flow.x += -D*(u[_i+1][_j][_k]-u[_i-1][_j][_k])/(2*r)*factor;
-		flow.y += -D*(u[_i][_j+1][_k]-u[_i][_j-1][_k])/(2*r)*factor;
-		flow.z += -D*(u[_i][_j][_k+1]-u[_i][_j][_k-1])/(2*r)*factor;
+		flow.x += -D*(u[index+sI]-u[index-sI])/(2*r)*factor;
+		flow.y += -D*(u[index+sJ]-u[index-sJ])/(2*r)*factor;
+		flow.z += -D*(u[index+1]-u[index-1])/(2*r)*factor;
 	}
 
 	/**
@@ -12,6 +12,7 @@ package simulator.geometry;
 import java.util.*;
 
 import simulator.*;
+import simulator.agent.LocatedAgent;
 import simulator.agent.LocatedGroup;
 import simulator.geometry.boundaryConditions.*;
 import utils.ExtraMath;
@@ -123,6 +124,12 @@ public class Domain implements IsComputationDomain
 	 */
 	protected SoluteGrid _boundaryLayer;
 	
+	/**
+	 * Incremented each time refreshBioFilmGrids() changes the boundary layer.
+	 * Lets the solvers keep data derived from it until it changes.
+	 */
+	protected int _boundaryLayerVersion = 0;
+	
 	/**
 	 * 	Diffusivity of solutes in each area of this domain
 	 */
@@ -150,6 +157,80 @@ public class Domain implements IsComputationDomain
 	 */
 	protected Double _dilationBand;
 	
+	/**
+	 * Elements of the padded biomass grid that held biomass when the
+	 * boundary layer was last computed, indexed as in
+	 * _biomassGrid.getFlatGrid().
+	 */
+	protected BitSet _biomassOccupancy;
+	
+	/**
+	 * Lowest and highest I coordinates, in each column [j][k] of the padded
+	 * grid, of the elements whose boundary layer must be computed again:
+	 * those within _dilationBand of an element that gained or lost biomass.
+	 * Columns with nothing to compute have _dirtyLo greater than _dirtyHi.
+	 */
+	protected int[][] _dirtyLo, _dirtyHi;
+	
+	/**
+	 * Rows, in each column, where computeBoundaryLayerDistance() needs the
+	 * J transform: _dirtyLo/_dirtyHi widened along K.
+	 */
+	private int[][] _jPassLo, _jPassHi;
+	
+	/**
+	 * Rows, in each column, where computeBoundaryLayerDistance() needs the
+	 * I transform: _jPassLo/_jPassHi widened along J.
+	 */
+	private int[][] _iPassLo, _iPassHi;
+	
+	/**
+	 * Copy of one line of column ranges, used by widenColumns().
+	 */
+	private int[] _lineLo, _lineHi;
+	
+	/**
+	 * Interior elements, indexed as in _biomassGrid.getFlatGrid(), that the
+	 * boundary conditions overwrite when the padding of a grid is refreshed
+	 * (e.g. a cyclic boundary whose second plane is not at the edge of the
+	 * domain). Their values are computed again at each refresh.
+	 */
+	protected BitSet _boundaryElements;
+	
+	/**
+	 * Values of the boundary layer in _boundaryElements, in order, after the
+	 * last refresh.
+	 */
+	private double[] _boundaryElementLayer;
+	
+	/**
+	 * Squared distance, in grid elements, from each element of the padded
+	 * grid to the nearest biomass or carrier element, as computed by
+	 * computeBoundaryLayerDistance(). Element (i, j, k) is found at
+	 * (i*(_nJ+2) + j)*(_nK+2) + k in 3D, and at i*(_nJ+2) + j in 2D.
+	 */
+	protected double[] _sqDistance;
+	
+	/**
+	 * Values along one line of _sqDistance, used by the distance transform.
+	 */
+	private double[] _dtLine;
+	
+	/**
+	 * Distance transform of _dtLine.
+	 */
+	private double[] _dtOut;
+	
+	/**
+	 * Positions of the parabolas of the lower envelope of _dtLine.
+	 */
+	private int[] _dtSites;
+	
+	/**
+	 * Boundaries between the parabolas of the lower envelope of _dtLine.
+	 */
+	private double[] _dtBounds;
+	
 	/**
 	 * The ratio between the carrier surface (the substratum on which the
 	 * biofilm grows) and the bulk compartment volume. The physical volume of
@@ -481,23 +562,44 @@ public class Domain implements IsComputationDomain
 	{
 		for(int k = 1; k <= _boundaryLayer.getGridSizeK(); k++)
 			for(int j = 1; j <= _boundaryLayer.getGridSizeJ(); j++)
-			{
-				int i=1;
-				while(i <= _boundaryLayer.getGridSizeI() &&
-						 _boundaryLayer.getValueAt(i, j, k) > 0.0 )
-					i++;
-				// Assume now we've reached the point where 'i' has become 0,
-				// and thus we are out of the boundary layer. Subtract 1 such
-				// that the top of the layer is noted, not the outside of the
-				// layer.
-				_topOfBoundaryLayer[j][k] = i - 1;
-			}
+				calculateTopOfBoundaryLayer(j, k, 1);
+	}
+	
+	/**
+	 * \brief Update the top of the boundary layer in one column, after the
+	 * boundary layer of this column changed from the given I coordinate
+	 * upwards only.
+	 * 
+	 * The column is kept if its boundary layer ends below fromI, and scanned
+	 * again from fromI otherwise.
+	 * 
+	 * @param j	J coordinate of the column.
+	 * @param k	K coordinate of the column.
+	 * @param fromI	Lowest I coordinate (on the padded grid) at which the
+	 * boundary layer may have changed.
+	 */
+	protected void calculateTopOfBoundaryLayer(int j, int k, int fromI)
+	{
+		if ( fromI > 1 && _topOfBoundaryLayer[j][k] < fromI - 1 )
+			return;
+		int i = fromI;
+		while(i <= _boundaryLayer.getGridSizeI() &&
+				 _boundaryLayer.getValueAt(i, j, k) > 0.0 )
+			i++;
+		// Assume now we've reached the point where 'i' has become 0,
+		// and thus we are out of the boundary layer. Subtract 1 such
+		// that the top of the layer is noted, not the outside of the
+		// layer.
+		_topOfBoundaryLayer[j][k] = i - 1;
 	}
 	
 	/**
 	 * \brief Refresh relative diffusivity and boundary layer grids to ensure
 	 * biomass updated this step is included.
 	 * 
+	 * Only the elements of the grid within the boundary layer of an element
+	 * that gained or lost biomass since the last refresh are computed again.
+	 * 
 	 * Used in the creation of output files.
 	 */
 	@Override
@@ -506,23 +608,116 @@ public class Domain implements IsComputationDomain
 		// Build a grid with the concentration of agents skip the the
 		// refreshment of the position of the agents relative to the
 		// boundary layers.
-		_biomassGrid.setAllValueAt(0.0);
+		if ( Simulator.isChemostat )
+		{
+			_biomassGrid.setAllValueAt(0.0);
+			currentSim.agentGrid.fitAgentMassOnGrid( _biomassGrid );
+			return;
+		}
+		clearBiomassGrid();
 		currentSim.agentGrid.fitAgentMassOnGrid( _biomassGrid );
-		if ( ! Simulator.isChemostat )
+		
+		// Find the elements around those whose biomass occupation has changed
+		boolean occupancyChanged = updateBiomassOccupancy();
+		boolean layerChanged = false;
+		int n;
+		if ( occupancyChanged )
 		{
-			// Reset the grid
-			_boundaryLayer.setAllValueAt(0.0);
-			
-			// calculate the values in each of the grids
-			calculateComputationDomainGrids();
-			
-			_boundaryLayer.refreshBoundary();
-			
-			// Now calculate the positions that are at the top of the boundary layer
-			calculateTopOfBoundaryLayer();
-			_diffusivityGrid.refreshBoundary();
-			_biomassGrid.refreshBoundary();
+			// calculate the values in each of the grids there
+			for (n = _boundaryElements.nextSetBit(0); n >= 0;
+									n = _boundaryElements.nextSetBit(n + 1))
+				markElement(n, 0);
+			computeBoundaryLayerDistance();
+			layerChanged = updateComputationDomainGrids();
+		}
+		else
+		{
+			// the distances are unchanged: only the elements overwritten by
+			// the boundaries need their values back
+			int strideI = _biomassGrid.getStrideI();
+			int strideJ = _biomassGrid.getStrideJ();
+			for (n = _boundaryElements.nextSetBit(0); n >= 0;
+									n = _boundaryElements.nextSetBit(n + 1))
+				updateComputationDomainGrids(n / strideI,
+								(n % strideI) / strideJ, n % strideJ);
 		}
+		
+		// The padding is rebuilt from scratch, as the whole grid used to be
+		resetPadding(_boundaryLayer);
+		_boundaryLayer.refreshBoundary();
+		double[] bl = _boundaryLayer.getFlatGrid();
+		int m = 0;
+		boolean boundaryChanged = false;
+		for (n = _boundaryElements.nextSetBit(0); n >= 0;
+							n = _boundaryElements.nextSetBit(n + 1), m++)
+			if ( bl[n] != _boundaryElementLayer[m] )
+			{
+				_boundaryElementLayer[m] = bl[n];
+				boundaryChanged = true;
+			}
+		if ( layerChanged || boundaryChanged )
+			_boundaryLayerVersion++;
+		
+		// Now calculate the positions that are at the top of the boundary layer
+		if ( boundaryChanged )
+			calculateTopOfBoundaryLayer();
+		else if ( occupancyChanged )
+			for (int k = 1; k <= _nK; k++)
+				for (int j = 1; j <= _nJ; j++)
+					if ( _dirtyLo[j][k] <= _dirtyHi[j][k] )
+						calculateTopOfBoundaryLayer(j, k,
+												Math.max(1, _dirtyLo[j][k]));
+		_diffusivityGrid.refreshBoundary();
+		_biomassGrid.refreshBoundary();
+	}
+	
+	/**
+	 * \brief Set the biomass grid back to zero before the agents are fitted
+	 * on it.
+	 * 
+	 * Only the elements that held biomass at the last refresh, and those
+	 * written by refreshBoundary(), may be other than zero.
+	 */
+	protected void clearBiomassGrid()
+	{
+		double[] biomass = _biomassGrid.getFlatGrid();
+		for (int n = _biomassOccupancy.nextSetBit(0); n >= 0;
+								n = _biomassOccupancy.nextSetBit(n + 1))
+			biomass[n] = 0.0;
+		for (int n = _boundaryElements.nextSetBit(0); n >= 0;
+								n = _boundaryElements.nextSetBit(n + 1))
+			biomass[n] = 0.0;
+		resetPadding(_biomassGrid);
+	}
+	
+	/**
+	 * \brief Find the interior elements of a grid that its boundary
+	 * conditions overwrite when its padding is refreshed.
+	 * 
+	 * The boundaries are applied to a copy of the grid holding a different
+	 * value in each element.
+	 * 
+	 * @param aGrid	Grid whose boundaries are probed.
+	 * @return	Interior elements written, indexed as in aGrid.getFlatGrid().
+	 */
+	protected BitSet findBoundaryElements(SoluteGrid aGrid)
+	{
+		SoluteGrid probe = new SoluteGrid(aGrid);
+		double[] values = probe.getFlatGrid();
+		for (int n = 0; n < values.length; n++)
+			values[n] = n + 1.0;
+		probe.refreshBoundary();
+		BitSet out = new BitSet();
+		int n;
+		for (int i = 1; i <= _nI; i++)
+			for (int j = 1; j <= _nJ; j++)
+				for (int k = 1; k <= _nK; k++)
+				{
+					n = probe.index(i, j, k);
+					if ( values[n] != n + 1.0 )
+						out.set(n);
+				}
+		return out;
 	}
 	
 	/**
@@ -535,31 +730,259 @@ public class Domain implements IsComputationDomain
 	 */
 	public void calculateComputationDomainGrids()
 	{
-		for (int i = 1; i <= _nI; i++) 
-			for (int j = 1; j <= _nJ; j++) 
-				for (int k = 1; k <= _nK; k++)
-					if ( _biomassGrid.grid[i][j][k] > 0.0 )
-					{
-						/*
-						 * This is biomass.
-						 */
-						_boundaryLayer.grid[i][j][k] = 1.0;
-						_diffusivityGrid.grid[i][j][k] = _biofilmDiffusivity;
-					}
-					else
-					{
-						/*
-						 * This is liquid, check dilation sphere for biomass:
-						 * checkDilationRadius will set the value to 1 if it is
-						 * within the boundary layer.
-						 */
-						_boundaryLayer.grid[i][j][k] = checkDilationRadius(i, j, k);
-						//LogFile.writeLog("_boundaryLayer["+i+"]["+j+"]["+k+"] = "+_boundaryLayer.grid[i][j][k]);
-						if ( _domainGrid.grid[i][j][k] == -1.0 )
-							_diffusivityGrid.grid[i][j][k] = Double.MIN_VALUE;
-						else
-							_diffusivityGrid.grid[i][j][k] = 1.0;
-					}
+		_biomassOccupancy = new BitSet();
+		double[] biomass = _biomassGrid.getFlatGrid();
+		for (int n = 0; n < biomass.length; n++)
+			if ( biomass[n] > 0.0 )
+				_biomassOccupancy.set(n);
+		_boundaryElements = findBoundaryElements(_biomassGrid);
+		_boundaryElementLayer = new double[_boundaryElements.cardinality()];
+		Arrays.fill(_boundaryElementLayer, Double.NaN);
+		allocateColumns();
+		for (int j = 0; j < _dirtyLo.length; j++)
+		{
+			Arrays.fill(_dirtyLo[j], 1);
+			Arrays.fill(_dirtyHi[j], _nI);
+		}
+		computeBoundaryLayerDistance();
+		if ( updateComputationDomainGrids() )
+			_boundaryLayerVersion++;
+	}
+	
+	/**
+	 * \brief Allocate the column ranges used to limit the computation of
+	 * the boundary layer.
+	 */
+	private void allocateColumns()
+	{
+		if ( _dirtyLo != null )
+			return;
+		int nJ = _nJ + 2;
+		int nK = _nK + 2;
+		_dirtyLo = new int[nJ][nK];
+		_dirtyHi = new int[nJ][nK];
+		_jPassLo = new int[nJ][nK];
+		_jPassHi = new int[nJ][nK];
+		_iPassLo = new int[nJ][nK];
+		_iPassHi = new int[nJ][nK];
+		_lineLo = new int[Math.max(nJ, nK)];
+		_lineHi = new int[Math.max(nJ, nK)];
+	}
+	
+	/**
+	 * \brief Record which elements of the biomass grid hold biomass, and
+	 * find the elements whose boundary layer may have changed since the last
+	 * call.
+	 * 
+	 * Elements gain or lose biomass when agents are born, move, die or
+	 * detach; a change can affect the boundary layer up to _dilationBand
+	 * away. Elements that lost biomass are among those that held some, and
+	 * elements that gained biomass hold an agent, so the grid is not scanned.
+	 * The elements found are stored in _dirtyLo and _dirtyHi.
+	 * 
+	 * @return	Whether any element gained or lost biomass.
+	 */
+	protected boolean updateBiomassOccupancy()
+	{
+		allocateColumns();
+		for (int j = 0; j < _dirtyLo.length; j++)
+		{
+			Arrays.fill(_dirtyLo[j], Integer.MAX_VALUE);
+			Arrays.fill(_dirtyHi[j], Integer.MIN_VALUE);
+		}
+		double[] biomass = _biomassGrid.getFlatGrid();
+		int band = (int) Math.floor(_dilationBand/_resolution);
+		boolean changed = false;
+		for (int n = _biomassOccupancy.nextSetBit(0); n >= 0;
+								n = _biomassOccupancy.nextSetBit(n + 1))
+			if ( biomass[n] <= 0.0 )
+			{
+				_biomassOccupancy.clear(n);
+				markElement(n, band);
+				changed = true;
+			}
+		DiscreteVector dC;
+		int n;
+		for ( LocatedGroup aGroup : currentSim.agentGrid.getShovingGrid() )
+			for ( LocatedAgent aLoc : aGroup.group )
+			{
+				dC = _biomassGrid.getDiscreteCoordinates(aLoc.getLocation());
+				n = _biomassGrid.index(dC.i + 1, dC.j + 1, dC.k + 1);
+				if ( biomass[n] > 0.0 && ! _biomassOccupancy.get(n) )
+				{
+					_biomassOccupancy.set(n);
+					markElement(n, band);
+					changed = true;
+				}
+			}
+		if ( changed )
+		{
+			widenColumns(_dirtyLo, _dirtyHi, true);
+			if ( _nK > 1 )
+				widenColumns(_dirtyLo, _dirtyHi, false);
+		}
+		return changed;
+	}
+	
+	/**
+	 * \brief Add the rows within a band of an element, in its column, to
+	 * those to compute again.
+	 * 
+	 * @param n	Index of the element in _biomassGrid.getFlatGrid().
+	 * @param band	Number of rows on each side of the element.
+	 */
+	private void markElement(int n, int band)
+	{
+		int strideI = _biomassGrid.getStrideI();
+		int strideJ = _biomassGrid.getStrideJ();
+		int i = n / strideI;
+		int j = (n % strideI) / strideJ;
+		int k = n % strideJ;
+		_dirtyLo[j][k] = Math.min(_dirtyLo[j][k], i - band);
+		_dirtyHi[j][k] = Math.max(_dirtyHi[j][k], i + band);
+	}
+	
+	/**
+	 * \brief Widen the row ranges of the columns by _dilationBand along J or
+	 * K: each column gets the hull of the ranges of the columns within the
+	 * band, cyclically over the padded grid as in checkDilationRadius().
+	 * 
+	 * @param lo	Lowest row of each column [j][k], updated.
+	 * @param hi	Highest row of each column [j][k], updated.
+	 * @param alongJ	True to widen along J, false to widen along K.
+	 */
+	private void widenColumns(int[][] lo, int[][] hi, boolean alongJ)
+	{
+		int band = (int) Math.floor(_dilationBand/_resolution);
+		int nJ = lo.length;
+		int nK = lo[0].length;
+		int length = alongJ ? nJ : nK;
+		int lines = alongJ ? nK : nJ;
+		int c;
+		for (int line = 0; line < lines; line++)
+		{
+			for (int m = 0; m < length; m++)
+			{
+				_lineLo[m] = alongJ ? lo[m][line] : lo[line][m];
+				_lineHi[m] = alongJ ? hi[m][line] : hi[line][m];
+			}
+			for (int m = 0; m < length; m++)
+			{
+				int rowLo = Integer.MAX_VALUE;
+				int rowHi = Integer.MIN_VALUE;
+				for (int d = -Math.min(band, length/2);
+								d <= Math.min(band, (length - 1)/2); d++)
+				{
+					c = Math.floorMod(m + d, length);
+					rowLo = Math.min(rowLo, _lineLo[c]);
+					rowHi = Math.max(rowHi, _lineHi[c]);
+				}
+				if ( alongJ )
+				{
+					lo[m][line] = rowLo;
+					hi[m][line] = rowHi;
+				}
+				else
+				{
+					lo[line][m] = rowLo;
+					hi[line][m] = rowHi;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * \brief Copy the row ranges of the columns.
+	 */
+	private static void copyColumns(int[][] fromLo, int[][] fromHi,
+												int[][] toLo, int[][] toHi)
+	{
+		for (int j = 0; j < fromLo.length; j++)
+		{
+			System.arraycopy(fromLo[j], 0, toLo[j], 0, fromLo[j].length);
+			System.arraycopy(fromHi[j], 0, toHi[j], 0, fromHi[j].length);
+		}
+	}
+	
+	/**
+	 * \brief Set the padding of a grid back to zero.
+	 * 
+	 * @param aGrid	Grid whose padding is reset.
+	 */
+	protected void resetPadding(SpatialGrid aGrid)
+	{
+		int nI = _nI + 2;
+		int nJ = _nJ + 2;
+		int nK = _nK + 2;
+		for (int i = 0; i < nI; i++)
+			for (int j = 0; j < nJ; j++)
+				if ( i == 0 || i == nI - 1 || j == 0 || j == nJ - 1 )
+					for (int k = 0; k < nK; k++)
+						aGrid.set(i, j, k, 0.0);
+				else
+				{
+					aGrid.set(i, j, 0, 0.0);
+					aGrid.set(i, j, nK - 1, 0.0);
+				}
+	}
+	
+	/**
+	 * \brief Set the boundary layer and diffusivity of the elements in
+	 * _dirtyLo/_dirtyHi, from the biomass grid and the distances computed by
+	 * computeBoundaryLayerDistance().
+	 * 
+	 * @return	Whether the boundary layer changed.
+	 */
+	protected boolean updateComputationDomainGrids()
+	{
+		boolean changed = false;
+		for (int j = 1; j <= _nJ; j++) 
+			for (int k = 1; k <= _nK; k++)
+				for (int i = Math.max(1, _dirtyLo[j][k]);
+							i <= Math.min(_nI, _dirtyHi[j][k]); i++) 
+					if ( updateComputationDomainGrids(i, j, k) &&
+						! _boundaryElements.get(_boundaryLayer.index(i, j, k)) )
+						changed = true;
+		return changed;
+	}
+	
+	/**
+	 * \brief Set the boundary layer and diffusivity of one element.
+	 * 
+	 * @param i	I coordinate of the element (on the padded grid).
+	 * @param j	J coordinate of the element (on the padded grid).
+	 * @param k	K coordinate of the element (on the padded grid).
+	 * @return	Whether its boundary layer value changed.
+	 */
+	protected boolean updateComputationDomainGrids(int i, int j, int k)
+	{
+		double value;
+		if ( _biomassGrid.get(i, j, k) > 0.0 )
+		{
+			/*
+			 * This is biomass.
+			 */
+			value = 1.0;
+			_diffusivityGrid.set(i, j, k, _biofilmDiffusivity);
+		}
+		else
+		{
+			/*
+			 * This is liquid, check dilation sphere for biomass:
+			 * isInBoundaryLayer will be true if it is within the
+			 * boundary layer.
+			 */
+			value = isInBoundaryLayer(i, j, k) ? 1.0 : 0.0;
+			//LogFile.writeLog("_boundaryLayer["+i+"]["+j+"]["+k+"] = "+value);
+			if ( _domainGrid.get(i, j, k) == -1.0 )
+				_diffusivityGrid.set(i, j, k, Double.MIN_VALUE);
+			else
+				_diffusivityGrid.set(i, j, k, 1.0);
+		}
+		if ( _boundaryLayer.get(i, j, k) == value )
+			return false;
+		_boundaryLayer.set(i, j, k, value);
+		return true;
 	}
 
 	
@@ -572,14 +995,14 @@ public class Domain implements IsComputationDomain
 	@Override
 	public LinkedList<DiscreteVector> getBorder()
 	{
-		Double v;
+		double v;
 		LinkedList<DiscreteVector> border = new LinkedList<DiscreteVector>();
 		for (_i = 1; _i<_nI+1; _i++)
 			for (_j = 1; _j<_nJ+1; _j++)
 				for (_k = 1; _k<_nK+1; _k++)
 				{
-					v = _boundaryLayer.grid[_i][_j][_k];
-					if ( v.equals(1.0) && bdryHasFreeNbh() )
+					v = _boundaryLayer.get(_i, _j, _k);
+					if ( v == 1.0 && bdryHasFreeNbh() )
 					{
 						// add the location if it has biomass or is in the boundary layer (v==1) and
 						// if the neighboring points are free (not biomass or bdry layer)
@@ -638,7 +1061,7 @@ public class Domain implements IsComputationDomain
 			for (int i = -1; i < 2; i++)
 				for (int j = -1; j < 2; j++)
 					for (int k = -1; k < 2; k++)
-						if (_boundaryLayer.grid[_i+i][_j+j][_k+k].equals(0.0))
+						if (_boundaryLayer.get(_i+i, _j+j, _k+k) == 0.0)
 							return true;
 			return false;
 		}
@@ -646,15 +1069,271 @@ public class Domain implements IsComputationDomain
 		{
 			for (int i = -1; i < 2; i++)
 				for (int j = -1; j < 2; j++)
-					if (_boundaryLayer.grid[_i+i][_j+j][1].equals(0.0))
+					if (_boundaryLayer.get(_i+i, _j+j, 1) == 0.0)
 						return true;
 			return false;
 		}
 	}
 	
+	/**
+	 * \brief Whether a liquid element of the grid is within the boundary
+	 * layer, i.e. within _dilationBand of biomass or carrier.
+	 * 
+	 * Gives the same answer as checkDilationRadius(), using the distances
+	 * computed by computeBoundaryLayerDistance(). As in checkDilationRadius(),
+	 * a 3D element does not count itself: if it is carrier, the nearest other
+	 * biomass or carrier element is looked for among its neighbours, and only
+	 * if none is found there is the whole sphere checked.
+	 * 
+	 * @param n	The N coordinate of the element on the padded grid.
+	 * @param m	The M coordinate of the element on the padded grid.
+	 * @param l	The L coordinate of the element on the padded grid.
+	 * @return	True if the element is in the boundary layer.
+	 */
+	protected Boolean isInBoundaryLayer(int n, int m, int l)
+	{
+		if ( _dilationBand == 0.0 )
+			return false;
+		double sqBand = ExtraMath.sq(_dilationBand/_resolution);
+		double sqDist = _sqDistance[distanceIndex(n, m, l)];
+		if ( sqDist > sqBand )
+			return false;
+		if ( _nK == 1 || sqDist > 0.0 )
+			return true;
+		int jIndex, kIndex;
+		for (int i = -1; i <= 1; i++)
+			for (int j = -1; j <= 1; j++)
+				for (int k = -1; k <= 1; k++)
+					if ( ((i != 0) || (j != 0) || (k != 0)) &&
+										i*i + j*j + k*k <= sqBand )
+					{
+						jIndex = cyclicIndex(m+j, _nJ+2);
+						kIndex = cyclicIndex(l+k, _nK+2);
+						if ( isDilationSource(n+i, jIndex, kIndex) )
+							return true;
+					}
+		/*
+		 * A band smaller than the diagonal of an element lies within the
+		 * neighbours checked above.
+		 */
+		if ( sqBand < 3.0 )
+			return false;
+		return checkDilationRadius(n, m, l) == 1.0;
+	}
+	
+	/**
+	 * \brief Whether an element of the padded grid counts as biomass or
+	 * carrier when computing the boundary layer.
+	 * 
+	 * As in checkDilationRadius(), only the elements with an N coordinate
+	 * between 0 and _nI-1 count.
+	 * 
+	 * @param n	The N coordinate of the element on the padded grid.
+	 * @param m	The M coordinate of the element on the padded grid.
+	 * @param l	The L coordinate of the element on the padded grid.
+	 * @return	True if the element has biomass or is carrier.
+	 */
+	protected Boolean isDilationSource(int n, int m, int l)
+	{
+		return ( n >= 0 ) && ( n < _nI ) &&
+				( _biomassGrid.get(n, m, l) > 0.0 ||
+						_domainGrid.get(n, m, l) == 0.0 );
+	}
+	
+	/**
+	 * \brief Position of an element of the padded grid in _sqDistance.
+	 * 
+	 * @param n	The N coordinate of the element on the padded grid.
+	 * @param m	The M coordinate of the element on the padded grid.
+	 * @param l	The L coordinate of the element on the padded grid (1 in 2D).
+	 * @return	Index of this element in _sqDistance.
+	 */
+	protected final int distanceIndex(int n, int m, int l)
+	{
+		return ( _nK == 1 ) ? n*(_nJ+2) + m : (n*(_nJ+2) + m)*(_nK+2) + l;
+	}
+	
+	/**
+	 * \brief Compute the squared distance from each element of the grid to
+	 * the nearest biomass or carrier element.
+	 * 
+	 * Exact Euclidean distance transform, computed one direction after the
+	 * other (Felzenszwalb & Huttenlocher 2012): its cost does not depend on
+	 * the thickness of the boundary layer. Distances are in grid elements.
+	 * As in checkDilationRadius(), the J and K directions are cyclic over the
+	 * padded grid, and the I direction is not. Only the elements in
+	 * _dirtyLo/_dirtyHi are computed, and only distances up to _dilationBand
+	 * are exact: larger ones may be overestimated. Each pass is limited to
+	 * the lines holding an element within the band of those, since elements
+	 * further away cannot bring a distance within the band.
+	 */
+	protected void computeBoundaryLayerDistance()
+	{
+		int nI = _nI + 2;
+		int nJ = _nJ + 2;
+		int nK = ( _nK == 1 ) ? 1 : _nK + 2;
+		int kOffset = ( _nK == 1 ) ? 1 : 0;
+		if ( _sqDistance == null )
+		{
+			int n = 3*Math.max(nI, Math.max(nJ, nK));
+			_sqDistance = new double[nI*nJ*nK];
+			_dtLine = new double[n];
+			_dtOut = new double[n];
+			_dtSites = new int[n];
+			_dtBounds = new double[n+1];
+		}
+		/*
+		 * The J transform is needed in the rows of the elements to compute
+		 * and of those within the band along K, and the I transform in these
+		 * rows and in those within the band along J.
+		 */
+		copyColumns(_dirtyLo, _dirtyHi, _jPassLo, _jPassHi);
+		if ( nK > 1 )
+			widenColumns(_jPassLo, _jPassHi, false);
+		copyColumns(_jPassLo, _jPassHi, _iPassLo, _iPassHi);
+		widenColumns(_iPassLo, _iPassHi, true);
+		/*
+		 * I direction: distance to the nearest element below or above, among
+		 * those close enough to matter.
+		 */
+		int band = (int) Math.floor(_dilationBand/_resolution);
+		int from, to, last;
+		for (int j = 0; j < nJ; j++)
+			for (int k = 0; k < nK; k++)
+			{
+				if ( _iPassLo[j][k+kOffset] > _iPassHi[j][k+kOffset] )
+					continue;
+				from = Math.max(0, _iPassLo[j][k+kOffset] - band);
+				to = Math.min(nI - 1, _iPassHi[j][k+kOffset] + band);
+				last = -1;
+				for (int i = from; i <= to; i++)
+				{
+					if ( isDilationSource(i, j, k+kOffset) )
+						last = i;
+					_dtLine[i] = ( last < 0 ) ? Double.POSITIVE_INFINITY : i - last;
+				}
+				last = -1;
+				for (int i = to; i >= from; i--)
+				{
+					if ( isDilationSource(i, j, k+kOffset) )
+						last = i;
+					if ( last >= 0 )
+						_dtLine[i] = Math.min(_dtLine[i], last - i);
+					_sqDistance[(i*nJ + j)*nK + k] = _dtLine[i]*_dtLine[i];
+				}
+			}
+		/*
+		 * J direction, in the rows needed in each K plane.
+		 */
+		int iMin, iMax;
+		for (int k = 0; k < nK; k++)
+		{
+			iMin = Integer.MAX_VALUE;
+			iMax = Integer.MIN_VALUE;
+			for (int j = 0; j < nJ; j++)
+			{
+				iMin = Math.min(iMin, _jPassLo[j][k+kOffset]);
+				iMax = Math.max(iMax, _jPassHi[j][k+kOffset]);
+			}
+			for (int i = Math.max(1, iMin); i <= Math.min(_nI, iMax); i++)
+			{
+				for (int j = 0; j < nJ; j++)
+					_dtLine[j] = _sqDistance[(i*nJ + j)*nK + k];
+				transformCyclicLine(nJ);
+				for (int j = 0; j < nJ; j++)
+					_sqDistance[(i*nJ + j)*nK + k] = _dtLine[j];
+			}
+		}
+		if ( nK == 1 )
+			return;
+		/*
+		 * K direction in 3D, in the rows to compute in each J plane.
+		 */
+		for (int j = 1; j <= _nJ; j++)
+		{
+			iMin = Integer.MAX_VALUE;
+			iMax = Integer.MIN_VALUE;
+			for (int k = 1; k <= _nK; k++)
+			{
+				iMin = Math.min(iMin, _dirtyLo[j][k]);
+				iMax = Math.max(iMax, _dirtyHi[j][k]);
+			}
+			for (int i = Math.max(1, iMin); i <= Math.min(_nI, iMax); i++)
+			{
+				System.arraycopy(_sqDistance, (i*nJ + j)*nK, _dtLine, 0, nK);
+				transformCyclicLine(nK);
+				System.arraycopy(_dtLine, 0, _sqDistance, (i*nJ + j)*nK, nK);
+			}
+		}
+	}
+	
+	/**
+	 * \brief One-dimensional squared distance transform of the first n
+	 * values of _dtLine, seen as a cyclic line.
+	 * 
+	 * Builds the lower envelope of the parabolas rooted at three copies of
+	 * the line, so that the boundary is crossed at most once, as in
+	 * cyclicIndex(). The result replaces the values in _dtLine.
+	 * 
+	 * @param n	Length of the line.
+	 */
+	private void transformCyclicLine(int n)
+	{
+		int k = -1;
+		int p;
+		double f, s;
+		for (int q = 0; q < 3*n; q++)
+		{
+			f = _dtLine[q % n] + q*q;
+			if ( f == Double.POSITIVE_INFINITY )
+				continue;
+			if ( k < 0 )
+			{
+				k = 0;
+				_dtSites[0] = q;
+				_dtBounds[0] = Double.NEGATIVE_INFINITY;
+				_dtBounds[1] = Double.POSITIVE_INFINITY;
+				continue;
+			}
+			/*
+			 * Remove the parabolas hidden by the one rooted at q.
+			 */
+			p = _dtSites[k];
+			s = ( f - (_dtLine[p % n] + p*p) ) / (2.0*(q - p));
+			while ( s <= _dtBounds[k] )
+			{
+				k--;
+				p = _dtSites[k];
+				s = ( f - (_dtLine[p % n] + p*p) ) / (2.0*(q - p));
+			}
+			k++;
+			_dtSites[k] = q;
+			_dtBounds[k] = s;
+			_dtBounds[k+1] = Double.POSITIVE_INFINITY;
+		}
+		/*
+		 * No biomass nor carrier on this line.
+		 */
+		if ( k < 0 )
+			return;
+		k = 0;
+		for (int q = n; q < 2*n; q++)
+		{
+			while ( _dtBounds[k+1] < q )
+				k++;
+			p = _dtSites[k];
+			_dtOut[q-n] = (q - p)*(q - p) + _dtLine[p % n];
+		}
+		System.arraycopy(_dtOut, 0, _dtLine, 0, n);
+	}
+	
 	/**
 	 * \brief Sets the value of a grid space in the boundary layer, indicating
 	 * whether the space is part of the boundary layer, or biomass is present.
+	 * 
+	 * Scans the whole dilation sphere; isInBoundaryLayer() gives the same
+	 * answer from a distance transform and only falls back on this method for
+	 * isolated carrier elements.
 	 *  
 	 * @param n	The N coordinate of the grid to check whether this square is
 	 * in the boundary.
@@ -699,9 +1378,9 @@ public class Domain implements IsComputationDomain
 				{
 						// 2D case
 						jIndex = cyclicIndex(m+j,_nJ+2);
-						if (_biomassGrid.grid[n+i][jIndex][1] > 0.0) 
+						if (_biomassGrid.get(n+i, jIndex, 1) > 0.0) 
 							return 1.0;
-						if (_domainGrid.grid[n+i][jIndex][1] == 0.0)
+						if (_domainGrid.get(n+i, jIndex, 1) == 0.0)
 							return 1.0;
 				}
 				else
@@ -719,9 +1398,9 @@ public class Domain implements IsComputationDomain
 					{
 								jIndex = cyclicIndex(m+j, _nJ+2);
 								kIndex = cyclicIndex(l+k, _nK+2);
-								if (_biomassGrid.grid[n+i][jIndex][kIndex] > 0.0)
+								if (_biomassGrid.get(n+i, jIndex, kIndex) > 0.0)
 										return 1.0;
-								if (_domainGrid.grid[n+i][jIndex][kIndex] == 0.0)
+								if (_domainGrid.get(n+i, jIndex, kIndex) == 0.0)
 									return 1.0;
 					}
 				}
@@ -835,6 +1514,19 @@ public class Domain implements IsComputationDomain
 		return _boundaryLayer;
 	}
 	
+	/**
+	 * \brief Return the number of times the boundary layer has changed.
+	 * 
+	 * Two equal values mean that the boundary layer did not change in
+	 * between.
+	 * 
+	 * @return	Version of the boundary layer grid.
+	 */
+	public int getBoundaryLayerVersion()
+	{
+		return _boundaryLayerVersion;
+	}
+	
 	/**
 	 * \brief Return the biomass grid associated with this domain.
 	 * 
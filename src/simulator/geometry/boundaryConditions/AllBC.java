@@ -52,18 +52,6 @@ public abstract class AllBC
 	 * Boolean noting whether this boundary can contain active solute.
 	 */
 	protected boolean	activeForSolute	= true;
-	
-	/* _________________ INTERNAL TEMPRARY VARIABLES ______________________ */
-	/**
-	 * Discrete coordinates of a voxel inside the computation domain but along
-	 * the boundary.
-	 */ 
-	protected static DiscreteVector dcIn	= new DiscreteVector();
-	
-	/**
-	 * Discrete coordinates of the voxel in front of the one outside the boundary
-	 */
-	protected static DiscreteVector dcOut	= new DiscreteVector();
 
 	/* ________________________ CONSTRUCTION METHODS ________________________ */
 
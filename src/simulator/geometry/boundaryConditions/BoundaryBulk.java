@@ -15,6 +15,7 @@ import utils.LogFile;
 import utils.XMLParser;
 import simulator.*;
 import simulator.geometry.*;
+import simulator.geometry.shape.IsShape.Course;
 import simulator.agent.LocatedAgent;
 import simulator.agent.LocatedGroup;
 
@@ -40,11 +41,6 @@ import simulator.agent.LocatedGroup;
  */
 public class BoundaryBulk extends ConnectedBoundary
 {
-	/**
-	 * Value of solute in the bulk.
-	 */
-	static Double	bulkValue;
-	
 	/**
 	 * \brief Initialises the boundary from information contained in the
 	 * simulation protocol file.
@@ -92,13 +88,13 @@ public class BoundaryBulk extends ConnectedBoundary
 	public void refreshBoundary(SoluteGrid aSoluteGrid) 
 	{
 		// Store the concentration in the bulk
-		bulkValue = _connectedBulk.getValue(aSoluteGrid.soluteIndex);
+		Double bulkValue = _connectedBulk.getValue(aSoluteGrid.soluteIndex);
 		
 		// Initialise the course along the shape of the boundary
-		_myShape.readyToFollowBoundary(aSoluteGrid);
+		Course course = _myShape.readyToFollowBoundary(aSoluteGrid);
 
-		while ( _myShape.followBoundary(dcIn, dcOut, aSoluteGrid) )
-			aSoluteGrid.setValueAt(bulkValue, dcOut);
+		while ( _myShape.followBoundary(course) )
+			aSoluteGrid.setValueAt(bulkValue, course.dcOut);
 	}
 	
 	/**
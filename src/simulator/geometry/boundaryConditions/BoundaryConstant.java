@@ -17,6 +17,7 @@ import simulator.SoluteGrid;
 import simulator.agent.LocatedAgent;
 import simulator.agent.LocatedGroup;
 import simulator.geometry.*;
+import simulator.geometry.shape.IsShape.Course;
 
 /**
  * \brief BoundaryConstant : the concentration on the boundary is fixed by a
@@ -83,10 +84,10 @@ public class BoundaryConstant extends ExternalBoundary
 		Double bulkValue = _connectedBulk.getValue(aSoluteGrid.soluteIndex);
 		
 		// Initialise the course along the shape of the boundary
-		_myShape.readyToFollowBoundary(aSoluteGrid);
+		Course course = _myShape.readyToFollowBoundary(aSoluteGrid);
 		
-		while (_myShape.followBoundary(dcIn, dcOut, aSoluteGrid))
-			aSoluteGrid.setValueAt(bulkValue, dcOut);
+		while (_myShape.followBoundary(course))
+			aSoluteGrid.setValueAt(bulkValue, course.dcOut);
 	}
 	
 	/**
@@ -20,6 +20,7 @@ import simulator.agent.LocatedAgent;
 import simulator.agent.LocatedGroup;
 import simulator.geometry.*;
 import simulator.geometry.shape.*;
+import simulator.geometry.shape.IsShape.Course;
 import utils.LogFile;
 import utils.XMLParser;
 
@@ -55,12 +56,6 @@ public class BoundaryCyclic extends ExternalBoundary
 	 */
 	private static ContinuousVector vectorIn;
 	
-	/**
-	 * Used to translate a set of points to their respective points on the
-	 * opposite side of the boundary.
-	 */
-	private static DiscreteVector translator = new DiscreteVector();
-	
 	/**
 	 * \brief Initialises the boundary from information contained in the
 	 * simulation protocol file.
@@ -99,10 +94,10 @@ public class BoundaryCyclic extends ExternalBoundary
 	 * boundary.
 	 * @param aDomain	The domain which this boundary is associated with.
 	 */
-	@Override
-	public void readGeometry(XMLParser geometryRoot, Domain aDomain)
+	@Override
+	public void readGeometry(XMLParser geometryRoot, Domain aDomain)
 	{
-		List<Element> shapeList = geometryRoot.getChildrenElements("shape");
+		List<Element> shapeList = geometryRoot.getChildrenElements("shape");
 		String className;
 		try
 		{
@@ -206,6 +201,12 @@ public class BoundaryCyclic extends ExternalBoundary
 		 * 2D: activeForSolute is false for x0y/xNy and true for x0z/xNz.
 		 * 3D: activeForSolute is always true for cyclic boundaries.
 		 */
+		/*
+		 * Used to translate a set of points to their respective points on the
+		 * opposite side of the boundary.
+		 */
+		DiscreteVector translator = new DiscreteVector();
+		Course course;
 		if ( activeForSolute )
 		{
 			// Build translator between both boundaries
@@ -214,32 +215,35 @@ public class BoundaryCyclic extends ExternalBoundary
 			translator.set( _myOppShape.getNormalDiscrete() );
 			translator.times(k - 1);
 			// Initialise the course along the shape of the boundary
-			_myShape.readyToFollowBoundary(aSoluteGrid);
+			course = _myShape.readyToFollowBoundary(aSoluteGrid);
 			/*
 			 * Send a point belonging to the boundary and the closest point
 			 * outside the domain.
 			 */
-			while (_myShape.followBoundary(dcIn, dcOut, aSoluteGrid))
+			while (_myShape.followBoundary(course))
 			{
-				dcIn.add(translator);
-				aSoluteGrid.setValueAt(aSoluteGrid.getValueAt(dcIn), dcOut);
+				course.dcIn.add(translator);
+				aSoluteGrid.setValueAt(aSoluteGrid.getValueAt(course.dcIn),
+																course.dcOut);
 			}
 		}
 		else
 		{
 			// Initialise the course along the shape of the boundary.
-			_myShape.readyToFollowBoundary(aSoluteGrid);
+			course = _myShape.readyToFollowBoundary(aSoluteGrid);
 			translator.set( _myOppShape.getNormalDiscrete() );
 			translator.times(2);
 			/* 
 			 * Send a point belonging to the boundary and the closest point
 			 * outside the domain.
 			 */
-			while ( _myShape.followBoundary(dcIn, dcOut, aSoluteGrid) )
+			while ( _myShape.followBoundary(course) )
 			{
-				aSoluteGrid.setValueAt(aSoluteGrid.getValueAt(dcIn), dcOut);
-				dcOut.add(translator);
-				aSoluteGrid.setValueAt(aSoluteGrid.getValueAt(dcIn), dcOut);
+				aSoluteGrid.setValueAt(aSoluteGrid.getValueAt(course.dcIn),
+																course.dcOut);
+				course.dcOut.add(translator);
+				aSoluteGrid.setValueAt(aSoluteGrid.getValueAt(course.dcIn),
+																course.dcOut);
 			}
 		}
 	}
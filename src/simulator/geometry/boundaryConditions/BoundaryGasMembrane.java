@@ -36,6 +36,7 @@ import simulator.SoluteGrid;
 import simulator.agent.LocatedAgent;
 import simulator.agent.LocatedGroup;
 import simulator.geometry.*;
+import simulator.geometry.shape.IsShape.Course;
 
 /**
  * \brief BoundaryMembrane : defines a boundary impermeable to everything
@@ -134,9 +135,9 @@ public class BoundaryGasMembrane extends ConnectedBoundary
 													aSoluteGrid.diffusivity;
 		}
 		// Apply or restore standard relative diffusivity
-		_myShape.readyToFollowBoundary(relDif);
-		while (_myShape.followBoundary(dcIn, dcOut, relDif))
-			relDif.setValueAt(value, dcOut);
+		Course course = _myShape.readyToFollowBoundary(relDif);
+		while (_myShape.followBoundary(course))
+			relDif.setValueAt(value, course.dcOut);
 	}
 
 	/**
@@ -151,18 +152,19 @@ public class BoundaryGasMembrane extends ConnectedBoundary
 	public void refreshBoundary(SoluteGrid aSoluteGrid)
 	{
 		// Initialise the course along the shape of the boundary
-		_myShape.readyToFollowBoundary(aSoluteGrid);
+		Course course = _myShape.readyToFollowBoundary(aSoluteGrid);
 		if ( isPermeableTo[aSoluteGrid.soluteIndex] )
-			while (_myShape.followBoundary(dcIn, dcOut, aSoluteGrid))
+			while (_myShape.followBoundary(course))
 			{
 				aSoluteGrid.setValueAt(_connectedBulk.getValue(
-											aSoluteGrid.soluteIndex), dcOut);
+								aSoluteGrid.soluteIndex), course.dcOut);
 			}
 		else
 		{
 			// The membrane has the same behaviour than a zero-flux boundary
-			while (_myShape.followBoundary(dcIn, dcOut, aSoluteGrid))
-				aSoluteGrid.setValueAt(aSoluteGrid.getValueAt(dcIn), dcOut);
+			while (_myShape.followBoundary(course))
+				aSoluteGrid.setValueAt(aSoluteGrid.getValueAt(course.dcIn),
+																course.dcOut);
 		}
 	}
 	
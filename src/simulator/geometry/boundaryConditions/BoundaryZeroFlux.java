@@ -16,6 +16,7 @@ import simulator.SoluteGrid;
 import simulator.agent.LocatedAgent;
 import simulator.agent.LocatedGroup;
 import simulator.geometry.*;
+import simulator.geometry.shape.IsShape.Course;
 import utils.XMLParser;
 
 /**
@@ -68,13 +69,14 @@ public class BoundaryZeroFlux  extends ExternalBoundary
 	public void refreshBoundary(SoluteGrid aSoluteGrid) 
 	{
 		// Initialize the course along the shape of the boundary.
-		_myShape.readyToFollowBoundary(aSoluteGrid);
+		Course course = _myShape.readyToFollowBoundary(aSoluteGrid);
 		/*
 		 * Send a point belonging to the boundary and the closest point
 		 * outside the domain.
 		 */
-		while (_myShape.followBoundary(dcIn, dcOut, aSoluteGrid)) 
-			aSoluteGrid.setValueAt(aSoluteGrid.getValueAt(dcIn), dcOut);
+		while (_myShape.followBoundary(course)) 
+			aSoluteGrid.setValueAt(aSoluteGrid.getValueAt(course.dcIn),
+																course.dcOut);
 	}
 	
 	/**
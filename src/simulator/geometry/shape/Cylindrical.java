@@ -365,16 +365,15 @@ public class Cylindrical extends IsShape
 		return out;
 	}
 	
-	public void readyToFollowBoundary(SpatialGrid aSG)
+	public Course readyToFollowBoundary(SpatialGrid aSG)
 	{
-		
+		return new Course(aSG);
 	}
 	
 	/**
 	 * 
 	 */
-	public Boolean followBoundary(DiscreteVector dcIn, DiscreteVector dcOut,
-															SpatialGrid aSG)
+	public Boolean followBoundary(Course aCourse)
 	{
 		return null;
 	}
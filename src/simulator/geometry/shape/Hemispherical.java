@@ -455,13 +455,13 @@ public class Hemispherical extends IsShape
 		return out;
 	}
 	
-	public void readyToFollowBoundary(SpatialGrid aSG)
+	public Course readyToFollowBoundary(SpatialGrid aSG)
 	{
 		// TODO Auto-generated method stub
+		return new Course(aSG);
 	}
 	
-	public Boolean followBoundary(DiscreteVector dcIn, DiscreteVector dcOut,
-															SpatialGrid aSG) 
+	public Boolean followBoundary(Course aCourse) 
 	{
 		return false;
 	}
@@ -340,22 +340,53 @@ public abstract class IsShape implements Serializable
 	 */
 	public abstract Double getDistance(IsShape aBoundary);
 	
+	/**
+	 * \brief Course along the boundary of a shape on one grid, started by
+	 * readyToFollowBoundary().
+	 * 
+	 * Each course holds its own position, so that several grids can be
+	 * followed along the same shape at the same time.
+	 */
+	public static class Course
+	{
+		/**
+		 * Grid followed.
+		 */
+		public final SpatialGrid grid;
+		
+		/**
+		 * Discrete coordinates of the current voxel inside the grid, along
+		 * the boundary.
+		 */
+		public final DiscreteVector dcIn = new DiscreteVector();
+		
+		/**
+		 * Discrete coordinates of the voxel outside the boundary, in front
+		 * of dcIn.
+		 */
+		public final DiscreteVector dcOut = new DiscreteVector();
+		
+		public Course(SpatialGrid aSG)
+		{
+			grid = aSG;
+		}
+	}
+	
 	/**
      * \brief Initialisation to create the features of and go along the
      * boundary.
      * 
      * @param aSG	The grid to which this boundary is a part.
+     * @return	New course along the boundary, before its first point.
      */
-	public abstract void readyToFollowBoundary(SpatialGrid aSG);
+	public abstract Course readyToFollowBoundary(SpatialGrid aSG);
 	
 	/**
      * \brief Find the next valid point.
      *  
-     *  @param dcIn	Discrete vector within the shape.
-     *  @param dcOut	Discrete vector outside the shape.
-     *  @param aSG	Spatial grid in which the boundary is associated.
+     *  @param aCourse	Course along the boundary, whose dcIn and dcOut are
+     *  set to the next point within the shape and the one outside it.
      *  @return Whether a valid point was found.
      */
-	public abstract Boolean followBoundary(DiscreteVector dcIn,
-									DiscreteVector dcOut, SpatialGrid aSG);
+	public abstract Boolean followBoundary(Course aCourse);
 }
@@ -87,34 +87,35 @@ public class Planar extends IsShape
 	private ContinuousVector _cOrthogV;
 	
 	/**
-	 * Range of discrete coordinates met on this shape
+	 * \brief Course along this plane on one grid.
 	 */
-	private int uMax;
-	
-	/**
-	 * Range of discrete coordinates met on this shape
-	 */
-	private int vMax;
-	
-	/**
-	 * Index used to check whether a point is within the shape.
-	 */
-	private static int indexU;
-	
-	/**
-	 * Index used to check whether a point is within the shape.
-	 */
-	private static int indexV;
-	
-	/**
-	 * Stores the move while being calculated.
-	 */
-	private static DiscreteVector move = new DiscreteVector();
-	
-	/**
-	 * Temporary store of the origin of a point prior to move.
-	 */
-	private static DiscreteVector origin = new DiscreteVector();
+	private static class PlanarCourse extends Course
+	{
+		/**
+		 * Range of discrete coordinates met on this shape
+		 */
+		int uMax, vMax;
+		
+		/**
+		 * Index used to check whether a point is within the shape.
+		 */
+		int indexU = 0, indexV = 0;
+		
+		/**
+		 * Stores the move while being calculated.
+		 */
+		DiscreteVector move = new DiscreteVector();
+		
+		/**
+		 * Temporary store of the origin of a point prior to move.
+		 */
+		DiscreteVector origin = new DiscreteVector();
+		
+		PlanarCourse(SpatialGrid aSG)
+		{
+			super(aSG);
+		}
+	}
 	
 	/**
 	 * If this plane is restricted, store the limits in this list.
@@ -392,10 +393,13 @@ public class Planar extends IsShape
      * boundary.
      * 
      * @param aSG	The grid to which this boundary is a part.
+     * @return	New course along this plane, before its first point.
      */
 	@Override
-	public void readyToFollowBoundary(SpatialGrid aSG) 
+	public Course readyToFollowBoundary(SpatialGrid aSG) 
 	{
+		PlanarCourse out = new PlanarCourse(aSG);
+		DiscreteVector origin = out.origin;
 		Double res = aSG.getResolution();
 		
 		// Change floor to ceiling?
@@ -410,71 +414,70 @@ public class Planar extends IsShape
 		if( _dVectorOut.k > 0 )
 			origin.k--;
 		
-		indexU = 0;
-		indexV = 0;
-		
 		if ( _dOrthogU.i == 0 )
-			uMax = 0;
+			out.uMax = 0;
 		else
-			uMax = aSG.getGridSizeI()/_dOrthogU.i;
+			out.uMax = aSG.getGridSizeI()/_dOrthogU.i;
 		if ( _dOrthogU.j != 0 ) 
-			uMax = Math.max(uMax, aSG.getGridSizeJ()/_dOrthogU.j);
+			out.uMax = Math.max(out.uMax, aSG.getGridSizeJ()/_dOrthogU.j);
 		if ( _dOrthogU.k != 0 )
-			uMax = Math.max(uMax, aSG.getGridSizeK()/_dOrthogU.k);
+			out.uMax = Math.max(out.uMax, aSG.getGridSizeK()/_dOrthogU.k);
 
 		if ( _dOrthogV.i == 0 )
-			vMax = 0;
+			out.vMax = 0;
 		else
-			vMax = aSG.getGridSizeI()/_dOrthogV.i;
+			out.vMax = aSG.getGridSizeI()/_dOrthogV.i;
 		if ( _dOrthogV.j != 0 )
-			vMax = Math.max(vMax, aSG.getGridSizeJ()/_dOrthogV.j);
+			out.vMax = Math.max(out.vMax, aSG.getGridSizeJ()/_dOrthogV.j);
 		if ( _dOrthogV.k != 0 )
-			vMax = Math.max(vMax, aSG.getGridSizeK()/_dOrthogV.k);
+			out.vMax = Math.max(out.vMax, aSG.getGridSizeK()/_dOrthogV.k);
+		return out;
 	}
 
 	/**
      * \brief Find the next valid point.
      * 
-     *  @param dcIn	Discrete vector within the shape
-     *  @param dcOut	Discrete vector outside the shape
-     *  @param aSG	Spatial grid in which the boundary is associated
+     *  @param aCourse	Course along this plane, whose dcIn is set to the
+     *  next point within the shape and dcOut to the one outside
      *  @return Whether a valid point was found
      *  
      */
 	@Override
-	public Boolean followBoundary(DiscreteVector dcIn, DiscreteVector dcOut,
-															SpatialGrid aSG) 
+	public Boolean followBoundary(Course aCourse) 
 	{
+		PlanarCourse course = (PlanarCourse) aCourse;
 		// Find the next valid point
 		Boolean vectorValid = false;
 		do 
 		{
-			stepBoundary();
-			dcIn.sendSum(origin, move);
-			vectorValid = aSG.isValid(dcIn);
+			stepBoundary(course);
+			course.dcIn.sendSum(course.origin, course.move);
+			vectorValid = course.grid.isValid(course.dcIn);
 			// If a valid point has been found, compute its closest neighbour outside
 			if (vectorValid)
-				dcOut.sendSum(dcIn, _dVectorOut);
-		} while ( !(vectorValid) && indexV<vMax );
+				course.dcOut.sendSum(course.dcIn, _dVectorOut);
+		} while ( !(vectorValid) && course.indexV<course.vMax );
 		
 		return vectorValid; 
 	}
 
 	/**
      * \brief Process next location on the boundary.
+     * 
+     * @param course	Course to move to its next location.
      */
-	public void stepBoundary()
+	private void stepBoundary(PlanarCourse course)
 	{
-		if ( indexU < uMax )
-			indexU++;
+		if ( course.indexU < course.uMax )
+			course.indexU++;
 		else
 		{
-			indexU = 0;
-			indexV++;
+			course.indexU = 0;
+			course.indexV++;
 		}
-		move.i = indexU*_dOrthogU.i + indexV*_dOrthogV.i;
-		move.j = indexU*_dOrthogU.j + indexV*_dOrthogV.j;
-		move.k = indexU*_dOrthogU.k + indexV*_dOrthogV.k;
+		course.move.i = course.indexU*_dOrthogU.i + course.indexV*_dOrthogV.i;
+		course.move.j = course.indexU*_dOrthogU.j + course.indexV*_dOrthogV.j;
+		course.move.k = course.indexU*_dOrthogU.k + course.indexV*_dOrthogV.k;
 	}
 	
 	/**
@@ -138,8 +138,16 @@ public class FirstOrder extends Reaction {
 	@Override
 	public Double computeSpecGrowthRate(ActiveAgent anAgent)
 	{
-		computeSpecificGrowthRate(anAgent);
-		return _specRate;
+		return anAgent.reactionKinetic[reactionIndex][0];
+	}
+	
+	/**
+	 * computeSpecGrowthRate() writes no field of this reaction.
+	 */
+	@Override
+	public boolean hasThreadSafeGrowthRate()
+	{
+		return true;
 	}
 
 	@Override
@@ -147,10 +155,12 @@ public class FirstOrder extends Reaction {
 	 * @param s	Double array
 	 * @param conc	Concentration factor
 	 * @param h	Double
+	 * @param buffer	Scratch storage receiving the rates
 	 * @deprecated
 	 * 
 	 */
-	public void computeUptakeRate(Double[] s, Double conc, Double h) {
+	public void computeUptakeRate(Double[] s, Double conc, Double h,
+														RateBuffer buffer) {
 		// TODO Auto-generated method stub
 		
 	}
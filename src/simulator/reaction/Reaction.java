@@ -13,6 +13,9 @@ package simulator.reaction;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import Jama.Matrix;
 import simulator.*;
@@ -145,6 +148,77 @@ public abstract class Reaction implements Serializable
 	 */
 	static int nSolute;
 	
+	/**
+	 * Smallest number of voxels handed to a separate thread by
+	 * applyReaction().
+	 */
+	private static final int MIN_VOXELS = 256;
+	
+	/**
+	 * Scratch storage of each thread computing uptake rates for this
+	 * reaction.
+	 */
+	protected transient ThreadLocal<RateBuffer> _rateBuffer =
+								ThreadLocal.withInitial(this::newRateBuffer);
+	
+	/**
+	 * \brief Scratch storage for the computation of the uptake rates at one
+	 * point.
+	 * 
+	 * Kinetic computations write their intermediate and final values here
+	 * rather than in the fields of the reaction, so that several threads can
+	 * evaluate the same reaction at different points, each with its own
+	 * buffer.
+	 */
+	public static class RateBuffer
+	{
+		/**
+		 * Solute concentrations at the point.
+		 */
+		public final Double[] s;
+		
+		/**
+		 * Uptake rate of each solute.
+		 */
+		public final double[] uptakeRate;
+		
+		/**
+		 * Derivative of the uptake rate of each solute.
+		 */
+		public final double[] diffUptakeRate;
+		
+		/**
+		 * Value of each kinetic factor.
+		 */
+		public final double[] marginalMu;
+		
+		/**
+		 * Derivative of the specific rate with respect to each kinetic
+		 * factor's solute.
+		 */
+		public final double[] marginalDiffMu;
+		
+		/**
+		 * Specific rate of the reaction.
+		 */
+		public double specRate;
+		
+		/**
+		 * \brief Create an empty buffer.
+		 * 
+		 * @param nSolute	Number of solutes in the simulation.
+		 * @param nFactor	Number of kinetic factors of the reaction.
+		 */
+		public RateBuffer(int nSolute, int nFactor)
+		{
+			s = ExtraMath.newDoubleArray(nSolute);
+			uptakeRate = new double[nSolute];
+			diffUptakeRate = new double[nSolute];
+			marginalMu = new double[nFactor];
+			marginalDiffMu = new double[nFactor];
+		}
+	}
+	
 	/*************************************************************************************************************************
 	 * CLASS METHODS 
 	 ************************************************************************************************************************/
@@ -409,6 +483,21 @@ public abstract class Reaction implements Serializable
 	 * @return	The specific growth rate
 	 */
 	public abstract Double computeSpecGrowthRate(ActiveAgent anAgent);
+	
+	/**
+	 * \brief Whether computeSpecGrowthRate() may be called by concurrent
+	 * threads for different agents.
+	 * 
+	 * This holds when it writes no field of the reaction, keeping its
+	 * intermediate values in the RateBuffer of the calling thread. False
+	 * unless overridden.
+	 * 
+	 * @return	True if computeSpecGrowthRate() is thread-safe.
+	 */
+	public boolean hasThreadSafeGrowthRate()
+	{
+		return false;
+	}
 
 	/**
 	 * \brief Return the specific reaction rate for a given agent
@@ -449,7 +538,43 @@ public abstract class Reaction implements Serializable
 	 * @param mass	Mass of the catalyst (cell...)
 	 * @param t	Time
 	 */
-	public abstract void computeUptakeRate(Double[] s, Double mass, Double t);
+	public void computeUptakeRate(Double[] s, Double mass, Double t)
+	{
+		RateBuffer buffer = _rateBuffer.get();
+		computeUptakeRate(s, mass, t, buffer);
+		_specRate = buffer.specRate;
+		for (int iSolute = 0; iSolute < _uptakeRate.length; iSolute++)
+		{
+			_uptakeRate[iSolute] = buffer.uptakeRate[iSolute];
+			_diffUptakeRate[iSolute] = buffer.diffUptakeRate[iSolute];
+		}
+	}
+	
+	/**
+	 * \brief Compute the uptake rates and their derivatives into the given
+	 * buffer, leaving the fields of this reaction untouched.
+	 * 
+	 * Unit is fg.h-1. Concurrent calls are safe as long as each thread uses
+	 * its own buffer.
+	 * 
+	 * @param s	The concentration of solute locally observed
+	 * @param mass	Mass of the catalyst (cell...)
+	 * @param t	Time
+	 * @param buffer	Scratch storage receiving the rates.
+	 */
+	public abstract void computeUptakeRate(Double[] s, Double mass, Double t,
+														RateBuffer buffer);
+	
+	/**
+	 * \brief Create the scratch storage used by one thread to compute the
+	 * uptake rates of this reaction.
+	 * 
+	 * @return	A new RateBuffer sized for this reaction.
+	 */
+	protected RateBuffer newRateBuffer()
+	{
+		return new RateBuffer(nSolute, 0);
+	}
 
 	/**
 	 * \brief Compute reaction rate on each concerned solute grids Assumes same parameters for all the agents of a same guild
@@ -464,37 +589,160 @@ public abstract class Reaction implements Serializable
 	 */
 	public void applyReaction(SpatialGrid[] concGrid, SpatialGrid[] reacGrid,
 						   SpatialGrid[] diffReacGrid, SpatialGrid biomassGrid)
+	{
+		applyReaction(concGrid, reacGrid, diffReacGrid, biomassGrid,
+										biomassGrid.getNonZeroVoxels());
+	}
+	
+	/**
+	 * \brief Compute reaction rate on each concerned solute grids, visiting
+	 * only the given voxels.
+	 * 
+	 * The cost is proportional to the number of voxels with catalyst rather
+	 * than to the size of the domain.
+	 * 
+	 * @param concGrid	Solute concentration
+	 * @param reacGrid	Contribution of the reaction to the solute concentration dynamics
+	 * @param diffReacGrid	Derivative of the previous grid
+	 * @param biomassGrid	CONCENTRATION of the catalyst
+	 * @param occupied	Flat positions of the voxels of biomassGrid holding
+	 * catalyst
+	 * @see SpatialGrid.getNonZeroVoxels()
+	 */
+	public void applyReaction(SpatialGrid[] concGrid, SpatialGrid[] reacGrid,
+						   SpatialGrid[] diffReacGrid, SpatialGrid biomassGrid,
+						   int[] occupied)
+	{
+		applyReaction(concGrid, reacGrid, diffReacGrid, biomassGrid,
+															occupied, null);
+	}
+	
+	/**
+	 * \brief Compute reaction rate on each concerned solute grids, visiting
+	 * only the given voxels, with the given pool of threads.
+	 * 
+	 * Each voxel only adds to its own position in the rate grids, and each
+	 * thread computes its rates in its own buffer, so the voxels can be
+	 * split between threads without changing the result.
+	 * 
+	 * @param concGrid	Solute concentration
+	 * @param reacGrid	Contribution of the reaction to the solute concentration dynamics
+	 * @param diffReacGrid	Derivative of the previous grid
+	 * @param biomassGrid	CONCENTRATION of the catalyst
+	 * @param occupied	Flat positions of the voxels of biomassGrid holding
+	 * catalyst
+	 * @param pool	Pool of threads to use, or null to compute serially
+	 */
+	public void applyReaction(SpatialGrid[] concGrid, SpatialGrid[] reacGrid,
+						   SpatialGrid[] diffReacGrid, SpatialGrid biomassGrid,
+						   int[] occupied, ForkJoinPool pool)
 	{
 		nSolute = concGrid.length;
-		Double[] s = ExtraMath.newDoubleArray(nSolute);
-		int _nI, _nJ, _nK;
-		_nI = biomassGrid.getGridSizeI();
-		_nJ = biomassGrid.getGridSizeJ();
-		_nK = biomassGrid.getGridSizeK();
-		//globalReactionRate = 0;
-		for (int i = 1; i<_nI+1; i++)
-			for (int j = 1; j<_nJ+1; j++)
-				for (int k = 1; k<_nK+1; k++)
-				{
-					// If there is no biomass, go to the next grid element
-					if  (biomassGrid.grid[i][j][k].equals(0.0) )
-						continue;
-					// Read local solute concentration
-					for (int iGrid : _mySoluteIndex)
-						s[iGrid] = concGrid[iGrid].grid[i][j][k];
-					// First compute local uptake-rates in g.h-1
-					computeUptakeRate(s, biomassGrid.grid[i][j][k], 0.0);
-					
-					// Now add them on the received grids
-					for (int iGrid : _mySoluteIndex)
-					{
-						reacGrid[iGrid].grid[i][j][k] += _uptakeRate[iGrid];
-						diffReacGrid[iGrid].grid[i][j][k] += _diffUptakeRate[iGrid];
-						if (Double.isNaN(reacGrid[iGrid].grid[i][j][k])) 
-							LogFile.writeLogAlways("Warning: NaN generated in Reaction");
-					}
-
-				}
+		int grain = occupied.length;
+		if ( pool != null )
+			grain = Math.max(MIN_VOXELS,
+								occupied.length/(4*pool.getParallelism()));
+		if ( grain >= occupied.length )
+		{
+			applyReaction(concGrid, reacGrid, diffReacGrid,
+							biomassGrid.getFlatGrid(), occupied, 0, occupied.length);
+			return;
+		}
+		ReactionTask task = new ReactionTask(concGrid, reacGrid, diffReacGrid,
+						biomassGrid.getFlatGrid(), occupied, 0, occupied.length, grain);
+		if ( ForkJoinTask.inForkJoinPool() )
+			task.invoke();
+		else
+			pool.invoke(task);
+	}
+	
+	/**
+	 * \brief Add the uptake rates of a range of the occupied voxels to the
+	 * rate grids.
+	 * 
+	 * @param concGrid	Solute concentration
+	 * @param reacGrid	Contribution of the reaction to the solute concentration dynamics
+	 * @param diffReacGrid	Derivative of the previous grid
+	 * @param biomass	Flat array of the CONCENTRATION of the catalyst
+	 * @param occupied	Flat positions of the voxels holding catalyst
+	 * @param from	First position in occupied.
+	 * @param to	Position after the last one in occupied.
+	 */
+	private void applyReaction(SpatialGrid[] concGrid, SpatialGrid[] reacGrid,
+							SpatialGrid[] diffReacGrid, double[] biomass,
+							int[] occupied, int from, int to)
+	{
+		RateBuffer buffer = _rateBuffer.get();
+		Double[] s = buffer.s;
+		int index;
+		double[] reac;
+		for (int n = from; n < to; n++)
+		{
+			index = occupied[n];
+			// Read local solute concentration
+			for (int iGrid : _mySoluteIndex)
+				s[iGrid] = concGrid[iGrid].getFlatGrid()[index];
+			// First compute local uptake-rates in g.h-1
+			computeUptakeRate(s, biomass[index], 0.0, buffer);
+			
+			// Now add them on the received grids
+			for (int iGrid : _mySoluteIndex)
+			{
+				reac = reacGrid[iGrid].getFlatGrid();
+				reac[index] += buffer.uptakeRate[iGrid];
+				diffReacGrid[iGrid].getFlatGrid()[index] +=
+											buffer.diffUptakeRate[iGrid];
+				if (Double.isNaN(reac[index])) 
+					LogFile.writeLogAlways("Warning: NaN generated in Reaction");
+			}
+		}
+	}
+	
+	/**
+	 * \brief Task applying the reaction on a range of the occupied voxels,
+	 * split in halves until the ranges are no longer than the grain.
+	 */
+	private class ReactionTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		
+		private final SpatialGrid[] concGrid, reacGrid, diffReacGrid;
+		
+		private final double[] biomass;
+		
+		private final int[] occupied;
+		
+		private final int from, to, grain;
+		
+		ReactionTask(SpatialGrid[] concGrid, SpatialGrid[] reacGrid,
+					SpatialGrid[] diffReacGrid, double[] biomass,
+					int[] occupied, int from, int to, int grain)
+		{
+			this.concGrid = concGrid;
+			this.reacGrid = reacGrid;
+			this.diffReacGrid = diffReacGrid;
+			this.biomass = biomass;
+			this.occupied = occupied;
+			this.from = from;
+			this.to = to;
+			this.grain = grain;
+		}
+		
+		@Override
+		protected void compute()
+		{
+			if ( to - from <= grain )
+			{
+				applyReaction(concGrid, reacGrid, diffReacGrid, biomass,
+														occupied, from, to);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new ReactionTask(concGrid, reacGrid, diffReacGrid,
+								biomass, occupied, from, mid, grain),
+					new ReactionTask(concGrid, reacGrid, diffReacGrid,
+								biomass, occupied, mid, to, grain));
+		}
 	}
 
 	
@@ -194,23 +194,27 @@ public class ReactionFactor extends Reaction
 
 
 	/**
-	 * \brief Update the array of uptake rates and the array of its derivative.
+	 * \brief Compute the uptake rates and their derivatives into the given
+	 * buffer.
 	 * 
 	 * Based on default values of parameters. Unit is fg.h-1
 	 * 
 	 * @param s	The concentration of solute locally observed
 	 * @param mass	Mass of the catalyst (cell...)
 	 * @param t	Time
+	 * @param buffer	Scratch storage receiving the rates.
 	 */
 	@Override
-	public void computeUptakeRate(Double[] s, Double mass, Double t)
+	public void computeUptakeRate(Double[] s, Double mass, Double t,
+														RateBuffer buffer)
 	{
 		// First compute specific rate
-		computeSpecificGrowthRate(s);
+		computeSpecificGrowthRate(s, buffer);
 		// Now compute uptake rate
 		for (int iSolute : _mySoluteIndex)
 		{
-			_uptakeRate[iSolute] = mass*_specRate*_soluteYield[iSolute];
+			buffer.uptakeRate[iSolute] =
+								mass*buffer.specRate*_soluteYield[iSolute];
 		}
 		int iSolute;
 		for (int i = 0; i<_soluteFactor.length; i++)
@@ -218,11 +222,23 @@ public class ReactionFactor extends Reaction
 			iSolute = _soluteFactor[i];
 			if(iSolute != -1)
 			{
-				_diffUptakeRate[iSolute] =
-								mass*marginalDiffMu[i]*_soluteYield[iSolute];
+				buffer.diffUptakeRate[iSolute] =
+						mass*buffer.marginalDiffMu[i]*_soluteYield[iSolute];
 			}
 		}
 	}
+	
+	/**
+	 * \brief Create the scratch storage used by one thread, with room for
+	 * each kinetic factor.
+	 * 
+	 * @return	A new RateBuffer sized for this reaction.
+	 */
+	@Override
+	protected RateBuffer newRateBuffer()
+	{
+		return new RateBuffer(nSolute, _kineticFactor.length);
+	}
 
 	/**
 	 * \brief Return the specific reaction rate for a given agent.
@@ -249,7 +265,31 @@ public class ReactionFactor extends Reaction
 	@Override
 	public void computeSpecificGrowthRate(Double[] s)
 	{
-		_specRate = _muMax;
+		RateBuffer buffer = _rateBuffer.get();
+		computeSpecificGrowthRate(s, buffer);
+		_specRate = buffer.specRate;
+		for (int iFactor = 0; iFactor<_soluteFactor.length; iFactor++)
+		{
+			marginalMu[iFactor] = buffer.marginalMu[iFactor];
+			marginalDiffMu[iFactor] = buffer.marginalDiffMu[iFactor];
+		}
+	}
+	
+	/**
+	 * \brief Compute specific growth rate in function of concentrations sent,
+	 * into the given buffer.
+	 * 
+	 * Parameters used are those defined for the reaction.
+	 * 
+	 * @param s	Array of solute concentrations.
+	 * @param buffer	Scratch storage receiving the specific rate and the
+	 * marginal rates.
+	 */
+	private void computeSpecificGrowthRate(Double[] s, RateBuffer buffer)
+	{
+		double[] marginalMu = buffer.marginalMu;
+		double[] marginalDiffMu = buffer.marginalDiffMu;
+		double specRate = _muMax;
 		int soluteIndex;
 		for (int iFactor = 0; iFactor<_soluteFactor.length; iFactor++)
 		{
@@ -269,13 +309,14 @@ public class ReactionFactor extends Reaction
 		}
 		for (int iFactor = 0; iFactor<_soluteFactor.length; iFactor++)
 		{
-			_specRate *= marginalMu[iFactor];
+			specRate *= marginalMu[iFactor];
 			for (int jFactor = 0; jFactor<_soluteFactor.length; jFactor++)
 			{
 				if (jFactor!=iFactor)
 					marginalDiffMu[jFactor] *= marginalMu[iFactor];
 			}
 		}
+		buffer.specRate = specRate;
 	}
 	
 	/**
@@ -355,8 +396,32 @@ public class ReactionFactor extends Reaction
 	@Override
 	public void computeSpecificGrowthRate(Double[] s, ActiveAgent anAgent)
 	{
-		Double[] kineticParam = anAgent.reactionKinetic[reactionIndex];
-		paramIndex = 1;
+		RateBuffer buffer = _rateBuffer.get();
+		computeSpecificGrowthRate(s, anAgent.reactionKinetic[reactionIndex],
+																	buffer);
+		_specRate = buffer.specRate;
+		for (int iFactor = 0; iFactor<_soluteFactor.length; iFactor++)
+		{
+			marginalMu[iFactor] = buffer.marginalMu[iFactor];
+			marginalDiffMu[iFactor] = buffer.marginalDiffMu[iFactor];
+		}
+	}
+	
+	/**
+	 * \brief Compute specific growth rate in function to concentrations
+	 * sent, with the given kinetic parameters, into the given buffer.
+	 * 
+	 * @param s	Array of solute concentrations.
+	 * @param kineticParam	Kinetic parameters of an agent for this reaction.
+	 * @param buffer	Scratch storage receiving the specific rate and the
+	 * marginal rates.
+	 */
+	private void computeSpecificGrowthRate(Double[] s, Double[] kineticParam,
+														RateBuffer buffer)
+	{
+		double[] marginalMu = buffer.marginalMu;
+		double[] marginalDiffMu = buffer.marginalDiffMu;
+		int paramIndex = 1;
 		
 		// Compute contribution of each limiting solute
 		for (int iFactor = 0; iFactor<_soluteFactor.length; iFactor++)
@@ -381,17 +446,18 @@ public class ReactionFactor extends Reaction
 			paramIndex += _kineticFactor[iFactor].nParam;
 		}
 		// First multiplier is muMax
-		_specRate = kineticParam[0];
+		double specRate = kineticParam[0];
 		// Finalise the computation
 		for (int iFactor = 0; iFactor < _soluteFactor.length; iFactor++)
 		{
-			_specRate *= marginalMu[iFactor];
+			specRate *= marginalMu[iFactor];
 			for (int jFactor = 0; jFactor < _soluteFactor.length; jFactor++)
 			{
 				if (jFactor != iFactor)
 					marginalDiffMu[jFactor] *= marginalMu[iFactor];
 			}
 		}
+		buffer.specRate = specRate;
 	}
 
 	/**
@@ -517,8 +583,22 @@ public class ReactionFactor extends Reaction
 	@Override
 	public Double computeSpecGrowthRate(ActiveAgent anAgent)
 	{
-		computeSpecificGrowthRate(anAgent);
-		return _specRate;
+		RateBuffer buffer = _rateBuffer.get();
+		computeSpecificGrowthRate(readConcentrationSeen(anAgent, _soluteList),
+						anAgent.reactionKinetic[reactionIndex], buffer);
+		return buffer.specRate;
+	}
+	
+	/**
+	 * \brief computeSpecGrowthRate() only writes to the RateBuffer of the
+	 * calling thread.
+	 * 
+	 * @return	True.
+	 */
+	@Override
+	public boolean hasThreadSafeGrowthRate()
+	{
+		return true;
 	}
 	
 }
@@ -218,30 +218,33 @@ public class ReactionFactorWithConstant extends Reaction
 	}
 	
 	/**
-	 * \brief Update the array of uptake rates and the array of its derivative.
+	 * \brief Compute the uptake rates and their derivatives into the given
+	 * buffer.
 	 * 
 	 * Based on default values of parameters. Unit is fg.h-1
 	 * 
 	 * @param s	The concentration of solute locally observed
 	 * @param mass	Mass of the catalyst (cell...)
 	 * @param tdel	Time
+	 * @param buffer	Scratch storage receiving the rates.
 	 */
 	@Override
-	public void computeUptakeRate(Double[] s, Double mass, Double tdel)
+	public void computeUptakeRate(Double[] s, Double mass, Double tdel,
+														RateBuffer buffer)
 	{
 		// First compute specific rate
-		computeSpecificGrowthRate(s);
+		computeSpecificGrowthRate(s, buffer);
 		
+		int iSolute;
 		if(Simulator.isChemostat)
 		{
-			for (int iSolute : _mySoluteIndex)
-				_uptakeRate[iSolute] = (tdel*mass*Dil) + (mass *_specRate*_soluteYield[iSolute]);
-			int iSolute;
+			for (int jSolute : _mySoluteIndex)
+				buffer.uptakeRate[jSolute] = (tdel*mass*Dil) + (mass *buffer.specRate*_soluteYield[jSolute]);
 			for (int i = 0; i<_soluteFactor.length; i++)
 			{
 				iSolute = _soluteFactor[i];
 				if(iSolute!=-1)
-					_diffUptakeRate[iSolute] = (tdel*mass*Dil) + (mass*marginalDiffMu[i]*_soluteYield[iSolute]);
+					buffer.diffUptakeRate[iSolute] = (tdel*mass*Dil) + (mass*buffer.marginalDiffMu[i]*_soluteYield[iSolute]);
 			}
 
 		}
@@ -250,17 +253,29 @@ public class ReactionFactorWithConstant extends Reaction
 			for (int i = 0; i < _mySoluteIndex.length; i++)
 			{
 				iSolute = _mySoluteIndex[i];
-				_uptakeRate[iSolute] = mass*_specRate*_soluteYield[iSolute];
+				buffer.uptakeRate[iSolute] = mass*buffer.specRate*_soluteYield[iSolute];
 			}
 
 			for (int i = 0; i < _soluteFactor.length; i++)
 			{
 				iSolute = _soluteFactor[i];
-				_diffUptakeRate[iSolute] = mass*marginalDiffMu[i]*_soluteYield[iSolute];
+				buffer.diffUptakeRate[iSolute] = mass*buffer.marginalDiffMu[i]*_soluteYield[iSolute];
 			}
 		}
 	}
 	
+	/**
+	 * \brief Create the scratch storage used by one thread, with room for
+	 * each kinetic factor.
+	 * 
+	 * @return	A new RateBuffer sized for this reaction.
+	 */
+	@Override
+	protected RateBuffer newRateBuffer()
+	{
+		return new RateBuffer(nSolute, _kineticFactor.length);
+	}
+	
 	/**
 	 * \brief Return the specific reaction rate for a given agent.
 	 * 
@@ -286,24 +301,49 @@ public class ReactionFactorWithConstant extends Reaction
 	@Override
 	public void computeSpecificGrowthRate(Double[] s)
 	{
-		_specRate = _muMax;
+		RateBuffer buffer = _rateBuffer.get();
+		computeSpecificGrowthRate(s, buffer);
+		_specRate = buffer.specRate;
+		for (int iFactor = 0; iFactor < _soluteFactor.length; iFactor++)
+		{
+			marginalMu[iFactor] = buffer.marginalMu[iFactor];
+			marginalDiffMu[iFactor] = buffer.marginalDiffMu[iFactor];
+		}
+	}
+	
+	/**
+	 * \brief Compute specific growth rate in function of concentrations
+	 * sent, into the given buffer.
+	 * 
+	 * Parameters used are those defined for the reaction.
+	 * 
+	 * @param s	Array of solute concentration
+	 * @param buffer	Scratch storage receiving the specific rate and the
+	 * marginal rates.
+	 */
+	private void computeSpecificGrowthRate(Double[] s, RateBuffer buffer)
+	{
+		double[] marginalMu = buffer.marginalMu;
+		double[] marginalDiffMu = buffer.marginalDiffMu;
+		double specRate = _muMax;
+		int soluteIndex;
 
 		for (int iFactor = 0; iFactor<_soluteFactor.length; iFactor++)
 		{
-			iSolute = _soluteFactor[iFactor];
-			marginalMu[iFactor] = _kineticFactor[iFactor].kineticValue(s[iSolute]);
-			marginalDiffMu[iFactor] = _muMax*_kineticFactor[iFactor].kineticDiff(s[iSolute]);
+			soluteIndex = _soluteFactor[iFactor];
+			marginalMu[iFactor] = _kineticFactor[iFactor].kineticValue(s[soluteIndex]);
+			marginalDiffMu[iFactor] = _muMax*_kineticFactor[iFactor].kineticDiff(s[soluteIndex]);
 		}
 		for (int iFactor = 0; iFactor < _soluteFactor.length; iFactor++)
 		{
-			_specRate *= marginalMu[iFactor];
+			specRate *= marginalMu[iFactor];
 			for (int jFactor = 0; jFactor < _soluteFactor.length; jFactor++)
 			{
 				if (jFactor != iFactor)
 					marginalDiffMu[jFactor] *= marginalMu[iFactor];
 			}
 		}
-		_specRate += _c; 
+		buffer.specRate = specRate + _c;
 	}
 	
 	/**
@@ -315,10 +355,35 @@ public class ReactionFactorWithConstant extends Reaction
 	@Override
 	public void computeSpecificGrowthRate(Double[] s, ActiveAgent anAgent)
 	{
-		Double[] kineticParam = anAgent.reactionKinetic[reactionIndex];
+		RateBuffer buffer = _rateBuffer.get();
+		computeSpecificGrowthRate(s, anAgent.reactionKinetic[reactionIndex],
+																	buffer);
+		_specRate = buffer.specRate;
+		for (int iFactor = 0; iFactor < _soluteFactor.length; iFactor++)
+		{
+			marginalMu[iFactor] = buffer.marginalMu[iFactor];
+			marginalDiffMu[iFactor] = buffer.marginalDiffMu[iFactor];
+		}
+	}
+	
+	/**
+	 * \brief Compute specific growth rate in function to concentrations
+	 * sent, with the given kinetic parameters, into the given buffer.
+	 * 
+	 * @param s	Array of solute concentration.
+	 * @param kineticParam	Kinetic parameters of an agent for this reaction.
+	 * @param buffer	Scratch storage receiving the specific rate and the
+	 * marginal rates.
+	 */
+	private void computeSpecificGrowthRate(Double[] s, Double[] kineticParam,
+														RateBuffer buffer)
+	{
+		double[] marginalMu = buffer.marginalMu;
+		double[] marginalDiffMu = buffer.marginalDiffMu;
 		// First multiplier is muMax
-		_specRate = kineticParam[0];
-		paramIndex = 2;
+		double specRate = kineticParam[0];
+		int paramIndex = 2;
+		int iSolute;
 		// Compute contribution of each limiting solute
 		for (int iFactor = 0; iFactor<_soluteFactor.length; iFactor++)
 		{
@@ -334,7 +399,7 @@ public class ReactionFactorWithConstant extends Reaction
 		// Finalize the computation
 		for (int iFactor = 0; iFactor < _soluteFactor.length; iFactor++)
 		{
-			_specRate *= marginalMu[iFactor];
+			specRate *= marginalMu[iFactor];
 			for (int jFactor = 0; jFactor < _soluteFactor.length; jFactor++)
 			{
 				if (jFactor!=iFactor)
@@ -342,7 +407,7 @@ public class ReactionFactorWithConstant extends Reaction
 			}
 		}
 		// add constant rate
-		_specRate += kineticParam[1]; 
+		buffer.specRate = specRate + kineticParam[1];
 	}
 	
 	/**
@@ -529,7 +594,21 @@ public class ReactionFactorWithConstant extends Reaction
 	@Override
 	public Double computeSpecGrowthRate(ActiveAgent anAgent)
 	{
-		computeSpecificGrowthRate(anAgent);
-		return _specRate;
+		RateBuffer buffer = _rateBuffer.get();
+		computeSpecificGrowthRate(readConcentrationSeen(anAgent, _soluteList),
+						anAgent.reactionKinetic[reactionIndex], buffer);
+		return buffer.specRate;
+	}
+	
+	/**
+	 * \brief computeSpecGrowthRate() only writes to the RateBuffer of the
+	 * calling thread.
+	 * 
+	 * @return	True.
+	 */
+	@Override
+	public boolean hasThreadSafeGrowthRate()
+	{
+		return true;
 	}
 }
@@ -223,48 +223,60 @@ public class ReactionGrowthFitness extends Reaction{
 
 
 	/**
-	 * \brief Update the array of uptake rates and the array of its derivative. Based on default values of parameters. Unit is fg.h-1
+	 * \brief Compute the uptake rates and their derivatives into the given buffer. Based on default values of parameters. Unit is fg.h-1
 	 * 
-	 * Update the array of uptake rates and the array of its derivative. Based on default values of parameters. Unit is fg.h-1
+	 * Compute the uptake rates and their derivatives into the given buffer. Based on default values of parameters. Unit is fg.h-1
 	 * 
 	 * @param s	The concentration of solute locally observed
 	 * @param mass	Mass of the catalyst (cell...)
 	 * @param tdel	Time
+	 * @param buffer	Scratch storage receiving the rates
 	 */
 	@Override
-	public void computeUptakeRate(Double[] s, Double mass, Double tdel)
+	public void computeUptakeRate(Double[] s, Double mass, Double tdel, RateBuffer buffer)
 	{
 		// First compute specific rate
-		computeSpecificGrowthRate(s);
+		computeSpecificGrowthRate(s, buffer);
 		// Now compute uptake rate
 		if(Simulator.isChemostat)
 		{
 			// TODO Rob 31 Jul 2014: Does this ever get called? Solver_chemostat doesn't seem to use it.
 			// (tdel*mass*Dil) is very strange
 			for (int iSolute : _mySoluteIndex)
-				_uptakeRate[iSolute] = (tdel*mass*Dil) + (mass *_specRate*_soluteYield[iSolute] ) ;
+				buffer.uptakeRate[iSolute] = (tdel*mass*Dil) + (mass *buffer.specRate*_soluteYield[iSolute] ) ;
 			int iSolute;
 			for (int i = 0; i<_soluteFactor.length; i++)
 			{
 				iSolute = _soluteFactor[i];
 				if(iSolute!=-1)	
-					_diffUptakeRate[iSolute] =(tdel*mass*Dil) + (mass*marginalDiffMu[i]*_soluteYield[iSolute])  ;	
+					buffer.diffUptakeRate[iSolute] =(tdel*mass*Dil) + (mass*buffer.marginalDiffMu[i]*_soluteYield[iSolute])  ;	
 			}
 		}
 		else
 		{
 			for (int iSolute : _mySoluteIndex)
-				_uptakeRate[iSolute] = mass*_specRate*_soluteYield[iSolute];
+				buffer.uptakeRate[iSolute] = mass*buffer.specRate*_soluteYield[iSolute];
 			int iSolute;
 			for (int i = 0; i<_soluteFactor.length; i++)
 			{
 				iSolute = _soluteFactor[i];
 				if(iSolute!=-1)
-					_diffUptakeRate[iSolute] = mass*marginalDiffMu[i]*_soluteYield[iSolute];
+					buffer.diffUptakeRate[iSolute] = mass*buffer.marginalDiffMu[i]*_soluteYield[iSolute];
 			}
 		}
 	}
 	
+	/**
+	 * \brief Create the scratch storage used by one thread, with room for each kinetic factor
+	 * 
+	 * @return	A new RateBuffer sized for this reaction
+	 */
+	@Override
+	protected RateBuffer newRateBuffer()
+	{
+		return new RateBuffer(nSolute, _kineticFactor.length);
+	}
+	
 	/**
 	 * \brief Compute the specific growth rate
 	 * 
@@ -291,7 +303,27 @@ public class ReactionGrowthFitness extends Reaction{
 	@Override
 	public void computeSpecificGrowthRate(Double[] s)
 	{
-		_specRate = _muMax;
+		RateBuffer buffer = _rateBuffer.get();
+		computeSpecificGrowthRate(s, buffer);
+		_specRate = buffer.specRate;
+		for (int iFactor = 0; iFactor<_soluteFactor.length; iFactor++)
+		{
+			marginalMu[iFactor] = buffer.marginalMu[iFactor];
+			marginalDiffMu[iFactor] = buffer.marginalDiffMu[iFactor];
+		}
+	}
+	
+	/**
+	 * \brief Compute specific growth rate in function to concentrations sent, into the given buffer
+	 * 
+	 * @param s	Array of solute concentration
+	 * @param buffer	Scratch storage receiving the specific rate and the marginal rates
+	 */
+	private void computeSpecificGrowthRate(Double[] s, RateBuffer buffer)
+	{
+		double[] marginalMu = buffer.marginalMu;
+		double[] marginalDiffMu = buffer.marginalDiffMu;
+		double specRate = _muMax;
 		int soluteIndex;
 		for (int iFactor = 0; iFactor<_soluteFactor.length; iFactor++)
 		{
@@ -312,13 +344,14 @@ public class ReactionGrowthFitness extends Reaction{
 
 		for (int iFactor = 0; iFactor<_soluteFactor.length; iFactor++)
 		{
-			_specRate *= marginalMu[iFactor];
+			specRate *= marginalMu[iFactor];
 			for (int jFactor = 0; jFactor<_soluteFactor.length; jFactor++)
 			{
 				if (jFactor!=iFactor)
 					marginalDiffMu[jFactor] *= marginalMu[iFactor];
 			}
 		}
+		buffer.specRate = specRate;
 	}
 
 
@@ -142,8 +142,18 @@ public class SingleMonod extends Reaction {
 	@Override
 	public Double computeSpecGrowthRate(ActiveAgent anAgent)
 	{
-		computeSpecificGrowthRate(anAgent);
-		return _specRate;
+		Double[] s = readConcentrationSeen(anAgent, _soluteList);
+		return kineticValue(s[_mySoluteIndex[0]],
+								anAgent.reactionKinetic[reactionIndex], 1);
+	}
+	
+	/**
+	 * computeSpecGrowthRate() writes no field of this reaction.
+	 */
+	@Override
+	public boolean hasThreadSafeGrowthRate()
+	{
+		return true;
 	}
 
 	/**
@@ -172,36 +182,39 @@ public class SingleMonod extends Reaction {
 	 * @param s	Double array
 	 * @param mass	Concentration factor
 	 * @param tdel	Double
+	 * @param buffer	Scratch storage receiving the rates
 	 * @deprecated
 	 */
 	@Deprecated
 	@Override
-	public void computeUptakeRate(Double[] s, Double mass, Double tdel)
+	public void computeUptakeRate(Double[] s, Double mass, Double tdel,
+														RateBuffer buffer)
 	{
 		int localIndex = _mySoluteIndex[0];
 		Double s1 = s[localIndex];
+		int iSolute;
 
-		computeSpecificGrowthRate(s);
+		buffer.specRate = _muMax*s1/(_Ks+s1);
 		//sonia:chemostat 27.11.09
 		if(Simulator.isChemostat){
 			
 			for (int i = 0; i<_mySoluteIndex.length; i++) {
 				iSolute = _mySoluteIndex[i];
-				_uptakeRate[iSolute] = (tdel* mass*Dil) + (mass *_specRate*_soluteYield[iSolute] ) ;
-				_diffUptakeRate[iSolute] = 0.0;
+				buffer.uptakeRate[iSolute] = (tdel* mass*Dil) + (mass *buffer.specRate*_soluteYield[iSolute] ) ;
+				buffer.diffUptakeRate[iSolute] = 0.0;
 		}
 	
-			_diffUptakeRate[localIndex] = (tdel*mass*Dil) + mass*_soluteYield[localIndex]*_soluteYield[0]
+			buffer.diffUptakeRate[localIndex] = (tdel*mass*Dil) + mass*_soluteYield[localIndex]*_soluteYield[0]
 			                             *kineticDiff(s1, _kineticParam, 1);
 						
 		}else{
 		// Now compute uptake rate and its derivative for each solute
 		for (int i = 0; i<_mySoluteIndex.length; i++) {
 			iSolute = _mySoluteIndex[i];
-			_uptakeRate[iSolute] = mass*_specRate*_soluteYield[iSolute];
-			_diffUptakeRate[iSolute] = 0.0;
+			buffer.uptakeRate[iSolute] = mass*buffer.specRate*_soluteYield[iSolute];
+			buffer.diffUptakeRate[iSolute] = 0.0;
 		}
-		_diffUptakeRate[localIndex] = mass*_soluteYield[localIndex]*_soluteYield[0]
+		buffer.diffUptakeRate[localIndex] = mass*_soluteYield[localIndex]*_soluteYield[0]
 		        *kineticDiff(s1, _kineticParam, 1);
 		}
 	}
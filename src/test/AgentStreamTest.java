@@ -0,0 +1,181 @@
+/**
+ * \package test
+ * \brief Package of classes used to test methods within iDynoMiCS
+ *
+ * Package of classes used to test methods within iDynoMiCS. This package is part of iDynoMiCS v1.2, governed by the
+ * CeCILL license under French law and abides by the rules of distribution of free software.  You can use, modify and/ or redistribute
+ * iDynoMiCS under the terms of the CeCILL license as circulated by CEA, CNRS and INRIA at the following URL  "http://www.cecill.info".
+ */
+package test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import simulator.agent.Agent;
+import utils.ExtraMath;
+import utils.SplitRandom;
+
+/**
+ * \brief Checks that the random streams of agents are told apart by their
+ * lineage (see Agent.newRandomStream()).
+ *
+ * A progenitor divides for a number of generations, and so do all its
+ * descendants; the first draws of the streams of all the agents obtained
+ * must differ, in particular those of a dividing agent and its daughter.
+ * The same is checked along a line of daughters of daughters longer than 64
+ * generations, whose genealogies do not fit in a long. Last, the agents of
+ * the lineage draw through the helpers of ExtraMath from the threads of a
+ * pool, each with its stream set for the thread, as in
+ * AgentContainer.stepAllConcurrently(): each agent must draw what it draws
+ * alone, and no two agents the same. Usage:
+ *
+ * java test.AgentStreamTest [nGeneration]
+ *
+ * The default is 8 generations (256 agents). Exits with status 1 if two
+ * agents draw the same stream.
+ */
+public class AgentStreamTest
+{
+	/**
+	 * \brief Minimal agent that can divide.
+	 */
+	private static class TestAgent extends Agent
+	{
+		TestAgent()
+		{
+			giveName();
+		}
+
+		TestAgent divide() throws CloneNotSupportedException
+		{
+			TestAgent baby = (TestAgent) clone();
+			recordGenealogy(baby);
+			return baby;
+		}
+
+		@Override
+		public void registerBirth()
+		{
+		}
+
+		@Override
+		protected void internalStep()
+		{
+		}
+	}
+
+	/**
+	 * \brief Build the lineage and compare the streams of its agents.
+	 *
+	 * @param args	Optional number of generations.
+	 * @throws Exception	If an agent cannot be cloned.
+	 */
+	public static void main(String[] args) throws Exception
+	{
+		int nGeneration = ( args.length > 0 ) ? Integer.parseInt(args[0]) : 8;
+		ExtraMath.random = new SplitRandom(42L);
+
+		List<TestAgent> agents = new ArrayList<TestAgent>();
+		TestAgent mother = new TestAgent();
+		agents.add(mother);
+		TestAgent daughter = mother.divide();
+		agents.add(daughter);
+		if ( firstDraw(mother) == firstDraw(daughter) )
+			fail("a dividing agent and its daughter draw the same stream");
+
+		for ( int generation = 1; generation < nGeneration; generation++ )
+			for ( int i = agents.size() - 1; i >= 0; i-- )
+				agents.add(agents.get(i).divide());
+
+		Map<Long, TestAgent> drawn = new HashMap<Long, TestAgent>();
+		for ( TestAgent anAgent : agents )
+		{
+			TestAgent other = drawn.put(firstDraw(anAgent), anAgent);
+			if ( other != null )
+				fail(other.sendName()+" and "+anAgent.sendName()+
+												" draw the same stream");
+		}
+		System.out.println(agents.size()+" agents over "+nGeneration+
+										" generations draw distinct streams");
+
+		drawn.clear();
+		TestAgent anAgent = new TestAgent();
+		for ( int generation = 0; generation < 3*64; generation++ )
+		{
+			TestAgent other = drawn.put(firstDraw(anAgent), anAgent);
+			if ( other != null )
+				fail(other.sendName()+" and "+anAgent.sendName()+
+												" draw the same stream");
+			anAgent = anAgent.divide();
+		}
+		System.out.println(drawn.size()+" daughters of daughters draw "+
+														"distinct streams");
+
+		double[][] serial = new double[agents.size()][];
+		for ( int i = 0; i < agents.size(); i++ )
+			serial[i] = draws(agents.get(i));
+		double[][] concurrent = new double[agents.size()][];
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try
+		{
+			pool.submit(() -> IntStream.range(0, agents.size()).parallel()
+					.forEach(i -> concurrent[i] = draws(agents.get(i)))).get();
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		Map<Double, TestAgent> first = new HashMap<Double, TestAgent>();
+		for ( int i = 0; i < agents.size(); i++ )
+		{
+			if ( ! Arrays.equals(serial[i], concurrent[i]) )
+				fail(agents.get(i).sendName()+" draws differently when "+
+												"agents draw concurrently");
+			TestAgent other = first.put(concurrent[i][0], agents.get(i));
+			if ( other != null )
+				fail(other.sendName()+" and "+agents.get(i).sendName()+
+								" draw the same values concurrently");
+		}
+		System.out.println(agents.size()+" agents drawing concurrently draw "+
+												"what they draw alone");
+	}
+
+	/**
+	 * \brief Values drawn by an agent in a sub-step, through the helpers of
+	 * ExtraMath, with the stream of the agent set for the calling thread.
+	 */
+	static double[] draws(Agent anAgent)
+	{
+		double[] out = new double[16];
+		ExtraMath.setStream(anAgent.newRandomStream(1));
+		try
+		{
+			for ( int i = 0; i < out.length; i++ )
+				out[i] = ExtraMath.getUniRandDbl();
+		}
+		finally
+		{
+			ExtraMath.setStream(null);
+		}
+		return out;
+	}
+
+	/**
+	 * \brief First value drawn from the stream of an agent.
+	 */
+	static long firstDraw(Agent anAgent)
+	{
+		return anAgent.newRandomStream(0).nextLong();
+	}
+
+	private static void fail(String message)
+	{
+		System.out.println("FAILED: "+message);
+		System.exit(1);
+	}
+}
@@ -0,0 +1,245 @@
+/**
+ * \package test
+ * \brief Package of classes used to test methods within iDynoMiCS
+ *
+ * Package of classes used to test methods within iDynoMiCS. This package is part of iDynoMiCS v1.2, governed by the
+ * CeCILL license under French law and abides by the rules of distribution of free software.  You can use, modify and/ or redistribute
+ * iDynoMiCS under the terms of the CeCILL license as circulated by CEA, CNRS and INRIA at the following URL  "http://www.cecill.info".
+ */
+package test;
+
+import simulator.SpatialGrid;
+import utils.ExtraMath;
+
+/**
+ * \brief Compares the cost of one red-black relaxation sweep on the former
+ * boxed Double[][][] grid storage and on the flat primitive storage of
+ * SpatialGrid.
+ *
+ * Both sweeps apply the same 7-point variable-diffusivity operator as
+ * MultigridSolute.relax() to every voxel inside the boundary layer. Usage:
+ *
+ * java test.GridRelaxationBenchmark [nI nJ nK [nSweep]]
+ *
+ * The default is a 65 x 65 x 65 grid relaxed 20 times. The two sweeps must
+ * give the same result; the checksum of both is printed for comparison.
+ */
+public class GridRelaxationBenchmark
+{
+	/**
+	 * Boundary layer threshold, as in MultigridSolute.
+	 */
+	private static final double BLTHRESH = 0.1;
+
+	/**
+	 * \brief Run both versions of the sweep and print the time per sweep.
+	 *
+	 * @param args	Optional grid size and number of sweeps.
+	 */
+	public static void main(String[] args)
+	{
+		int nI = 65, nJ = 65, nK = 65, nSweep = 20;
+		if ( args.length >= 3 )
+		{
+			nI = Integer.parseInt(args[0]);
+			nJ = Integer.parseInt(args[1]);
+			nK = Integer.parseInt(args[2]);
+		}
+		if ( args.length >= 4 )
+			nSweep = Integer.parseInt(args[3]);
+
+		double h2i = 0.5/(1.0*1.0);
+
+		/*
+		 * Legacy storage.
+		 */
+		Double[][][] u = ExtraMath.newDoubleArray(nI+2, nJ+2, nK+2);
+		Double[][][] rd = ExtraMath.newDoubleArray(nI+2, nJ+2, nK+2);
+		Double[][][] bl = ExtraMath.newDoubleArray(nI+2, nJ+2, nK+2);
+		Double[][][] rhs = ExtraMath.newDoubleArray(nI+2, nJ+2, nK+2);
+		Double[][][] reac = ExtraMath.newDoubleArray(nI+2, nJ+2, nK+2);
+		Double[][][] diffReac = ExtraMath.newDoubleArray(nI+2, nJ+2, nK+2);
+		/*
+		 * Flat storage.
+		 */
+		SpatialGrid gU = new SpatialGrid(nI, nJ, nK, 1.0);
+		SpatialGrid gRd = new SpatialGrid(nI, nJ, nK, 1.0);
+		SpatialGrid gBl = new SpatialGrid(nI, nJ, nK, 1.0);
+		SpatialGrid gRhs = new SpatialGrid(nI, nJ, nK, 1.0);
+		SpatialGrid gReac = new SpatialGrid(nI, nJ, nK, 1.0);
+		SpatialGrid gDiffReac = new SpatialGrid(nI, nJ, nK, 1.0);
+		/*
+		 * Same initial state in both: a biofilm filling the lower half of
+		 * the domain, with a consumption term inside it.
+		 */
+		for (int i = 0; i < nI+2; i++)
+			for (int j = 0; j < nJ+2; j++)
+				for (int k = 0; k < nK+2; k++)
+				{
+					double inBiofilm = ( i <= nI/2 ) ? 1.0 : 0.0;
+					double value = 1.0 + 0.01*((i*31 + j*17 + k*7) % 13);
+					u[i][j][k] = value;
+					gU.set(i, j, k, value);
+					rd[i][j][k] = 1.0 - 0.2*inBiofilm;
+					gRd.set(i, j, k, 1.0 - 0.2*inBiofilm);
+					bl[i][j][k] = ( i <= 3*nI/4 ) ? 1.0 : 0.0;
+					gBl.set(i, j, k, bl[i][j][k]);
+					reac[i][j][k] = -0.1*inBiofilm;
+					gReac.set(i, j, k, -0.1*inBiofilm);
+					diffReac[i][j][k] = -0.05*inBiofilm;
+					gDiffReac.set(i, j, k, -0.05*inBiofilm);
+				}
+
+		/*
+		 * Warm up both versions so that the JIT has compiled them.
+		 */
+		for (int n = 0; n < 3; n++)
+		{
+			sweepBoxed(copy(u), rd, bl, rhs, reac, diffReac, nI, nJ, nK, h2i);
+			SpatialGrid warm = new SpatialGrid(nI, nJ, nK, 1.0);
+			warm.setGrid(gU);
+			sweepFlat(warm, gRd, gBl, gRhs, gReac, gDiffReac, h2i);
+		}
+
+		long start = System.nanoTime();
+		for (int n = 0; n < nSweep; n++)
+			sweepBoxed(u, rd, bl, rhs, reac, diffReac, nI, nJ, nK, h2i);
+		double boxed = (System.nanoTime() - start)*1e-6/nSweep;
+
+		start = System.nanoTime();
+		for (int n = 0; n < nSweep; n++)
+			sweepFlat(gU, gRd, gBl, gRhs, gReac, gDiffReac, h2i);
+		double flat = (System.nanoTime() - start)*1e-6/nSweep;
+
+		double sumBoxed = 0.0;
+		for (int i = 1; i <= nI; i++)
+			for (int j = 1; j <= nJ; j++)
+				for (int k = 1; k <= nK; k++)
+					sumBoxed += u[i][j][k];
+
+		System.out.println("Grid "+nI+" x "+nJ+" x "+nK+", "+nSweep+" sweeps");
+		System.out.println("Double[][][] : "+boxed+" ms per sweep");
+		System.out.println("flat double[]: "+flat+" ms per sweep");
+		System.out.println("speed-up     : "+(boxed/flat));
+		System.out.println("checksums    : "+sumBoxed+" / "+
+					(gU.getAverage()*nI*nJ*nK));
+	}
+
+	/**
+	 * \brief Red-black relaxation sweep on the former boxed storage.
+	 */
+	private static void sweepBoxed(Double[][][] u, Double[][][] rd,
+			Double[][][] bl, Double[][][] rhs, Double[][][] reac,
+			Double[][][] diffReac, int nI, int nJ, int nK, double h2i)
+	{
+		Double lop, dlop, res;
+		Double dC, dIp, dIm, dJp, dJm, dKp, dKm;
+		int ksw = 1;
+		int isw, jsw;
+		for (int pass = 1; pass <= 2; pass++, ksw = 3-ksw)
+		{
+			jsw = ksw;
+			for (int k = 1; k <= nK; k++, jsw = 3-jsw)
+			{
+				isw = jsw;
+				for (int j = 1; j <= nJ; j++, isw = 3-isw)
+					for (int i = isw; i <= nI; i += 2)
+						if ( bl[i][j][k] >= BLTHRESH )
+						{
+							dC = rd[i][j][k];
+							dIp = rd[i+1][j][k];
+							dIm = rd[i-1][j][k];
+							dJp = rd[i][j+1][k];
+							dJm = rd[i][j-1][k];
+							dKp = rd[i][j][k+1];
+							dKm = rd[i][j][k-1];
+							lop = ((dIp+dC)*(u[i+1][j][k]-u[i][j][k])
+									+(dIm+dC)*(u[i-1][j][k]-u[i][j][k])
+									+(dJp+dC)*(u[i][j+1][k]-u[i][j][k])
+									+(dJm+dC)*(u[i][j-1][k]-u[i][j][k])
+									+(dKp+dC)*(u[i][j][k+1]-u[i][j][k])
+									+(dKm+dC)*(u[i][j][k-1]-u[i][j][k]))
+									*h2i + reac[i][j][k];
+							dlop = -h2i*(6.0*dC+dIp+dIm+dJp+dJm+dKp+dKm)
+									+ diffReac[i][j][k];
+							res = (lop - rhs[i][j][k])/dlop;
+							u[i][j][k] -= res;
+							u[i][j][k] = (u[i][j][k] < 0 ? 0 : u[i][j][k]);
+						}
+			}
+		}
+	}
+
+	/**
+	 * \brief Red-black relaxation sweep on the flat storage of SpatialGrid.
+	 */
+	private static void sweepFlat(SpatialGrid gU, SpatialGrid gRd,
+			SpatialGrid gBl, SpatialGrid gRhs, SpatialGrid gReac,
+			SpatialGrid gDiffReac, double h2i)
+	{
+		double[] u = gU.getFlatGrid();
+		double[] rd = gRd.getFlatGrid();
+		double[] bl = gBl.getFlatGrid();
+		double[] rhs = gRhs.getFlatGrid();
+		double[] reac = gReac.getFlatGrid();
+		double[] diffReac = gDiffReac.getFlatGrid();
+		int nI = gU.getGridSizeI();
+		int nJ = gU.getGridSizeJ();
+		int nK = gU.getGridSizeK();
+		int sI = gU.getStrideI();
+		int sJ = gU.getStrideJ();
+		double lop, dlop, res;
+		double dC, dIp, dIm, dJp, dJm, dKp, dKm;
+		int index;
+		int ksw = 1;
+		int isw, jsw;
+		for (int pass = 1; pass <= 2; pass++, ksw = 3-ksw)
+		{
+			jsw = ksw;
+			for (int k = 1; k <= nK; k++, jsw = 3-jsw)
+			{
+				isw = jsw;
+				for (int j = 1; j <= nJ; j++, isw = 3-isw)
+					for (int i = isw; i <= nI; i += 2)
+					{
+						index = gU.index(i, j, k);
+						if ( bl[index] >= BLTHRESH )
+						{
+							dC = rd[index];
+							dIp = rd[index+sI];
+							dIm = rd[index-sI];
+							dJp = rd[index+sJ];
+							dJm = rd[index-sJ];
+							dKp = rd[index+1];
+							dKm = rd[index-1];
+							lop = ((dIp+dC)*(u[index+sI]-u[index])
+									+(dIm+dC)*(u[index-sI]-u[index])
+									+(dJp+dC)*(u[index+sJ]-u[index])
+									+(dJm+dC)*(u[index-sJ]-u[index])
+									+(dKp+dC)*(u[index+1]-u[index])
+									+(dKm+dC)*(u[index-1]-u[index]))
+									*h2i + reac[index];
+							dlop = -h2i*(6.0*dC+dIp+dIm+dJp+dJm+dKp+dKm)
+									+ diffReac[index];
+							res = (lop - rhs[index])/dlop;
+							u[index] -= res;
+							u[index] = (u[index] < 0 ? 0 : u[index]);
+						}
+					}
+			}
+		}
+	}
+
+	/**
+	 * \brief Deep copy of a boxed grid, used for the warm-up runs.
+	 */
+	private static Double[][][] copy(Double[][][] a)
+	{
+		Double[][][] out = new Double[a.length][a[0].length][a[0][0].length];
+		for (int i = 0; i < a.length; i++)
+			for (int j = 0; j < a[i].length; j++)
+				for (int k = 0; k < a[i][j].length; k++)
+					out[i][j][k] = a[i][j][k];
+		return out;
+	}
+}
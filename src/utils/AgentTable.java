@@ -0,0 +1,242 @@
+/**
+ * \package utils
+ * \brief Package of classes that perform utility functions in the process of running an iDynoMiCS Simulation
+ *
+ * Package of classes that perform utility functions in the process of running an iDynoMiCS Simulation. This package is part of iDynoMiCS v1.2, governed by the
+ * CeCILL license under French law and abides by the rules of distribution of free software.  You can use, modify and/ or redistribute
+ * iDynoMiCS under the terms of the CeCILL license as circulated by CEA, CNRS and INRIA at the following URL  "http://www.cecill.info".
+ */
+package utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * \brief Values of agents written to a result file, kept as numbers until
+ * they are formatted.
+ *
+ * Agents add their values in the order of their header (see
+ * Agent.writeOutput(AgentTable)), and each row is ended with endRow(). Each
+ * value is later formatted as StringBuffer.append() would have formatted it,
+ * so that the rows can be captured on the simulation thread and turned into
+ * text on the thread writing the file (see ResultFile.setWriter()).
+ */
+public class AgentTable
+{
+	/**
+	 * Types of the values (see getType()).
+	 */
+	public static final byte LONG = 0, DOUBLE = 1, OBJECT = 2;
+
+	/**
+	 * Type of each value, in the order they were added.
+	 */
+	private byte[] _types = new byte[64];
+
+	/**
+	 * Each value: a long, the bits of a double, or the position of an
+	 * object in _objects.
+	 */
+	private long[] _values = new long[64];
+
+	/**
+	 * Values that are not numbers.
+	 */
+	private List<Object> _objects = new ArrayList<Object>();
+
+	/**
+	 * Number of values added.
+	 */
+	private int _size = 0;
+
+	/**
+	 * Number of values added at the end of each row.
+	 */
+	private int[] _rowEnds = new int[16];
+
+	/**
+	 * Number of rows ended.
+	 */
+	private int _nRows = 0;
+
+	private void put(byte type, long value)
+	{
+		if ( _size == _types.length )
+		{
+			_types = Arrays.copyOf(_types, 2*_size);
+			_values = Arrays.copyOf(_values, 2*_size);
+		}
+		_types[_size] = type;
+		_values[_size] = value;
+		_size++;
+	}
+
+	/**
+	 * \brief Add an integer value to the current row.
+	 *
+	 * @param value	Value to add.
+	 * @return	This table.
+	 */
+	public AgentTable add(long value)
+	{
+		put(LONG, value);
+		return this;
+	}
+
+	/**
+	 * \brief Add a real value to the current row.
+	 *
+	 * @param value	Value to add.
+	 * @return	This table.
+	 */
+	public AgentTable add(double value)
+	{
+		put(DOUBLE, Double.doubleToRawLongBits(value));
+		return this;
+	}
+
+	/**
+	 * \brief Add a real value to the current row, written "null" if null.
+	 *
+	 * @param value	Value to add.
+	 * @return	This table.
+	 */
+	public AgentTable add(Double value)
+	{
+		return ( value == null ) ? add((Object) null) : add(value.doubleValue());
+	}
+
+	/**
+	 * \brief Add a value to the current row, written with String.valueOf().
+	 *
+	 * The object is kept until the row is formatted, so it must not change
+	 * in the meantime (e.g. a String or a BigInteger).
+	 *
+	 * @param value	Value to add.
+	 * @return	This table.
+	 */
+	public AgentTable add(Object value)
+	{
+		put(OBJECT, _objects.size());
+		_objects.add(value);
+		return this;
+	}
+
+	/**
+	 * \brief End the current row.
+	 */
+	public void endRow()
+	{
+		if ( _nRows == _rowEnds.length )
+			_rowEnds = Arrays.copyOf(_rowEnds, 2*_nRows);
+		_rowEnds[_nRows++] = _size;
+	}
+
+	/**
+	 * \brief Number of rows ended.
+	 */
+	public int getRowCount()
+	{
+		return _nRows;
+	}
+
+	/**
+	 * \brief Position of the first value of a row.
+	 *
+	 * @param row	Index of the row.
+	 * @return	Position of its first value, for getType() and the getters.
+	 */
+	public int getRowStart(int row)
+	{
+		return ( row == 0 ) ? 0 : _rowEnds[row - 1];
+	}
+
+	/**
+	 * \brief Position after the last value of a row.
+	 *
+	 * @param row	Index of the row.
+	 * @return	Position of the first value of the next row.
+	 */
+	public int getRowEnd(int row)
+	{
+		return _rowEnds[row];
+	}
+
+	/**
+	 * \brief Type a value was added as: LONG, DOUBLE or OBJECT.
+	 *
+	 * @param n	Position of the value.
+	 */
+	public byte getType(int n)
+	{
+		return _types[n];
+	}
+
+	/**
+	 * \brief Value added as an integer.
+	 *
+	 * @param n	Position of a value of type LONG.
+	 */
+	public long getLong(int n)
+	{
+		return _values[n];
+	}
+
+	/**
+	 * \brief Value added as a real.
+	 *
+	 * @param n	Position of a value of type DOUBLE.
+	 */
+	public double getDouble(int n)
+	{
+		return Double.longBitsToDouble(_values[n]);
+	}
+
+	/**
+	 * \brief Value added as an object.
+	 *
+	 * @param n	Position of a value of type OBJECT.
+	 */
+	public Object getObject(int n)
+	{
+		return _objects.get((int) _values[n]);
+	}
+
+	/**
+	 * \brief Append the comma-separated values of a row.
+	 *
+	 * @param row	Index of the row.
+	 * @param out	Text to append them to.
+	 */
+	public void appendRow(int row, StringBuilder out)
+	{
+		int start = getRowStart(row);
+		for ( int n = start; n < _rowEnds[row]; n++ )
+		{
+			if ( n > start )
+				out.append(',');
+			switch ( _types[n] )
+			{
+			case LONG:
+				out.append(_values[n]);
+				break;
+			case DOUBLE:
+				out.append(getDouble(n));
+				break;
+			default:
+				out.append(getObject(n));
+			}
+		}
+	}
+
+	/**
+	 * \brief Remove all the rows.
+	 */
+	public void clear()
+	{
+		_size = 0;
+		_nRows = 0;
+		_objects.clear();
+	}
+}
@@ -0,0 +1,441 @@
+/**
+ * \package utils
+ * \brief Package of classes that perform utility functions in the process of running an iDynoMiCS Simulation
+ *
+ * Package of classes that perform utility functions in the process of running an iDynoMiCS Simulation. This package is part of iDynoMiCS v1.2, governed by the
+ * CeCILL license under French law and abides by the rules of distribution of free software.  You can use, modify and/ or redistribute
+ * iDynoMiCS under the terms of the CeCILL license as circulated by CEA, CNRS and INRIA at the following URL  "http://www.cecill.info".
+ */
+package utils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * \brief Rebuilds the XML result files from a binary result file written by
+ * BinaryResultFile.
+ *
+ * Usage: java utils.BinaryResultConverter prefix.bin [outputDir [iterate]]
+ *
+ * Each iteration is written to outputDir/prefix(iterate).xml, the directory
+ * of the binary file by default, exactly as the XML result file would have
+ * been written. If an iterate is given, only this iteration is converted;
+ * "last" converts the last one to prefix(last).xml, e.g. in the lastIter
+ * directory to restart a simulation.
+ *
+ * Records are read through small buffers as they are written out, so an
+ * iteration, a grid or a species table is never held in memory at once.
+ */
+public class BinaryResultConverter
+{
+	/**
+	 * Data file being converted.
+	 */
+	private FileChannel _data;
+
+	/**
+	 * Iterations found in the index, in the order they were written.
+	 */
+	private List<Entry> _iterations = new ArrayList<Entry>();
+
+	/**
+	 * Grid and species records found in the index, by offset.
+	 */
+	private Map<Long, Entry> _records = new HashMap<Long, Entry>();
+
+	/**
+	 * Size of the buffer reading an iteration, and of the buffer reading
+	 * each column of a species table.
+	 */
+	private static final int BUFFER = 1 << 16, COLUMN_BUFFER = 1 << 13;
+
+	/**
+	 * \brief Entry of the index of a binary result file.
+	 */
+	private static class Entry
+	{
+		int iterate;
+
+		double time;
+
+		byte type;
+
+		long offset;
+
+		long length;
+
+		String name;
+	}
+
+	/**
+	 * \brief Open a binary result file and read its index.
+	 *
+	 * @param dataFile	Path of the .bin file; the .idx file must be next to it.
+	 * @throws IOException	If the files cannot be read or are not result files.
+	 */
+	public BinaryResultConverter(String dataFile) throws IOException
+	{
+		String prefix = dataFile.substring(0, dataFile.length() - 4);
+		_data = FileChannel.open(Paths.get(dataFile), StandardOpenOption.READ);
+		ByteBuffer header = read(0, 12);
+		checkMagic(header, BinaryResultFile.DATA_MAGIC, dataFile);
+		ByteBuffer index = ByteBuffer.wrap(
+					Files.readAllBytes(Paths.get(prefix+".idx")))
+					.order(ByteOrder.LITTLE_ENDIAN);
+		checkMagic(index, BinaryResultFile.INDEX_MAGIC, prefix+".idx");
+		Entry anEntry;
+		while ( index.hasRemaining() )
+		{
+			anEntry = new Entry();
+			anEntry.iterate = index.getInt();
+			anEntry.time = index.getDouble();
+			anEntry.type = index.get();
+			anEntry.offset = index.getLong();
+			anEntry.length = index.getLong();
+			anEntry.name = getString(index);
+			if ( anEntry.type == BinaryResultFile.ITERATION )
+				_iterations.add(anEntry);
+			else
+				_records.put(anEntry.offset, anEntry);
+		}
+	}
+
+	private static void checkMagic(ByteBuffer buffer, String magic,
+										String fileName) throws IOException
+	{
+		byte[] bytes = new byte[magic.length()];
+		buffer.get(bytes);
+		int version = buffer.getInt();
+		if ( ! magic.equals(new String(bytes, StandardCharsets.US_ASCII)) ||
+								version != BinaryResultFile.VERSION )
+			throw new IOException(fileName+" is not a binary result file"+
+							" of version "+BinaryResultFile.VERSION);
+	}
+
+	/**
+	 * \brief Read a part of the data file.
+	 *
+	 * @param offset	Offset of the first byte.
+	 * @param length	Number of bytes.
+	 * @return	Little-endian buffer holding these bytes.
+	 * @throws IOException	If the data file is too short.
+	 */
+	private ByteBuffer read(long offset, int length) throws IOException
+	{
+		ByteBuffer out = ByteBuffer.allocate(length)
+											.order(ByteOrder.LITTLE_ENDIAN);
+		while ( out.hasRemaining() )
+			if ( _data.read(out, offset + out.position()) < 0 )
+				throw new IOException("Binary result file is truncated");
+		out.flip();
+		return out;
+	}
+
+	private static String getString(ByteBuffer buffer)
+	{
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * \brief Sequential reader of the data file, from a given offset,
+	 * through a buffer of fixed size.
+	 */
+	private class Cursor
+	{
+		private ByteBuffer _buffer;
+
+		/**
+		 * Offset in the data file of the first byte not yet buffered.
+		 */
+		private long _next;
+
+		Cursor(long offset, int capacity)
+		{
+			_buffer = ByteBuffer.allocate(capacity)
+											.order(ByteOrder.LITTLE_ENDIAN);
+			seek(offset);
+		}
+
+		/**
+		 * \brief Offset in the data file of the next byte read.
+		 */
+		long offset()
+		{
+			return _next - _buffer.remaining();
+		}
+
+		void seek(long offset)
+		{
+			_next = offset;
+			_buffer.clear().limit(0);
+		}
+
+		/**
+		 * \brief Make sure n bytes are buffered, n being at most the
+		 * capacity of the buffer.
+		 */
+		private void need(int n) throws IOException
+		{
+			if ( _buffer.remaining() >= n )
+				return;
+			_buffer.compact();
+			int count;
+			while ( _buffer.position() < n )
+			{
+				count = _data.read(_buffer, _next);
+				if ( count < 0 )
+					throw new IOException("Binary result file is truncated");
+				_next += count;
+			}
+			_buffer.flip();
+		}
+
+		byte get() throws IOException
+		{
+			need(1);
+			return _buffer.get();
+		}
+
+		int getInt() throws IOException
+		{
+			need(4);
+			return _buffer.getInt();
+		}
+
+		long getLong() throws IOException
+		{
+			need(8);
+			return _buffer.getLong();
+		}
+
+		double getDouble() throws IOException
+		{
+			need(8);
+			return _buffer.getDouble();
+		}
+
+		String getString() throws IOException
+		{
+			byte[] bytes = new byte[getInt()];
+			int count;
+			for ( int done = 0; done < bytes.length; done += count )
+			{
+				need(1);
+				count = Math.min(_buffer.remaining(), bytes.length - done);
+				_buffer.get(bytes, done, count);
+			}
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * \brief Skip a column of a species table, whose type was read.
+		 */
+		void skipColumn(byte type, int nRows) throws IOException
+		{
+			if ( type == BinaryResultFile.STRING )
+				for ( int r = 0; r < nRows; r++ )
+					skip(getInt());
+			else
+				skip(8L*nRows);
+		}
+
+		private void skip(long n)
+		{
+			if ( n <= _buffer.remaining() )
+				_buffer.position(_buffer.position() + (int) n);
+			else
+				seek(offset() + n);
+		}
+
+		/**
+		 * \brief Read the next value of a species column as in the XML.
+		 */
+		String getValue(byte type) throws IOException
+		{
+			if ( type == BinaryResultFile.LONG )
+				return Long.toString(getLong());
+			if ( type == BinaryResultFile.DOUBLE )
+				return Double.toString(getDouble());
+			return getString();
+		}
+	}
+
+	/**
+	 * \brief Write one iteration as an XML result file.
+	 *
+	 * Grid and species records are located with their index entries, and
+	 * the reading goes on after them.
+	 *
+	 * @param iteration	Index entry of the iteration.
+	 * @param out	Writer of the XML file, in the charset of ResultFile.
+	 * @throws IOException	If the files cannot be read or written.
+	 */
+	private void writeIteration(Entry iteration, Writer out)
+															throws IOException
+	{
+		Cursor in = new Cursor(iteration.offset, BUFFER);
+		in.get();
+		int iterate = in.getInt();
+		double time = in.getDouble();
+		out.write("<idynomics>\n <simulation iterate=\""+iterate+
+								"\" time=\""+time+"\" unit=\"hour\">\n");
+		byte type;
+		Entry aRecord;
+		while ( (type = in.get()) != BinaryResultFile.END )
+		{
+			if ( type == BinaryResultFile.TEXT )
+			{
+				out.write(in.getString());
+				continue;
+			}
+			aRecord = _records.get(in.offset() - 1);
+			if ( aRecord == null || aRecord.type != type )
+				throw new IOException("Record of type "+type+" at offset "+
+								(in.offset() - 1)+" is not in the index");
+			if ( type == BinaryResultFile.GRID )
+				writeGrid(in, out);
+			else
+				writeSpecies(aRecord, out);
+			in.seek(aRecord.offset + aRecord.length);
+		}
+		out.write("\n</simulation>\n</idynomics>");
+	}
+
+	/**
+	 * \brief Write a GRID record as in SpatialGrid.writeReport().
+	 */
+	private static void writeGrid(Cursor in, Writer out) throws IOException
+	{
+		StringBuilder text = new StringBuilder("<solute name=\"");
+		text.append(in.getString());
+		text.append("\" unit=\"").append(in.getString());
+		text.append("\" resolution=\"").append(in.getDouble());
+		text.append("\" nI=\"").append(in.getInt());
+		text.append("\" nJ=\"").append(in.getInt());
+		text.append("\" nK=\"").append(in.getInt());
+		text.append("\">\n");
+		out.write(text.toString());
+		int nValues = in.getInt();
+		for ( int n = 0; n < nValues; n++ )
+			out.write(Double.toString(in.getDouble())+";\n");
+		out.write("\n</solute>\n");
+	}
+
+	/**
+	 * \brief Write a SPECIES record as in AgentContainer.writeReport().
+	 *
+	 * The columns are stored one after the other: each is read by its own
+	 * cursor, so that the rows are written as they are read.
+	 *
+	 * @param species	Index entry of the record.
+	 * @param out	Writer of the XML file.
+	 * @throws IOException	If the files cannot be read or written.
+	 */
+	private void writeSpecies(Entry species, Writer out) throws IOException
+	{
+		Cursor in = new Cursor(species.offset + 1, COLUMN_BUFFER);
+		out.write("<species name=\""+in.getString()+
+									"\" header=\""+in.getString()+"\" >\n");
+		int nRows = in.getInt();
+		int nColumns = in.getInt();
+		byte[] types = new byte[nColumns];
+		Cursor[] columns = new Cursor[nColumns];
+		for ( int i = 0; i < nColumns; i++ )
+		{
+			types[i] = in.get();
+			columns[i] = new Cursor(in.offset(), COLUMN_BUFFER);
+			if ( i < nColumns - 1 )
+				in.skipColumn(types[i], nRows);
+		}
+		StringBuilder row = new StringBuilder();
+		for ( int r = 0; r < nRows; r++ )
+		{
+			row.setLength(0);
+			for ( int i = 0; i < nColumns; i++ )
+			{
+				if ( i > 0 )
+					row.append(',');
+				row.append(columns[i].getValue(types[i]));
+			}
+			row.append(";\n");
+			out.write(row.toString());
+		}
+		out.write("</species>\n");
+	}
+
+	/**
+	 * \brief Write one iteration to an XML file.
+	 *
+	 * @param iteration	Index entry of the iteration.
+	 * @param fileName	Path of the XML file.
+	 * @throws IOException	If the files cannot be read or written.
+	 */
+	private void convert(Entry iteration, String fileName) throws IOException
+	{
+		Writer out = new OutputStreamWriter(
+				new BufferedOutputStream(new FileOutputStream(fileName)));
+		try
+		{
+			writeIteration(iteration, out);
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * \brief Convert a binary result file to XML files.
+	 *
+	 * @param args	Binary file, then optionally the output directory and
+	 * the iterate to convert (or "last").
+	 * @throws IOException	If the files cannot be read or written.
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		if ( args.length == 0 )
+		{
+			System.out.println("Usage: java utils.BinaryResultConverter"+
+									" prefix.bin [outputDir [iterate|last]]");
+			return;
+		}
+		File dataFile = new File(args[0]);
+		String prefix = dataFile.getName().replaceFirst("\\.bin$", "");
+		String outDir = ( args.length > 1 ) ? args[1] :
+										dataFile.getAbsoluteFile().getParent();
+		BinaryResultConverter converter = new BinaryResultConverter(args[0]);
+		List<Entry> iterations = converter._iterations;
+		for ( int n = 0; n < iterations.size(); n++ )
+		{
+			Entry anIteration = iterations.get(n);
+			String suffix = Integer.toString(anIteration.iterate);
+			if ( args.length > 2 )
+			{
+				if ( args[2].equals("last") && n == iterations.size() - 1 )
+					suffix = "last";
+				else if ( ! args[2].equals(suffix) )
+					continue;
+			}
+			converter.convert(anIteration,
+					outDir+File.separator+prefix+"("+suffix+").xml");
+		}
+		converter._data.close();
+	}
+}
@@ -0,0 +1,593 @@
+/**
+ * \package utils
+ * \brief Package of classes that perform utility functions in the process of running an iDynoMiCS Simulation
+ *
+ * Package of classes that perform utility functions in the process of running an iDynoMiCS Simulation. This package is part of iDynoMiCS v1.2, governed by the
+ * CeCILL license under French law and abides by the rules of distribution of free software.  You can use, modify and/ or redistribute
+ * iDynoMiCS under the terms of the CeCILL license as circulated by CEA, CNRS and INRIA at the following URL  "http://www.cecill.info".
+ */
+package utils;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * \brief Binary counterpart of the XML result files, with an index for
+ * random access.
+ *
+ * All the iterations of a result file are appended to prefix.bin, and an
+ * entry is added to prefix.idx for each iteration, solute grid and species
+ * written. All numbers are little-endian. Both files start with a magic
+ * string and the format version; the data file then holds records, each
+ * starting with its type:
+ *
+ * - ITERATION: iterate (int) and time (double), opening an iteration.
+ * - TEXT: mark-up written as is (string).
+ * - GRID: name and unit (strings), resolution (double), nI, nJ, nK and the
+ * number of values (ints), then the values (doubles) in the order of the XML.
+ * - SPECIES: name and header (strings), number of rows and of columns (ints),
+ * then each column: its type (byte) and its values (longs, doubles or
+ * strings). A column is stored as numbers if all its values were added to
+ * the AgentTable as integers, or all as reals; integers added as objects
+ * (e.g. a genealogy) count as integers if they fit in a long. Other columns
+ * hold each value as String.valueOf() writes it in the XML.
+ * - END: closes the iteration.
+ *
+ * Strings are stored as their length in bytes (int) and their UTF-8 bytes.
+ * An index entry holds the iterate (int), time (double), record type (byte),
+ * offset and length of the record in the data file (longs) and name (string).
+ * Iterations are indexed from their ITERATION record to their END record.
+ *
+ * BinaryResultConverter turns these files back into the XML files.
+ */
+public class BinaryResultFile
+{
+	/**
+	 * Magic string at the start of the data file.
+	 */
+	public static final String DATA_MAGIC = "IDYNOBIN";
+
+	/**
+	 * Magic string at the start of the index file.
+	 */
+	public static final String INDEX_MAGIC = "IDYNOIDX";
+
+	/**
+	 * Version of the format, written after the magic strings.
+	 */
+	public static final int VERSION = 1;
+
+	/**
+	 * Record types.
+	 */
+	public static final byte ITERATION = 'I', TEXT = 'T', GRID = 'G',
+											SPECIES = 'S', END = 'E';
+
+	/**
+	 * Column types of a species record.
+	 */
+	public static final byte LONG = 1, DOUBLE = 2, STRING = 3;
+
+	/**
+	 * Data and index files, opened for appending.
+	 */
+	private FileChannel _data, _index;
+
+	/**
+	 * Bytes waiting to be written to each file.
+	 */
+	private ByteBuffer _dataBuffer, _indexBuffer;
+
+	/**
+	 * Offset in the data file of the first byte in _dataBuffer.
+	 */
+	private long _flushed;
+
+	/**
+	 * Iterate and time of the iteration being written.
+	 */
+	private int _iterate;
+
+	private double _time;
+
+	/**
+	 * Offset in the data file of the ITERATION record being written.
+	 */
+	private long _iterationStart;
+
+	/**
+	 * Mark-up written since the last record, gathered in a single TEXT
+	 * record.
+	 */
+	private StringBuilder _text = new StringBuilder();
+
+	/**
+	 * Name and header of the species whose agents are being written.
+	 */
+	private String _speciesName, _speciesHeader;
+
+	/**
+	 * Columns of the species being written, null if no row was written yet.
+	 */
+	private Column[] _columns;
+
+	/**
+	 * Number of rows of the species being written.
+	 */
+	private int _nRows;
+
+	/**
+	 * \brief Open the data and index files with the given path prefix,
+	 * appending to them if they exist.
+	 *
+	 * @param path	Path of the files, without the extension.
+	 * @throws IOException	If the files cannot be opened.
+	 */
+	public BinaryResultFile(String path) throws IOException
+	{
+		_dataBuffer = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+		_indexBuffer = ByteBuffer.allocate(1 << 12).order(ByteOrder.LITTLE_ENDIAN);
+		_data = open(path+".bin");
+		_index = open(path+".idx");
+		_flushed = _data.size();
+		if ( _flushed == 0 )
+		{
+			_dataBuffer.put(DATA_MAGIC.getBytes(StandardCharsets.US_ASCII));
+			_dataBuffer.putInt(VERSION);
+		}
+		if ( _index.size() == 0 )
+		{
+			_indexBuffer.put(INDEX_MAGIC.getBytes(StandardCharsets.US_ASCII));
+			_indexBuffer.putInt(VERSION);
+		}
+	}
+
+	private static FileChannel open(String fileName) throws IOException
+	{
+		return FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+						StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+	}
+
+	/**
+	 * \brief Start a new iteration.
+	 *
+	 * @param iterate	Simulation iterate.
+	 * @param time	Simulation time (hours).
+	 */
+	public void openIteration(int iterate, double time)
+	{
+		_iterate = iterate;
+		_time = time;
+		_iterationStart = position();
+		ensure(13);
+		_dataBuffer.put(ITERATION).putInt(iterate).putDouble(time);
+	}
+
+	/**
+	 * \brief Add mark-up to the current iteration.
+	 *
+	 * @param text	Text to add, as it should appear in the XML file.
+	 */
+	public void writeText(CharSequence text)
+	{
+		_text.append(text);
+	}
+
+	/**
+	 * \brief Write a solute grid.
+	 *
+	 * @param name	Name of the grid.
+	 * @param unit	Unit of the values.
+	 * @param resolution	Resolution of the grid (micrometers).
+	 * @param nI	Number of voxels along I.
+	 * @param nJ	Number of voxels along J.
+	 * @param nK	Number of voxels along K.
+	 * @param values	Values, in the order they are written in the XML.
+	 */
+	public void writeGrid(String name, String unit, double resolution,
+								int nI, int nJ, int nK, double[] values)
+	{
+		flushText();
+		long start = position();
+		ensure(1);
+		_dataBuffer.put(GRID);
+		putString(name);
+		putString(unit);
+		ensure(24);
+		_dataBuffer.putDouble(resolution);
+		_dataBuffer.putInt(nI).putInt(nJ).putInt(nK).putInt(values.length);
+		for ( double v : values )
+		{
+			ensure(8);
+			_dataBuffer.putDouble(v);
+		}
+		addToIndex(GRID, start, name);
+	}
+
+	/**
+	 * \brief Start the table of the agents of a species.
+	 *
+	 * @param name	Name of the species.
+	 * @param header	Comma-separated names of the columns.
+	 */
+	public void openSpecies(String name, String header)
+	{
+		flushText();
+		_speciesName = name;
+		_speciesHeader = header;
+		_columns = null;
+		_nRows = 0;
+	}
+
+	/**
+	 * \brief Add the agents of a table, one per row, to the table of the
+	 * current species.
+	 *
+	 * The values are stored as they were added to the table, without going
+	 * through their text. If agents do not all have the same number of
+	 * values, the table falls back to a single column holding whole rows.
+	 *
+	 * @param agents	Values of the agents.
+	 */
+	public void writeRows(AgentTable agents)
+	{
+		StringBuilder line = new StringBuilder();
+		int start, nFields;
+		for ( int r = 0; r < agents.getRowCount(); r++ )
+		{
+			start = agents.getRowStart(r);
+			nFields = agents.getRowEnd(r) - start;
+			if ( _columns == null )
+			{
+				_columns = new Column[nFields];
+				for ( int i = 0; i < nFields; i++ )
+					_columns[i] = new Column();
+			}
+			else if ( _columns.length != nFields && _columns.length > 1 )
+				joinColumns();
+			if ( _columns.length != nFields )
+			{
+				line.setLength(0);
+				agents.appendRow(r, line);
+				_columns[0].addString(line.toString());
+			}
+			else
+				for ( int i = 0; i < nFields; i++ )
+					_columns[i].add(agents, start + i);
+			_nRows++;
+		}
+	}
+
+	/**
+	 * \brief Replace the columns of the current species by a single column
+	 * of whole rows.
+	 */
+	private void joinColumns()
+	{
+		Column rows = new Column();
+		StringBuilder line = new StringBuilder();
+		for ( int r = 0; r < _nRows; r++ )
+		{
+			line.setLength(0);
+			for ( int i = 0; i < _columns.length; i++ )
+			{
+				if ( i > 0 )
+					line.append(',');
+				line.append(_columns[i].getString(r));
+			}
+			rows.addString(line.toString());
+		}
+		_columns = new Column[] { rows };
+	}
+
+	/**
+	 * \brief Write the table of the current species.
+	 */
+	public void closeSpecies()
+	{
+		long start = position();
+		ensure(1);
+		_dataBuffer.put(SPECIES);
+		putString(_speciesName);
+		putString(_speciesHeader);
+		Column[] columns = ( _columns == null ) ? new Column[0] : _columns;
+		ensure(8);
+		_dataBuffer.putInt(_nRows).putInt(columns.length);
+		for ( Column aColumn : columns )
+			aColumn.write(this, _nRows);
+		addToIndex(SPECIES, start, _speciesName);
+		_columns = null;
+	}
+
+	/**
+	 * \brief End the current iteration and write everything to the files.
+	 *
+	 * @throws IOException	If the files cannot be written.
+	 */
+	public void closeIteration() throws IOException
+	{
+		flushText();
+		ensure(1);
+		_dataBuffer.put(END);
+		addToIndex(ITERATION, _iterationStart, "");
+		flush();
+		flushIndex();
+	}
+
+	/**
+	 * \brief Close the data and index files, once the last iteration is
+	 * closed.
+	 *
+	 * @throws IOException	If the files cannot be closed.
+	 */
+	public void close() throws IOException
+	{
+		_data.close();
+		_index.close();
+	}
+
+	/**
+	 * \brief Write the mark-up gathered since the last record, if any.
+	 */
+	private void flushText()
+	{
+		if ( _text.length() == 0 )
+			return;
+		ensure(1);
+		_dataBuffer.put(TEXT);
+		putString(_text.toString());
+		_text.setLength(0);
+	}
+
+	/**
+	 * \brief Add an entry to the index for the record from start to the
+	 * current position.
+	 */
+	private void addToIndex(byte type, long start, String name)
+	{
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		if ( _indexBuffer.remaining() < 33 + bytes.length )
+			flushIndex();
+		if ( _indexBuffer.remaining() < 33 + bytes.length )
+			_indexBuffer = ByteBuffer.allocate(33 + bytes.length)
+										.order(ByteOrder.LITTLE_ENDIAN);
+		_indexBuffer.putInt(_iterate).putDouble(_time).put(type);
+		_indexBuffer.putLong(start).putLong(position() - start);
+		_indexBuffer.putInt(bytes.length).put(bytes);
+	}
+
+	/**
+	 * \brief Offset in the data file of the next byte written.
+	 */
+	private long position()
+	{
+		return _flushed + _dataBuffer.position();
+	}
+
+	/**
+	 * \brief Make room for n bytes in the data buffer, n being at most its
+	 * capacity.
+	 */
+	private void ensure(int n)
+	{
+		if ( _dataBuffer.remaining() < n )
+			flush();
+	}
+
+	void putLong(long v)
+	{
+		ensure(8);
+		_dataBuffer.putLong(v);
+	}
+
+	void putDouble(double v)
+	{
+		ensure(8);
+		_dataBuffer.putDouble(v);
+	}
+
+	void putByte(byte v)
+	{
+		ensure(1);
+		_dataBuffer.put(v);
+	}
+
+	void putString(String s)
+	{
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		ensure(4);
+		_dataBuffer.putInt(bytes.length);
+		if ( bytes.length <= _dataBuffer.remaining() )
+			_dataBuffer.put(bytes);
+		else
+		{
+			flush();
+			write(_data, ByteBuffer.wrap(bytes));
+			_flushed += bytes.length;
+		}
+	}
+
+	/**
+	 * \brief Write the data buffer to the data file.
+	 */
+	private void flush()
+	{
+		_dataBuffer.flip();
+		_flushed += _dataBuffer.remaining();
+		write(_data, _dataBuffer);
+		_dataBuffer.clear();
+	}
+
+	/**
+	 * \brief Write the index buffer to the index file.
+	 */
+	private void flushIndex()
+	{
+		_indexBuffer.flip();
+		write(_index, _indexBuffer);
+		_indexBuffer.clear();
+	}
+
+	private static void write(FileChannel channel, ByteBuffer bytes)
+	{
+		try
+		{
+			while ( bytes.hasRemaining() )
+				channel.write(bytes);
+		}
+		catch (IOException e)
+		{
+			LogFile.writeError(e, "BinaryResultFile.write()");
+		}
+	}
+
+	/**
+	 * \brief Values of one column of a species table, stored as numbers
+	 * while they are all of the same kind.
+	 */
+	private static class Column
+	{
+		byte type = 0;
+
+		int size = 0;
+
+		long[] longs;
+
+		double[] doubles;
+
+		String[] strings;
+
+		/**
+		 * \brief Add a value of a table, as the type it was added with.
+		 */
+		void add(AgentTable agents, int n)
+		{
+			switch ( agents.getType(n) )
+			{
+			case AgentTable.LONG:
+				addLong(agents.getLong(n));
+				break;
+			case AgentTable.DOUBLE:
+				addDouble(agents.getDouble(n));
+				break;
+			default:
+				Object value = agents.getObject(n);
+				if ( value instanceof Long || value instanceof Integer ||
+						value instanceof Short || value instanceof Byte )
+					addLong(((Number) value).longValue());
+				else if ( value instanceof BigInteger &&
+									((BigInteger) value).bitLength() < 64 )
+					addLong(((BigInteger) value).longValue());
+				else
+					addString(String.valueOf(value));
+			}
+		}
+
+		void addLong(long value)
+		{
+			if ( ! accept(LONG) )
+			{
+				addString(Long.toString(value));
+				return;
+			}
+			if ( longs == null || size == longs.length )
+				longs = grow(longs);
+			longs[size++] = value;
+		}
+
+		void addDouble(double value)
+		{
+			if ( ! accept(DOUBLE) )
+			{
+				addString(Double.toString(value));
+				return;
+			}
+			if ( doubles == null || size == doubles.length )
+				doubles = grow(doubles);
+			doubles[size++] = value;
+		}
+
+		void addString(String value)
+		{
+			accept(STRING);
+			if ( strings == null || size == strings.length )
+				strings = ( strings == null ) ? new String[16] :
+									Arrays.copyOf(strings, 2*size);
+			strings[size++] = value;
+		}
+
+		/**
+		 * \brief Whether a value of the given type can be stored as is,
+		 * switching this column to strings if it cannot.
+		 */
+		private boolean accept(byte valueType)
+		{
+			if ( type == 0 )
+				type = valueType;
+			else if ( type != valueType && type != STRING )
+				toStrings();
+			return type == valueType;
+		}
+
+		String getString(int row)
+		{
+			switch ( type )
+			{
+			case LONG:
+				return Long.toString(longs[row]);
+			case DOUBLE:
+				return Double.toString(doubles[row]);
+			default:
+				return strings[row];
+			}
+		}
+
+		/**
+		 * \brief Switch this column to strings, once a value cannot be
+		 * stored as a number.
+		 */
+		private void toStrings()
+		{
+			strings = new String[Math.max(16, 2*size)];
+			for ( int r = 0; r < size; r++ )
+				strings[r] = getString(r);
+			longs = null;
+			doubles = null;
+			type = STRING;
+		}
+
+		void write(BinaryResultFile file, int nRows)
+		{
+			file.putByte(type);
+			for ( int r = 0; r < nRows; r++ )
+				switch ( type )
+				{
+				case LONG:
+					file.putLong(longs[r]);
+					break;
+				case DOUBLE:
+					file.putDouble(doubles[r]);
+					break;
+				default:
+					file.putString(strings[r]);
+				}
+		}
+
+		private static long[] grow(long[] a)
+		{
+			return ( a == null ) ? new long[16] : Arrays.copyOf(a, 2*a.length);
+		}
+
+		private static double[] grow(double[] a)
+		{
+			return ( a == null ) ? new double[16] : Arrays.copyOf(a, 2*a.length);
+		}
+	}
+}
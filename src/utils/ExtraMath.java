@@ -58,6 +58,12 @@ public final class ExtraMath
 	 */
 	public static Random random;
 	
+	/**
+	 * Stream used instead of random by the calling thread, if set (see
+	 * setStream()).
+	 */
+	private static final ThreadLocal<Random> _stream = new ThreadLocal<Random>();
+	
 	/* ----------------------- Simple calculations ------------------------ */
 	
 	/**
@@ -630,6 +636,64 @@ public final class ExtraMath
 	
 	/*  -------------------- Random number generation  -------------------- */
 	
+	/**
+	 * \brief Return the generator used by the random number helpers below:
+	 * the stream set for the calling thread if there is one, or else the
+	 * global generator random.
+	 * 
+	 * @return Random number generator of the calling thread.
+	 */
+	public static Random getRandom()
+	{
+		Random out = _stream.get();
+		return ( out == null ) ? random : out;
+	}
+	
+	/**
+	 * \brief Make the random number helpers of the calling thread draw from
+	 * the given stream.
+	 * 
+	 * @param stream	Stream to use, or null to return to the global
+	 * generator.
+	 */
+	public static void setStream(Random stream)
+	{
+		if ( stream == null )
+			_stream.remove();
+		else
+			_stream.set(stream);
+	}
+	
+	/**
+	 * \brief Whether independent streams can be derived from the global
+	 * generator, i.e. whether it is a SplitRandom.
+	 * 
+	 * @return True if newStream() returns independent streams.
+	 */
+	public static boolean hasStreams()
+	{
+		return random instanceof SplitRandom;
+	}
+	
+	/**
+	 * \brief Return the stream of the given key, derived from the root seed
+	 * of the global generator.
+	 * 
+	 * The same key always gives the same stream, whatever the state of the
+	 * global generator, so the key should include the iteration if the
+	 * stream is created anew at each iteration.
+	 * 
+	 * @param key	Values identifying the stream, e.g. the identity of an
+	 * agent.
+	 * @return New stream, or the global generator if hasStreams() is false.
+	 */
+	public static Random newStream(long... key)
+	{
+		if ( ! hasStreams() )
+			return random;
+		return SplitRandom.forKey(((SplitRandom) random).getRootSeed(), key);
+	}
+	
 	/**
 	 * \brief Return a uniformly distributed random number between 0 and 1.
 	 * 
@@ -639,7 +703,7 @@ public final class ExtraMath
 	 */
 	public static Double getUniRandDbl()
 	{
-		return random.nextDouble();
+		return getRandom().nextDouble();
 	}
 	
 	/**
@@ -663,7 +727,7 @@ public final class ExtraMath
 	 */
 	public static Double getUniRandAngle()
 	{
-		return 2 * Math.PI * random.nextDouble();
+		return 2 * Math.PI * getRandom().nextDouble();
 	}
 	
 	/**
@@ -685,7 +749,7 @@ public final class ExtraMath
 	 */
 	public static Integer getUniRandInt(Integer uBound)
 	{
-		return random.nextInt(uBound);
+		return getRandom().nextInt(uBound);
 	}
 	
 	/**
@@ -707,7 +771,7 @@ public final class ExtraMath
 	 */
 	public static Double getUniRand(Double lBound, Double hBound)
 	{
-		return random.nextDouble()*(hBound-lBound)+lBound;
+		return getRandom().nextDouble()*(hBound-lBound)+lBound;
 	}
 	
 	/**
@@ -720,9 +784,10 @@ public final class ExtraMath
 	 */
 	public static Double getNormRand()
 	{
+		Random r = getRandom();
 		Double phi;
 		do {
-			phi = random.nextGaussian();
+			phi = r.nextGaussian();
 		} while (Math.abs(phi)>2);
 		return phi;
 	}
@@ -8,6 +8,8 @@
  */
 package utils;
 
+import java.util.Arrays;
+
 /**
  * \brief Tool for performing fast fourier transform (FFT) on grids of Complex and real numbers. 
  * 
@@ -458,6 +460,134 @@ public class FftOperations
 		return data;
 	}
 
+	/**
+     * \brief Perform a discrete Fourier transformation on a 1D data array of
+     * any length.
+     * 
+     * Lengths that are a power of 2 are passed to fft(). Other lengths use
+     * Bluestein's algorithm, which writes the transformation as a convolution
+     * and computes it with power-of-2 FFTs. When many arrays of the same
+     * length are transformed, create a DftPlan once and reuse it instead.
+     * 
+     * @param data data array to perform the transformation on, real and
+     * imaginary parts alternating as in fft()
+     * @param isign 1 for regular FFT, -1 for inverse (result is NOT normalized by N!)
+     * @return Double array of transformed data
+     */
+	public static double[] dft(double[] data, int isign) {
+		return new DftPlan(data.length/2, isign).transform(data);
+	}
+
+	/**
+	 * \brief Discrete Fourier transformation of arrays of a given length,
+	 * with everything that does not depend on the data computed once.
+	 * 
+	 * For lengths that are not a power of 2 (Bluestein's algorithm), the
+	 * chirp and the transformed convolution kernel are kept, so that each
+	 * transformation only does the two FFTs of the data side. A plan reuses
+	 * its work array, so it must only be used by one thread at a time.
+	 */
+	public static class DftPlan {
+		/**
+		 * Length of the arrays transformed, in complex numbers.
+		 */
+		private final int n;
+
+		/**
+		 * 1 for regular FFT, -1 for inverse.
+		 */
+		private final int isign;
+
+		/**
+		 * Length of the convolution: a power of 2, at least 2n-1.
+		 */
+		private int m;
+
+		/**
+		 * Chirp c[j] = exp(isign*i*pi*j*j/n).
+		 */
+		private double[] chirpRe, chirpIm;
+
+		/**
+		 * FFT of the convolution kernel b[j] = b[-j] = conjugate of c[j].
+		 */
+		private double[] bHat;
+
+		/**
+		 * Work array of the convolution.
+		 */
+		private double[] a;
+
+		/**
+		 * \brief Prepare the transformation of arrays of n complex numbers.
+		 * 
+		 * @param n length of the arrays, in complex numbers
+		 * @param isign 1 for regular FFT, -1 for inverse (result is NOT normalized by N!)
+		 */
+		public DftPlan(int n, int isign) {
+			this.n = n;
+			this.isign = isign;
+			if (checkPowerOfTwo(n))
+				return;
+			m = 1;
+			while (m<2*n-1)
+				m <<= 1;
+			// chirp, with j*j reduced modulo 2n
+			chirpRe = new double[n];
+			chirpIm = new double[n];
+			double theta;
+			for (int j = 0; j<n; j++) {
+				theta = isign*Math.PI*(((long) j*j)%(2*n))/n;
+				chirpRe[j] = Math.cos(theta);
+				chirpIm[j] = Math.sin(theta);
+			}
+			bHat = new double[2*m];
+			for (int j = 0; j<n; j++) {
+				bHat[2*j] = chirpRe[j];
+				bHat[2*j+1] = -chirpIm[j];
+				if (j>0) {
+					bHat[2*(m-j)] = chirpRe[j];
+					bHat[2*(m-j)+1] = -chirpIm[j];
+				}
+			}
+			fft(bHat, 1);
+			a = new double[2*m];
+		}
+
+		/**
+		 * \brief Transform an array in place.
+		 * 
+		 * @param data data array of n complex numbers, real and imaginary
+		 * parts alternating as in fft()
+		 * @return data, transformed
+		 */
+		public double[] transform(double[] data) {
+			if (bHat == null)
+				return fft(data, isign);
+			// a[j] = data[j]*c[j], padded with zeros
+			for (int j = 0; j<n; j++) {
+				a[2*j] = data[2*j]*chirpRe[j]-data[2*j+1]*chirpIm[j];
+				a[2*j+1] = data[2*j]*chirpIm[j]+data[2*j+1]*chirpRe[j];
+			}
+			Arrays.fill(a, 2*n, 2*m, 0.0);
+			// convolution of a and b
+			fft(a, 1);
+			double re;
+			for (int j = 0; j<m; j++) {
+				re = a[2*j]*bHat[2*j]-a[2*j+1]*bHat[2*j+1];
+				a[2*j+1] = a[2*j]*bHat[2*j+1]+a[2*j+1]*bHat[2*j];
+				a[2*j] = re;
+			}
+			fft(a, -1);
+			// data[k] = c[k]*(a*b)[k]
+			for (int k = 0; k<n; k++) {
+				data[2*k] = (a[2*k]*chirpRe[k]-a[2*k+1]*chirpIm[k])/m;
+				data[2*k+1] = (a[2*k]*chirpIm[k]+a[2*k+1]*chirpRe[k])/m;
+			}
+			return data;
+		}
+	}
+
 	/**
      * \brief Perform a Fast Fourier Transformation on n-D data array .
      * 
@@ -10,14 +10,21 @@ package utils;
 
 import idyno.SimTimer;
 import java.io.BufferedOutputStream;
-import de.schlichtherle.io.File;
-import de.schlichtherle.io.FileOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
 
 /**
  * \brief Class used to create auto-zipping result files. At each iteration, the file is added to an archive.
  * 
  * Class used to create auto-zipping result files. At each iteration, the file is added to an archive. The last iteration is still 
  * available with the syntax "resultFileName(last)"
+ * 
+ * A result file may instead be written in binary (see BinaryResultFile), in which case grids and agents are stored as numbers
+ * and no XML file is written: BinaryResultConverter rebuilds the XML files, e.g. lastIter/resultFileName(last).xml for a restart.
  *   
  * @author Laurent Lardon (lardonl@supagro.inra.fr), INRA, France
  * @author Brian Merkey (brim@env.dtu.dk, bvm@northwestern.edu), Department of Engineering Sciences and Applied Mathematics, Northwestern University (USA)
@@ -25,20 +32,15 @@ import de.schlichtherle.io.FileOutputStream;
 public class ResultFile 
 {
 	/**
-	 * Result file archive (zip file) in which this result file will be stored
+	 * Result file archive (zip file) in which this result file will be stored, only appended to
 	 */
-	private File	_vArchive;
+	private ZipArchive	_archive;
 	
 	/**
 	 * Name of the new results file being created at the required output period
 	 */
 	private File	newFile;
 	
-	/**
-	 * Name of the archive file (.zip) that the new results file will be included within
-	 */
-	private File	archiveFile;
-	
 	/**
 	 * Simulation iteration at which this file is being written
 	 */
@@ -64,10 +66,43 @@ public class ResultFile
 	 */
 	private BufferedOutputStream buffer;
 	
+	/**
+	 * Encoder of the text written to buffer, in the default charset as
+	 * String.getBytes() used. Text is encoded as it is written, without
+	 * copying it to a byte array first.
+	 */
+	private OutputStreamWriter writer;
+	
+	/**
+	 * Characters copied from a StringBuffer before they are encoded, reused
+	 * for all writes.
+	 */
+	private char[] chunk = new char[8192];
+	
 	/**
 	 * Buffer to hold the information / statistics that are being written to the results file
 	 */
 	private StringBuffer         value;
+	
+	/**
+	 * Binary result file written instead of the XML files, null if the XML files are written
+	 */
+	private BinaryResultFile     _binary;
+	
+	/**
+	 * Writer thread writing this result file in the background, null if it is written as the simulation goes
+	 */
+	private ResultWriter         _writer;
+	
+	/**
+	 * Writing kept for the writer thread since the file was opened, null if written as the simulation goes
+	 */
+	private List<Runnable>       _snapshot;
+	
+	/**
+	 * Values of the agents of the species being written, kept as numbers until they are written
+	 */
+	private AgentTable           _agents;
 
 	/**
 	 * \brief Creates a result file within a specified folder, of a particular name, and at a set simulation iteration
@@ -79,15 +114,84 @@ public class ResultFile
 	 * @param iter	first iterate to start writing to (added bvm 26.1.2009)
 	 */
 	public ResultFile(String outPath, String fileName, int iter) 
+	{
+		this(outPath, fileName, iter, false, Deflater.DEFAULT_COMPRESSION);
+	}
+	
+	/**
+	 * \brief Creates a result file written either in XML or in binary
+	 * 
+	 * @param outPath	directory where result files will be saved
+	 * @param fileName	name of the resultFile
+	 * @param iter	first iterate to start writing to
+	 * @param binary	true to write fileName.bin and fileName.idx instead of the XML files
+	 * @param zipLevel	compression level of the archive of the XML files, from 0 to 9 or -1 for the default level
+	 */
+	public ResultFile(String outPath, String fileName, int iter, boolean binary,
+																int zipLevel) 
 	{
 		// Set directory and filename
 		_prefix = fileName;
 		_dir = outPath+java.io.File.separator;
 		_fileIndex = iter;
 
+		if ( binary )
+		{
+			try
+			{
+				_binary = new BinaryResultFile(_dir+_prefix);
+			}
+			catch (Exception e)
+			{
+				LogFile.writeError(e, "ResultFile.ResultFile()");
+			}
+			return;
+		}
 		// Create the archive file
-		_vArchive = new File(_dir+_prefix+".zip");
-		if (!_vArchive.exists()) _vArchive.mkdir();		
+		try
+		{
+			_archive = new ZipArchive(_dir+_prefix+".zip", zipLevel);
+		}
+		catch (Exception e)
+		{
+			LogFile.writeError(e, "ResultFile.ResultFile()");
+		}
+	}
+	
+	/**
+	 * \brief Whether this result file is written in binary
+	 * 
+	 * @return	True if this result file is written to fileName.bin and fileName.idx
+	 */
+	public boolean isBinary()
+	{
+		return _binary != null;
+	}
+
+	/**
+	 * \brief Writes this result file in the background from now on
+	 * 
+	 * What is written between openFile() and closeFile() is then kept in memory, and handed over to the writer
+	 * thread when the file is closed.
+	 * 
+	 * @param writer	Writer thread that will write this result file
+	 */
+	public void setWriter(ResultWriter writer)
+	{
+		_writer = writer;
+	}
+	
+	/**
+	 * \brief Does some writing now, or keeps it for the writer thread if this file is written in the background
+	 * 
+	 * @param task	Writing to do
+	 */
+	private void run(Runnable task)
+	{
+		if ( _snapshot != null )
+			_snapshot.add(task);
+		else
+			task.run();
 	}
 
 	/**
@@ -100,25 +204,45 @@ public class ResultFile
 	 * @param iter	The current simulation iteration (added by BVM Jan 2009)
 	 */
 	public void openFile(int iter) 
+	{
+		int currentIter = SimTimer.getCurrentIter();
+		double currentTime = SimTimer.getCurrentTime();
+		if ( _writer != null )
+			_snapshot = new ArrayList<Runnable>();
+		run(() -> open(iter, currentIter, currentTime));
+	}
+	
+	/**
+	 * \brief Creates the file, or starts a new iteration of a binary file
+	 * 
+	 * @param iter	The iterate used in the name of the file
+	 * @param currentIter	The iterate of the simulation when the file was opened
+	 * @param currentTime	The time of the simulation when the file was opened
+	 */
+	private void open(int iter, int currentIter, double currentTime)
 	{
 		try 
 		{
 			// bvm added 26.1.2009: use simulation iterate for file name 
 			_fileIndex = iter;
+			if ( isBinary() )
+			{
+				_binary.openIteration(currentIter, currentTime);
+				return;
+			}
 			newFile = new File(_dir+"lastIter"+java.io.File.separator+_prefix+"(last).xml");
-			archiveFile = new File(_dir+_prefix+".zip"+java.io.File.separator
-									+_prefix+"("+_fileIndex+").xml");
 			// Create the streams to write in the file
 			_out = new FileOutputStream(newFile);
 			buffer = new BufferedOutputStream(_out);
+			writer = new OutputStreamWriter(buffer);
 			// Build the main markup
 			// bvm 26.1.2009: added output of iterate as well as time
 			value = new StringBuffer("<idynomics>\n <simulation iterate=\"");
-			value.append(SimTimer.getCurrentIter());
+			value.append(currentIter);
 			value.append("\" time=\"");
-			value.append(SimTimer.getCurrentTime());
+			value.append(currentTime);
 			value.append("\" unit=\"hour\">\n");
-			buffer.write(value.toString().getBytes());
+			writer.write(value.toString());
 		}
 		catch (Exception e)
 		{
@@ -132,31 +256,171 @@ public class ResultFile
 	 * @param text	The text that should be appended to this results file
 	 */
 	public void write(String text)
+	{
+		run(() -> writeText(text));
+	}
+	
+	/**
+	 * \brief Add text to an existing resultFile.
+	 * 
+	 * The text is encoded piece by piece, so no copy of the whole buffer is
+	 * made unless the file is written in the background.
+	 * 
+	 * @param textBuffer StringBuffer of text to be written to the result file.
+	 */
+	public void write(StringBuffer textBuffer)
+	{
+		if ( _snapshot != null )
+			write(textBuffer.toString());
+		else
+			writeText(textBuffer);
+	}
+	
+	/**
+	 * \brief Writes text to the file, or to the binary file as it is.
+	 * 
+	 * @param text	The text to write
+	 */
+	private void writeText(CharSequence text)
 	{
 		try
 		{
-			buffer.write(text.getBytes());
+			if ( isBinary() )
+			{
+				_binary.writeText(text);
+				return;
+			}
+			if ( text instanceof String )
+			{
+				writer.write((String) text);
+				return;
+			}
+			int length = text.length();
+			int end;
+			for (int start = 0; start < length; start = end)
+			{
+				end = Math.min(length, start + chunk.length);
+				((StringBuffer) text).getChars(start, end, chunk, 0);
+				writer.write(chunk, 0, end - start);
+			}
 		}
 		catch (Exception e)
 		{
-			LogFile.writeError(e, "ResultFile.write(String)");
+			LogFile.writeError(e, "ResultFile.write()");
 		}
 	}
 	
 	/**
-	 * \brief Add text to an existing resultFile.
+	 * \brief Add a solute grid to a resultFile.
 	 * 
-	 * @param textBuffer StringBuffer of text to be written to the result file.
+	 * The values array must not be changed afterwards, as it may be written later on by the writer thread.
+	 * 
+	 * @param name	Name of the grid.
+	 * @param unit	Unit of the values.
+	 * @param resolution	Resolution of the grid.
+	 * @param nI	Number of voxels along I.
+	 * @param nJ	Number of voxels along J.
+	 * @param nK	Number of voxels along K.
+	 * @param values	Values, without the padding, with K varying fastest and then J.
 	 */
-	public void write(StringBuffer textBuffer)
+	public void writeGrid(String name, String unit, double resolution,
+								int nI, int nJ, int nK, double[] values)
 	{
-		try
+		run(() -> grid(name, unit, resolution, nI, nJ, nK, values));
+	}
+	
+	private void grid(String name, String unit, double resolution,
+								int nI, int nJ, int nK, double[] values)
+	{
+		if ( isBinary() )
 		{
-			buffer.write(textBuffer.toString().getBytes());
+			_binary.writeGrid(name, unit, resolution, nI, nJ, nK, values);
+			return;
 		}
-		catch (Exception e)
+		StringBuffer text = new StringBuffer();
+		text.append("<solute name=\"").append(name);
+		text.append("\" unit=\"").append(unit);
+		text.append("\" resolution=\"").append(resolution);
+		text.append("\" nI=\"").append(nI);
+		text.append("\" nJ=\"").append(nJ);
+		text.append("\" nK=\"").append(nK);
+		text.append("\">\n");
+		writeText(text);
+		for (double v : values)
+			writeText(Double.toString(v)+";\n");
+		writeText("\n</solute>\n");
+	}
+	
+	/**
+	 * \brief Start the agents of a species in a resultFile.
+	 * 
+	 * @param name	Name of the species.
+	 * @param header	Comma-separated names of the values of each agent.
+	 * @return	Table the values of each agent are added to before writeAgent() is called.
+	 */
+	public AgentTable openSpecies(String name, String header)
+	{
+		run(() ->
+		{
+			if ( isBinary() )
+				_binary.openSpecies(name, header);
+			else
+				writeText("<species name=\""+name+"\" header=\""+header+"\" >\n");
+		});
+		_agents = new AgentTable();
+		return _agents;
+	}
+	
+	/**
+	 * \brief Add the values of an agent, added to the table returned by openSpecies(), to a resultFile.
+	 * 
+	 * The agent is written at once, or kept as numbers until the species is closed if this file is written in the
+	 * background: the values are then only formatted on the writer thread.
+	 */
+	public void writeAgent()
+	{
+		_agents.endRow();
+		if ( _snapshot != null )
+			return;
+		writeAgents(_agents);
+		_agents.clear();
+	}
+	
+	/**
+	 * \brief End the agents of a species in a resultFile.
+	 */
+	public void closeSpecies()
+	{
+		AgentTable agents = _agents;
+		_agents = null;
+		run(() ->
 		{
-			LogFile.writeError(e, "ResultFile.write(StringBuffer)");
+			writeAgents(agents);
+			if ( isBinary() )
+				_binary.closeSpecies();
+			else
+				writeText("</species>\n");
+		});
+	}
+	
+	/**
+	 * \brief Writes the agents of a table, formatted as text, or as the values they were added as in a binary file
+	 * 
+	 * @param agents	Values of the agents, one row per agent.
+	 */
+	private void writeAgents(AgentTable agents)
+	{
+		if ( isBinary() )
+		{
+			_binary.writeRows(agents);
+			return;
+		}
+		StringBuilder row = new StringBuilder();
+		for (int r = 0; r < agents.getRowCount(); r++)
+		{
+			row.setLength(0);
+			agents.appendRow(r, row);
+			writeText(row.append(";\n").toString());
 		}
 	}
 	
@@ -164,25 +428,63 @@ public class ResultFile
 	/**
 	 * \brief Closes the resultFile and adds the closing mark-up to have a well-formed XML file
 	 * 
-	 * Closes the resultFile and adds the closing mark-up to have a well-formed XML file
+	 * Closes the resultFile and adds the closing mark-up to have a well-formed XML file. If the file is written in the
+	 * background, it is handed over to the writer thread.
 	 */
 	public void closeFile() {
+		if ( _snapshot == null )
+		{
+			close();
+			return;
+		}
+		List<Runnable> tasks = _snapshot;
+		_snapshot = null;
+		tasks.add(this::close);
+		_writer.write(() -> tasks.forEach(Runnable::run));
+	}
+	
+	private void close()
+	{
 		try
 		{
+			if ( isBinary() )
+			{
+				_binary.closeIteration();
+				return;
+			}
 			// Close the markup
-			buffer.write("\n</simulation>\n</idynomics>".getBytes());
+			writer.write("\n</simulation>\n</idynomics>");
 			// Close the file
-			buffer.close();
+			writer.close();
 			_out.close();
 			// Add the resultFile to the archive
-			newFile.copyTo(archiveFile);
-			File.update(_vArchive);
+			_archive.add(newFile, _prefix+"("+_fileIndex+").xml");
 		}
 		catch (Exception e)
 		{
 			LogFile.writeError(e, "ResultFile.closeFile()");
 		}
 	}
+	
+	/**
+	 * \brief Closes the archive (or binary files) at the end of the simulation
+	 * 
+	 * If this file is written in the background, the writer thread must have finished.
+	 */
+	public void closeArchive()
+	{
+		try
+		{
+			if ( isBinary() )
+				_binary.close();
+			else if ( _archive != null )
+				_archive.close();
+		}
+		catch (Exception e)
+		{
+			LogFile.writeError(e, "ResultFile.closeArchive()");
+		}
+	}
 
 	/**
 	 * \brief Static function invoked to copy a File of a given name to a specified target
@@ -194,8 +496,8 @@ public class ResultFile
 	 * @return Boolean noting the result of the copy procedure
 	 */
 	public static boolean copyFile(String sourceName, String targetName) {		
-		File source = new File(sourceName);
-		File target = new File(targetName);
+		de.schlichtherle.io.File source = new de.schlichtherle.io.File(sourceName);
+		de.schlichtherle.io.File target = new de.schlichtherle.io.File(targetName);
 		return source.copyTo(target);
 	}
 }
@@ -0,0 +1,100 @@
+/**
+ * \package utils
+ * \brief Package of classes that perform utility functions in the process of running an iDynoMiCS Simulation
+ *
+ * Package of classes that perform utility functions in the process of running an iDynoMiCS Simulation. This package is part of iDynoMiCS v1.2, governed by the
+ * CeCILL license under French law and abides by the rules of distribution of free software.  You can use, modify and/ or redistribute
+ * iDynoMiCS under the terms of the CeCILL license as circulated by CEA, CNRS and INRIA at the following URL  "http://www.cecill.info".
+ */
+package utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * \brief Background thread writing the result files while the simulation
+ * goes on.
+ *
+ * A snapshot is everything written for one output of the simulation. The
+ * result files given this writer (see ResultFile.setWriter()) capture their
+ * content on the simulation thread and hand it over when they are closed;
+ * it is then formatted, written and archived on this thread, in the order it
+ * was given. At most maxSnapshots snapshots are in flight: startSnapshot()
+ * waits for the oldest one to be written when this limit is reached, which
+ * bounds the memory held by the snapshots.
+ */
+public class ResultWriter
+{
+	/**
+	 * Single thread writing the snapshots, in order.
+	 */
+	private ExecutorService _thread;
+
+	/**
+	 * One permit per snapshot that may be in flight.
+	 */
+	private Semaphore _slots;
+
+	/**
+	 * \brief Start a writer thread.
+	 *
+	 * @param maxSnapshots	Number of snapshots that may wait to be written.
+	 */
+	public ResultWriter(int maxSnapshots)
+	{
+		_slots = new Semaphore(maxSnapshots);
+		_thread = Executors.newSingleThreadExecutor(r ->
+		{
+			Thread out = new Thread(r, "ResultWriter");
+			out.setDaemon(true);
+			return out;
+		});
+	}
+
+	/**
+	 * \brief Start a new snapshot, waiting if too many are in flight.
+	 */
+	public void startSnapshot()
+	{
+		_slots.acquireUninterruptibly();
+	}
+
+	/**
+	 * \brief Queue some writing, done after everything queued before.
+	 *
+	 * @param task	Writing to do on the writer thread.
+	 */
+	public void write(Runnable task)
+	{
+		_thread.execute(task);
+	}
+
+	/**
+	 * \brief End the current snapshot: its slot is freed once everything
+	 * queued so far is written.
+	 */
+	public void endSnapshot()
+	{
+		_thread.execute(_slots::release);
+	}
+
+	/**
+	 * \brief Wait for everything queued to be written, and stop the thread.
+	 */
+	public void finish()
+	{
+		_thread.shutdown();
+		try
+		{
+			while ( ! _thread.awaitTermination(1, TimeUnit.MINUTES) )
+				LogFile.writeLogAlways("Waiting for the result files");
+		}
+		catch (InterruptedException e)
+		{
+			LogFile.writeError(e, "ResultWriter.finish()");
+			Thread.currentThread().interrupt();
+		}
+	}
+}
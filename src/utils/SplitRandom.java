@@ -0,0 +1,203 @@
+/**
+ * \package utils
+ * \brief Package of classes that perform utility functions in the process of running an iDynoMiCS Simulation
+ *
+ * Package of classes that perform utility functions in the process of running an iDynoMiCS Simulation. This package is part of iDynoMiCS v1.2, governed by the
+ * CeCILL license under French law and abides by the rules of distribution of free software.  You can use, modify and/ or redistribute
+ * iDynoMiCS under the terms of the CeCILL license as circulated by CEA, CNRS and INRIA at the following URL  "http://www.cecill.info".
+ */
+package utils;
+
+import java.util.Random;
+
+/**
+ * \brief Fast, splittable random number generator (SplitMix64).
+ *
+ * Each value is a 64-bit mix of a counter incremented by a fixed odd
+ * constant, so the whole state of a stream is one long and a stream is cheap
+ * to create. Independent streams are derived from the root seed of the
+ * simulation and a key, e.g. the identity of an agent and the iteration (see
+ * forKey()), so that they do not depend on the order in which they are
+ * created or used, nor on the thread using them.
+ *
+ * Extends java.util.Random so it can replace MTRandom wherever a Random is
+ * expected, but none of its methods are synchronized: a stream must only be
+ * used by one thread at a time. The state (root seed, counter and pending
+ * Gaussian) is serialised with the generator, e.g. in random.state.
+ */
+public class SplitRandom extends Random
+{
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Increment of the counter: the odd integer closest to 2^64 divided by
+	 * the golden ratio.
+	 */
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	/**
+	 * Seed this generator was created with, from which streams are derived.
+	 */
+	private long _rootSeed;
+
+	/**
+	 * Counter, advanced by GOLDEN_GAMMA at each draw.
+	 */
+	private long _state;
+
+	/**
+	 * Second value of the last pair of Gaussian values, if not used yet.
+	 */
+	private double _nextGaussian;
+
+	/**
+	 * Whether _nextGaussian holds a value.
+	 */
+	private boolean _haveNextGaussian;
+
+	/**
+	 * \brief Create a generator from a seed.
+	 *
+	 * @param seed	Seed of the generator.
+	 */
+	public SplitRandom(long seed)
+	{
+		/*
+		 * Random(long) calls setSeed(), which sets the fields.
+		 */
+		super(seed);
+	}
+
+	/**
+	 * \brief Create the stream of the given key, derived from a root seed.
+	 *
+	 * Equal seeds and keys give equal streams, and different keys give
+	 * statistically independent streams.
+	 *
+	 * @param rootSeed	Root seed of the simulation.
+	 * @param key	Values identifying the stream.
+	 * @return	New generator, whose root seed is rootSeed.
+	 */
+	public static SplitRandom forKey(long rootSeed, long... key)
+	{
+		long h = mix64(rootSeed);
+		for ( long k : key )
+			h = mix64(h ^ mix64(k + GOLDEN_GAMMA));
+		SplitRandom out = new SplitRandom(h);
+		out._rootSeed = rootSeed;
+		return out;
+	}
+
+	/**
+	 * \brief Create a new stream whose seed is drawn from this one.
+	 *
+	 * @return	New generator, with the same root seed as this one.
+	 */
+	public SplitRandom split()
+	{
+		SplitRandom out = new SplitRandom(nextLong());
+		out._rootSeed = _rootSeed;
+		return out;
+	}
+
+	/**
+	 * \brief Root seed of this generator, from which streams are derived.
+	 *
+	 * @return	Root seed.
+	 */
+	public long getRootSeed()
+	{
+		return _rootSeed;
+	}
+
+	/**
+	 * \brief Reset this generator to the given seed, which also becomes its
+	 * root seed.
+	 *
+	 * @param seed	Seed of the generator.
+	 */
+	@Override
+	public void setSeed(long seed)
+	{
+		_rootSeed = seed;
+		_state = mix64(seed);
+		_haveNextGaussian = false;
+	}
+
+	/**
+	 * \brief Next 64 random bits.
+	 *
+	 * @return	Uniformly distributed long.
+	 */
+	@Override
+	public long nextLong()
+	{
+		_state += GOLDEN_GAMMA;
+		return mix64(_state);
+	}
+
+	/**
+	 * \brief Next random bits, used by the other methods of Random.
+	 *
+	 * @param bits	Number of random bits, at most 32.
+	 * @return	Integer whose lowest bits are random.
+	 */
+	@Override
+	protected int next(int bits)
+	{
+		return (int) (nextLong() >>> (64 - bits));
+	}
+
+	/**
+	 * \brief Next uniformly distributed double in [0, 1), from 53 random
+	 * bits.
+	 *
+	 * @return	Uniformly distributed double in [0, 1).
+	 */
+	@Override
+	public double nextDouble()
+	{
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * \brief Next N(0,1) distributed double, by the polar method as
+	 * Random.nextGaussian() but without synchronization.
+	 *
+	 * @return	Normally distributed double.
+	 */
+	@Override
+	public double nextGaussian()
+	{
+		if ( _haveNextGaussian )
+		{
+			_haveNextGaussian = false;
+			return _nextGaussian;
+		}
+		double v1, v2, s;
+		do
+		{
+			v1 = 2 * nextDouble() - 1;
+			v2 = 2 * nextDouble() - 1;
+			s = v1 * v1 + v2 * v2;
+		} while ( s >= 1 || s == 0 );
+		double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s)/s);
+		_nextGaussian = v2 * multiplier;
+		_haveNextGaussian = true;
+		return v1 * multiplier;
+	}
+
+	/**
+	 * \brief Scramble the bits of a long (variant 13 of the MurmurHash3
+	 * finaliser, as in SplitMix64).
+	 *
+	 * @param z	Value to scramble.
+	 * @return	Scrambled value.
+	 */
+	private static long mix64(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -9,13 +9,33 @@
 package utils;
 
 import java.io.*;
-import java.util.zip.*;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.ZipInputStream;
+
+import de.schlichtherle.util.zip.BasicZipFile;
+import de.schlichtherle.util.zip.ZipEntry;
+import de.schlichtherle.util.zip.ZipOutputStream;
 
 /**
  * \brief Class to create and update zip archives that contain simulation result files
  * 
  * iDynoMiCS simulations can produce a large number of result files, depending on the output period specified. With each timestep these 
  * files are added to a zip archive to keep these files together. This class contains methods to create and update these files
+ * 
+ * The archive is written as a stream: each file is appended after the previous ones, which are never rewritten, so that adding a file
+ * costs the same however large the archive is. The central directory is only written by close(), which is also done when the JVM shuts
+ * down for the archives still open. An archive that was not closed (e.g. after a crash) can still be read entry by entry with a
+ * ZipInputStream; if the archive exists when it is opened, e.g. when a simulation is restarted, its entries are copied first, as they
+ * are compressed. A file added under the name of an entry already in the archive replaces it, e.g. the iterations written again when
+ * a simulation is restarted from an earlier state.
  *
  */
 public class ZipArchive 
@@ -24,17 +44,42 @@ public class ZipArchive
 	/**
 	 * Memory buffer for reading result file information
 	 */
-	static final int        BUFFER = 2048;
+	static final int        BUFFER = 8192;
+	
+	/**
+	 * Archives not closed yet, closed when the JVM shuts down
+	 */
+	private static final Set<ZipArchive> _openArchives = new LinkedHashSet<ZipArchive>();
+	
+	static
+	{
+		Runtime.getRuntime().addShutdownHook(new Thread(ZipArchive::closeAll));
+	}
 	
 	/**
 	 * Output stream used to create the zip file of results
 	 */
 	private ZipOutputStream out;
 	
+	/**
+	 * File under the output stream, synced once the entries of an existing archive are copied
+	 */
+	private FileOutputStream _file;
+	
 	/**
 	 * The name assigned to the zip file
 	 */
 	private String          _zipFileName;
+	
+	/**
+	 * Names of the entries written so far
+	 */
+	private Set<String>     _entries = new HashSet<String>();
+	
+	/**
+	 * Memory buffer reused to copy files into the archive
+	 */
+	private byte[]          data = new byte[BUFFER];
 
 	/**
 	 * \brief Constructor to open a zip file output stream and set the zip file name
@@ -45,10 +90,223 @@ public class ZipArchive
 	 * @throws IOException	Exception thrown if this stream cannot be opened
 	 */
 	public ZipArchive(String zipFileName) throws IOException 
+	{
+		this(zipFileName, Deflater.DEFAULT_COMPRESSION);
+	}
+	
+	/**
+	 * \brief Opens a zip archive for appending, with the given compression level
+	 * 
+	 * If the archive already exists, it is moved aside (to the same name ending with .old) and its entries are copied into the new one,
+	 * and then it is deleted. If the archive moved aside is still there, the previous copy was interrupted: the archive is copied again
+	 * from it, and it is never replaced.
+	 * 
+	 * @param zipFileName	The name assigned to this zip file of simulation results
+	 * @param level	Compression level, from 0 (none) to 9 (best), or -1 for the default level
+	 * @throws IOException	Exception thrown if this stream cannot be opened
+	 */
+	public ZipArchive(String zipFileName, int level) throws IOException 
 	{
 		// create file
 		_zipFileName = zipFileName;
-		out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(_zipFileName)));
+		File archive = new File(_zipFileName);
+		File previous = new File(_zipFileName+".old");
+		if ( previous.exists() )
+			LogFile.writeLogAlways(_zipFileName+" was not copied completely, it is copied again from "+previous.getName());
+		else if ( archive.exists() && ! archive.renameTo(previous) )
+			throw new IOException("Cannot move "+_zipFileName+" aside");
+		_file = new FileOutputStream(_zipFileName);
+		out = new ZipOutputStream(new BufferedOutputStream(_file, BUFFER));
+		out.setLevel(level);
+		if ( previous.exists() )
+		{
+			copyEntries(previous);
+			out.flush();
+			_file.getFD().sync();
+			previous.delete();
+		}
+		synchronized (_openArchives)
+		{
+			_openArchives.add(this);
+		}
+	}
+	
+	/**
+	 * \brief Copies the entries of an existing archive into this one
+	 * 
+	 * The entries are copied as they are compressed, so that reopening an archive costs no more than copying its file. An archive that
+	 * was not closed properly has no central directory: its entries are then read one by one and compressed again (see recompressEntries()).
+	 * 
+	 * @param previous	Archive to copy
+	 * @throws IOException	Exception thrown if this archive cannot be written
+	 */
+	private void copyEntries(File previous) throws IOException
+	{
+		RawZipFile in;
+		try
+		{
+			in = new RawZipFile(previous);
+		}
+		catch (IOException e)
+		{
+			LogFile.writeLogAlways(previous.getName()+" was not closed, its entries are compressed again");
+			recompressEntries(previous);
+			return;
+		}
+		try
+		{
+			for ( Enumeration<?> entries = in.entries(); entries.hasMoreElements(); )
+				copyEntry(in, (ZipEntry) entries.nextElement());
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+	
+	/**
+	 * \brief Copies an entry of an existing archive into this one, as it is compressed
+	 * 
+	 * @param in	Archive holding the entry
+	 * @param entry	Entry to copy
+	 * @throws IOException	Exception thrown if this archive cannot be written
+	 */
+	private void copyEntry(RawZipFile in, ZipEntry entry) throws IOException
+	{
+		if ( ! _entries.add(entry.getName()) )
+			return;
+		InputStream raw = in.getRawInputStream(entry.getName());
+		try
+		{
+			out.putNextEntry(new ZipEntry(entry), false);
+			copy(raw);
+			out.closeEntry();
+		}
+		finally
+		{
+			raw.close();
+		}
+	}
+	
+	/**
+	 * \brief Copies the entries of an archive that was not closed properly into this one, compressing them again
+	 * 
+	 * The archive is read entry by entry, up to its last complete entry. An entry written more than once (see add()) is found once
+	 * for each time: only the last one is copied.
+	 * 
+	 * @param previous	Archive to copy
+	 * @throws IOException	Exception thrown if this archive cannot be written
+	 */
+	private void recompressEntries(File previous) throws IOException
+	{
+		List<String> names = readEntryNames(previous);
+		Map<String, Integer> last = new HashMap<String, Integer>();
+		for ( int n = 0; n < names.size(); n++ )
+			last.put(names.get(n), n);
+		ZipInputStream in = new ZipInputStream(new BufferedInputStream(new FileInputStream(previous), BUFFER));
+		try
+		{
+			java.util.zip.ZipEntry entry;
+			for ( int n = 0; n < names.size() && (entry = in.getNextEntry()) != null; n++ )
+				if ( last.get(entry.getName()) == n )
+					add(in, entry.getName());
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+	
+	/**
+	 * \brief Lists the complete entries of an archive that was not closed properly
+	 * 
+	 * @param previous	Archive to read
+	 * @return	Names of the entries that can be read to their end, in the order they were written
+	 * @throws IOException	Exception thrown if this archive cannot be opened
+	 */
+	private List<String> readEntryNames(File previous) throws IOException
+	{
+		List<String> out = new ArrayList<String>();
+		ZipInputStream in = new ZipInputStream(new BufferedInputStream(new FileInputStream(previous), BUFFER));
+		try
+		{
+			java.util.zip.ZipEntry entry;
+			while ( (entry = in.getNextEntry()) != null )
+			{
+				// Reading the entry to its end checks its CRC.
+				in.skip(Long.MAX_VALUE);
+				out.add(entry.getName());
+			}
+		}
+		catch (IOException e)
+		{
+			LogFile.writeLogAlways("Copying "+out.size()+" entries of "+previous.getName()+", the rest is unreadable");
+		}
+		finally
+		{
+			in.close();
+		}
+		return out;
+	}
+	
+	/**
+	 * \brief Appends the content of a stream to the archive, as a new entry
+	 * 
+	 * If the archive already holds an entry of this name (e.g. an iteration written again when a simulation is restarted from an
+	 * earlier state), the new one replaces it: the data of the previous one stays in the file until the archive is copied (when it is
+	 * opened again), but it is no longer listed in the central directory.
+	 * 
+	 * @param in	Stream to copy, read to its end but not closed
+	 * @param entryName	Name of the entry
+	 * @throws IOException	Exception thrown if this archive cannot be written
+	 */
+	private void add(InputStream in, String entryName) throws IOException
+	{
+		if ( ! _entries.add(entryName) )
+			LogFile.writeLog(entryName+" is written again in "+_zipFileName+", replacing the previous one");
+		ZipEntry entry = new ZipEntry(entryName);
+		entry.setTime(System.currentTimeMillis());
+		out.putNextEntry(entry);
+		copy(in);
+		out.closeEntry();
+	}
+	
+	/**
+	 * \brief Writes the content of a stream to the current entry
+	 * 
+	 * @param in	Stream to copy, read to its end but not closed
+	 * @throws IOException	Exception thrown if this archive cannot be written
+	 */
+	private void copy(InputStream in) throws IOException
+	{
+		int count;
+		while ((count = in.read(data, 0, BUFFER))!=-1) 
+		{
+			out.write(data, 0, count);
+		}
+	}
+	
+	/**
+	 * \brief Appends a file to the archive under the given name, and keeps the file
+	 * 
+	 * The entry is flushed to disk, so that it can be read even if the archive is not closed.
+	 * 
+	 * @param f	The file to be added to the zip archive
+	 * @param entryName	Name of the file in the archive
+	 * @throws IOException	Exception thrown if this zip file cannot be written
+	 */
+	public synchronized void add(File f, String entryName) throws IOException 
+	{
+		BufferedInputStream origin = new BufferedInputStream(new FileInputStream(f), BUFFER);
+		try
+		{
+			add(origin, entryName);
+		}
+		finally
+		{
+			origin.close();
+		}
+		out.flush();
 	}
 
 	/**
@@ -61,18 +319,7 @@ public class ZipArchive
 	 */
 	public final void addToZipArchiveAndDelete(File f) throws IOException 
 	{
-		int count;
-		byte data[] = new byte[BUFFER];
-
-		BufferedInputStream origin = new BufferedInputStream(new FileInputStream(f), BUFFER);
-		out.putNextEntry(new ZipEntry(f.getName()));
-
-		while ((count = origin.read(data, 0, BUFFER))!=-1) 
-		{
-			out.write(data, 0, count);
-		}
-		out.closeEntry();
-		origin.close();
+		add(f, f.getName());
 		f.delete();
 	}
 
@@ -87,26 +334,66 @@ public class ZipArchive
 	 */
 	public final void addToZipArchiveAndKeepLast(File f, File fNew) throws IOException 
 	{
-		int count;
-		byte data[] = new byte[BUFFER];
-
-		BufferedInputStream origin = new BufferedInputStream(new FileInputStream(f), BUFFER);
-		out.putNextEntry(new ZipEntry(f.getName()));
-
-		while ((count = origin.read(data, 0, BUFFER))!=-1) {
-			out.write(data, 0, count);
-		}
-		origin.close();
+		add(f, f.getName());
 		f.renameTo(fNew);
 	}
 
 	/**
 	 * \brief	Closes the zip file results archive
 	 * 
-	 * Closes the zip file results archive
+	 * Closes the zip file results archive, writing its central directory. Does nothing if it is already closed.
 	 * @throws IOException	Exception thrown if the file cannot be closed
 	 */
-	public void close() throws IOException {
+	public synchronized void close() throws IOException {
+		synchronized (_openArchives)
+		{
+			if ( ! _openArchives.remove(this) )
+				return;
+		}
 		out.close();
 	}
+	
+	/**
+	 * \brief Closes all the archives still open, when the JVM shuts down
+	 */
+	private static void closeAll()
+	{
+		ZipArchive[] archives;
+		synchronized (_openArchives)
+		{
+			archives = _openArchives.toArray(new ZipArchive[0]);
+		}
+		for ( ZipArchive anArchive : archives )
+			try
+			{
+				anArchive.close();
+			}
+			catch (IOException e)
+			{
+				LogFile.writeError(e, "ZipArchive.closeAll() closing "+anArchive._zipFileName);
+			}
+	}
+	
+	/**
+	 * \brief Zip file whose entries can be read as they are compressed
+	 */
+	private static class RawZipFile extends BasicZipFile
+	{
+		RawZipFile(File f) throws IOException
+		{
+			super(f);
+		}
+		
+		/**
+		 * \brief Returns the compressed data of an entry, without checking it
+		 * 
+		 * @param name	Name of the entry
+		 * @return	Stream of the compressed data
+		 * @throws IOException	Exception thrown if the entry cannot be read
+		 */
+		InputStream getRawInputStream(String name) throws IOException
+		{
+			return getInputStream(name, false, false);
+		}
+	}
 }